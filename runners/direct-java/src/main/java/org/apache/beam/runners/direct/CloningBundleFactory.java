@@ -18,7 +18,9 @@
 
 package org.apache.beam.runners.direct;
 
+import javax.annotation.Nullable;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.Enforcement;
 import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
@@ -29,19 +31,35 @@ import org.apache.beam.sdk.values.PCollection;
 import org.joda.time.Instant;
 
 /**
- * A {@link BundleFactory} where a created {@link UncommittedBundle} clones all elements added to it
- * using the coder of the {@link PCollection}.
+ * A {@link BundleFactory} where a created {@link UncommittedBundle} clones the elements added to it
+ * using the coder of the {@link PCollection}. By default, all elements are cloned; an {@link
+ * EnforcementPolicy} may select a subset of elements to clone.
  */
 class CloningBundleFactory implements BundleFactory {
-  private static final CloningBundleFactory INSTANCE = new CloningBundleFactory();
+  private static final CloningBundleFactory INSTANCE =
+      new CloningBundleFactory(EnforcementPolicy.full(), null);
 
   public static CloningBundleFactory create() {
     return INSTANCE;
   }
 
+  /**
+   * Create a {@link CloningBundleFactory} that clones the elements selected by the provided
+   * {@link EnforcementPolicy}, which counts the clones for the transforms of the provided graph
+   * that produce the bundles.
+   */
+  public static CloningBundleFactory create(EnforcementPolicy policy, DirectGraph graph) {
+    return new CloningBundleFactory(policy, graph);
+  }
+
   private final ImmutableListBundleFactory underlying;
-  private CloningBundleFactory() {
+  private final EnforcementPolicy policy;
+  @Nullable private final DirectGraph graph;
+
+  private CloningBundleFactory(EnforcementPolicy policy, @Nullable DirectGraph graph) {
     this.underlying = ImmutableListBundleFactory.create();
+    this.policy = policy;
+    this.graph = graph;
   }
 
   @Override
@@ -53,22 +71,32 @@ class CloningBundleFactory implements BundleFactory {
   @Override
   public <T> UncommittedBundle<T> createBundle(
       PCollection<T> output) {
-    return new CloningBundle<>(underlying.createBundle(output));
+    return new CloningBundle<>(underlying.createBundle(output), samplerFor(output));
   }
 
   @Override
   public <K, T> UncommittedBundle<T> createKeyedBundle(
       StructuralKey<K> key, PCollection<T> output) {
-    return new CloningBundle<>(underlying.createKeyedBundle(key, output));
+    return new CloningBundle<>(underlying.createKeyedBundle(key, output), samplerFor(output));
+  }
+
+  private <T> EnforcementPolicy.ElementSampler<T> samplerFor(PCollection<T> output) {
+    return policy.forBundle(
+        Enforcement.ENCODABILITY,
+        graph == null ? null : graph.getProducer(output),
+        output.getCoder());
   }
 
   private static class CloningBundle<T> implements UncommittedBundle<T> {
     private final UncommittedBundle<T> underlying;
     private final Coder<T> coder;
+    private final EnforcementPolicy.ElementSampler<T> sampler;
 
-    private CloningBundle(UncommittedBundle<T> underlying) {
+    private CloningBundle(
+        UncommittedBundle<T> underlying, EnforcementPolicy.ElementSampler<T> sampler) {
       this.underlying = underlying;
       this.coder = underlying.getPCollection().getCoder();
+      this.sampler = sampler;
     }
 
     @Override
@@ -78,6 +106,11 @@ class CloningBundleFactory implements BundleFactory {
 
     @Override
     public UncommittedBundle<T> add(WindowedValue<T> element) {
+      if (!sampler.shouldCheck(element.getValue())) {
+        underlying.add(element);
+        return this;
+      }
+      long startNanos = sampler.startCheck();
       try {
         // Use the cloned value to ensure that if the coder behaves poorly (e.g. a NoOpCoder that
         // does not expect to be used) that is reflected in the values given to downstream
@@ -87,11 +120,13 @@ class CloningBundleFactory implements BundleFactory {
       } catch (CoderException e) {
         throw UserCodeException.wrap(e);
       }
+      sampler.finishCheck(startNanos);
       return this;
     }
 
     @Override
     public CommittedBundle<T> commit(Instant synchronizedProcessingTime) {
+      sampler.report();
       return underlying.commit(synchronizedProcessingTime);
     }
   }
@@ -145,6 +145,19 @@ class DirectMetrics extends MetricResults {
           aggregation.combine(asList(current, finalCumulative))));
     }
 
+    /**
+     * Commit a value that was not produced by a bundle, such as the cost of work done by the
+     * runner, as both attempted and committed.
+     *
+     * @param update The value to add to the aggregates.
+     */
+    public void commitUnbundled(UpdateT update) {
+      synchronized (attemptedLock) {
+        finishedAttempted = aggregation.combine(asList(finishedAttempted, update));
+      }
+      commitLogical(null, update);
+    }
+
     /** Extract the value from all successfully committed bundles. */
     public ResultT extractCommitted() {
       return aggregation.extract(finishedCommitted.get());
@@ -349,4 +362,20 @@ class DirectMetrics extends MetricResults {
           .commitLogical(bundle, gauge.getUpdate());
     }
   }
+
+  /**
+   * Apply metric updates that were not produced by a bundle, such as the cost of work done by the
+   * runner, to both the attempted and the committed metric values.
+   */
+  public void commitUnbundled(MetricUpdates updates) {
+    for (MetricUpdate<Long> counter : updates.counterUpdates()) {
+      counters.get(counter.getKey()).commitUnbundled(counter.getUpdate());
+    }
+    for (MetricUpdate<DistributionData> distribution : updates.distributionUpdates()) {
+      distributions.get(distribution.getKey()).commitUnbundled(distribution.getUpdate());
+    }
+    for (MetricUpdate<GaugeData> gauge : updates.gaugeUpdates()) {
+      gauges.get(gauge.getKey()).commitUnbundled(gauge.getUpdate());
+    }
+  }
 }
@@ -53,6 +53,23 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
   boolean isEnforceEncodability();
   void setEnforceEncodability(boolean test);
 
+  @Default.Integer(1)
+  @Description(
+      "Controls how many of the elements of each bundle the DirectRunner checks when enforcing "
+          + "immutability and encodability. One of every N elements is checked, starting with the "
+          + "first; 1 checks every element. Must be a value greater than zero.")
+  int getEnforcementSamplingPeriod();
+  void setEnforcementSamplingPeriod(int period);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the DirectRunner skips checking elements of immutable types encoded by "
+          + "coders that can always encode them, such as StringUtf8Coder and VarLongCoder, when "
+          + "enforcing immutability and encodability. Such elements can neither be mutated nor "
+          + "fail to encode.")
+  boolean isEnforcementSkipKnownSafe();
+  void setEnforcementSkipKnownSafe(boolean skip);
+
   @Default.InstanceFactory(AvailableParallelismFactory.class)
   @Description(
       "Controls the amount of target parallelism the DirectRunner will use. Defaults to"
@@ -61,6 +78,34 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
   int getTargetParallelism();
   void setTargetParallelism(int target);
 
+  @Default.Enum("FIXED_THREAD_POOL")
+  @Description(
+      "Controls how the DirectRunner schedules the evaluation of bundles. FIXED_THREAD_POOL "
+          + "evaluates bundles on a fixed-size thread pool and uses a polling monitor to advance "
+          + "the pipeline. WORK_STEALING evaluates bundles on a work-stealing ForkJoinPool, "
+          + "orders the bundles of each key with lock-free mailboxes, and advances the pipeline "
+          + "as work completes.")
+  ExecutorMode getExecutorMode();
+  void setExecutorMode(ExecutorMode mode);
+
+  /**
+   * The strategies the {@link org.apache.beam.runners.direct.DirectRunner} can use to schedule
+   * the evaluation of bundles.
+   */
+  enum ExecutorMode {
+    /**
+     * Evaluate bundles on a fixed-size thread pool. Bundles for each (step, key) pair are
+     * evaluated by a serial executor, and a monitor continuously polls for completed work.
+     */
+    FIXED_THREAD_POOL,
+    /**
+     * Evaluate bundles on a work-stealing {@link java.util.concurrent.ForkJoinPool}. Bundles for
+     * each (step, key) pair are evaluated in order through a lock-free mailbox, and the monitor
+     * runs only when work completes or processing time advances.
+     */
+    WORK_STEALING
+  }
+
   /**
    * A {@link DefaultValueFactory} that returns the result of {@link Runtime#availableProcessors()}
    * from the {@link #create(PipelineOptions)} method. Uses {@link Runtime#getRuntime()} to obtain
@@ -198,26 +198,28 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
       return Collections.unmodifiableSet(enabled);
     }
 
-    public static BundleFactory bundleFactoryFor(Set<Enforcement> enforcements, DirectGraph graph) {
+    public static BundleFactory bundleFactoryFor(
+        Set<Enforcement> enforcements, EnforcementPolicy policy, DirectGraph graph) {
       BundleFactory bundleFactory =
           enforcements.contains(Enforcement.ENCODABILITY)
-              ? CloningBundleFactory.create()
+              ? CloningBundleFactory.create(policy, graph)
               : ImmutableListBundleFactory.create();
       if (enforcements.contains(Enforcement.IMMUTABILITY)) {
-        bundleFactory = ImmutabilityCheckingBundleFactory.create(bundleFactory, graph);
+        bundleFactory = ImmutabilityCheckingBundleFactory.create(bundleFactory, graph, policy);
       }
       return bundleFactory;
     }
 
     @SuppressWarnings("rawtypes")
     private static Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
-        defaultModelEnforcements(Set<Enforcement> enabledEnforcements) {
+        defaultModelEnforcements(
+            Set<Enforcement> enabledEnforcements, EnforcementPolicy policy) {
       ImmutableMap.Builder<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
           enforcements = ImmutableMap.builder();
       ImmutableList.Builder<ModelEnforcementFactory> enabledParDoEnforcements =
           ImmutableList.builder();
       if (enabledEnforcements.contains(Enforcement.IMMUTABILITY)) {
-        enabledParDoEnforcements.add(ImmutabilityEnforcementFactory.create());
+        enabledParDoEnforcements.add(ImmutabilityEnforcementFactory.create(policy));
       }
       Collection<ModelEnforcementFactory> parDoEnforcements = enabledParDoEnforcements.build();
       enforcements.put(ParDo.SingleOutput.class, parDoEnforcements);
@@ -270,11 +272,12 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
     DisplayDataValidator.validatePipeline(pipeline);
 
     DirectGraph graph = graphVisitor.getGraph();
+    EnforcementPolicy enforcementPolicy = EnforcementPolicy.fromOptions(options);
     EvaluationContext context =
         EvaluationContext.create(
             getPipelineOptions(),
             clockSupplier.get(),
-            Enforcement.bundleFactoryFor(enabledEnforcements, graph),
+            Enforcement.bundleFactoryFor(enabledEnforcements, enforcementPolicy, graph),
             graph,
             keyedPValueVisitor.getKeyedPValues());
 
@@ -282,16 +285,19 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
     TransformEvaluatorRegistry registry = TransformEvaluatorRegistry.defaultRegistry(context);
     PipelineExecutor executor =
         ExecutorServiceParallelExecutor.create(
-            options.getTargetParallelism(), graph,
+            options.getTargetParallelism(),
+            options.getExecutorMode(),
+            graph,
             rootInputProvider,
             registry,
-            Enforcement.defaultModelEnforcements(enabledEnforcements),
+            Enforcement.defaultModelEnforcements(enabledEnforcements, enforcementPolicy),
             context);
     executor.start(graph.getRootTransforms());
 
     Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps =
         pipeline.getAggregatorSteps();
-    DirectPipelineResult result = new DirectPipelineResult(executor, context, aggregatorSteps);
+    DirectPipelineResult result =
+        new DirectPipelineResult(executor, context, enforcementPolicy, aggregatorSteps);
     if (options.isBlockOnRun()) {
       try {
         result.waitUntilFinish();
@@ -358,15 +364,18 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
   public static class DirectPipelineResult implements PipelineResult {
     private final PipelineExecutor executor;
     private final EvaluationContext evaluationContext;
+    private final EnforcementPolicy enforcementPolicy;
     private final Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps;
     private State state;
 
     private DirectPipelineResult(
         PipelineExecutor executor,
         EvaluationContext evaluationContext,
+        EnforcementPolicy enforcementPolicy,
         Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps) {
       this.executor = executor;
       this.evaluationContext = evaluationContext;
+      this.enforcementPolicy = enforcementPolicy;
       this.aggregatorSteps = aggregatorSteps;
       // Only ever constructed after the executor has started.
       this.state = State.RUNNING;
@@ -409,6 +418,7 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
 
     @Override
     public MetricResults metrics() {
+      enforcementPolicy.commitMetrics(evaluationContext.getMetrics());
       return evaluationContext.getMetrics();
     }
 
@@ -433,6 +443,7 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
       if (!this.state.isTerminal()) {
         executor.stop();
         this.state = executor.getPipelineState();
+        enforcementPolicy.commitMetrics(evaluationContext.getMetrics());
       }
       return executor.getPipelineState();
     }
@@ -456,6 +467,10 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
             throw (RuntimeException) e;
           }
           throw new RuntimeException(e);
+        } finally {
+          if (executor.getPipelineState().isTerminal()) {
+            enforcementPolicy.commitMetrics(evaluationContext.getMetrics());
+          }
         }
       }
       return this.state;
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.apache.beam.runners.direct.DirectRunner.Enforcement;
+import org.apache.beam.sdk.coders.BigDecimalCoder;
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.BigIntegerCoder;
+import org.apache.beam.sdk.coders.ByteCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.DurationCoder;
+import org.apache.beam.sdk.coders.InstantCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.metrics.DistributionData;
+import org.apache.beam.sdk.metrics.GaugeData;
+import org.apache.beam.sdk.metrics.MetricKey;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricUpdates;
+import org.apache.beam.sdk.metrics.MetricUpdates.MetricUpdate;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+/**
+ * Determines which elements the {@link DirectRunner} checks when enforcing encodability and
+ * immutability.
+ *
+ * <p>A policy checks one of every {@code samplingPeriod} elements of each bundle, starting with
+ * the first. A policy may additionally skip non-null elements of immutable types that are encoded
+ * by a {@link Coder} that can always encode them, such as {@link StringUtf8Coder} and {@link
+ * VarLongCoder}; such elements can neither be mutated nor fail to encode.
+ *
+ * <p>A policy counts the elements checked by each enforcement, and the time spent checking them,
+ * for each {@link AppliedPTransform}. The counts are committed to the {@link DirectMetrics} of the
+ * pipeline by {@link #commitMetrics(DirectMetrics)}, as counters of the transform named by
+ * {@link #checkedMetric(Enforcement)} and {@link #checkNanosMetric(Enforcement)}. Bundles are
+ * committed both by transform evaluators and by the executor's monitor thread, which has no
+ * metrics container, so the counts are not reported through a metrics container.
+ */
+final class EnforcementPolicy {
+  /**
+   * {@link Coder Coders} which encode values of an immutable type, mapped to that type. Encoding a
+   * non-null instance of that type with the coder never fails. Both classes are matched exactly,
+   * as subclasses of either may not be immutable or may encode differently.
+   */
+  private static final Map<Class<?>, Class<?>> IMMUTABLE_CODER_TYPES =
+      ImmutableMap.<Class<?>, Class<?>>builder()
+          .put(StringUtf8Coder.class, String.class)
+          .put(VarIntCoder.class, Integer.class)
+          .put(BigEndianIntegerCoder.class, Integer.class)
+          .put(VarLongCoder.class, Long.class)
+          .put(BigEndianLongCoder.class, Long.class)
+          .put(DoubleCoder.class, Double.class)
+          .put(ByteCoder.class, Byte.class)
+          .put(BigIntegerCoder.class, BigInteger.class)
+          .put(BigDecimalCoder.class, BigDecimal.class)
+          .put(InstantCoder.class, Instant.class)
+          .put(DurationCoder.class, Duration.class)
+          .build();
+
+  /** Returns a policy that checks every element. */
+  public static EnforcementPolicy full() {
+    return new EnforcementPolicy(1, false);
+  }
+
+  /** Returns a policy that checks one of every {@code samplingPeriod} elements of each bundle. */
+  public static EnforcementPolicy sampling(int samplingPeriod) {
+    return sampling(samplingPeriod, false);
+  }
+
+  /**
+   * Returns a policy that checks one of every {@code samplingPeriod} elements of each bundle,
+   * and if {@code skipKnownSafe} is true skips elements that are known to be safe.
+   */
+  public static EnforcementPolicy sampling(int samplingPeriod, boolean skipKnownSafe) {
+    checkArgument(
+        samplingPeriod > 0, "Enforcement sampling period must be positive, got %s", samplingPeriod);
+    return new EnforcementPolicy(samplingPeriod, skipKnownSafe);
+  }
+
+  /** Returns the policy configured by the provided {@link DirectOptions}. */
+  public static EnforcementPolicy fromOptions(DirectOptions options) {
+    return sampling(options.getEnforcementSamplingPeriod(), options.isEnforcementSkipKnownSafe());
+  }
+
+  /** Returns the name of the counter of elements checked by the enforcement. */
+  static MetricName checkedMetric(Enforcement enforcement) {
+    return MetricName.named(EnforcementPolicy.class, enforcement + "_checked");
+  }
+
+  /** Returns the name of the counter of nanoseconds spent in checks by the enforcement. */
+  static MetricName checkNanosMetric(Enforcement enforcement) {
+    return MetricName.named(EnforcementPolicy.class, enforcement + "_checkNanos");
+  }
+
+  private final int samplingPeriod;
+  private final boolean skipKnownSafe;
+  private final ConcurrentMap<AppliedPTransform<?, ?, ?>, TransformCounts> counts =
+      new ConcurrentHashMap<>();
+
+  private EnforcementPolicy(int samplingPeriod, boolean skipKnownSafe) {
+    this.samplingPeriod = samplingPeriod;
+    this.skipKnownSafe = skipKnownSafe;
+  }
+
+  /**
+   * Returns a new {@link ElementSampler} which selects the elements of a single bundle to check.
+   * The checks are counted for the provided transform, or not counted if it is null.
+   */
+  public <T> ElementSampler<T> forBundle(
+      Enforcement enforcement, @Nullable AppliedPTransform<?, ?, ?> transform, Coder<T> coder) {
+    return new ElementSampler<>(enforcement, transform, coder);
+  }
+
+  /**
+   * Returns the number of elements of the transform checked by the enforcement in all reported
+   * bundles, since the counts were last committed.
+   */
+  @VisibleForTesting
+  long getChecked(AppliedPTransform<?, ?, ?> transform, Enforcement enforcement) {
+    TransformCounts transformCounts = counts.get(transform);
+    return transformCounts == null ? 0L : transformCounts.checked.get(enforcement).get();
+  }
+
+  /**
+   * Commits the number of elements each enforcement has checked for each transform, and the time
+   * spent checking them, since the counts were last committed.
+   */
+  public void commitMetrics(DirectMetrics metrics) {
+    ImmutableList.Builder<MetricUpdate<Long>> counterUpdates = ImmutableList.builder();
+    for (Map.Entry<AppliedPTransform<?, ?, ?>, TransformCounts> entry : counts.entrySet()) {
+      String stepName = entry.getKey().getFullName();
+      for (Enforcement enforcement : Enforcement.values()) {
+        long checked = entry.getValue().checked.get(enforcement).getAndSet(0L);
+        long checkNanos = entry.getValue().checkNanos.get(enforcement).getAndSet(0L);
+        if (checked > 0 || checkNanos > 0) {
+          counterUpdates.add(
+              MetricUpdate.create(
+                  MetricKey.create(stepName, checkedMetric(enforcement)), checked));
+          counterUpdates.add(
+              MetricUpdate.create(
+                  MetricKey.create(stepName, checkNanosMetric(enforcement)), checkNanos));
+        }
+      }
+    }
+    metrics.commitUnbundled(
+        MetricUpdates.create(
+            counterUpdates.build(),
+            Collections.<MetricUpdate<DistributionData>>emptyList(),
+            Collections.<MetricUpdate<GaugeData>>emptyList()));
+  }
+
+  private TransformCounts countsFor(AppliedPTransform<?, ?, ?> transform) {
+    TransformCounts transformCounts = counts.get(transform);
+    if (transformCounts == null) {
+      counts.putIfAbsent(transform, new TransformCounts());
+      transformCounts = counts.get(transform);
+    }
+    return transformCounts;
+  }
+
+  /**
+   * Returns true if the value is non-null, and the class of the coder is known to always encode
+   * values of the class of the value, and values of that class are immutable.
+   */
+  @VisibleForTesting
+  static boolean isKnownSafe(Coder<?> coder, @Nullable Object value) {
+    if (value == null) {
+      return false;
+    }
+    Class<?> immutableType = IMMUTABLE_CODER_TYPES.get(coder.getClass());
+    if (immutableType != null) {
+      return immutableType.equals(value.getClass());
+    }
+    if (coder instanceof KvCoder && value instanceof KV) {
+      KvCoder<?, ?> kvCoder = (KvCoder<?, ?>) coder;
+      KV<?, ?> kv = (KV<?, ?>) value;
+      return isKnownSafe(kvCoder.getKeyCoder(), kv.getKey())
+          && isKnownSafe(kvCoder.getValueCoder(), kv.getValue());
+    }
+    return false;
+  }
+
+  /**
+   * Selects the elements of a single bundle to check, and records the cost of the checks. Not
+   * thread-safe; the counts it reports to the policy are.
+   */
+  class ElementSampler<T> {
+    private final Enforcement enforcement;
+    @Nullable private final AppliedPTransform<?, ?, ?> transform;
+    private final Coder<T> coder;
+
+    private long candidates;
+    private long checked;
+    private long checkNanos;
+
+    private ElementSampler(
+        Enforcement enforcement, @Nullable AppliedPTransform<?, ?, ?> transform, Coder<T> coder) {
+      this.enforcement = enforcement;
+      this.transform = transform;
+      this.coder = coder;
+    }
+
+    /** Returns true if the provided element should be checked. */
+    public boolean shouldCheck(@Nullable T value) {
+      if (skipKnownSafe && isKnownSafe(coder, value)) {
+        return false;
+      }
+      return candidates++ % samplingPeriod == 0;
+    }
+
+    /** Returns the start time of a check, to be passed to {@link #finishCheck(long)}. */
+    public long startCheck() {
+      return System.nanoTime();
+    }
+
+    /** Records that a check which started at the provided time has completed. */
+    public void finishCheck(long startNanos) {
+      checked++;
+      addCheckNanos(startNanos);
+    }
+
+    /**
+     * Records the time spent re-verifying previously checked elements since the provided start
+     * time.
+     */
+    public void addCheckNanos(long startNanos) {
+      checkNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Adds all of the checks that have completed since the previous report to the counts of the
+     * transform in the policy.
+     */
+    public void report() {
+      if (transform != null && (checked > 0 || checkNanos > 0)) {
+        TransformCounts transformCounts = countsFor(transform);
+        transformCounts.checked.get(enforcement).addAndGet(checked);
+        transformCounts.checkNanos.get(enforcement).addAndGet(checkNanos);
+      }
+      checked = 0;
+      checkNanos = 0;
+    }
+  }
+
+  /** The number of elements checked by each enforcement for a transform, and the time spent. */
+  private static class TransformCounts {
+    private final Map<Enforcement, AtomicLong> checked = new EnumMap<>(Enforcement.class);
+    private final Map<Enforcement, AtomicLong> checkNanos = new EnumMap<>(Enforcement.class);
+
+    private TransformCounts() {
+      for (Enforcement enforcement : Enforcement.values()) {
+        checked.put(enforcement, new AtomicLong());
+        checkNanos.put(enforcement, new AtomicLong());
+      }
+    }
+  }
+}
@@ -28,6 +28,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,14 +40,18 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 import org.apache.beam.runners.core.KeyedWorkItem;
 import org.apache.beam.runners.core.KeyedWorkItems;
 import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.runners.direct.WatermarkManager.FiredTimers;
 import org.apache.beam.sdk.Pipeline;
@@ -66,12 +71,27 @@ import org.slf4j.LoggerFactory;
 /**
  * An {@link PipelineExecutor} that uses an underlying {@link ExecutorService} and
  * {@link EvaluationContext} to execute a {@link Pipeline}.
+ *
+ * <p>The {@link ExecutorMode} determines how work is scheduled. In
+ * {@link ExecutorMode#FIXED_THREAD_POOL} mode, work is evaluated on a fixed-size thread pool and
+ * the {@link MonitorRunnable} is continuously resubmitted. In {@link ExecutorMode#WORK_STEALING}
+ * mode, work is evaluated on a {@link ForkJoinPool}, keyed work is ordered by
+ * {@link StepAndKeyMailboxes}, and the {@link MonitorRunnable} is only run when it is signalled by
+ * the completion of work or the passage of processing time.
  */
 final class ExecutorServiceParallelExecutor implements PipelineExecutor {
   private static final Logger LOG = LoggerFactory.getLogger(ExecutorServiceParallelExecutor.class);
 
+  /**
+   * The interval at which the monitor is signalled in {@link ExecutorMode#WORK_STEALING} mode, so
+   * that processing-time timers and sources make progress when no work is completing.
+   */
+  private static final long MONITOR_TICK_MILLIS = 5L;
+
   private final int targetParallelism;
+  private final ExecutorMode executorMode;
   private final ExecutorService executorService;
+  @Nullable private final ScheduledExecutorService monitorTicker;
 
   private final DirectGraph graph;
   private final RootProviderRegistry rootProviderRegistry;
@@ -83,6 +103,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
   private final EvaluationContext evaluationContext;
 
   private final LoadingCache<StepAndKey, TransformExecutorService> executorServices;
+  private final StepAndKeyMailboxes mailboxes;
 
   private final Queue<ExecutorUpdate> allUpdates;
   private final BlockingQueue<VisibleExecutorUpdate> visibleUpdates;
@@ -93,7 +114,14 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
   private final ConcurrentMap<AppliedPTransform<?, ?, ?>, ConcurrentLinkedQueue<CommittedBundle<?>>>
       pendingRootBundles;
 
- private final AtomicReference<ExecutorState> state =
+  private final MonitorRunnable monitor;
+  /**
+   * The number of times the monitor has been signalled since it last ran to completion. Only used
+   * in {@link ExecutorMode#WORK_STEALING} mode.
+   */
+  private final AtomicInteger monitorSignals = new AtomicInteger();
+
+  private final AtomicReference<ExecutorState> state =
       new AtomicReference<>(ExecutorState.QUIESCENT);
 
   /**
@@ -108,6 +136,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
 
   public static ExecutorServiceParallelExecutor create(
       int targetParallelism,
+      ExecutorMode executorMode,
       DirectGraph graph,
       RootProviderRegistry rootProviderRegistry,
       TransformEvaluatorRegistry registry,
@@ -117,6 +146,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       EvaluationContext context) {
     return new ExecutorServiceParallelExecutor(
         targetParallelism,
+        executorMode,
         graph,
         rootProviderRegistry,
         registry,
@@ -126,6 +156,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
 
   private ExecutorServiceParallelExecutor(
       int targetParallelism,
+      ExecutorMode executorMode,
       DirectGraph graph,
       RootProviderRegistry rootProviderRegistry,
       TransformEvaluatorRegistry registry,
@@ -133,7 +164,24 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context) {
     this.targetParallelism = targetParallelism;
-    this.executorService = Executors.newFixedThreadPool(targetParallelism);
+    this.executorMode = executorMode;
+    if (executorMode == ExecutorMode.WORK_STEALING) {
+      // Async mode processes locally forked tasks in FIFO order, which matches the order in which
+      // bundles are produced.
+      this.executorService =
+          new ForkJoinPool(
+              targetParallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+      this.monitorTicker =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder()
+                  .setDaemon(true)
+                  .setNameFormat(
+                      ExecutorServiceParallelExecutor.class.getSimpleName() + "-ticker-%d")
+                  .build());
+    } else {
+      this.executorService = Executors.newFixedThreadPool(targetParallelism);
+      this.monitorTicker = null;
+    }
     this.graph = graph;
     this.rootProviderRegistry = rootProviderRegistry;
     this.registry = registry;
@@ -148,6 +196,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
             .weakValues()
             .removalListener(shutdownExecutorServiceListener())
             .build(serialTransformExecutorServiceCacheLoader());
+    mailboxes = StepAndKeyMailboxes.create(executorService);
 
     this.allUpdates = new ConcurrentLinkedQueue<>();
     this.visibleUpdates = new LinkedBlockingQueue<>();
@@ -156,6 +205,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
     defaultCompletionCallback =
         new TimerIterableCompletionCallback(Collections.<TimerData>emptyList());
     this.pendingRootBundles = new ConcurrentHashMap<>();
+    this.monitor = new MonitorRunnable();
   }
 
   private CacheLoader<StepAndKey, TransformExecutorService>
@@ -196,8 +246,36 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       pendingRootBundles.put(root, pending);
     }
     evaluationContext.initialize(pendingRootBundles);
-    Runnable monitorRunnable = new MonitorRunnable();
-    executorService.submit(monitorRunnable);
+    if (executorMode == ExecutorMode.WORK_STEALING) {
+      monitorTicker.scheduleWithFixedDelay(
+          new Runnable() {
+            @Override
+            public void run() {
+              signalMonitor();
+            }
+          },
+          MONITOR_TICK_MILLIS,
+          MONITOR_TICK_MILLIS,
+          TimeUnit.MILLISECONDS);
+      signalMonitor();
+    } else {
+      executorService.submit(monitor);
+    }
+  }
+
+  /**
+   * Requests that the monitor runs. If the monitor is not already scheduled or running, it is
+   * submitted to the executor; otherwise the running monitor will run again before it completes.
+   *
+   * <p>Does nothing in {@link ExecutorMode#FIXED_THREAD_POOL} mode, where the monitor is always
+   * scheduled.
+   */
+  private void signalMonitor() {
+    if (executorMode == ExecutorMode.WORK_STEALING
+        && monitorSignals.getAndIncrement() == 0
+        && !pipelineState.get().isTerminal()) {
+      executorService.submit(monitor);
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -216,12 +294,17 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
 
     if (isKeyed(bundle.getPCollection())) {
       final StepAndKey stepAndKey = StepAndKey.of(transform, bundle.getKey());
-      // This executor will remain reachable until it has executed all scheduled transforms.
-      // The TransformExecutors keep a strong reference to the Executor, the ExecutorService keeps
-      // a reference to the scheduled TransformExecutor callable. Follow-up TransformExecutors
-      // (scheduled due to the completion of another TransformExecutor) are provided to the
-      // ExecutorService before the Earlier TransformExecutor callable completes.
-      transformExecutor = executorServices.getUnchecked(stepAndKey);
+      if (executorMode == ExecutorMode.WORK_STEALING) {
+        transformExecutor = mailboxes.forStepAndKey(stepAndKey);
+      } else {
+        // This executor will remain reachable until it has executed all scheduled transforms.
+        // The TransformExecutors keep a strong reference to the Executor, the ExecutorService
+        // keeps a reference to the scheduled TransformExecutor callable. Follow-up
+        // TransformExecutors (scheduled due to the completion of another TransformExecutor) are
+        // provided to the ExecutorService before the Earlier TransformExecutor callable
+        // completes.
+        transformExecutor = executorServices.getUnchecked(stepAndKey);
+      }
     } else {
       transformExecutor = parallelExecutorService;
     }
@@ -311,7 +394,11 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
     // to add work to the shutdown executor.
     executorServices.invalidateAll();
     executorServices.cleanUp();
+    mailboxes.shutdown();
     parallelExecutorService.shutdown();
+    if (monitorTicker != null) {
+      monitorTicker.shutdown();
+    }
     executorService.shutdown();
     try {
       registry.cleanup();
@@ -358,18 +445,21 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
         state.set(ExecutorState.ACTIVE);
       }
       outstandingWork.decrementAndGet();
+      signalMonitor();
       return committedResult;
     }
 
     @Override
     public void handleEmpty(AppliedPTransform<?, ?, ?> transform) {
       outstandingWork.decrementAndGet();
+      signalMonitor();
     }
 
     @Override
     public final void handleException(CommittedBundle<?> inputBundle, Exception e) {
       allUpdates.offer(ExecutorUpdate.fromException(e));
       outstandingWork.decrementAndGet();
+      signalMonitor();
     }
   }
 
@@ -453,6 +543,44 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
     public void run() {
       String oldName = Thread.currentThread().getName();
       Thread.currentThread().setName(runnableName);
+      try {
+        if (executorMode == ExecutorMode.WORK_STEALING) {
+          runUntilIdle();
+        } else if (runOnce()) {
+          // The monitor thread should always be scheduled; but we only need to be scheduled once
+          executorService.submit(this);
+        }
+      } finally {
+        Thread.currentThread().setName(oldName);
+      }
+    }
+
+    /**
+     * Runs the monitor until it has observed every signal and a run leaves the
+     * {@link ExecutorState} unchanged. A run that changes the state may enable further
+     * transitions without any work completing, so the monitor runs again immediately.
+     */
+    private void runUntilIdle() {
+      int signals = 1;
+      while (true) {
+        ExecutorState startingState = state.get();
+        if (!runOnce()) {
+          return;
+        }
+        if (state.get() == startingState) {
+          signals = monitorSignals.addAndGet(-signals);
+          if (signals == 0) {
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Performs a single iteration of the monitor. Returns true if the executor should continue
+     * running.
+     */
+    private boolean runOnce() {
       try {
         boolean noWorkOutstanding = outstandingWork.get() == 0L;
         ExecutorState startingState = state.get();
@@ -491,13 +619,8 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
         while (!visibleUpdates.offer(VisibleExecutorUpdate.fromException(t))) {
           visibleUpdates.poll();
         }
-      } finally {
-        if (!shouldShutdown()) {
-          // The monitor thread should always be scheduled; but we only need to be scheduled once
-          executorService.submit(this);
-        }
-        Thread.currentThread().setName(oldName);
       }
+      return !shouldShutdown();
     }
 
     private void applyUpdate(
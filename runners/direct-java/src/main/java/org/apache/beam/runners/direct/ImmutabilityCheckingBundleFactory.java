@@ -51,15 +51,28 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
    */
   public static ImmutabilityCheckingBundleFactory create(
       BundleFactory underlying, DirectGraph graph) {
-    return new ImmutabilityCheckingBundleFactory(underlying, graph);
+    return create(underlying, graph, EnforcementPolicy.full());
+  }
+
+  /**
+   * Create a new {@link ImmutabilityCheckingBundleFactory} that uses the underlying {@link
+   * BundleFactory} to create the output bundle, and checks the elements selected by the provided
+   * {@link EnforcementPolicy}.
+   */
+  public static ImmutabilityCheckingBundleFactory create(
+      BundleFactory underlying, DirectGraph graph, EnforcementPolicy policy) {
+    return new ImmutabilityCheckingBundleFactory(underlying, graph, policy);
   }
 
   private final BundleFactory underlying;
   private final DirectGraph graph;
+  private final EnforcementPolicy policy;
 
-  private ImmutabilityCheckingBundleFactory(BundleFactory underlying, DirectGraph graph) {
+  private ImmutabilityCheckingBundleFactory(
+      BundleFactory underlying, DirectGraph graph, EnforcementPolicy policy) {
     this.underlying = checkNotNull(underlying);
     this.graph = graph;
+    this.policy = checkNotNull(policy);
   }
 
   /**
@@ -94,11 +107,15 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
     private final UncommittedBundle<T> underlying;
     private final SetMultimap<WindowedValue<T>, MutationDetector> mutationDetectors;
     private Coder<T> coder;
+    private final EnforcementPolicy.ElementSampler<T> sampler;
 
     public ImmutabilityEnforcingBundle(UncommittedBundle<T> underlying) {
       this.underlying = underlying;
       mutationDetectors = HashMultimap.create();
       coder = getPCollection().getCoder();
+      sampler =
+          policy.forBundle(
+              Enforcement.IMMUTABILITY, graph.getProducer(underlying.getPCollection()), coder);
     }
 
     @Override
@@ -108,11 +125,15 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
 
     @Override
     public UncommittedBundle<T> add(WindowedValue<T> element) {
-      try {
-        mutationDetectors.put(
-            element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
-      } catch (CoderException e) {
-        throw new RuntimeException(e);
+      if (sampler.shouldCheck(element.getValue())) {
+        long startNanos = sampler.startCheck();
+        try {
+          mutationDetectors.put(
+              element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
+        } catch (CoderException e) {
+          throw new RuntimeException(e);
+        }
+        sampler.finishCheck(startNanos);
       }
       underlying.add(element);
       return this;
@@ -120,6 +141,7 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
 
     @Override
     public CommittedBundle<T> commit(Instant synchronizedProcessingTime) {
+      long startNanos = sampler.startCheck();
       for (MutationDetector detector : mutationDetectors.values()) {
         try {
           detector.verifyUnmodified();
@@ -136,6 +158,10 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
                 exn);
         }
       }
+      if (!mutationDetectors.isEmpty()) {
+        sampler.addCheckNanos(startNanos);
+      }
+      sampler.report();
       return underlying.commit(synchronizedProcessingTime);
     }
   }
@@ -20,6 +20,7 @@ package org.apache.beam.runners.direct;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.Enforcement;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
@@ -35,40 +36,66 @@ import org.apache.beam.sdk.util.WindowedValue;
  */
 class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
   public static ModelEnforcementFactory create() {
-    return new ImmutabilityEnforcementFactory();
+    return create(EnforcementPolicy.full());
+  }
+
+  /**
+   * Create a {@link ModelEnforcementFactory} that checks the input elements selected by the
+   * provided {@link EnforcementPolicy}.
+   */
+  public static ModelEnforcementFactory create(EnforcementPolicy policy) {
+    return new ImmutabilityEnforcementFactory(policy);
+  }
+
+  private final EnforcementPolicy policy;
+
+  private ImmutabilityEnforcementFactory(EnforcementPolicy policy) {
+    this.policy = policy;
   }
 
   @Override
   public <T> ModelEnforcement<T> forBundle(
       CommittedBundle<T> input, AppliedPTransform<?, ?, ?> consumer) {
-    return new ImmutabilityCheckingEnforcement<T>(input, consumer);
+    return new ImmutabilityCheckingEnforcement<T>(input, consumer, policy);
   }
 
   private static class ImmutabilityCheckingEnforcement<T> extends AbstractModelEnforcement<T> {
     private final AppliedPTransform<?, ?, ?> transform;
     private final Map<WindowedValue<T>, MutationDetector> mutationElements;
     private final Coder<T> coder;
+    private final EnforcementPolicy.ElementSampler<T> sampler;
 
     private ImmutabilityCheckingEnforcement(
-        CommittedBundle<T> input, AppliedPTransform<?, ?, ?> transform) {
+        CommittedBundle<T> input, AppliedPTransform<?, ?, ?> transform, EnforcementPolicy policy) {
       this.transform = transform;
       coder = input.getPCollection().getCoder();
       mutationElements = new IdentityHashMap<>();
+      sampler = policy.forBundle(Enforcement.IMMUTABILITY, transform, coder);
     }
 
     @Override
     public void beforeElement(WindowedValue<T> element) {
+      if (!sampler.shouldCheck(element.getValue())) {
+        return;
+      }
+      long startNanos = sampler.startCheck();
       try {
         mutationElements.put(
             element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
       } catch (CoderException e) {
         throw UserCodeException.wrap(e);
       }
+      sampler.finishCheck(startNanos);
     }
 
     @Override
     public void afterElement(WindowedValue<T> element) {
-      verifyUnmodified(mutationElements.get(element));
+      MutationDetector detector = mutationElements.get(element);
+      if (detector != null) {
+        long startNanos = sampler.startCheck();
+        verifyUnmodified(detector);
+        sampler.addCheckNanos(startNanos);
+      }
     }
 
     @Override
@@ -76,9 +103,14 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
         CommittedBundle<T> input,
         TransformResult<T> result,
         Iterable<? extends CommittedBundle<?>> outputs) {
+      long startNanos = sampler.startCheck();
       for (MutationDetector detector : mutationElements.values()) {
         verifyUnmodified(detector);
       }
+      if (!mutationElements.isEmpty()) {
+        sampler.addCheckNanos(startNanos);
+      }
+      sampler.report();
     }
 
     private void verifyUnmodified(MutationDetector detector) {
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+
+/**
+ * A binary min-heap of keys ordered by an associated priority, indexed by key so that the priority
+ * of any key can be updated or removed in {@code O(log n)} time.
+ *
+ * <p>Each key appears in the heap at most once. Keys are compared using {@link Object#equals} and
+ * may be null.
+ *
+ * <p>This class is not thread-safe.
+ */
+class KeyedMinHeap<K, V extends Comparable<? super V>> {
+  /** Creates a new, empty {@link KeyedMinHeap}. */
+  public static <K, V extends Comparable<? super V>> KeyedMinHeap<K, V> create() {
+    return new KeyedMinHeap<>();
+  }
+
+  private final List<K> keys;
+  private final List<V> priorities;
+  private final Map<K, Integer> positions;
+
+  private KeyedMinHeap() {
+    this.keys = new ArrayList<>();
+    this.priorities = new ArrayList<>();
+    this.positions = new HashMap<>();
+  }
+
+  /**
+   * Sets the priority of the provided key, inserting the key if it is not present.
+   */
+  public void put(@Nullable K key, V priority) {
+    Integer position = positions.get(key);
+    if (position == null) {
+      keys.add(key);
+      priorities.add(priority);
+      positions.put(key, keys.size() - 1);
+      siftUp(keys.size() - 1);
+    } else {
+      V previous = priorities.set(position, priority);
+      if (priority.compareTo(previous) < 0) {
+        siftUp(position);
+      } else {
+        siftDown(position);
+      }
+    }
+  }
+
+  /**
+   * Removes the provided key, returning its priority, or null if the key was not present.
+   */
+  @Nullable
+  public V remove(@Nullable K key) {
+    Integer position = positions.remove(key);
+    if (position == null) {
+      return null;
+    }
+    V removed = priorities.get(position);
+    int last = keys.size() - 1;
+    if (position != last) {
+      keys.set(position, keys.get(last));
+      priorities.set(position, priorities.get(last));
+      positions.put(keys.get(position), position);
+    }
+    keys.remove(last);
+    priorities.remove(last);
+    if (position != last) {
+      siftDown(position);
+      siftUp(position);
+    }
+    return removed;
+  }
+
+  /** Returns the priority of the provided key, or null if the key is not present. */
+  @Nullable
+  public V get(@Nullable K key) {
+    Integer position = positions.get(key);
+    return position == null ? null : priorities.get(position);
+  }
+
+  /** Returns the key with the minimum priority. */
+  public K peekKey() {
+    checkNotEmpty();
+    return keys.get(0);
+  }
+
+  /** Returns the minimum priority of any key in this heap. */
+  public V peekPriority() {
+    checkNotEmpty();
+    return priorities.get(0);
+  }
+
+  public boolean isEmpty() {
+    return keys.isEmpty();
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  private void checkNotEmpty() {
+    if (keys.isEmpty()) {
+      throw new NoSuchElementException("Heap is empty");
+    }
+  }
+
+  private void siftUp(int position) {
+    int current = position;
+    while (current > 0) {
+      int parent = (current - 1) >>> 1;
+      if (priorities.get(current).compareTo(priorities.get(parent)) >= 0) {
+        return;
+      }
+      swap(current, parent);
+      current = parent;
+    }
+  }
+
+  private void siftDown(int position) {
+    int current = position;
+    int size = keys.size();
+    while (true) {
+      int smallest = current;
+      int left = 2 * current + 1;
+      int right = left + 1;
+      if (left < size && priorities.get(left).compareTo(priorities.get(smallest)) < 0) {
+        smallest = left;
+      }
+      if (right < size && priorities.get(right).compareTo(priorities.get(smallest)) < 0) {
+        smallest = right;
+      }
+      if (smallest == current) {
+        return;
+      }
+      swap(current, smallest);
+      current = smallest;
+    }
+  }
+
+  private void swap(int first, int second) {
+    K firstKey = keys.get(first);
+    K secondKey = keys.get(second);
+    keys.set(first, secondKey);
+    keys.set(second, firstKey);
+    priorities.set(first, priorities.set(second, priorities.get(first)));
+    positions.put(secondKey, first);
+    positions.put(firstKey, second);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("KeyedMinHeap{");
+    for (int i = 0; i < keys.size(); i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(keys.get(i)).append('=').append(priorities.get(i));
+    }
+    return builder.append('}').toString();
+  }
+}
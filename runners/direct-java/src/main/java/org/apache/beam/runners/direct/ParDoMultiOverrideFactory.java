@@ -126,7 +126,7 @@ class ParDoMultiOverrideFactory<InputT, OutputT>
           input
               // Stash the original timestamps, etc, for when it is fed to the user's DoFn
               .apply("Reify timestamps", ParDo.of(new ReifyWindowedValueFn<K, InputT>()))
-              .setCoder(KvCoder.of(keyCoder, WindowedValue.getFullCoder(kvCoder, windowCoder)))
+              .setCoder(KvCoder.of(keyCoder, WindowedValue.getCompactCoder(kvCoder, windowCoder)))
 
               // We are going to GBK to gather keys and windows but otherwise do not want
               // to alter the flow of data. This entails:
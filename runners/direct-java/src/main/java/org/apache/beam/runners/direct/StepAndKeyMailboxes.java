@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A collection of lock-free mailboxes that evaluate the {@link TransformExecutor
+ * TransformExecutors} scheduled for each {@link StepAndKey} serially, in the order they were
+ * scheduled.
+ *
+ * <p>A mailbox exists only while it has work that has been scheduled but not completed. When the
+ * last outstanding {@link TransformExecutor} for a {@link StepAndKey} completes, the mailbox is
+ * retired and removed, so the number of live mailboxes is bounded by the amount of outstanding
+ * work rather than by the number of keys that have ever been observed.
+ */
+final class StepAndKeyMailboxes {
+  /** Returns a new {@link StepAndKeyMailboxes} that submits work to the provided executor. */
+  public static StepAndKeyMailboxes create(ExecutorService executor) {
+    return new StepAndKeyMailboxes(executor);
+  }
+
+  private final ExecutorService executor;
+  private final ConcurrentMap<StepAndKey, Mailbox> mailboxes;
+  private volatile boolean active = true;
+
+  private StepAndKeyMailboxes(ExecutorService executor) {
+    this.executor = executor;
+    this.mailboxes = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns a {@link TransformExecutorService} that evaluates the work scheduled for the provided
+   * {@link StepAndKey} serially.
+   */
+  public TransformExecutorService forStepAndKey(StepAndKey stepAndKey) {
+    return new MailboxTransformExecutorService(stepAndKey);
+  }
+
+  /**
+   * Stops submitting work to the underlying executor. Any work that has been scheduled but not yet
+   * submitted will never be evaluated.
+   */
+  public void shutdown() {
+    active = false;
+  }
+
+  @VisibleForTesting
+  int activeMailboxes() {
+    return mailboxes.size();
+  }
+
+  private void submit(TransformExecutor<?> work) {
+    if (active) {
+      executor.submit(work);
+    }
+  }
+
+  /**
+   * A {@link TransformExecutorService} which routes work to the live {@link Mailbox} for a single
+   * {@link StepAndKey}.
+   */
+  private class MailboxTransformExecutorService implements TransformExecutorService {
+    private final StepAndKey stepAndKey;
+
+    private MailboxTransformExecutorService(StepAndKey stepAndKey) {
+      this.stepAndKey = stepAndKey;
+    }
+
+    @Override
+    public void schedule(TransformExecutor<?> work) {
+      while (active) {
+        Mailbox mailbox = mailboxes.get(stepAndKey);
+        if (mailbox == null) {
+          Mailbox created = new Mailbox(stepAndKey);
+          mailbox = mailboxes.putIfAbsent(stepAndKey, created);
+          if (mailbox == null) {
+            mailbox = created;
+          }
+        }
+        if (mailbox.offer(work)) {
+          return;
+        }
+        // The mailbox was retired after it was obtained; make sure it is gone and try again.
+        mailboxes.remove(stepAndKey, mailbox);
+      }
+    }
+
+    @Override
+    public void complete(TransformExecutor<?> completed) {
+      // A mailbox is only retired once it has no outstanding work, so the mailbox which evaluated
+      // the completed work is still registered.
+      Mailbox mailbox = mailboxes.get(stepAndKey);
+      if (mailbox == null) {
+        throw new IllegalStateException(
+            "Finished work " + completed + " but no mailbox exists for " + stepAndKey);
+      }
+      mailbox.complete(completed);
+    }
+
+    @Override
+    public void shutdown() {
+      StepAndKeyMailboxes.this.shutdown();
+    }
+  }
+
+  /**
+   * A single-consumer mailbox for a {@link StepAndKey}.
+   *
+   * <p>{@link #outstanding} counts the work that has been accepted but not completed, or is
+   * {@link #RETIRED} once the mailbox will no longer accept work. Whichever thread moves the count
+   * away from zero evaluates its own work immediately; all other work is queued and submitted by
+   * the thread that completes the preceding work.
+   */
+  private class Mailbox {
+    private static final int RETIRED = -1;
+
+    private final StepAndKey stepAndKey;
+    private final AtomicInteger outstanding;
+    private final AtomicReference<TransformExecutor<?>> currentlyEvaluating;
+    private final Queue<TransformExecutor<?>> workQueue;
+
+    private Mailbox(StepAndKey stepAndKey) {
+      this.stepAndKey = stepAndKey;
+      this.outstanding = new AtomicInteger();
+      this.currentlyEvaluating = new AtomicReference<>();
+      this.workQueue = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Accepts the provided work, returning false if this mailbox has been retired and the work
+     * must be offered to a new mailbox.
+     */
+    private boolean offer(TransformExecutor<?> work) {
+      while (true) {
+        int current = outstanding.get();
+        if (current == RETIRED) {
+          return false;
+        }
+        if (outstanding.compareAndSet(current, current + 1)) {
+          if (current == 0) {
+            currentlyEvaluating.set(work);
+            submit(work);
+          } else {
+            workQueue.offer(work);
+          }
+          return true;
+        }
+      }
+    }
+
+    private void complete(TransformExecutor<?> completed) {
+      if (!currentlyEvaluating.compareAndSet(completed, null)) {
+        throw new IllegalStateException(
+            "Finished work "
+                + completed
+                + " but could not complete due to unexpected currently executing "
+                + currentlyEvaluating.get());
+      }
+      if (outstanding.decrementAndGet() > 0) {
+        TransformExecutor<?> next = workQueue.poll();
+        while (next == null && active) {
+          // The work has been accepted by another thread which has not yet enqueued it.
+          Thread.yield();
+          next = workQueue.poll();
+        }
+        if (next != null) {
+          currentlyEvaluating.set(next);
+          submit(next);
+        }
+      } else if (outstanding.compareAndSet(0, RETIRED)) {
+        mailboxes.remove(stepAndKey, this);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(Mailbox.class)
+          .add("stepAndKey", stepAndKey)
+          .add("outstanding", outstanding)
+          .add("currentlyEvaluating", currentlyEvaluating)
+          .toString();
+    }
+  }
+}
@@ -34,9 +34,9 @@ import com.google.common.collect.Table;
 import com.google.common.collect.TreeMultiset;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -221,8 +221,8 @@ public class WatermarkManager {
     // a per-key-and-StateNamespace timer is set.
     private final Map<StructuralKey<?>, Table<StateNamespace, String, TimerData>> existingTimers;
 
-    // This per-key sorted set allows quick retrieval of timers that should fire for a key
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers;
+    // This per-key index allows quick retrieval of the keys which have timers that should fire
+    private final KeyedTimers objectTimers;
 
     private AtomicReference<Instant> currentWatermark;
 
@@ -238,7 +238,7 @@ public class WatermarkManager {
       this.pendingElements =
           TreeMultiset.create(pendingBundleComparator);
       this.pendingTimers = TreeMultiset.create();
-      this.objectTimers = new HashMap<>();
+      this.objectTimers = new KeyedTimers();
       this.existingTimers = new HashMap<>();
       currentWatermark = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
     }
@@ -297,11 +297,6 @@ public class WatermarkManager {
     }
 
     private synchronized void updateTimers(TimerUpdate update) {
-      NavigableSet<TimerData> keyTimers = objectTimers.get(update.key);
-      if (keyTimers == null) {
-        keyTimers = new TreeSet<>();
-        objectTimers.put(update.key, keyTimers);
-      }
       Table<StateNamespace, String, TimerData> existingTimersForKey =
           existingTimers.get(update.key);
       if (existingTimersForKey == null) {
@@ -317,10 +312,10 @@ public class WatermarkManager {
 
           if (existingTimer == null) {
             pendingTimers.add(timer.getTimestamp());
-            keyTimers.add(timer);
+            objectTimers.add(update.key, timer);
           } else if (!existingTimer.equals(timer)) {
-            keyTimers.remove(existingTimer);
-            keyTimers.add(timer);
+            objectTimers.remove(update.key, existingTimer);
+            objectTimers.add(update.key, timer);
           } // else the timer is already set identically, so noop
 
           existingTimersForKey.put(timer.getNamespace(), timer.getTimerId(), timer);
@@ -335,7 +330,7 @@ public class WatermarkManager {
 
           if (existingTimer != null) {
             pendingTimers.remove(existingTimer.getTimestamp());
-            keyTimers.remove(existingTimer);
+            objectTimers.remove(update.key, existingTimer);
             existingTimersForKey.remove(existingTimer.getNamespace(), existingTimer.getTimerId());
           }
         }
@@ -349,7 +344,7 @@ public class WatermarkManager {
     }
 
     private synchronized Map<StructuralKey<?>, List<TimerData>> extractFiredEventTimeTimers() {
-      return extractFiredTimers(currentWatermark.get(), objectTimers);
+      return objectTimers.extractFiredTimers(currentWatermark.get());
     }
 
     @Override
@@ -450,8 +445,8 @@ public class WatermarkManager {
   private static class SynchronizedProcessingTimeInputWatermark implements Watermark {
     private final Collection<? extends Watermark> inputWms;
     private final Collection<CommittedBundle<?>> pendingBundles;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> processingTimers;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> synchronizedProcessingTimers;
+    private final KeyedTimers processingTimers;
+    private final KeyedTimers synchronizedProcessingTimers;
 
     private final NavigableSet<TimerData> pendingTimers;
 
@@ -460,8 +455,8 @@ public class WatermarkManager {
     public SynchronizedProcessingTimeInputWatermark(Collection<? extends Watermark> inputWms) {
       this.inputWms = inputWms;
       this.pendingBundles = new HashSet<>();
-      this.processingTimers = new HashMap<>();
-      this.synchronizedProcessingTimers = new HashMap<>();
+      this.processingTimers = new KeyedTimers();
+      this.synchronizedProcessingTimers = new KeyedTimers();
       this.pendingTimers = new TreeSet<>();
       Instant initialHold = BoundedWindow.TIMESTAMP_MAX_VALUE;
       for (Watermark wm : inputWms) {
@@ -519,17 +514,10 @@ public class WatermarkManager {
      * timestamp across timers that have been delivered but have not been completed.
      */
     public synchronized Instant getEarliestTimerTimestamp() {
-      Instant earliest = THE_END_OF_TIME.get();
-      for (NavigableSet<TimerData> timers : processingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(timers.first().getTimestamp(), earliest);
-        }
-      }
-      for (NavigableSet<TimerData> timers : synchronizedProcessingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(timers.first().getTimestamp(), earliest);
-        }
-      }
+      Instant earliest =
+          INSTANT_ORDERING.min(
+              processingTimers.getEarliestTimestamp(),
+              synchronizedProcessingTimers.getEarliestTimestamp());
       if (!pendingTimers.isEmpty()) {
         earliest = INSTANT_ORDERING.min(pendingTimers.first().getTimestamp(), earliest);
       }
@@ -537,11 +525,10 @@ public class WatermarkManager {
     }
 
     private synchronized void updateTimers(TimerUpdate update) {
-      Map<TimeDomain, NavigableSet<TimerData>> timerMap = timerMap(update.key);
       for (TimerData addedTimer : update.setTimers) {
-        NavigableSet<TimerData> timerQueue = timerMap.get(addedTimer.getDomain());
-        if (timerQueue != null) {
-          timerQueue.add(addedTimer);
+        KeyedTimers timers = timersForDomain(addedTimer.getDomain());
+        if (timers != null) {
+          timers.add(update.key, addedTimer);
         }
       }
 
@@ -549,9 +536,9 @@ public class WatermarkManager {
         pendingTimers.remove(completedTimer);
       }
       for (TimerData deletedTimer : update.deletedTimers) {
-        NavigableSet<TimerData> timerQueue = timerMap.get(deletedTimer.getDomain());
-        if (timerQueue != null) {
-          timerQueue.remove(deletedTimer);
+        KeyedTimers timers = timersForDomain(deletedTimer.getDomain());
+        if (timers != null) {
+          timers.remove(update.key, deletedTimer);
         }
       }
     }
@@ -561,13 +548,12 @@ public class WatermarkManager {
       Map<StructuralKey<?>, List<TimerData>> firedTimers;
       switch (domain) {
         case PROCESSING_TIME:
-          firedTimers = extractFiredTimers(firingTime, processingTimers);
+          firedTimers = processingTimers.extractFiredTimers(firingTime);
           break;
         case SYNCHRONIZED_PROCESSING_TIME:
           firedTimers =
-              extractFiredTimers(
-                  INSTANT_ORDERING.min(firingTime, earliestHold.get()),
-                  synchronizedProcessingTimers);
+              synchronizedProcessingTimers.extractFiredTimers(
+                  INSTANT_ORDERING.min(firingTime, earliestHold.get()));
           break;
         default:
           throw new IllegalArgumentException(
@@ -582,22 +568,16 @@ public class WatermarkManager {
       return firedTimers;
     }
 
-    private Map<TimeDomain, NavigableSet<TimerData>> timerMap(StructuralKey<?> key) {
-      NavigableSet<TimerData> processingQueue = processingTimers.get(key);
-      if (processingQueue == null) {
-        processingQueue = new TreeSet<>();
-        processingTimers.put(key, processingQueue);
-      }
-      NavigableSet<TimerData> synchronizedProcessingQueue =
-          synchronizedProcessingTimers.get(key);
-      if (synchronizedProcessingQueue == null) {
-        synchronizedProcessingQueue = new TreeSet<>();
-        synchronizedProcessingTimers.put(key, synchronizedProcessingQueue);
+    @Nullable
+    private KeyedTimers timersForDomain(TimeDomain domain) {
+      switch (domain) {
+        case PROCESSING_TIME:
+          return processingTimers;
+        case SYNCHRONIZED_PROCESSING_TIME:
+          return synchronizedProcessingTimers;
+        default:
+          return null;
       }
-      EnumMap<TimeDomain, NavigableSet<TimerData>> result = new EnumMap<>(TimeDomain.class);
-      result.put(TimeDomain.PROCESSING_TIME, processingQueue);
-      result.put(TimeDomain.SYNCHRONIZED_PROCESSING_TIME, synchronizedProcessingQueue);
-      return result;
     }
 
     @Override
@@ -664,7 +644,11 @@ public class WatermarkManager {
       Instant newTimestamp =
           INSTANT_ORDERING.min(inputWm.get(), inputWm.getEarliestTimerTimestamp());
       latestRefresh.set(newTimestamp);
-      return WatermarkUpdate.fromTimestamps(oldRefresh, newTimestamp);
+      // This value is not monotonic, so dependent watermarks must be refreshed whenever it changes,
+      // rather than only when it advances.
+      return newTimestamp.isEqual(oldRefresh)
+          ? WatermarkUpdate.NO_CHANGE
+          : WatermarkUpdate.ADVANCED;
     }
 
     @Override
@@ -695,33 +679,77 @@ public class WatermarkManager {
   private static final Ordering<Instant> INSTANT_ORDERING = Ordering.natural();
 
   /**
-   * For each (Object, NavigableSet) pair in the provided map, remove each Timer that is before the
-   * latestTime argument and put in in the result with the same key, then remove all of the keys
-   * which have no more pending timers.
+   * The timers within a single {@link TimeDomain} of an {@link AppliedPTransform}, grouped by key.
+   *
+   * <p>Keys are indexed in a {@link KeyedMinHeap} by the timestamp of their earliest timer, so
+   * finding the earliest timer and extracting fired timers only examine keys which have a timer
+   * that is eligible to fire, rather than every key with a pending timer.
    *
-   * <p>The result collection retains ordering of timers (from earliest to latest).
+   * <p>This class is not thread-safe; callers synchronize on the owning {@link Watermark}.
    */
-  private static Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(
-      Instant latestTime, Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers) {
-    Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
-    Set<StructuralKey<?>> emptyKeys = new HashSet<>();
-    for (Map.Entry<StructuralKey<?>, NavigableSet<TimerData>> pendingTimers :
-        objectTimers.entrySet()) {
-      NavigableSet<TimerData> timers = pendingTimers.getValue();
-      if (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-        ArrayList<TimerData> keyFiredTimers = new ArrayList<>();
-        result.put(pendingTimers.getKey(), keyFiredTimers);
+  private static class KeyedTimers {
+    private final Map<StructuralKey<?>, NavigableSet<TimerData>> timersByKey;
+    private final KeyedMinHeap<StructuralKey<?>, Instant> earliestTimers;
+
+    private KeyedTimers() {
+      this.timersByKey = new HashMap<>();
+      this.earliestTimers = KeyedMinHeap.create();
+    }
+
+    private void add(StructuralKey<?> key, TimerData timer) {
+      NavigableSet<TimerData> keyTimers = timersByKey.get(key);
+      if (keyTimers == null) {
+        keyTimers = new TreeSet<>();
+        timersByKey.put(key, keyTimers);
+      }
+      keyTimers.add(timer);
+      earliestTimers.put(key, keyTimers.first().getTimestamp());
+    }
+
+    private void remove(StructuralKey<?> key, TimerData timer) {
+      NavigableSet<TimerData> keyTimers = timersByKey.get(key);
+      if (keyTimers != null && keyTimers.remove(timer)) {
+        reindex(key, keyTimers);
+      }
+    }
+
+    /**
+     * Returns the timestamp of the earliest timer across all keys, or THE_END_OF_TIME if there are
+     * no timers.
+     */
+    private Instant getEarliestTimestamp() {
+      return earliestTimers.isEmpty() ? THE_END_OF_TIME.get() : earliestTimers.peekPriority();
+    }
+
+    /**
+     * For each key with a timer that is before the latestTime argument, remove each such timer and
+     * put it in the result with the same key. Keys which have no more pending timers are removed.
+     *
+     * <p>The result collection retains ordering of timers (from earliest to latest).
+     */
+    private Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(Instant latestTime) {
+      Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
+      while (!earliestTimers.isEmpty() && earliestTimers.peekPriority().isBefore(latestTime)) {
+        StructuralKey<?> key = earliestTimers.peekKey();
+        NavigableSet<TimerData> timers = timersByKey.get(key);
+        List<TimerData> keyFiredTimers = new ArrayList<>();
         while (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-          keyFiredTimers.add(timers.first());
-          timers.remove(timers.first());
+          keyFiredTimers.add(timers.pollFirst());
         }
+        result.put(key, keyFiredTimers);
+        reindex(key, timers);
       }
-      if (timers.isEmpty()) {
-        emptyKeys.add(pendingTimers.getKey());
+      return result;
+    }
+
+    private void reindex(StructuralKey<?> key, NavigableSet<TimerData> keyTimers) {
+      if (keyTimers.isEmpty()) {
+        timersByKey.remove(key);
+        earliestTimers.remove(key);
+      } else {
+        earliestTimers.put(key, keyTimers.first().getTimestamp());
       }
     }
-    objectTimers.keySet().removeAll(emptyKeys);
-    return result;
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -742,6 +770,17 @@ public class WatermarkManager {
    */
   private final Map<AppliedPTransform<?, ?, ?>, TransformWatermarks> transformToWatermarks;
 
+  /**
+   * The position of each {@link AppliedPTransform} in a topological ordering of the
+   * {@link Pipeline}. Every transform is after all of the producers of its inputs.
+   */
+  private final Map<AppliedPTransform<?, ?, ?>, Integer> topologicalIndices;
+
+  /**
+   * The {@link AppliedPTransform AppliedPTransforms} of the {@link Pipeline}, in topological order.
+   */
+  private final List<AppliedPTransform<?, ?, ?>> topologicalOrder;
+
   /**
    * A queue of pending updates to the state of this {@link WatermarkManager}.
    */
@@ -753,11 +792,11 @@ public class WatermarkManager {
   private final Lock refreshLock;
 
   /**
-   * A queue of pending {@link AppliedPTransform AppliedPTransforms} that have potentially
-   * stale data.
+   * The topological indices of the {@link AppliedPTransform AppliedPTransforms} that have
+   * potentially stale data.
    */
   @GuardedBy("refreshLock")
-  private final Set<AppliedPTransform<?, ?, ?>> pendingRefreshes;
+  private final BitSet pendingRefreshes;
 
   /**
    * Creates a new {@link WatermarkManager}. All watermarks within the newly created {@link
@@ -778,9 +817,11 @@ public class WatermarkManager {
     this.pendingUpdates = new ConcurrentLinkedQueue<>();
 
     this.refreshLock = new ReentrantLock();
-    this.pendingRefreshes = new HashSet<>();
+    this.pendingRefreshes = new BitSet();
 
     transformToWatermarks = new HashMap<>();
+    topologicalIndices = new HashMap<>();
+    topologicalOrder = new ArrayList<>();
 
     for (AppliedPTransform<?, ?, ?> rootTransform : graph.getRootTransforms()) {
       getTransformWatermark(rootTransform);
@@ -812,6 +853,10 @@ public class WatermarkManager {
               inputProcessingWatermark,
               outputProcessingWatermark);
       transformToWatermarks.put(transform, wms);
+      // The watermarks of all producers are created before this transform's, so appending each
+      // transform as it is created produces a topological ordering.
+      topologicalIndices.put(transform, topologicalOrder.size());
+      topologicalOrder.add(transform);
     }
     return wms;
   }
@@ -869,7 +914,7 @@ public class WatermarkManager {
         for (CommittedBundle<?> initialBundle : rootEntry.getValue()) {
           rootWms.addPending(initialBundle);
         }
-        pendingRefreshes.add(rootEntry.getKey());
+        markForRefresh(rootEntry.getKey());
       }
     } finally {
       refreshLock.unlock();
@@ -939,7 +984,7 @@ public class WatermarkManager {
     for (int i = 0; !pendingUpdates.isEmpty() && (i < numUpdates || numUpdates <= 0); i++) {
       PendingWatermarkUpdate pending = pendingUpdates.poll();
       applyPendingUpdate(pending);
-      pendingRefreshes.add(pending.getTransform());
+      markForRefresh(pending.getTransform());
     }
   }
 
@@ -979,6 +1024,7 @@ public class WatermarkManager {
           graph.getPrimitiveConsumers(bundle.getPCollection())) {
         TransformWatermarks watermarks = transformToWatermarks.get(consumer);
         watermarks.addPending(bundle);
+        markForRefresh(consumer);
       }
     }
 
@@ -993,42 +1039,52 @@ public class WatermarkManager {
     }
   }
 
+  @GuardedBy("refreshLock")
+  private void markForRefresh(AppliedPTransform<?, ?, ?> transform) {
+    pendingRefreshes.set(topologicalIndices.get(transform));
+  }
+
   /**
    * Refresh the watermarks contained within this {@link WatermarkManager}, causing all
    * watermarks to be advanced as far as possible.
+   *
+   * <p>Only the transforms which have had their inputs change since the last refresh, and the
+   * transforms downstream of a watermark which changes as a result, are refreshed. Transforms are
+   * refreshed in topological order, so each transform is refreshed at most once, after all of its
+   * upstream watermarks have been refreshed.
    */
-  synchronized void refreshAll() {
+  void refreshAll() {
     refreshLock.lock();
     try {
       applyAllPendingUpdates();
-      Set<AppliedPTransform<?, ?, ?>> toRefresh = pendingRefreshes;
-      while (!toRefresh.isEmpty()) {
-        toRefresh = refreshAllOf(toRefresh);
+      for (int i = pendingRefreshes.nextSetBit(0);
+          i >= 0;
+          i = pendingRefreshes.nextSetBit(i + 1)) {
+        refreshWatermarks(topologicalOrder.get(i));
       }
+      pendingRefreshes.clear();
     } finally {
       refreshLock.unlock();
     }
   }
 
-  private Set<AppliedPTransform<?, ?, ?>> refreshAllOf(Set<AppliedPTransform<?, ?, ?>> toRefresh) {
-    Set<AppliedPTransform<?, ?, ?>> newRefreshes = new HashSet<>();
-    for (AppliedPTransform<?, ?, ?> transform : toRefresh) {
-      newRefreshes.addAll(refreshWatermarks(transform));
-    }
-    return newRefreshes;
-  }
-
-  private Set<AppliedPTransform<?, ?, ?>> refreshWatermarks(AppliedPTransform<?, ?, ?> toRefresh) {
+  /**
+   * Refreshes the watermarks of the provided transform. If the watermarks changed, all of the
+   * consumers of the transform are marked for refresh; these consumers are always later in the
+   * topological order than the provided transform.
+   */
+  @GuardedBy("refreshLock")
+  private void refreshWatermarks(AppliedPTransform<?, ?, ?> toRefresh) {
     TransformWatermarks myWatermarks = transformToWatermarks.get(toRefresh);
     WatermarkUpdate updateResult = myWatermarks.refresh();
     if (updateResult.isAdvanced()) {
-      Set<AppliedPTransform<?, ?, ?>> additionalRefreshes = new HashSet<>();
       for (TaggedPValue outputPValue : toRefresh.getOutputs()) {
-        additionalRefreshes.addAll(graph.getPrimitiveConsumers(outputPValue.getValue()));
+        for (AppliedPTransform<?, ?, ?> consumer :
+            graph.getPrimitiveConsumers(outputPValue.getValue())) {
+          markForRefresh(consumer);
+        }
       }
-      return additionalRefreshes;
     }
-    return Collections.emptySet();
   }
 
   /**
@@ -1051,75 +1107,16 @@ public class WatermarkManager {
   }
 
   /**
-   * A (key, Instant) pair that holds the watermark. Holds are per-key, but the watermark is global,
-   * and as such the watermark manager must track holds and the release of holds on a per-key basis.
-   *
-   * <p>The {@link #compareTo(KeyedHold)} method of {@link KeyedHold} is not consistent with equals,
-   * as the key is arbitrarily ordered via identity, rather than object equality.
+   * The watermark holds of an {@link AppliedPTransform}. Holds are per-key, but the watermark is
+   * global, and as such the watermark manager must track holds and the release of holds on a
+   * per-key basis. Holds are indexed by key in a {@link KeyedMinHeap}, so updating or releasing the
+   * hold of any key takes logarithmic time.
    */
-  private static final class KeyedHold implements Comparable<KeyedHold> {
-    private static final Ordering<Object> KEY_ORDERING = Ordering.arbitrary().nullsLast();
-
-    private final Object key;
-    private final Instant timestamp;
-
-    /**
-     * Create a new KeyedHold with the specified key and timestamp.
-     */
-    public static KeyedHold of(Object key, Instant timestamp) {
-      return new KeyedHold(key, MoreObjects.firstNonNull(timestamp, THE_END_OF_TIME.get()));
-    }
-
-    private KeyedHold(Object key, Instant timestamp) {
-      this.key = key;
-      this.timestamp = timestamp;
-    }
-
-    @Override
-    public int compareTo(KeyedHold that) {
-      return ComparisonChain.start()
-          .compare(this.timestamp, that.timestamp)
-          .compare(this.key, that.key, KEY_ORDERING)
-          .result();
-    }
-
-    @Override
-    public int hashCode() {
-      return Objects.hash(timestamp, key);
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (other == null || !(other instanceof KeyedHold)) {
-        return false;
-      }
-      KeyedHold that = (KeyedHold) other;
-      return Objects.equals(this.timestamp, that.timestamp) && Objects.equals(this.key, that.key);
-    }
-
-    /**
-     * Get the value of this {@link KeyedHold}.
-     */
-    public Instant getTimestamp() {
-      return timestamp;
-    }
-
-    @Override
-    public String toString() {
-      return MoreObjects.toStringHelper(KeyedHold.class)
-          .add("key", key)
-          .add("hold", timestamp)
-          .toString();
-    }
-  }
-
   private static class PerKeyHolds {
-    private final Map<Object, KeyedHold> keyedHolds;
-    private final NavigableSet<KeyedHold> allHolds;
+    private final KeyedMinHeap<Object, Instant> holds;
 
     private PerKeyHolds() {
-      this.keyedHolds = new HashMap<>();
-      this.allHolds = new TreeSet<>();
+      this.holds = KeyedMinHeap.create();
     }
 
     /**
@@ -1127,7 +1124,7 @@ public class WatermarkManager {
      * there are no holds within this {@link PerKeyHolds}.
      */
     public Instant getMinHold() {
-      return allHolds.isEmpty() ? THE_END_OF_TIME.get() : allHolds.first().getTimestamp();
+      return holds.isEmpty() ? THE_END_OF_TIME.get() : holds.peekPriority();
     }
 
     /**
@@ -1135,20 +1132,19 @@ public class WatermarkManager {
      * the same key.
      */
     public void updateHold(@Nullable Object key, Instant newHold) {
-      removeHold(key);
-      KeyedHold newKeyedHold = KeyedHold.of(key, newHold);
-      keyedHolds.put(key, newKeyedHold);
-      allHolds.add(newKeyedHold);
+      holds.put(key, MoreObjects.firstNonNull(newHold, THE_END_OF_TIME.get()));
     }
 
     /**
      * Removes the hold of the provided key.
      */
     public void removeHold(Object key) {
-      KeyedHold oldHold = keyedHolds.remove(key);
-      if (oldHold != null) {
-        allHolds.remove(oldHold);
-      }
+      holds.remove(key);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(PerKeyHolds.class).add("holds", holds).toString();
     }
   }
 
@@ -1164,8 +1160,8 @@ public class WatermarkManager {
     private final SynchronizedProcessingTimeInputWatermark synchronizedProcessingInputWatermark;
     private final SynchronizedProcessingTimeOutputWatermark synchronizedProcessingOutputWatermark;
 
-    private Instant latestSynchronizedInputWm;
-    private Instant latestSynchronizedOutputWm;
+    private final AtomicReference<Instant> latestSynchronizedInputWm;
+    private final AtomicReference<Instant> latestSynchronizedOutputWm;
 
     private TransformWatermarks(
         AppliedPTransform<?, ?, ?> transform,
@@ -1179,8 +1175,8 @@ public class WatermarkManager {
 
       this.synchronizedProcessingInputWatermark = inputSynchProcessingWatermark;
       this.synchronizedProcessingOutputWatermark = outputSynchProcessingWatermark;
-      this.latestSynchronizedInputWm = BoundedWindow.TIMESTAMP_MIN_VALUE;
-      this.latestSynchronizedOutputWm = BoundedWindow.TIMESTAMP_MIN_VALUE;
+      this.latestSynchronizedInputWm = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
+      this.latestSynchronizedOutputWm = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
     }
 
     /**
@@ -1203,11 +1199,10 @@ public class WatermarkManager {
      * <p>The returned value is guaranteed to be monotonically increasing, and outside of the
      * presence of holds, will increase as the system time progresses.
      */
-    public synchronized Instant getSynchronizedProcessingInputTime() {
-      latestSynchronizedInputWm = INSTANT_ORDERING.max(
+    public Instant getSynchronizedProcessingInputTime() {
+      return advanceMonotonically(
           latestSynchronizedInputWm,
           INSTANT_ORDERING.min(clock.now(), synchronizedProcessingInputWatermark.get()));
-      return latestSynchronizedInputWm;
     }
 
     /**
@@ -1216,11 +1211,26 @@ public class WatermarkManager {
      * <p>The returned value is guaranteed to be monotonically increasing, and outside of the
      * presence of holds, will increase as the system time progresses.
      */
-    public synchronized Instant getSynchronizedProcessingOutputTime() {
-      latestSynchronizedOutputWm = INSTANT_ORDERING.max(
+    public Instant getSynchronizedProcessingOutputTime() {
+      return advanceMonotonically(
           latestSynchronizedOutputWm,
           INSTANT_ORDERING.min(clock.now(), synchronizedProcessingOutputWatermark.get()));
-      return latestSynchronizedOutputWm;
+    }
+
+    /**
+     * Sets the value of the provided reference to the maximum of its current value and the
+     * candidate, and returns the result. Does not block readers or other writers.
+     */
+    private Instant advanceMonotonically(AtomicReference<Instant> latest, Instant candidate) {
+      while (true) {
+        Instant current = latest.get();
+        if (!candidate.isAfter(current)) {
+          return current;
+        }
+        if (latest.compareAndSet(current, candidate)) {
+          return candidate;
+        }
+      }
     }
 
     private WatermarkUpdate refresh() {
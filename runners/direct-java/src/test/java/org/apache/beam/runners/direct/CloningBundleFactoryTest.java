@@ -31,7 +31,9 @@ import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.Enforcement;
 import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
 import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.CoderException;
@@ -174,6 +176,43 @@ public class CloningBundleFactoryTest {
     bundle.add(WindowedValue.valueInGlobalWindow(new Record()));
   }
 
+  @Test
+  public void samplingPolicyClonesSampledElements() {
+    PCollection<Record> pc = p.apply(Create.empty(new RecordStructuralValueCoder()));
+    Record first = new Record();
+    Record second = new Record();
+    Record third = new Record();
+    EnforcementPolicy policy = EnforcementPolicy.sampling(2);
+    CommittedBundle<Record> bundle =
+        CloningBundleFactory.create(policy, DirectGraphs.getGraph(p))
+            .createBundle(pc)
+            .add(WindowedValue.valueInGlobalWindow(first))
+            .add(WindowedValue.valueInGlobalWindow(second))
+            .add(WindowedValue.valueInGlobalWindow(third))
+            .commit(Instant.now());
+
+    List<WindowedValue<Record>> elements = ImmutableList.copyOf(bundle.getElements());
+    assertThat(elements.get(0).getValue(), not(theInstance(first)));
+    assertThat(elements.get(1).getValue(), theInstance(second));
+    assertThat(elements.get(2).getValue(), not(theInstance(third)));
+    assertThat(
+        policy.getChecked(DirectGraphs.getProducer(pc), Enforcement.ENCODABILITY), equalTo(2L));
+  }
+
+  @Test
+  public void samplingPolicySkipsKnownSafeElements() {
+    PCollection<KV<String, Integer>> kvs =
+        p.apply(Create.empty(KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of())));
+    WindowedValue<KV<String, Integer>> fooOne = WindowedValue.valueInGlobalWindow(KV.of("foo", 1));
+    CommittedBundle<KV<String, Integer>> bundle =
+        CloningBundleFactory.create(EnforcementPolicy.sampling(1, true), DirectGraphs.getGraph(p))
+            .createBundle(kvs)
+            .add(fooOne)
+            .commit(Instant.now());
+
+    assertThat(Iterables.getOnlyElement(bundle.getElements()), theInstance(fooOne));
+  }
+
   static class Record {}
   static class RecordNoEncodeCoder extends AtomicCoder<Record> {
 
@@ -66,6 +66,7 @@ import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.transforms.SimpleFunction;
+import org.apache.beam.sdk.transforms.Sum;
 import org.apache.beam.sdk.transforms.display.DisplayData;
 import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.IllegalMutationException;
@@ -131,6 +132,28 @@ public class DirectRunnerTest implements Serializable {
     result.waitUntilFinish();
   }
 
+  @Test
+  public void workStealingExecutorShouldSucceed() throws Throwable {
+    PipelineOptions opts = PipelineOptionsFactory.create();
+    opts.setRunner(DirectRunner.class);
+    opts.as(DirectOptions.class).setExecutorMode(DirectOptions.ExecutorMode.WORK_STEALING);
+    Pipeline p = Pipeline.create(opts);
+
+    PCollection<KV<String, Long>> counts =
+        p.apply(Create.of("foo", "bar", "foo", "baz", "bar", "foo"))
+            .apply(Count.<String>perElement());
+    PCollection<Long> sum =
+        p.apply(CountingInput.upTo(1000L))
+            .apply(Sum.longsGlobally());
+
+    PAssert.that(counts)
+        .containsInAnyOrder(KV.of("baz", 1L), KV.of("bar", 2L), KV.of("foo", 3L));
+    PAssert.thatSingleton(sum).isEqualTo(499500L);
+
+    DirectPipelineResult result = ((DirectPipelineResult) p.run());
+    assertThat(result.waitUntilFinish(), equalTo(State.DONE));
+  }
+
   private static AtomicInteger changed;
   @Test
   public void reusePipelineSucceeds() throws Throwable {
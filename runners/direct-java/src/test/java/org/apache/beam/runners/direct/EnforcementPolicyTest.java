@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.apache.beam.sdk.metrics.MetricMatchers.committedMetricsResult;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.runners.direct.DirectRunner.Enforcement;
+import org.apache.beam.sdk.coders.BigIntegerCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link EnforcementPolicy}.
+ */
+@RunWith(JUnit4.class)
+public class EnforcementPolicyTest {
+  @Rule public final TestPipeline p = TestPipeline.create().enableAbandonedNodeEnforcement(false);
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void isKnownSafeImmutableTypes() {
+    assertThat(EnforcementPolicy.isKnownSafe(StringUtf8Coder.of(), "foo"), is(true));
+    assertThat(EnforcementPolicy.isKnownSafe(VarLongCoder.of(), 1L), is(true));
+    assertThat(EnforcementPolicy.isKnownSafe(VarIntCoder.of(), 1), is(true));
+    assertThat(
+        EnforcementPolicy.isKnownSafe(
+            KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), KV.of("foo", 1)),
+        is(true));
+  }
+
+  @Test
+  public void isKnownSafeNullNotSafe() {
+    assertThat(EnforcementPolicy.isKnownSafe(StringUtf8Coder.of(), null), is(false));
+    assertThat(
+        EnforcementPolicy.isKnownSafe(
+            KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), KV.of("foo", (Integer) null)),
+        is(false));
+  }
+
+  @Test
+  public void isKnownSafeMutableOrMismatchedTypesNotSafe() {
+    List<Integer> list = new ArrayList<>();
+    list.add(1);
+    assertThat(EnforcementPolicy.isKnownSafe(ListCoder.of(VarIntCoder.of()), list), is(false));
+    assertThat(EnforcementPolicy.isKnownSafe(SerializableCoder.of(String.class), "foo"), is(false));
+    assertThat(
+        EnforcementPolicy.isKnownSafe(
+            KvCoder.of(StringUtf8Coder.of(), ListCoder.of(VarIntCoder.of())), KV.of("foo", list)),
+        is(false));
+  }
+
+  @Test
+  public void isKnownSafeSubclassNotSafe() {
+    BigInteger subclass = new BigInteger("1") {};
+    assertThat(EnforcementPolicy.isKnownSafe(BigIntegerCoder.of(), BigInteger.ONE), is(true));
+    assertThat(EnforcementPolicy.isKnownSafe(BigIntegerCoder.of(), subclass), is(false));
+  }
+
+  @Test
+  public void fullChecksEveryElement() {
+    EnforcementPolicy.ElementSampler<String> sampler =
+        EnforcementPolicy.full().forBundle(Enforcement.ENCODABILITY, null, StringUtf8Coder.of());
+    for (int i = 0; i < 5; i++) {
+      assertThat(sampler.shouldCheck("foo"), is(true));
+    }
+  }
+
+  @Test
+  public void samplingChecksEveryNthElement() {
+    EnforcementPolicy.ElementSampler<List<Integer>> sampler =
+        EnforcementPolicy.sampling(3)
+            .forBundle(Enforcement.IMMUTABILITY, null, ListCoder.of(VarIntCoder.of()));
+    List<Integer> value = new ArrayList<>();
+    assertThat(sampler.shouldCheck(value), is(true));
+    assertThat(sampler.shouldCheck(value), is(false));
+    assertThat(sampler.shouldCheck(value), is(false));
+    assertThat(sampler.shouldCheck(value), is(true));
+    assertThat(sampler.shouldCheck(null), is(false));
+    assertThat(sampler.shouldCheck(null), is(false));
+    assertThat(sampler.shouldCheck(null), is(true));
+  }
+
+  @Test
+  public void samplingSkipsKnownSafeElements() {
+    EnforcementPolicy.ElementSampler<String> sampler =
+        EnforcementPolicy.sampling(1, true)
+            .forBundle(Enforcement.ENCODABILITY, null, StringUtf8Coder.of());
+    assertThat(sampler.shouldCheck("foo"), is(false));
+    assertThat(sampler.shouldCheck(null), is(true));
+  }
+
+  @Test
+  public void samplingChecksKnownSafeElementsByDefault() {
+    EnforcementPolicy.ElementSampler<String> sampler =
+        EnforcementPolicy.fromOptions(PipelineOptionsFactory.as(DirectOptions.class))
+            .forBundle(Enforcement.ENCODABILITY, null, StringUtf8Coder.of());
+    assertThat(sampler.shouldCheck("foo"), is(true));
+  }
+
+  @Test
+  public void fromOptionsUsesSamplingPeriod() {
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    options.setEnforcementSamplingPeriod(2);
+    EnforcementPolicy.ElementSampler<List<Integer>> sampler =
+        EnforcementPolicy.fromOptions(options)
+            .forBundle(Enforcement.IMMUTABILITY, null, ListCoder.of(VarIntCoder.of()));
+    List<Integer> value = new ArrayList<>();
+    assertThat(sampler.shouldCheck(value), is(true));
+    assertThat(sampler.shouldCheck(value), is(false));
+    assertThat(sampler.shouldCheck(value), is(true));
+  }
+
+  @Test
+  public void reportCountsChecksOfEachTransform() {
+    AppliedPTransform<?, ?, ?> first = DirectGraphs.getProducer(p.apply("First", Create.of("foo")));
+    AppliedPTransform<?, ?, ?> second =
+        DirectGraphs.getProducer(p.apply("Second", Create.of("bar")));
+    EnforcementPolicy policy = EnforcementPolicy.full();
+    EnforcementPolicy.ElementSampler<String> firstSampler =
+        policy.forBundle(Enforcement.ENCODABILITY, first, StringUtf8Coder.of());
+    EnforcementPolicy.ElementSampler<String> secondSampler =
+        policy.forBundle(Enforcement.ENCODABILITY, second, StringUtf8Coder.of());
+    firstSampler.finishCheck(firstSampler.startCheck());
+    firstSampler.finishCheck(firstSampler.startCheck());
+    secondSampler.finishCheck(secondSampler.startCheck());
+    assertThat(policy.getChecked(first, Enforcement.ENCODABILITY), equalTo(0L));
+
+    firstSampler.report();
+    secondSampler.report();
+    secondSampler.report();
+    assertThat(policy.getChecked(first, Enforcement.ENCODABILITY), equalTo(2L));
+    assertThat(policy.getChecked(second, Enforcement.ENCODABILITY), equalTo(1L));
+    assertThat(policy.getChecked(first, Enforcement.IMMUTABILITY), equalTo(0L));
+
+    DirectMetrics metrics = new DirectMetrics();
+    policy.commitMetrics(metrics);
+    assertThat(policy.getChecked(first, Enforcement.ENCODABILITY), equalTo(0L));
+    MetricName checked = EnforcementPolicy.checkedMetric(Enforcement.ENCODABILITY);
+    MetricQueryResults results =
+        metrics.queryMetrics(
+            MetricsFilter.builder()
+                .addNameFilter(MetricNameFilter.named(checked.namespace(), checked.name()))
+                .build());
+    assertThat(
+        results.counters(),
+        containsInAnyOrder(
+            committedMetricsResult(checked.namespace(), checked.name(), first.getFullName(), 2L),
+            committedMetricsResult(
+                checked.namespace(), checked.name(), second.getFullName(), 1L)));
+  }
+
+  @Test
+  public void samplingNonPositivePeriodThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("must be positive");
+    EnforcementPolicy.sampling(0);
+  }
+}
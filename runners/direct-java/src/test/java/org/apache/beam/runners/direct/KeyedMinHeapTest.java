@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link KeyedMinHeap}.
+ */
+@RunWith(JUnit4.class)
+public class KeyedMinHeapTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void putReturnsMinimum() {
+    KeyedMinHeap<String, Integer> heap = KeyedMinHeap.create();
+    heap.put("foo", 3);
+    heap.put("bar", 1);
+    heap.put("baz", 2);
+
+    assertThat(heap.size(), equalTo(3));
+    assertThat(heap.peekKey(), equalTo("bar"));
+    assertThat(heap.peekPriority(), equalTo(1));
+  }
+
+  @Test
+  public void putExistingKeyUpdatesPriority() {
+    KeyedMinHeap<String, Integer> heap = KeyedMinHeap.create();
+    heap.put("foo", 3);
+    heap.put("bar", 1);
+    heap.put("bar", 4);
+
+    assertThat(heap.size(), equalTo(2));
+    assertThat(heap.peekKey(), equalTo("foo"));
+    assertThat(heap.get("bar"), equalTo(4));
+
+    heap.put("bar", 0);
+    assertThat(heap.peekKey(), equalTo("bar"));
+  }
+
+  @Test
+  public void removeReturnsPriority() {
+    KeyedMinHeap<String, Integer> heap = KeyedMinHeap.create();
+    heap.put("foo", 3);
+    heap.put("bar", 1);
+
+    assertThat(heap.remove("bar"), equalTo(1));
+    assertThat(heap.remove("bar"), nullValue());
+    assertThat(heap.peekKey(), equalTo("foo"));
+    assertThat(heap.remove("foo"), equalTo(3));
+    assertThat(heap.isEmpty(), is(true));
+  }
+
+  @Test
+  public void nullKeysSupported() {
+    KeyedMinHeap<String, Integer> heap = KeyedMinHeap.create();
+    heap.put(null, 3);
+    heap.put("foo", 4);
+
+    assertThat(heap.peekKey(), nullValue());
+    assertThat(heap.remove(null), equalTo(3));
+    assertThat(heap.peekKey(), equalTo("foo"));
+  }
+
+  @Test
+  public void peekEmptyThrows() {
+    KeyedMinHeap<String, Integer> heap = KeyedMinHeap.create();
+    thrown.expect(NoSuchElementException.class);
+    heap.peekPriority();
+  }
+
+  @Test
+  public void randomOperationsMatchReference() {
+    Random random = new Random(0L);
+    KeyedMinHeap<Integer, Integer> heap = KeyedMinHeap.create();
+    Map<Integer, Integer> reference = new HashMap<>();
+    for (int i = 0; i < 10000; i++) {
+      int key = random.nextInt(100);
+      if (random.nextBoolean()) {
+        int priority = random.nextInt(1000);
+        heap.put(key, priority);
+        reference.put(key, priority);
+      } else {
+        assertThat(heap.remove(key), equalTo(reference.remove(key)));
+      }
+      assertThat(heap.size(), equalTo(reference.size()));
+      if (!reference.isEmpty()) {
+        int min = Collections.min(reference.values());
+        assertThat(heap.peekPriority(), equalTo(min));
+        assertThat(reference.get(heap.peekKey()), equalTo(min));
+      }
+    }
+  }
+}
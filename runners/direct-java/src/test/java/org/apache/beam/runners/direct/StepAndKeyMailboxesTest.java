@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.ExecutorService;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link StepAndKeyMailboxes}.
+ */
+@RunWith(JUnit4.class)
+public class StepAndKeyMailboxesTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private ExecutorService executorService;
+  private StepAndKeyMailboxes mailboxes;
+  private StepAndKey fooKey;
+  private StepAndKey barKey;
+
+  @Before
+  public void setup() {
+    executorService = MoreExecutors.newDirectExecutorService();
+    mailboxes = StepAndKeyMailboxes.create(executorService);
+    fooKey = StepAndKey.of(null, StructuralKey.of("foo", StringUtf8Coder.of()));
+    barKey = StepAndKey.of(null, StructuralKey.of("bar", StringUtf8Coder.of()));
+  }
+
+  @Test
+  public void scheduleTwoSameKeyWaitsForFirstToComplete() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+
+    TransformExecutorService foo = mailboxes.forStepAndKey(fooKey);
+    foo.schedule(first);
+    verify(first).run();
+
+    mailboxes.forStepAndKey(fooKey).schedule(second);
+    verify(second, never()).run();
+
+    foo.complete(first);
+    verify(second).run();
+
+    foo.complete(second);
+    assertThat(mailboxes.activeMailboxes(), equalTo(0));
+  }
+
+  @Test
+  public void scheduleDifferentKeysSchedulesBothImmediately() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+
+    TransformExecutorService foo = mailboxes.forStepAndKey(fooKey);
+    TransformExecutorService bar = mailboxes.forStepAndKey(barKey);
+    foo.schedule(first);
+    bar.schedule(second);
+
+    verify(first).run();
+    verify(second).run();
+    assertThat(mailboxes.activeMailboxes(), equalTo(2));
+
+    foo.complete(first);
+    bar.complete(second);
+    assertThat(mailboxes.activeMailboxes(), equalTo(0));
+  }
+
+  @Test
+  public void scheduleAfterRetiredCreatesNewMailbox() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+
+    TransformExecutorService foo = mailboxes.forStepAndKey(fooKey);
+    foo.schedule(first);
+    foo.complete(first);
+    assertThat(mailboxes.activeMailboxes(), equalTo(0));
+
+    foo.schedule(second);
+    verify(second).run();
+    assertThat(mailboxes.activeMailboxes(), equalTo(1));
+  }
+
+  @Test
+  public void scheduleAfterShutdownDoesNotRun() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+
+    mailboxes.shutdown();
+    mailboxes.forStepAndKey(fooKey).schedule(first);
+    verify(first, never()).run();
+  }
+
+  @Test
+  public void completeNotExecutingTaskThrows() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+
+    TransformExecutorService foo = mailboxes.forStepAndKey(fooKey);
+    foo.schedule(first);
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("unexpected currently executing");
+
+    foo.complete(second);
+  }
+}
@@ -212,7 +212,7 @@ class FlinkBatchTransformTranslators {
 
       TypeInformation<WindowedValue<KV<K, List<InputT>>>> partialReduceTypeInfo =
           new CoderTypeInformation<>(
-              WindowedValue.getFullCoder(
+              WindowedValue.getCompactCoder(
                   KvCoder.of(inputCoder.getKeyCoder(), accumulatorCoder),
                   windowingStrategy.getWindowFn().windowCoder()));
 
@@ -547,7 +547,7 @@ class FlinkBatchTransformTranslators {
 
       TypeInformation<WindowedValue<RawUnionValue>> typeInformation =
           new CoderTypeInformation<>(
-              WindowedValue.getFullCoder(
+              WindowedValue.getCompactCoder(
                   unionCoder,
                   windowingStrategy.getWindowFn().windowCoder()));
 
@@ -657,7 +657,7 @@ class FlinkBatchTransformTranslators {
           }
         }).returns(
             new CoderTypeInformation<>(
-                WindowedValue.getFullCoder(
+                WindowedValue.getCompactCoder(
                     (Coder<T>) VoidCoder.of(),
                     GlobalWindow.Coder.INSTANCE)));
       } else {
@@ -126,8 +126,8 @@ class FlinkBatchTranslationContext {
   public <T> TypeInformation<WindowedValue<T>> getTypeInfo(
       Coder<T> coder,
       WindowingStrategy<?, ?> windowingStrategy) {
-    WindowedValue.FullWindowedValueCoder<T> windowedValueCoder =
-        WindowedValue.getFullCoder(
+    WindowedValue.CompactWindowedValueCoder<T> windowedValueCoder =
+        WindowedValue.getCompactCoder(
             coder,
             windowingStrategy.getWindowFn().windowCoder());
 
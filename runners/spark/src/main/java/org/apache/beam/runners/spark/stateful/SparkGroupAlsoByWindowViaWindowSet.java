@@ -50,6 +50,7 @@ import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.transforms.windowing.Triggers;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowedValue.FullWindowedValueCoder;
+import org.apache.beam.sdk.util.WindowedValue.WindowedValueCoder;
 import org.apache.beam.sdk.util.WindowingStrategy;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.TupleTag;
@@ -106,15 +107,14 @@ public class SparkGroupAlsoByWindowViaWindowSet {
       JavaDStream<WindowedValue<KV<K, Iterable<InputT>>>> groupAlsoByWindow(
           JavaDStream<WindowedValue<KV<K, Iterable<WindowedValue<InputT>>>>> inputDStream,
           final Coder<K> keyCoder,
-          final Coder<WindowedValue<InputT>> wvCoder,
+          final WindowedValueCoder<InputT> wvCoder,
           final WindowingStrategy<?, W> windowingStrategy,
           final SparkRuntimeContext runtimeContext,
           final List<Integer> sourceIds) {
 
     final IterableCoder<WindowedValue<InputT>> itrWvCoder = IterableCoder.of(wvCoder);
-    final Coder<InputT> iCoder = ((FullWindowedValueCoder<InputT>) wvCoder).getValueCoder();
-    final Coder<? extends BoundedWindow> wCoder =
-        ((FullWindowedValueCoder<InputT>) wvCoder).getWindowCoder();
+    final Coder<InputT> iCoder = wvCoder.getValueCoder();
+    final Coder<W> wCoder = windowingStrategy.getWindowFn().windowCoder();
     final Coder<WindowedValue<KV<K, Iterable<InputT>>>> wvKvIterCoder =
         FullWindowedValueCoder.of(KvCoder.of(keyCoder, IterableCoder.of(iCoder)), wCoder);
     final TimerInternals.TimerDataCoder timerDataCoder =
@@ -202,8 +202,7 @@ public class SparkGroupAlsoByWindowViaWindowSet {
         // (3) Seq.nonEmpty && Option<S>.isDefined: new data with previous state.
 
         final SystemReduceFn<K, InputT, Iterable<InputT>, Iterable<InputT>, W> reduceFn =
-            SystemReduceFn.buffering(
-                ((FullWindowedValueCoder<InputT>) wvCoder).getValueCoder());
+            SystemReduceFn.buffering(wvCoder.getValueCoder());
         final OutputWindowedValueHolder<K, InputT> outputHolder =
             new OutputWindowedValueHolder<>();
         // use in memory Aggregators since Spark Accumulators are not resilient
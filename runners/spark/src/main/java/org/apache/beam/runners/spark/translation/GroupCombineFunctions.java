@@ -87,11 +87,11 @@ public class GroupCombineFunctions {
       final Coder<AccumT> aCoder,
       final WindowingStrategy<?, ?> windowingStrategy) {
     // coders.
-    final WindowedValue.FullWindowedValueCoder<InputT> wviCoder =
-        WindowedValue.FullWindowedValueCoder.of(iCoder,
+    final WindowedValue.CompactWindowedValueCoder<InputT> wviCoder =
+        WindowedValue.getCompactCoder(iCoder,
             windowingStrategy.getWindowFn().windowCoder());
-    final WindowedValue.FullWindowedValueCoder<AccumT> wvaCoder =
-        WindowedValue.FullWindowedValueCoder.of(aCoder,
+    final WindowedValue.CompactWindowedValueCoder<AccumT> wvaCoder =
+        WindowedValue.getCompactCoder(aCoder,
             windowingStrategy.getWindowFn().windowCoder());
     final IterableCoder<WindowedValue<AccumT>> iterAccumCoder = IterableCoder.of(wvaCoder);
 
@@ -153,11 +153,11 @@ public class GroupCombineFunctions {
           final Coder<AccumT> aCoder,
           final WindowingStrategy<?, ?> windowingStrategy) {
     // coders.
-    final WindowedValue.FullWindowedValueCoder<KV<K, InputT>> wkviCoder =
-        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(keyCoder, iCoder),
+    final WindowedValue.CompactWindowedValueCoder<KV<K, InputT>> wkviCoder =
+        WindowedValue.getCompactCoder(KvCoder.of(keyCoder, iCoder),
             windowingStrategy.getWindowFn().windowCoder());
-    final WindowedValue.FullWindowedValueCoder<KV<K, AccumT>> wkvaCoder =
-        WindowedValue.FullWindowedValueCoder.of(KvCoder.of(keyCoder, aCoder),
+    final WindowedValue.CompactWindowedValueCoder<KV<K, AccumT>> wkvaCoder =
+        WindowedValue.getCompactCoder(KvCoder.of(keyCoder, aCoder),
             windowingStrategy.getWindowFn().windowCoder());
     final IterableCoder<WindowedValue<KV<K, AccumT>>> iterAccumCoder = IterableCoder.of(wkvaCoder);
 
@@ -129,7 +129,7 @@ public final class TransformTranslator {
         //--- coders.
         final Coder<K> keyCoder = coder.getKeyCoder();
         final WindowedValue.WindowedValueCoder<V> wvCoder =
-            WindowedValue.FullWindowedValueCoder.of(coder.getValueCoder(), windowFn.windowCoder());
+            WindowedValue.getCompactCoder(coder.getValueCoder(), windowFn.windowCoder());
 
         //--- group by key only.
         JavaRDD<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>> groupedByKey =
@@ -578,7 +578,7 @@ public final class TransformTranslator {
 
         final Coder<K> keyCoder = coder.getKeyCoder();
         final WindowedValue.WindowedValueCoder<V> wvCoder =
-            WindowedValue.FullWindowedValueCoder.of(coder.getValueCoder(), windowFn.windowCoder());
+            WindowedValue.getCompactCoder(coder.getValueCoder(), windowFn.windowCoder());
 
         JavaRDD<WindowedValue<KV<K, V>>> reshuffled =
             GroupCombineFunctions.reshuffle(inRDD, keyCoder, wvCoder);
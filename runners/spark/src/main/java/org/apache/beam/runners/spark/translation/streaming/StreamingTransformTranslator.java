@@ -282,6 +282,10 @@ public final class StreamingTransformTranslator {
         final WindowFn<Object, W> windowFn = (WindowFn<Object, W>) windowingStrategy.getWindowFn();
 
         //--- coders.
+        // The shuffle is transient, so it uses the compact coder, whereas the coder handed to
+        // groupAlsoByWindow also encodes the checkpointed state, whose format must not change.
+        final WindowedValue.WindowedValueCoder<V> shuffleCoder =
+            WindowedValue.getCompactCoder(coder.getValueCoder(), windowFn.windowCoder());
         final WindowedValue.WindowedValueCoder<V> wvCoder =
             WindowedValue.FullWindowedValueCoder.of(coder.getValueCoder(), windowFn.windowCoder());
 
@@ -293,7 +297,7 @@ public final class StreamingTransformTranslator {
                   public JavaRDD<WindowedValue<KV<K, Iterable<WindowedValue<V>>>>> call(
                       JavaRDD<WindowedValue<KV<K, V>>> rdd) throws Exception {
                         return GroupCombineFunctions.groupByKeyOnly(
-                            rdd, coder.getKeyCoder(), wvCoder);
+                            rdd, coder.getKeyCoder(), shuffleCoder);
                       }
                 });
 
@@ -497,7 +501,7 @@ public final class StreamingTransformTranslator {
         final WindowFn<Object, W> windowFn = (WindowFn<Object, W>) windowingStrategy.getWindowFn();
 
         final WindowedValue.WindowedValueCoder<V> wvCoder =
-            WindowedValue.FullWindowedValueCoder.of(coder.getValueCoder(), windowFn.windowCoder());
+            WindowedValue.getCompactCoder(coder.getValueCoder(), windowFn.windowCoder());
 
         JavaDStream<WindowedValue<KV<K, V>>> reshuffledStream =
             dStream.transform(new Function<JavaRDD<WindowedValue<KV<K, V>>>,
@@ -28,6 +28,7 @@ import org.apache.beam.runners.spark.PipelineRule;
 import org.apache.beam.runners.spark.ReuseSparkContextRule;
 import org.apache.beam.runners.spark.io.CreateStream;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.testing.PAssert;
@@ -235,6 +236,41 @@ public class CreateStreamTest implements Serializable {
     p.run();
   }
 
+  @Test
+  public void testGroupByKeyAcrossBatches() throws IOException {
+    Pipeline p = pipelineRule.createPipeline();
+    Instant instant = new Instant(0);
+    CreateStream<Integer> source =
+        CreateStream.of(VarIntCoder.of(), pipelineRule.batchDuration())
+            .nextBatch(
+                TimestampedValue.of(1, instant),
+                TimestampedValue.of(2, instant.plus(10L)))
+            .nextBatch(
+                TimestampedValue.of(3, instant.plus(20L)),
+                TimestampedValue.of(4, instant.plus(30L)))
+            .advanceNextBatchWatermarkToInfinity();
+
+    FixedWindows windowFn = FixedWindows.of(Duration.standardMinutes(1));
+    PCollection<Integer> grouped = p.apply(source)
+        .apply(Window.<Integer>into(windowFn))
+        .apply(WithKeys.of(new SerializableFunction<Integer, Integer>() {
+          @Override
+          public Integer apply(Integer input) {
+            return input % 2;
+          }
+        }))
+        .setCoder(KvCoder.of(VarIntCoder.of(), VarIntCoder.of()))
+        .apply(GroupByKey.<Integer, Integer>create())
+        .apply(Values.<Iterable<Integer>>create())
+        .apply(Flatten.<Integer>iterables());
+
+    // The values of the first batch are held in the checkpointed state until the window closes.
+    PAssert.that(grouped)
+        .inOnTimePane(windowFn.assignWindow(instant))
+        .containsInAnyOrder(1, 2, 3, 4);
+    p.run();
+  }
+
   @Test
   public void testElementsAtAlmostPositiveInfinity() throws IOException {
     Pipeline p = pipelineRule.createPipeline();
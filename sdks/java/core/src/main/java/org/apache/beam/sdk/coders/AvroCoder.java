@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.coders;
 
+import static org.apache.beam.sdk.util.Structs.addBoolean;
 import static org.apache.beam.sdk.util.Structs.addString;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -57,6 +58,7 @@ import org.apache.avro.reflect.Union;
 import org.apache.avro.specific.SpecificData;
 import org.apache.avro.util.ClassUtils;
 import org.apache.avro.util.Utf8;
+import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.util.CloudObject;
 import org.apache.beam.sdk.util.EmptyOnDeserializationThreadLocal;
 import org.apache.beam.sdk.values.TypeDescriptor;
@@ -100,6 +102,10 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * Schema provided or generated by Avro. Only coders that are deterministic can be used in
  * {@link org.apache.beam.sdk.transforms.GroupByKey} operations.
  *
+ * <p>{@link #withCompiledDatums} returns a coder that reads and writes the same encoding using a
+ * reader and writer compiled from the schema, with generated accessors for the fields of records,
+ * instead of the reflection based {@link ReflectDatumReader} and {@link ReflectDatumWriter}.
+ *
  * @param <T> the type of elements handled by this coder
  */
 public class AvroCoder<T> extends StandardCoder<T> {
@@ -143,15 +149,26 @@ public class AvroCoder<T> extends StandardCoder<T> {
     return new AvroCoder<>(type, schema);
   }
 
+  public static AvroCoder<?> of(String classType, String schema) throws ClassNotFoundException {
+    return of(classType, schema, null);
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   @JsonCreator
   public static AvroCoder<?> of(
       @JsonProperty("type") String classType,
-      @JsonProperty("schema") String schema) throws ClassNotFoundException {
+      @JsonProperty("schema") String schema,
+      @JsonProperty(COMPILED_DATUMS) @Nullable Boolean compiledDatums)
+      throws ClassNotFoundException {
     Schema.Parser parser = new Schema.Parser();
-    return new AvroCoder(Class.forName(classType), parser.parse(schema));
+    return new AvroCoder(
+        Class.forName(classType),
+        parser.parse(schema),
+        compiledDatums != null && compiledDatums);
   }
 
+  private static final String COMPILED_DATUMS = "compiled_datums";
+
   public static final CoderProvider PROVIDER = new CoderProvider() {
     @Override
     public <T> Coder<T> getCoder(TypeDescriptor<T> typeDescriptor) {
@@ -168,6 +185,7 @@ public class AvroCoder<T> extends StandardCoder<T> {
   private final Class<T> type;
   private final SerializableSchemaSupplier schemaSupplier;
   private final TypeDescriptor<T> typeDescriptor;
+  private final boolean compiledDatums;
 
   private final List<String> nonDeterministicReasons;
 
@@ -220,9 +238,19 @@ public class AvroCoder<T> extends StandardCoder<T> {
   private final EmptyOnDeserializationThreadLocal<DatumWriter<T>> writer;
   private final EmptyOnDeserializationThreadLocal<DatumReader<T>> reader;
 
+  // The compiled plan holds no mutable state, so it is compiled once and shared by the readers and
+  // writers of all threads.
+  private transient volatile boolean planCompiled;
+  @Nullable private transient AvroDatumCompiler.Plan plan;
+
   protected AvroCoder(Class<T> type, Schema schema) {
+    this(type, schema, false);
+  }
+
+  private AvroCoder(Class<T> type, Schema schema, boolean compiledDatums) {
     this.type = type;
     this.schemaSupplier = new SerializableSchemaSupplier(schema);
+    this.compiledDatums = compiledDatums;
     typeDescriptor = TypeDescriptor.of(type);
     nonDeterministicReasons = new AvroDeterminismChecker().check(TypeDescriptor.of(type), schema);
 
@@ -236,17 +264,55 @@ public class AvroCoder<T> extends StandardCoder<T> {
     this.reader = new EmptyOnDeserializationThreadLocal<DatumReader<T>>() {
       @Override
       public DatumReader<T> initialValue() {
-        return createDatumReader();
+        AvroDatumCompiler.Plan plan = compiledPlan();
+        return plan != null
+            ? new AvroDatumCompiler.Reader<T>(schemaSupplier.get(), plan)
+            : createDatumReader();
       }
     };
     this.writer = new EmptyOnDeserializationThreadLocal<DatumWriter<T>>() {
       @Override
       public DatumWriter<T> initialValue() {
-        return createDatumWriter();
+        AvroDatumCompiler.Plan plan = compiledPlan();
+        return plan != null
+            ? new AvroDatumCompiler.Writer<T>(schemaSupplier.get(), plan)
+            : createDatumWriter();
       }
     };
   }
 
+  /**
+   * Returns an {@code AvroCoder} with the same type and schema that reads and writes values with a
+   * {@link DatumReader} and {@link DatumWriter} compiled from the schema.
+   *
+   * <p>The compiled reader and writer access the fields of records through generated code rather
+   * than reflection, which avoids most of the per-value overhead of the reflect reader and writer.
+   * The encoding is unchanged, so the returned coder is equal to and interchangeable with this one.
+   * Schemas that use a mapping the compiler does not support, such as {@link AvroEncode}, unions
+   * other than nullable fields, or stringable classes, are read and written by the reflect reader
+   * and writer. Coders of {@link GenericRecord} are unaffected.
+   */
+  @Experimental
+  public AvroCoder<T> withCompiledDatums() {
+    return new AvroCoder<>(type, schemaSupplier.get(), true);
+  }
+
+  @Nullable
+  private AvroDatumCompiler.Plan compiledPlan() {
+    if (!compiledDatums || type.equals(GenericRecord.class)) {
+      return null;
+    }
+    if (!planCompiled) {
+      synchronized (this) {
+        if (!planCompiled) {
+          plan = AvroDatumCompiler.compile(type, schemaSupplier.get());
+          planCompiled = true;
+        }
+      }
+    }
+    return plan;
+  }
+
   /**
    * The encoding identifier is designed to support evolution as per the design of Avro
    * In order to use this class effectively, carefully read the Avro
@@ -316,6 +382,9 @@ public class AvroCoder<T> extends StandardCoder<T> {
     CloudObject result = CloudObject.forClass(getClass());
     addString(result, "type", type.getName());
     addString(result, "schema", schemaSupplier.get().toString());
+    if (compiledDatums) {
+      addBoolean(result, COMPILED_DATUMS, true);
+    }
     return result;
   }
 
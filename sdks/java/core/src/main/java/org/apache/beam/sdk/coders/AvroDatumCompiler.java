@@ -0,0 +1,855 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.NamingStrategy;
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.dynamic.scaffold.InstrumentedType;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.implementation.bytecode.assign.Assigner.Typing;
+import net.bytebuddy.implementation.bytecode.assign.TypeCasting;
+import net.bytebuddy.implementation.bytecode.member.FieldAccess;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.reflect.AvroEncode;
+import org.apache.avro.reflect.AvroName;
+import org.apache.avro.reflect.AvroSchema;
+import org.apache.avro.specific.SpecificData;
+import org.apache.beam.sdk.values.TypeDescriptor;
+
+/**
+ * Compiles the {@link Schema} of an {@link AvroCoder} into a {@link DatumWriter} and
+ * {@link DatumReader} that walk a precomputed plan of the schema instead of resolving it against
+ * the datum for every value, as {@link org.apache.avro.reflect.ReflectDatumWriter} and
+ * {@link org.apache.avro.reflect.ReflectDatumReader} do.
+ *
+ * <p>Fields of records are read and written through {@link FieldAccessor FieldAccessors} that are
+ * generated with ByteBuddy and access the field directly. Private and final fields, and fields of
+ * classes into whose class loader an accessor can not be injected, are accessed reflectively.
+ *
+ * <p>The compiled writer produces exactly the same bytes as the reflect writer and the compiled
+ * reader produces the same values as the reflect reader. Only the mappings whose behavior is
+ * reproduced exactly are compiled: records of concrete classes, {@code boolean}, {@code int},
+ * {@code long}, {@code float} and {@code double} and their boxed types, {@link String},
+ * {@code byte[]}, enums, nullable unions, {@link java.util.List Lists} and object arrays, and
+ * {@link Map Maps} with {@link String} keys. {@link #compile} returns {@code null} for any other
+ * schema, for which the reflect reader and writer should be used.
+ */
+final class AvroDatumCompiler {
+
+  /**
+   * The accessors of the fields of each class, keyed by the class declaring the field. Holding them
+   * in a {@link ClassValue} keeps them from making the class and its class loader reachable.
+   */
+  private static final ClassValue<Map<Field, FieldAccessor>> ACCESSORS =
+      new ClassValue<Map<Field, FieldAccessor>>() {
+        @Override
+        protected Map<Field, FieldAccessor> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private final Map<Schema, RecordPlan> records = new HashMap<>();
+
+  private AvroDatumCompiler() {}
+
+  /**
+   * Returns the plan used to read and write values of the given type with the given schema, or
+   * {@code null} if the schema uses a mapping that is not compiled.
+   */
+  @Nullable
+  static Plan compile(Class<?> type, Schema schema) {
+    try {
+      return new AvroDatumCompiler().plan(TypeDescriptor.of(type), schema);
+    } catch (UnsupportedSchemaException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads and writes the values of one schema. Plans hold no mutable state and may be shared
+   * between threads.
+   */
+  abstract static class Plan {
+    abstract void write(Object datum, Encoder out) throws IOException;
+
+    abstract Object read(Decoder in) throws IOException;
+  }
+
+  /** A {@link DatumWriter} writing the values of a compiled schema. */
+  static class Writer<T> implements DatumWriter<T> {
+    private final Schema schema;
+    private final Plan plan;
+
+    Writer(Schema schema, Plan plan) {
+      this.schema = schema;
+      this.plan = plan;
+    }
+
+    @Override
+    public void setSchema(Schema schema) {
+      if (!this.schema.equals(schema)) {
+        throw new UnsupportedOperationException(
+            "A compiled DatumWriter can only write the schema it was compiled for");
+      }
+    }
+
+    @Override
+    public void write(T datum, Encoder out) throws IOException {
+      plan.write(datum, out);
+    }
+  }
+
+  /** A {@link DatumReader} reading the values of a compiled schema. */
+  static class Reader<T> implements DatumReader<T> {
+    private final Schema schema;
+    private final Plan plan;
+
+    Reader(Schema schema, Plan plan) {
+      this.schema = schema;
+      this.plan = plan;
+    }
+
+    @Override
+    public void setSchema(Schema schema) {
+      if (!this.schema.equals(schema)) {
+        throw new UnsupportedOperationException(
+            "A compiled DatumReader can only read the schema it was compiled for");
+      }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T read(T reuse, Decoder in) throws IOException {
+      return (T) plan.read(in);
+    }
+  }
+
+  /**
+   * Gets and sets the value of one field of a record. Subclasses are generated for each field;
+   * this class is public only so that they can be defined in the package of the record.
+   */
+  public abstract static class FieldAccessor {
+    protected FieldAccessor() {}
+
+    public abstract Object get(Object record);
+
+    public abstract void set(Object record, Object value);
+  }
+
+  /** Thrown when a schema uses a mapping that is not compiled. */
+  private static class UnsupportedSchemaException extends Exception {
+    private UnsupportedSchemaException(String message) {
+      super(message);
+    }
+  }
+
+  private Plan plan(TypeDescriptor<?> type, Schema schema) throws UnsupportedSchemaException {
+    if (schema.getLogicalType() != null || schema.getProp(SpecificData.ELEMENT_PROP) != null) {
+      throw new UnsupportedSchemaException("Unsupported schema " + schema);
+    }
+    Class<?> rawType = type.getRawType();
+    String javaClass = schema.getProp(SpecificData.CLASS_PROP);
+    switch (schema.getType()) {
+      case BOOLEAN:
+        checkPrimitive(rawType, boolean.class, Boolean.class, javaClass);
+        return BooleanPlan.INSTANCE;
+      case INT:
+        checkPrimitive(rawType, int.class, Integer.class, javaClass);
+        return IntPlan.INSTANCE;
+      case LONG:
+        checkPrimitive(rawType, long.class, Long.class, javaClass);
+        return LongPlan.INSTANCE;
+      case FLOAT:
+        checkPrimitive(rawType, float.class, Float.class, javaClass);
+        return FloatPlan.INSTANCE;
+      case DOUBLE:
+        checkPrimitive(rawType, double.class, Double.class, javaClass);
+        return DoublePlan.INSTANCE;
+      case STRING:
+        checkPrimitive(rawType, String.class, String.class, javaClass);
+        return StringPlan.INSTANCE;
+      case BYTES:
+        checkPrimitive(rawType, byte[].class, byte[].class, javaClass);
+        return BytesPlan.INSTANCE;
+      case ENUM:
+        return enumPlan(rawType, schema);
+      case UNION:
+        return unionPlan(type, schema);
+      case ARRAY:
+        return arrayPlan(type, schema, javaClass);
+      case MAP:
+        return mapPlan(type, schema, javaClass);
+      case RECORD:
+        return recordPlan(type, schema);
+      default:
+        throw new UnsupportedSchemaException("Unsupported schema " + schema);
+    }
+  }
+
+  private static void checkPrimitive(
+      Class<?> rawType, Class<?> primitive, Class<?> boxed, @Nullable String javaClass)
+      throws UnsupportedSchemaException {
+    // The reflect reader honors a java-class, e.g. to read an int as a short.
+    if (javaClass != null || (rawType != primitive && rawType != boxed)) {
+      throw new UnsupportedSchemaException(rawType + " is not read as " + boxed);
+    }
+  }
+
+  private static Plan enumPlan(Class<?> rawType, Schema schema)
+      throws UnsupportedSchemaException {
+    if (!rawType.isEnum()) {
+      throw new UnsupportedSchemaException(rawType + " is not an enum");
+    }
+    Enum<?>[] constants = (Enum<?>[]) rawType.getEnumConstants();
+    List<String> names = new ArrayList<>();
+    for (Enum<?> constant : constants) {
+      // The reflect writer looks up the symbol of toString(), the reader the constant by name.
+      if (!constant.name().equals(constant.toString())) {
+        throw new UnsupportedSchemaException(rawType + " overrides toString()");
+      }
+      names.add(constant.name());
+    }
+    if (!names.equals(schema.getEnumSymbols())) {
+      throw new UnsupportedSchemaException(rawType + " does not match " + schema);
+    }
+    return new EnumPlan(constants);
+  }
+
+  private Plan unionPlan(TypeDescriptor<?> type, Schema schema)
+      throws UnsupportedSchemaException {
+    List<Schema> types = schema.getTypes();
+    if (types.size() != 2 || type.getRawType().isPrimitive()) {
+      throw new UnsupportedSchemaException("Unsupported union " + schema);
+    }
+    int nullIndex;
+    if (types.get(0).getType() == Schema.Type.NULL) {
+      nullIndex = 0;
+    } else if (types.get(1).getType() == Schema.Type.NULL) {
+      nullIndex = 1;
+    } else {
+      throw new UnsupportedSchemaException("Unsupported union " + schema);
+    }
+    return new NullablePlan(nullIndex, plan(type, types.get(1 - nullIndex)));
+  }
+
+  private Plan arrayPlan(TypeDescriptor<?> type, Schema schema, @Nullable String javaClass)
+      throws UnsupportedSchemaException {
+    Class<?> rawType = type.getRawType();
+    if (javaClass != null && !javaClass.equals(rawType.getName())) {
+      throw new UnsupportedSchemaException(rawType + " is read as " + javaClass);
+    }
+    if (type.isArray()) {
+      TypeDescriptor<?> componentType = type.getComponentType();
+      if (componentType.getRawType().isPrimitive()) {
+        throw new UnsupportedSchemaException("Unsupported array " + rawType);
+      }
+      return new ObjectArrayPlan(
+          componentType.getRawType(), plan(componentType, schema.getElementType()));
+    }
+    // The reflect reader creates an ArrayList for any collection type it can be assigned to.
+    if (Collection.class.isAssignableFrom(rawType) && rawType.isAssignableFrom(ArrayList.class)) {
+      TypeDescriptor<?> elementType = type.resolveType(Collection.class.getTypeParameters()[0]);
+      return new ListPlan(plan(elementType, schema.getElementType()));
+    }
+    throw new UnsupportedSchemaException("Unsupported array " + rawType);
+  }
+
+  private Plan mapPlan(TypeDescriptor<?> type, Schema schema, @Nullable String javaClass)
+      throws UnsupportedSchemaException {
+    Class<?> rawType = type.getRawType();
+    if ((javaClass != null && !javaClass.equals(rawType.getName()))
+        || schema.getProp(SpecificData.KEY_CLASS_PROP) != null
+        || !Map.class.isAssignableFrom(rawType)
+        || !rawType.isAssignableFrom(HashMap.class)) {
+      throw new UnsupportedSchemaException("Unsupported map " + rawType);
+    }
+    Class<?> keyType = type.resolveType(Map.class.getTypeParameters()[0]).getRawType();
+    if (!String.class.equals(keyType)) {
+      throw new UnsupportedSchemaException("Unsupported map key " + keyType);
+    }
+    return new MapPlan(
+        plan(type.resolveType(Map.class.getTypeParameters()[1]), schema.getValueType()));
+  }
+
+  private Plan recordPlan(TypeDescriptor<?> type, Schema schema)
+      throws UnsupportedSchemaException {
+    Class<?> rawType = type.getRawType();
+    RecordPlan plan = records.get(schema);
+    if (plan != null) {
+      if (!plan.constructor.getDeclaringClass().equals(rawType)) {
+        throw new UnsupportedSchemaException(schema + " is read as different classes");
+      }
+      return plan;
+    }
+    if (!(type.getType() instanceof Class)
+        || rawType.isInterface()
+        || Modifier.isAbstract(rawType.getModifiers())
+        || rawType.isAnnotationPresent(AvroSchema.class)) {
+      throw new UnsupportedSchemaException("Unsupported record " + type);
+    }
+    Constructor<?> constructor;
+    try {
+      constructor = rawType.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    } catch (NoSuchMethodException | SecurityException e) {
+      throw new UnsupportedSchemaException(rawType + " has no accessible default constructor");
+    }
+
+    // Register the plan before compiling the fields, which may refer to the record again.
+    List<Schema.Field> fields = schema.getFields();
+    plan = new RecordPlan(constructor, fields.size());
+    records.put(schema, plan);
+    for (int i = 0; i < fields.size(); i++) {
+      Field field = getField(rawType, fields.get(i).name());
+      if (field.isAnnotationPresent(AvroEncode.class)
+          || field.isAnnotationPresent(AvroSchema.class)) {
+        throw new UnsupportedSchemaException("Unsupported field " + field);
+      }
+      plan.accessors[i] = accessorFor(field);
+      plan.fields[i] = plan(type.resolveType(field.getGenericType()), fields.get(i).schema());
+    }
+    return plan;
+  }
+
+  /** Returns the field that the reflect reader and writer use for the given Avro field name. */
+  private static Field getField(Class<?> clazz, String name) throws UnsupportedSchemaException {
+    for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+          continue;
+        }
+        AvroName avroName = field.getAnnotation(AvroName.class);
+        if (name.equals(avroName != null ? avroName.value() : field.getName())) {
+          return field;
+        }
+      }
+    }
+    throw new UnsupportedSchemaException("Unable to get field " + name + " from " + clazz);
+  }
+
+  private static FieldAccessor accessorFor(Field field) {
+    Map<Field, FieldAccessor> accessors = ACCESSORS.get(field.getDeclaringClass());
+    FieldAccessor accessor = accessors.get(field);
+    if (accessor == null) {
+      accessor = generateAccessor(field);
+      if (accessor == null) {
+        accessor = new ReflectiveFieldAccessor(field);
+      }
+      accessors.put(field, accessor);
+    }
+    return accessor;
+  }
+
+  /**
+   * Generates a {@link FieldAccessor} that reads and writes the field directly. Returns {@code
+   * null} if the field can not be accessed from a class in the package of the record.
+   */
+  @Nullable
+  private static FieldAccessor generateAccessor(Field field) {
+    Class<?> declaringClass = field.getDeclaringClass();
+    int modifiers = field.getModifiers();
+    if (Modifier.isPrivate(modifiers)
+        || Modifier.isFinal(modifiers)
+        || declaringClass.getClassLoader() == null
+        || !isAccessibleFrom(field.getType(), declaringClass)) {
+      return null;
+    }
+    final TypeDescription declaringDescription = new TypeDescription.ForLoadedType(declaringClass);
+    FieldDescription.InDefinedShape fieldDescription = new FieldDescription.ForLoadedField(field);
+    try {
+      Class<? extends FieldAccessor> accessorClass =
+          new ByteBuddy()
+              // Define the accessor in the package of the record, so that it can access
+              // package-private records and fields.
+              .with(
+                  new NamingStrategy.SuffixingRandom("auxiliary") {
+                    @Override
+                    public String subclass(TypeDescription.Generic superClass) {
+                      return super.name(declaringDescription);
+                    }
+                  })
+              // class <accessor class> extends FieldAccessor {
+              .subclass(FieldAccessor.class)
+              //   public Object get(Object record) {
+              //     return (Object) ((<record class>) record).<field>;
+              //   }
+              .method(ElementMatchers.named("get"))
+              .intercept(new FieldGetter(declaringDescription, fieldDescription))
+              //   public void set(Object record, Object value) {
+              //     ((<record class>) record).<field> = (<field class>) value;
+              //   }
+              .method(ElementMatchers.named("set"))
+              .intercept(new FieldSetter(declaringDescription, fieldDescription))
+              // }
+              .make()
+              .load(declaringClass.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+              .getLoaded();
+      Constructor<? extends FieldAccessor> constructor = accessorClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return constructor.newInstance();
+    } catch (Exception | LinkageError e) {
+      // The class loader of the record does not allow defining the accessor; for example it
+      // can not see this class.
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether a class in the package and class loader of {@code from} can refer to
+   * {@code type}.
+   */
+  private static boolean isAccessibleFrom(Class<?> type, Class<?> from) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    if (type.isPrimitive()) {
+      return true;
+    }
+    if (type.getClassLoader() == from.getClassLoader()
+        && type.getPackage() != null
+        && type.getPackage().equals(from.getPackage())) {
+      return true;
+    }
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Implements {@link FieldAccessor#get} by reading the field directly. */
+  private static class FieldGetter implements Implementation {
+    private final TypeDescription recordType;
+    private final FieldDescription.InDefinedShape field;
+
+    private FieldGetter(TypeDescription recordType, FieldDescription.InDefinedShape field) {
+      this.recordType = recordType;
+      this.field = field;
+    }
+
+    @Override
+    public InstrumentedType prepare(InstrumentedType instrumentedType) {
+      return instrumentedType;
+    }
+
+    @Override
+    public ByteCodeAppender appender(Target implementationTarget) {
+      return new ByteCodeAppender() {
+        @Override
+        public Size apply(
+            MethodVisitor methodVisitor,
+            Context implementationContext,
+            MethodDescription instrumentedMethod) {
+          StackManipulation.Size size =
+              new StackManipulation.Compound(
+                      MethodVariableAccess.REFERENCE.loadFrom(1),
+                      TypeCasting.to(recordType),
+                      FieldAccess.forField(field).read(),
+                      Assigner.DEFAULT.assign(
+                          field.getType(), TypeDescription.Generic.OBJECT, Typing.STATIC),
+                      MethodReturn.REFERENCE)
+                  .apply(methodVisitor, implementationContext);
+          return new Size(size.getMaximalSize(), instrumentedMethod.getStackSize());
+        }
+      };
+    }
+  }
+
+  /** Implements {@link FieldAccessor#set} by writing the field directly. */
+  private static class FieldSetter implements Implementation {
+    private final TypeDescription recordType;
+    private final FieldDescription.InDefinedShape field;
+
+    private FieldSetter(TypeDescription recordType, FieldDescription.InDefinedShape field) {
+      this.recordType = recordType;
+      this.field = field;
+    }
+
+    @Override
+    public InstrumentedType prepare(InstrumentedType instrumentedType) {
+      return instrumentedType;
+    }
+
+    @Override
+    public ByteCodeAppender appender(Target implementationTarget) {
+      return new ByteCodeAppender() {
+        @Override
+        public Size apply(
+            MethodVisitor methodVisitor,
+            Context implementationContext,
+            MethodDescription instrumentedMethod) {
+          StackManipulation.Size size =
+              new StackManipulation.Compound(
+                      MethodVariableAccess.REFERENCE.loadFrom(1),
+                      TypeCasting.to(recordType),
+                      MethodVariableAccess.REFERENCE.loadFrom(2),
+                      Assigner.DEFAULT.assign(
+                          TypeDescription.Generic.OBJECT, field.getType(), Typing.DYNAMIC),
+                      FieldAccess.forField(field).write(),
+                      MethodReturn.VOID)
+                  .apply(methodVisitor, implementationContext);
+          return new Size(size.getMaximalSize(), instrumentedMethod.getStackSize());
+        }
+      };
+    }
+  }
+
+  /** A {@link FieldAccessor} for fields that can not be accessed by a generated accessor. */
+  private static class ReflectiveFieldAccessor extends FieldAccessor {
+    private final Field field;
+
+    private ReflectiveFieldAccessor(Field field) {
+      this.field = field;
+      field.setAccessible(true);
+    }
+
+    @Override
+    public Object get(Object record) {
+      try {
+        return field.get(record);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to get field " + field, e);
+      }
+    }
+
+    @Override
+    public void set(Object record, Object value) {
+      try {
+        field.set(record, value);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to set field " + field, e);
+      }
+    }
+  }
+
+  private static class BooleanPlan extends Plan {
+    private static final BooleanPlan INSTANCE = new BooleanPlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeBoolean((Boolean) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return in.readBoolean();
+    }
+  }
+
+  private static class IntPlan extends Plan {
+    private static final IntPlan INSTANCE = new IntPlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeInt((Integer) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return in.readInt();
+    }
+  }
+
+  private static class LongPlan extends Plan {
+    private static final LongPlan INSTANCE = new LongPlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeLong((Long) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return in.readLong();
+    }
+  }
+
+  private static class FloatPlan extends Plan {
+    private static final FloatPlan INSTANCE = new FloatPlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeFloat((Float) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return in.readFloat();
+    }
+  }
+
+  private static class DoublePlan extends Plan {
+    private static final DoublePlan INSTANCE = new DoublePlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeDouble((Double) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return in.readDouble();
+    }
+  }
+
+  private static class StringPlan extends Plan {
+    private static final StringPlan INSTANCE = new StringPlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeString((String) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return in.readString();
+    }
+  }
+
+  private static class BytesPlan extends Plan {
+    private static final BytesPlan INSTANCE = new BytesPlan();
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeBytes((byte[]) datum);
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      ByteBuffer buffer = in.readBytes(null);
+      if (buffer.hasArray()
+          && buffer.arrayOffset() == 0
+          && buffer.position() == 0
+          && buffer.remaining() == buffer.array().length) {
+        return buffer.array();
+      }
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+
+  private static class EnumPlan extends Plan {
+    private final Enum<?>[] constants;
+
+    private EnumPlan(Enum<?>[] constants) {
+      this.constants = constants;
+    }
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      out.writeEnum(((Enum<?>) datum).ordinal());
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return constants[in.readEnum()];
+    }
+  }
+
+  private static class NullablePlan extends Plan {
+    private final int nullIndex;
+    private final Plan valuePlan;
+
+    private NullablePlan(int nullIndex, Plan valuePlan) {
+      this.nullIndex = nullIndex;
+      this.valuePlan = valuePlan;
+    }
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      if (datum == null) {
+        out.writeIndex(nullIndex);
+        out.writeNull();
+      } else {
+        out.writeIndex(1 - nullIndex);
+        valuePlan.write(datum, out);
+      }
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      if (in.readIndex() == nullIndex) {
+        in.readNull();
+        return null;
+      }
+      return valuePlan.read(in);
+    }
+  }
+
+  private static class ListPlan extends Plan {
+    private final Plan elementPlan;
+
+    private ListPlan(Plan elementPlan) {
+      this.elementPlan = elementPlan;
+    }
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      Collection<?> collection = (Collection<?>) datum;
+      out.writeArrayStart();
+      out.setItemCount(collection.size());
+      for (Object element : collection) {
+        out.startItem();
+        elementPlan.write(element, out);
+      }
+      out.writeArrayEnd();
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      return readElements(elementPlan, in);
+    }
+  }
+
+  private static class ObjectArrayPlan extends Plan {
+    private final Class<?> componentType;
+    private final Plan elementPlan;
+
+    private ObjectArrayPlan(Class<?> componentType, Plan elementPlan) {
+      this.componentType = componentType;
+      this.elementPlan = elementPlan;
+    }
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      Object[] array = (Object[]) datum;
+      out.writeArrayStart();
+      out.setItemCount(array.length);
+      for (Object element : array) {
+        out.startItem();
+        elementPlan.write(element, out);
+      }
+      out.writeArrayEnd();
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      List<Object> elements = readElements(elementPlan, in);
+      return elements.toArray((Object[]) Array.newInstance(componentType, elements.size()));
+    }
+  }
+
+  private static List<Object> readElements(Plan elementPlan, Decoder in) throws IOException {
+    long blockSize = in.readArrayStart();
+    List<Object> elements = new ArrayList<>((int) Math.min(blockSize, Integer.MAX_VALUE));
+    for (; blockSize != 0; blockSize = in.arrayNext()) {
+      for (long i = 0; i < blockSize; i++) {
+        elements.add(elementPlan.read(in));
+      }
+    }
+    return elements;
+  }
+
+  private static class MapPlan extends Plan {
+    private final Plan valuePlan;
+
+    private MapPlan(Plan valuePlan) {
+      this.valuePlan = valuePlan;
+    }
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      Map<?, ?> map = (Map<?, ?>) datum;
+      out.writeMapStart();
+      out.setItemCount(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        out.startItem();
+        out.writeString(entry.getKey().toString());
+        valuePlan.write(entry.getValue(), out);
+      }
+      out.writeMapEnd();
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      Map<String, Object> map = new HashMap<>();
+      for (long blockSize = in.readMapStart(); blockSize != 0; blockSize = in.mapNext()) {
+        for (long i = 0; i < blockSize; i++) {
+          String key = in.readString();
+          map.put(key, valuePlan.read(in));
+        }
+      }
+      return map;
+    }
+  }
+
+  private static class RecordPlan extends Plan {
+    private final Constructor<?> constructor;
+    private final FieldAccessor[] accessors;
+    private final Plan[] fields;
+
+    private RecordPlan(Constructor<?> constructor, int numFields) {
+      this.constructor = constructor;
+      this.accessors = new FieldAccessor[numFields];
+      this.fields = new Plan[numFields];
+    }
+
+    @Override
+    void write(Object datum, Encoder out) throws IOException {
+      for (int i = 0; i < fields.length; i++) {
+        fields[i].write(accessors[i].get(datum), out);
+      }
+    }
+
+    @Override
+    Object read(Decoder in) throws IOException {
+      Object record;
+      try {
+        record = constructor.newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new IOException(
+            "Unable to create an instance of " + constructor.getDeclaringClass(), e);
+      }
+      for (int i = 0; i < fields.length; i++) {
+        accessors[i].set(record, fields[i].read(in));
+      }
+      return record;
+    }
+  }
+}
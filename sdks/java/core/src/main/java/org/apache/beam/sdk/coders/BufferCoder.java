@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.IOException;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
+
+/**
+ * An optional interface for a {@link Coder} that can encode values directly into an
+ * {@link EncodingBuffer} and decode them from a {@link DecodingBuffer}, without the stream
+ * wrappers and temporary arrays of its {@link Coder#encode} and {@link Coder#decode} methods.
+ *
+ * <p>The encoding must be identical to the one of the {@link Coder} methods in the same
+ * {@link Coder.Context}. Callers should go through {@link CoderUtils#encodeToBuffer} and
+ * {@link CoderUtils#decodeFromBuffer}, which fall back to the {@link Coder} methods for coders
+ * that do not implement this interface. They also fall back for a subclass that overrides
+ * {@link Coder#encode} or {@link Coder#decode} without overriding the matching method of this
+ * interface, so that the overriding method is not bypassed.
+ *
+ * @param <T> the type of values being encoded and decoded
+ */
+public interface BufferCoder<T> {
+  /**
+   * Encodes the given value into the given buffer, like {@link Coder#encode}.
+   */
+  void encodeToBuffer(T value, EncodingBuffer buffer, Coder.Context context)
+      throws CoderException, IOException;
+
+  /**
+   * Decodes a value from the given buffer, like {@link Coder#decode}.
+   */
+  T decodeFromBuffer(DecodingBuffer buffer, Coder.Context context)
+      throws CoderException, IOException;
+}
@@ -22,6 +22,8 @@ import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
 import org.apache.beam.sdk.util.StreamUtils;
 import org.apache.beam.sdk.util.VarInt;
@@ -38,7 +40,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * encoded via a {@link VarIntCoder}.</li>
  * </ul>
  */
-public class ByteArrayCoder extends AtomicCoder<byte[]> {
+public class ByteArrayCoder extends AtomicCoder<byte[]> implements BufferCoder<byte[]> {
 
   @JsonCreator
   public static ByteArrayCoder of() {
@@ -103,6 +105,31 @@ public class ByteArrayCoder extends AtomicCoder<byte[]> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(byte[] value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null byte[]");
+    }
+    if (!context.isWholeStream) {
+      buffer.writeVarInt(value.length);
+    }
+    buffer.write(value, 0, value.length);
+  }
+
+  @Override
+  public byte[] decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    if (context.isWholeStream) {
+      return buffer.readBytes(buffer.available());
+    }
+    int length = buffer.readVarInt();
+    if (length < 0) {
+      throw new IOException("invalid length " + length);
+    }
+    return buffer.readBytes(length);
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -22,6 +22,8 @@ import com.google.common.base.Converter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.joda.time.Instant;
@@ -30,7 +32,7 @@ import org.joda.time.Instant;
  * A {@link Coder} for joda {@link Instant} that encodes it as a big endian {@link Long}
  * shifted such that lexicographic ordering of the bytes corresponds to chronological order.
  */
-public class InstantCoder extends AtomicCoder<Instant> {
+public class InstantCoder extends AtomicCoder<Instant> implements BufferCoder<Instant> {
 
   @JsonCreator
   public static InstantCoder of() {
@@ -85,6 +87,22 @@ public class InstantCoder extends AtomicCoder<Instant> {
     return ORDER_PRESERVING_CONVERTER.reverse().convert(longCoder.decode(inStream, context));
   }
 
+  @Override
+  public void encodeToBuffer(Instant value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Instant");
+    }
+    // Same shift as ORDER_PRESERVING_CONVERTER, without boxing the millis.
+    buffer.writeBigEndianLong(value.getMillis() - Long.MIN_VALUE);
+  }
+
+  @Override
+  public Instant decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws CoderException, IOException {
+    return new Instant(buffer.readBigEndianLong() + Long.MIN_VALUE);
+  }
+
   /**
    * {@inheritDoc}
    *
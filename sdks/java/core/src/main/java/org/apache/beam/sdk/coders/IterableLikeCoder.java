@@ -31,6 +31,9 @@ import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import org.apache.beam.sdk.util.BufferedElementCountingOutputStream;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.util.common.ElementByteSizeObservableIterable;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
@@ -58,7 +61,7 @@ import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
  * @param <IterableT> the type of the Iterables being transcoded
  */
 public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
-    extends StandardCoder<IterableT> {
+    extends StandardCoder<IterableT> implements BufferCoder<IterableT> {
   public Coder<T> getElemCoder() {
     return elementCoder;
   }
@@ -155,6 +158,46 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
     return decodeToIterable(elements);
   }
 
+  @Override
+  public void encodeToBuffer(IterableT iterable, EncodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    if (!(iterable instanceof Collection)) {
+      // Iterables of unknown size are encoded in blocks, which the stream encoding buffers.
+      encode(iterable, buffer, context);
+      return;
+    }
+    Context nestedContext = context.nested();
+    Collection<T> collection = (Collection<T>) iterable;
+    buffer.writeBigEndianInt(collection.size());
+    for (T elem : collection) {
+      CoderUtils.encodeToBuffer(elementCoder, elem, buffer, nestedContext);
+    }
+  }
+
+  @Override
+  public IterableT decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    Context nestedContext = context.nested();
+    int size = buffer.readBigEndianInt();
+    if (size >= 0) {
+      List<T> elements = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        elements.add(CoderUtils.decodeFromBuffer(elementCoder, buffer, nestedContext));
+      }
+      return decodeToIterable(elements);
+    }
+    List<T> elements = new ArrayList<>();
+    long count = buffer.readVarLong();
+    while (count > 0L) {
+      elements.add(CoderUtils.decodeFromBuffer(elementCoder, buffer, nestedContext));
+      --count;
+      if (count == 0L) {
+        count = buffer.readVarLong();
+      }
+    }
+    return decodeToIterable(elements);
+  }
+
   @Override
   public List<? extends Coder<?>> getCoderArguments() {
     return Arrays.asList(elementCoder);
@@ -28,6 +28,9 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.beam.sdk.util.CloudObject;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.PropertyNames;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.sdk.values.KV;
@@ -40,7 +43,7 @@ import org.apache.beam.sdk.values.TypeParameter;
  * @param <K> the type of the keys of the KVs being transcoded
  * @param <V> the type of the values of the KVs being transcoded
  */
-public class KvCoder<K, V> extends StandardCoder<KV<K, V>> {
+public class KvCoder<K, V> extends StandardCoder<KV<K, V>> implements BufferCoder<KV<K, V>> {
   public static <K, V> KvCoder<K, V> of(Coder<K> keyCoder,
                                         Coder<V> valueCoder) {
     return new KvCoder<>(keyCoder, valueCoder);
@@ -97,6 +100,24 @@ public class KvCoder<K, V> extends StandardCoder<KV<K, V>> {
     return KV.of(key, value);
   }
 
+  @Override
+  public void encodeToBuffer(KV<K, V> kv, EncodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    if (kv == null) {
+      throw new CoderException("cannot encode a null KV");
+    }
+    CoderUtils.encodeToBuffer(keyCoder, kv.getKey(), buffer, context.nested());
+    CoderUtils.encodeToBuffer(valueCoder, kv.getValue(), buffer, context);
+  }
+
+  @Override
+  public KV<K, V> decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    K key = CoderUtils.decodeFromBuffer(keyCoder, buffer, context.nested());
+    V value = CoderUtils.decodeFromBuffer(valueCoder, buffer, context);
+    return KV.of(key, value);
+  }
+
   @Override
   public List<? extends Coder<?>> getCoderArguments() {
     return Arrays.asList(keyCoder, valueCoder);
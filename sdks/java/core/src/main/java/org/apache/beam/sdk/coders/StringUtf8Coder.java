@@ -29,6 +29,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
 import java.nio.charset.StandardCharsets;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
 import org.apache.beam.sdk.util.StreamUtils;
 import org.apache.beam.sdk.util.VarInt;
@@ -39,7 +41,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * If in a nested context, prefixes the string with an integer length field,
  * encoded via a {@link VarIntCoder}.
  */
-public class StringUtf8Coder extends AtomicCoder<String> {
+public class StringUtf8Coder extends AtomicCoder<String> implements BufferCoder<String> {
 
   @JsonCreator
   public static StringUtf8Coder of() {
@@ -105,6 +107,32 @@ public class StringUtf8Coder extends AtomicCoder<String> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(String value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null String");
+    }
+    buffer.writeUtf8(value, !context.isWholeStream);
+  }
+
+  @Override
+  public String decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws IOException {
+    if (context.isWholeStream) {
+      return buffer.readUtf8(buffer.available());
+    }
+    try {
+      int len = buffer.readVarInt();
+      if (len < 0) {
+        throw new CoderException("Invalid encoded string length: " + len);
+      }
+      return buffer.readUtf8(len);
+    } catch (EOFException exn) {
+      throw new CoderException(exn);
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
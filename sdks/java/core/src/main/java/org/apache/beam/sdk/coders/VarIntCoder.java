@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
@@ -31,7 +33,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * numbers always take 5 bytes, so {@link BigEndianIntegerCoder} may be preferable for
  * integers that are known to often be large or negative.
  */
-public class VarIntCoder extends AtomicCoder<Integer> {
+public class VarIntCoder extends AtomicCoder<Integer> implements BufferCoder<Integer> {
 
   @JsonCreator
   public static VarIntCoder of() {
@@ -66,6 +68,25 @@ public class VarIntCoder extends AtomicCoder<Integer> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(Integer value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Integer");
+    }
+    buffer.writeVarInt(value.intValue());
+  }
+
+  @Override
+  public Integer decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    try {
+      return buffer.readVarInt();
+    } catch (EOFException exn) {
+      throw new CoderException(exn);
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.TypeDescriptor;
 
@@ -31,7 +33,7 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  * numbers always take 10 bytes, so {@link BigEndianLongCoder} may be preferable for
  * longs that are known to often be large or negative.
  */
-public class VarLongCoder extends AtomicCoder<Long> {
+public class VarLongCoder extends AtomicCoder<Long> implements BufferCoder<Long> {
 
   @JsonCreator
   public static VarLongCoder of() {
@@ -66,6 +68,25 @@ public class VarLongCoder extends AtomicCoder<Long> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(Long value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Long");
+    }
+    buffer.writeVarLong(value.longValue());
+  }
+
+  @Override
+  public Long decodeFromBuffer(DecodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    try {
+      return buffer.readVarLong();
+    } catch (EOFException exn) {
+      throw new CoderException(exn);
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
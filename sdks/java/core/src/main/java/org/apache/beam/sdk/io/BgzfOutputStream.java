@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An {@link OutputStream} that compresses the bytes written to it in the BGZF format, which is
+ * read by {@link BgzfSeekableChannel}.
+ *
+ * <p>The output is a series of gzip members, called blocks, that each hold at most 65280 bytes
+ * of data and are followed by an empty block marking the end of the file. Data is only written
+ * in whole blocks, so {@link #flush} does not write buffered data, as is the case for
+ * {@link java.util.zip.GZIPOutputStream}.
+ */
+class BgzfOutputStream extends OutputStream {
+  /** The maximum size of a block, including its header and trailer. */
+  static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+  /** The size of the header of a block written by this stream. */
+  static final int HEADER_LENGTH = 18;
+
+  /** The size of the trailer of a block, holding the CRC-32 and size of its data. */
+  static final int TRAILER_LENGTH = 8;
+
+  /** The amount of data held by a block, which is kept below 64 KiB as by {@code bgzip}. */
+  private static final int MAX_DATA_LENGTH = 0xff00;
+
+  /** The empty block that ends a file. */
+  private static final byte[] EOF_BLOCK = {
+      31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 66, 67, 2, 0,
+      27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private final OutputStream out;
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final CRC32 crc = new CRC32();
+  private final byte[] buffer = new byte[MAX_DATA_LENGTH];
+  private final byte[] block = new byte[MAX_BLOCK_SIZE];
+  private int count;
+  private boolean closed;
+
+  BgzfOutputStream(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (count == buffer.length) {
+      writeBuffer();
+    }
+    buffer[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == buffer.length) {
+        writeBuffer();
+      }
+      int length = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, length);
+      count += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /** Writes the buffered data and the end of file block, and closes the underlying stream. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (count > 0) {
+        writeBuffer();
+      }
+      out.write(EOF_BLOCK);
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+
+  private void writeBuffer() throws IOException {
+    writeBlock(buffer, 0, count);
+    count = 0;
+  }
+
+  private void writeBlock(byte[] data, int off, int len) throws IOException {
+    deflater.reset();
+    deflater.setInput(data, off, len);
+    deflater.finish();
+    int capacity = block.length - HEADER_LENGTH - TRAILER_LENGTH;
+    int compressedLength = 0;
+    while (!deflater.finished() && compressedLength < capacity) {
+      compressedLength +=
+          deflater.deflate(block, HEADER_LENGTH + compressedLength, capacity - compressedLength);
+    }
+    if (!deflater.finished()) {
+      // Data that does not compress may not fit in a block, in which case it is split in two.
+      int half = len / 2;
+      writeBlock(data, off, half);
+      writeBlock(data, off + half, len - half);
+      return;
+    }
+
+    int blockSize = HEADER_LENGTH + compressedLength + TRAILER_LENGTH;
+    // A gzip header with FEXTRA set and no modification time, followed by the BC extra subfield
+    // holding the size of the block minus one.
+    block[0] = 31;
+    block[1] = (byte) 139;
+    block[2] = 8;
+    block[3] = 4;
+    writeInt(block, 4, 0);
+    block[8] = 0;
+    block[9] = (byte) 255;
+    writeShort(block, 10, 6);
+    block[12] = 66;
+    block[13] = 67;
+    writeShort(block, 14, 2);
+    writeShort(block, 16, blockSize - 1);
+
+    crc.reset();
+    crc.update(data, off, len);
+    writeInt(block, HEADER_LENGTH + compressedLength, (int) crc.getValue());
+    writeInt(block, HEADER_LENGTH + compressedLength + 4, len);
+    out.write(block, 0, blockSize);
+  }
+
+  private static void writeShort(byte[] b, int off, int value) {
+    b[off] = (byte) value;
+    b[off + 1] = (byte) (value >>> 8);
+  }
+
+  private static void writeInt(byte[] b, int off, int value) {
+    writeShort(b, off, value);
+    writeShort(b, off + 2, value >>> 16);
+  }
+}
@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+
+/**
+ * A read-only {@link SeekableByteChannel} over the decompressed contents of a file in the BGZF
+ * format, as written by {@code bgzip} or {@link BgzfOutputStream}. Positions of the channel are
+ * offsets in the decompressed contents.
+ *
+ * <p>A BGZF file is a series of gzip members, called blocks, of at most 64 KiB each, whose
+ * headers record the size of the block. The file remains a valid gzip file, but each block can
+ * also be decompressed by itself.
+ *
+ * <p>To seek, the channel needs to know where the block containing the new position starts. It
+ * reads the starts of the blocks from a {@code .gzi} index, as written by {@code bgzip -i}, if
+ * one is given. Otherwise, it finds them by reading the header and trailer of each block before
+ * the new position, without decompressing the block.
+ *
+ * <p>To start reading far into a file without an index, {@link #getUncompressedStartOfBlockAt}
+ * instead finds a block shortly before the given offset by scanning for the bytes that start a
+ * block header, like htsjdk does. A candidate is accepted if the sizes in its header and in the
+ * headers of the blocks following it are consistent, and it decompresses correctly. The
+ * positions of the channel are then offsets relative to the start of that block, rather than to
+ * the start of the file.
+ */
+class BgzfSeekableChannel implements SeekableByteChannel {
+  /** The suffix of the name of the index of a BGZF file, appended to the name of the file. */
+  static final String INDEX_SUFFIX = ".gzi";
+
+  /** The number of consecutive block headers checked when validating a scanned block. */
+  private static final int BLOCKS_TO_VALIDATE = 3;
+
+  /**
+   * Returns true if the given channel starts with a BGZF block header. Consumes at most the
+   * length of the header from the channel.
+   */
+  static boolean startsWithBlockHeader(ReadableByteChannel channel) throws IOException {
+    ByteBuffer header =
+        ByteBuffer.allocate(BgzfOutputStream.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining()) {
+      if (channel.read(header) < 0) {
+        return false;
+      }
+    }
+    return isBlockHeader(header, 0);
+  }
+
+  /**
+   * Returns true if the given buffer holds the header of a BGZF block at the given index: the
+   * gzip magic bytes, the deflate method, the extra field flag, and an extra field made of only
+   * the {@code BC} subfield, as written by {@code bgzip}.
+   */
+  private static boolean isBlockHeader(ByteBuffer buffer, int index) {
+    return (buffer.get(index) & 0xff) == 31
+        && (buffer.get(index + 1) & 0xff) == 139
+        && buffer.get(index + 2) == 8
+        && (buffer.get(index + 3) & 4) != 0
+        && buffer.getShort(index + 10) == 6
+        && buffer.get(index + 12) == 66
+        && buffer.get(index + 13) == 67
+        && buffer.getShort(index + 14) == 2;
+  }
+
+  private final SeekableByteChannel channel;
+  private final long compressedSize;
+  private final Inflater inflater = new Inflater(true);
+  private final CRC32 crc = new CRC32();
+
+  /**
+   * The compressed and decompressed offsets at which the known blocks start, in order. The
+   * blocks are known up to the block starting at {@code nextCompressedStart}.
+   */
+  private long[] compressedStarts = new long[16];
+  private long[] uncompressedStarts = new long[16];
+  private int numBlocks;
+  private long nextCompressedStart;
+  private long nextUncompressedStart;
+
+  private final ByteBuffer compressed =
+      ByteBuffer.allocate(BgzfOutputStream.MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  /** The size of the last block read, including its header and trailer. */
+  private int blockSize;
+  /** The decompressed data of the block at index {@code blockIndex}, if not -1. */
+  private final byte[] block = new byte[BgzfOutputStream.MAX_BLOCK_SIZE];
+  private int blockLength;
+  private int blockIndex = -1;
+
+  private long position;
+  private boolean open = true;
+
+  /**
+   * Creates a channel reading the BGZF file read by the given channel, which it takes ownership
+   * of.
+   *
+   * @param index a channel reading the {@code .gzi} index of the file, or {@code null} to find
+   *     the blocks of the file by reading it
+   */
+  BgzfSeekableChannel(SeekableByteChannel channel, @Nullable ReadableByteChannel index)
+      throws IOException {
+    this.channel = channel;
+    this.compressedSize = channel.size();
+    if (index != null) {
+      readIndex(index);
+    }
+  }
+
+  /**
+   * Reads an index, which holds the number of entries followed by the compressed and decompressed
+   * offset of the start of each block after the first, as little endian 64-bit integers.
+   */
+  private void readIndex(ReadableByteChannel index) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.limit(8);
+    readFully(index, buffer);
+    long numEntries = buffer.getLong(0);
+    for (long i = 0; i < numEntries; i++) {
+      buffer.clear();
+      readFully(index, buffer);
+      long compressedStart = buffer.getLong(0);
+      long uncompressedStart = buffer.getLong(8);
+      if (compressedStart <= nextCompressedStart || uncompressedStart < nextUncompressedStart) {
+        throw new IOException("The entries of the BGZF index are not in order");
+      }
+      // The last entry is not added, because the size of its block is not known.
+      addBlock(nextCompressedStart, compressedStart, uncompressedStart);
+    }
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    if (!loadBlockContaining(position)) {
+      return -1;
+    }
+    int offset = (int) (position - uncompressedStarts[blockIndex]);
+    int length = Math.min(dst.remaining(), blockLength - offset);
+    dst.put(block, offset, length);
+    position += length;
+    return length;
+  }
+
+  /**
+   * Returns the decompressed offset at which the first block starting at or after the given
+   * offset in the file starts, or the decompressed size of the file if there is no such block.
+   *
+   * <p>If no blocks are known yet and the offset is more than a block past the start of the file,
+   * the blocks are found from a block located by scanning the preceding {@link
+   * BgzfOutputStream#MAX_BLOCK_SIZE} bytes, and the returned offset is relative to that block. It
+   * is greater than zero, and at least the block before the returned offset can be read. The
+   * blocks are found from the start of the file if no such block is found.
+   */
+  long getUncompressedStartOfBlockAt(long compressedOffset) throws IOException {
+    ensureOpen();
+    if (numBlocks == 0 && compressedOffset > BgzfOutputStream.MAX_BLOCK_SIZE) {
+      long anchor = findBlockStart(compressedOffset - BgzfOutputStream.MAX_BLOCK_SIZE);
+      if (anchor >= 0) {
+        nextCompressedStart = anchor;
+        long uncompressedStart = scanToBlockAt(compressedOffset);
+        if (uncompressedStart > 0) {
+          return uncompressedStart;
+        }
+        // Nothing precedes the block in the decompressed contents since the anchor, so a reader
+        // starting at it could not tell whether it starts a record.
+        numBlocks = 0;
+        nextCompressedStart = 0;
+        nextUncompressedStart = 0;
+      }
+    }
+    return scanToBlockAt(compressedOffset);
+  }
+
+  private long scanToBlockAt(long compressedOffset) throws IOException {
+    while (nextCompressedStart < compressedOffset && nextCompressedStart < compressedSize) {
+      scanNextBlock();
+    }
+    int index = Arrays.binarySearch(compressedStarts, 0, numBlocks, compressedOffset);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < numBlocks ? uncompressedStarts[index] : nextUncompressedStart;
+  }
+
+  /**
+   * Returns the offset of the first valid block starting at or after the given offset, found by
+   * scanning for block headers, or -1 if there is none within a block of the offset.
+   */
+  private long findBlockStart(long offset) throws IOException {
+    int length = (int) Math.min(
+        compressedSize - offset,
+        BgzfOutputStream.MAX_BLOCK_SIZE + BgzfOutputStream.HEADER_LENGTH);
+    if (length < BgzfOutputStream.HEADER_LENGTH) {
+      return -1;
+    }
+    ByteBuffer window = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    channel.position(offset);
+    readFully(channel, window);
+    for (int i = 0; i + BgzfOutputStream.HEADER_LENGTH <= length; i++) {
+      if (isBlockHeader(window, i) && isValidBlockAt(offset + i)) {
+        return offset + i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if the sizes of the block at the given offset and of the blocks following it
+   * lead to further block headers or to the end of the file, and the block decompresses.
+   */
+  private boolean isValidBlockAt(long start) {
+    try {
+      long next = start;
+      for (int i = 0; i < BLOCKS_TO_VALIDATE && next < compressedSize; i++) {
+        next += readBlockSize(next);
+      }
+      if (next > compressedSize) {
+        return false;
+      }
+      readBlock(start);
+      inflateBlock();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the offset in the file of the block containing the given decompressed offset, which
+   * must have been read already.
+   */
+  long getCompressedStartOfBlockContaining(long uncompressedOffset) {
+    checkArgument(
+        uncompressedOffset >= 0 && uncompressedOffset < nextUncompressedStart,
+        "Offset %s has not been read",
+        uncompressedOffset);
+    return compressedStarts[indexOfBlockContaining(uncompressedOffset)];
+  }
+
+  @Override
+  public long position() throws IOException {
+    ensureOpen();
+    return position;
+  }
+
+  @Override
+  public BgzfSeekableChannel position(long newPosition) throws IOException {
+    checkArgument(newPosition >= 0, "The position must not be negative, but was %s", newPosition);
+    ensureOpen();
+    position = newPosition;
+    return this;
+  }
+
+  /** Returns the decompressed size of the file, which requires finding all of its blocks. */
+  @Override
+  public long size() throws IOException {
+    ensureOpen();
+    while (nextCompressedStart < compressedSize) {
+      scanNextBlock();
+    }
+    return nextUncompressedStart;
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (open) {
+      open = false;
+      inflater.end();
+      channel.close();
+    }
+  }
+
+  /**
+   * Decompresses the block containing the given decompressed offset, unless it is the current
+   * block. Returns {@code false} if the offset is at or past the end of the file.
+   */
+  private boolean loadBlockContaining(long uncompressedOffset) throws IOException {
+    if (blockIndex >= 0
+        && uncompressedOffset >= uncompressedStarts[blockIndex]
+        && uncompressedOffset < uncompressedStarts[blockIndex] + blockLength) {
+      return true;
+    }
+    while (nextUncompressedStart <= uncompressedOffset && nextCompressedStart < compressedSize) {
+      if (nextUncompressedStart == uncompressedOffset) {
+        // When reading sequentially, the next block is decompressed rather than scanned.
+        long start = nextCompressedStart;
+        readBlock(start);
+        blockLength = inflateBlock();
+        addBlock(start, start + blockSize, nextUncompressedStart + blockLength);
+        blockIndex = numBlocks - 1;
+        if (blockLength > 0) {
+          return true;
+        }
+      } else {
+        scanNextBlock();
+      }
+    }
+    if (uncompressedOffset >= nextUncompressedStart) {
+      return false;
+    }
+    blockIndex = indexOfBlockContaining(uncompressedOffset);
+    readBlock(compressedStarts[blockIndex]);
+    blockLength = inflateBlock();
+    return true;
+  }
+
+  /** Adds the block at {@code nextCompressedStart} by reading only its header and trailer. */
+  private void scanNextBlock() throws IOException {
+    long start = nextCompressedStart;
+    int size = readBlockSize(start);
+    compressed.clear().limit(4);
+    channel.position(start + size - 4);
+    readFully(channel, compressed);
+    addBlock(start, start + size, nextUncompressedStart + readUncompressedSize(0));
+  }
+
+  /** Adds the block starting at {@code nextCompressedStart}, which ends at the given offsets. */
+  private void addBlock(long compressedStart, long compressedEnd, long uncompressedEnd) {
+    if (numBlocks == compressedStarts.length) {
+      compressedStarts = Arrays.copyOf(compressedStarts, 2 * numBlocks);
+      uncompressedStarts = Arrays.copyOf(uncompressedStarts, 2 * numBlocks);
+    }
+    compressedStarts[numBlocks] = compressedStart;
+    uncompressedStarts[numBlocks] = nextUncompressedStart;
+    numBlocks++;
+    nextCompressedStart = compressedEnd;
+    nextUncompressedStart = uncompressedEnd;
+  }
+
+  /**
+   * Returns the index of the last known block starting at or before the given decompressed
+   * offset. Empty blocks start at the same offset as the next block, so they are never returned.
+   */
+  private int indexOfBlockContaining(long uncompressedOffset) {
+    int low = 0;
+    int high = numBlocks - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (uncompressedStarts[mid] <= uncompressedOffset) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /** Reads the whole block starting at the given offset into {@link #compressed}. */
+  private void readBlock(long start) throws IOException {
+    blockSize = readBlockSize(start);
+    compressed.limit(blockSize);
+    readFully(channel, compressed);
+  }
+
+  /**
+   * Reads the header of the block starting at the given offset into {@link #compressed}, and
+   * returns the size of the block.
+   */
+  private int readBlockSize(long start) throws IOException {
+    channel.position(start);
+    compressed.clear().limit(12);
+    readFully(channel, compressed);
+    if ((compressed.get(0) & 0xff) != 31
+        || (compressed.get(1) & 0xff) != 139
+        || compressed.get(2) != 8
+        || (compressed.get(3) & 4) == 0) {
+      throw new IOException(String.format("Not a BGZF block at offset %d", start));
+    }
+    int extraLength = compressed.getShort(10) & 0xffff;
+    compressed.limit(12 + extraLength);
+    readFully(channel, compressed);
+    // Look for the BC subfield holding the size of the block minus one.
+    for (int i = 12; i + 4 <= 12 + extraLength; ) {
+      int length = compressed.getShort(i + 2) & 0xffff;
+      if (compressed.get(i) == 66 && compressed.get(i + 1) == 67 && length == 2) {
+        int size = (compressed.getShort(i + 4) & 0xffff) + 1;
+        if (size < 12 + extraLength + BgzfOutputStream.TRAILER_LENGTH) {
+          break;
+        }
+        return size;
+      }
+      i += 4 + length;
+    }
+    throw new IOException(String.format("Not a BGZF block at offset %d", start));
+  }
+
+  /** Decompresses the block read by {@link #readBlock} into {@link #block}. */
+  private int inflateBlock() throws IOException {
+    int dataStart = 12 + (compressed.getShort(10) & 0xffff);
+    int trailerStart = blockSize - BgzfOutputStream.TRAILER_LENGTH;
+    int length = readUncompressedSize(blockSize - 4);
+    inflater.reset();
+    inflater.setInput(compressed.array(), dataStart, trailerStart - dataStart);
+    int inflated = 0;
+    try {
+      while (!inflater.finished()) {
+        int n = inflater.inflate(block, inflated, block.length - inflated);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += n;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt BGZF block", e);
+    }
+    crc.reset();
+    crc.update(block, 0, inflated);
+    if (!inflater.finished()
+        || inflated != length
+        || (int) crc.getValue() != compressed.getInt(trailerStart)) {
+      throw new IOException("Corrupt BGZF block");
+    }
+    return length;
+  }
+
+  /** Returns the decompressed size of a block, held in {@link #compressed} at the index. */
+  private int readUncompressedSize(int index) throws IOException {
+    int size = compressed.getInt(index);
+    if (size < 0 || size > BgzfOutputStream.MAX_BLOCK_SIZE) {
+      throw new IOException("Corrupt BGZF block");
+    }
+    return size;
+  }
+
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Unexpected end of BGZF input");
+      }
+    }
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+  }
+}
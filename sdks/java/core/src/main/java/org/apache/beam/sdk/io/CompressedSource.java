@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
@@ -29,15 +30,18 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.NoSuchElementException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.IOChannelUtils;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.deflate.DeflateCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
@@ -56,18 +60,23 @@ import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
  * } </pre>
  *
  * <p>Supported compression algorithms are {@link CompressionMode#GZIP},
- * {@link CompressionMode#BZIP2}, {@link CompressionMode#ZIP} and {@link CompressionMode#DEFLATE}.
- * User-defined compression types are supported by implementing
+ * {@link CompressionMode#BZIP2}, {@link CompressionMode#ZIP}, {@link CompressionMode#DEFLATE} and
+ * {@link CompressionMode#BGZF}. User-defined compression types are supported by implementing
  * {@link DecompressingChannelFactory}.
  *
  * <p>By default, the compression algorithm is selected from those supported in
  * {@link CompressionMode} based on the file name provided to the source, namely
  * {@code ".bz2"} indicates {@link CompressionMode#BZIP2}, {@code ".gz"} indicates
- * {@link CompressionMode#GZIP}, {@code ".zip"} indicates {@link CompressionMode#ZIP} and
- * {@code ".deflate"} indicates {@link CompressionMode#DEFLATE}. If the file name does not match
- * any of the supported
+ * {@link CompressionMode#GZIP}, {@code ".zip"} indicates {@link CompressionMode#ZIP},
+ * {@code ".deflate"} indicates {@link CompressionMode#DEFLATE} and {@code ".bgz"} indicates
+ * {@link CompressionMode#BGZF}. If the file name does not match any of the supported
  * algorithms, it is assumed to be uncompressed data.
  *
+ * <p>Compressed files are read by a single reader, except for files compressed with
+ * {@link CompressionMode#BGZF}, which are split at the boundaries of their blocks. When the
+ * compression is selected from the file name, a {@code ".gz"} file that starts with a BGZF block
+ * header, as written by {@code bgzip}, is also read as {@link CompressionMode#BGZF}.
+ *
  * @param <T> The type to read from the compressed file.
  */
 @Experimental(Experimental.Kind.SOURCE_SINK)
@@ -185,6 +194,29 @@ public class CompressedSource<T> extends FileBasedSource<T> {
         return Channels.newChannel(
             new DeflateCompressorInputStream(Channels.newInputStream(channel)));
       }
+    },
+
+    /**
+     * Reads a byte channel assuming it is compressed in the BGZF format, as written by
+     * {@code bgzip} or {@link FileBasedSink.CompressionType#BGZF}.
+     *
+     * <p>BGZF files are gzip files made of independently compressed blocks, so unlike the other
+     * modes, a {@code CompressedSource} can split them if its delegate source is splittable. A
+     * {@code .gzi} index next to the file, as written by {@code bgzip -i}, is used to find the
+     * blocks if it exists.
+     */
+    BGZF {
+      @Override
+      public boolean matches(String fileName) {
+        return fileName.toLowerCase().endsWith(".bgz");
+      }
+
+      @Override
+      public ReadableByteChannel createDecompressingChannel(ReadableByteChannel channel)
+          throws IOException {
+        return Channels.newChannel(
+            new GzipCompressorInputStream(Channels.newInputStream(channel), true));
+      }
     };
 
     /**
@@ -286,6 +318,12 @@ public class CompressedSource<T> extends FileBasedSource<T> {
   private final FileBasedSource<T> sourceDelegate;
   private final DecompressingChannelFactory channelFactory;
 
+  /**
+   * Whether the {@code ".gz"} file of this source starts with a BGZF block header, or {@code null}
+   * if that has not been determined.
+   */
+  @Nullable private Boolean gzipFileIsBgzf;
+
   /**
    * Creates a {@link Read} transform that reads from that reads from the underlying
    * {@link FileBasedSource} {@code sourceDelegate} after decompressing it with a {@link
@@ -330,10 +368,11 @@ public class CompressedSource<T> extends FileBasedSource<T> {
    */
   private CompressedSource(FileBasedSource<T> sourceDelegate,
       DecompressingChannelFactory channelFactory, String filePatternOrSpec, long minBundleSize,
-      long startOffset, long endOffset) {
+      long startOffset, long endOffset, @Nullable Boolean gzipFileIsBgzf) {
     super(filePatternOrSpec, minBundleSize, startOffset, endOffset);
     this.sourceDelegate = sourceDelegate;
     this.channelFactory = channelFactory;
+    this.gzipFileIsBgzf = gzipFileIsBgzf;
     boolean splittable = false;
     try {
       splittable = isSplittable();
@@ -363,23 +402,54 @@ public class CompressedSource<T> extends FileBasedSource<T> {
   @Override
   protected FileBasedSource<T> createForSubrangeOfFile(String fileName, long start, long end) {
     return new CompressedSource<>(sourceDelegate.createForSubrangeOfFile(fileName, start, end),
-        channelFactory, fileName, sourceDelegate.getMinBundleSize(), start, end);
+        channelFactory, fileName, sourceDelegate.getMinBundleSize(), start, end,
+        fileName.equals(getFileOrPatternSpec()) ? gzipFileIsBgzf : null);
   }
 
   /**
    * Determines whether a single file represented by this source is splittable. Returns true
-   * if we are using the default decompression factory and and it determines
-   * from the requested file name that the file is not compressed.
+   * if the delegate source is splittable and either the file is compressed with
+   * {@link CompressionMode#BGZF}, or we are using the default decompression factory and it
+   * determines from the requested file name that the file is not compressed.
    */
   @Override
   protected final boolean isSplittable() throws Exception {
+    if (!sourceDelegate.isSplittable()) {
+      return false;
+    }
     if (channelFactory instanceof FileNameBasedDecompressingChannelFactory) {
       FileNameBasedDecompressingChannelFactory fileNameBasedChannelFactory =
           (FileNameBasedDecompressingChannelFactory) channelFactory;
-      return !fileNameBasedChannelFactory.isCompressed(getFileOrPatternSpec())
-          && sourceDelegate.isSplittable();
+      if (!fileNameBasedChannelFactory.isCompressed(getFileOrPatternSpec())) {
+        return true;
+      }
     }
-    return false;
+    return isBlockCompressed();
+  }
+
+  /**
+   * Returns whether the file represented by this source is compressed with
+   * {@link CompressionMode#BGZF}, whose blocks can be read independently. When the compression is
+   * selected from the file name, a {@code ".gz"} file is read to find out whether it is a BGZF
+   * file.
+   */
+  private boolean isBlockCompressed() throws IOException {
+    if (!(channelFactory instanceof FileNameBasedDecompressingChannelFactory)) {
+      return channelFactory == CompressionMode.BGZF;
+    }
+    String fileName = getFileOrPatternSpec();
+    if (CompressionMode.BGZF.matches(fileName)) {
+      return true;
+    }
+    if (!CompressionMode.GZIP.matches(fileName) || getMode() != Mode.SINGLE_FILE_OR_SUBRANGE) {
+      return false;
+    }
+    if (gzipFileIsBgzf == null) {
+      try (ReadableByteChannel channel = IOChannelUtils.getFactory(fileName).open(fileName)) {
+        gzipFileIsBgzf = BgzfSeekableChannel.startsWithBlockHeader(channel);
+      }
+    }
+    return gzipFileIsBgzf;
   }
 
   /**
@@ -388,7 +458,8 @@ public class CompressedSource<T> extends FileBasedSource<T> {
    * <p>Uses the delegate source to create a single file reader for the delegate source.
    * Utilizes the default decompression channel factory to not wrap the source reader
    * if the file name does not represent a compressed file allowing for splitting of
-   * the source.
+   * the source. Splittable {@link CompressionMode#BGZF} files are read with a
+   * {@link BlockCompressedReader}.
    */
   @Override
   protected final FileBasedReader<T> createSingleFileReader(PipelineOptions options) {
@@ -399,6 +470,16 @@ public class CompressedSource<T> extends FileBasedSource<T> {
         return sourceDelegate.createSingleFileReader(options);
       }
     }
+    boolean splittable;
+    try {
+      splittable = isSplittable();
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to determine if the source is splittable", e);
+    }
+    if (splittable) {
+      // A compressed file is only splittable if it is a BGZF file.
+      return new BlockCompressedReader<T>(this, options);
+    }
     return new CompressedReader<T>(
         this, sourceDelegate.createSingleFileReader(options));
   }
@@ -412,8 +493,8 @@ public class CompressedSource<T> extends FileBasedSource<T> {
           .withLabel("Read Source"));
 
     if (channelFactory instanceof Enum) {
-      // GZIP, BZIP, ZIP and DEFLATE are implemented as enums; Enum classes are anonymous, so use
-      // the .name() value instead
+      // GZIP, BZIP, ZIP, DEFLATE and BGZF are implemented as enums; Enum classes are anonymous,
+      // so use the .name() value instead
       builder.add(DisplayData.item("compressionMode", ((Enum) channelFactory).name())
         .withLabel("Compression Mode"));
     } else {
@@ -588,4 +669,100 @@ public class CompressedSource<T> extends FileBasedSource<T> {
       }
     }
   }
+
+  /**
+   * Reader for a {@link CompressedSource} of a {@link CompressionMode#BGZF} file, which may be a
+   * subrange of the file.
+   *
+   * <p>The reader reads the records of the delegate source from the decompressed file, starting
+   * at the first block that starts in its range. The offset of a record is the offset in the
+   * file of the block containing its start, so ranges are split at block boundaries. Only the
+   * first split point of the delegate in each block is a split point of this reader, since split
+   * points must have distinct offsets.
+   *
+   * @param <T> The type of records read from the source.
+   */
+  private static class BlockCompressedReader<T> extends FileBasedReader<T> {
+    private final CompressedSource<T> source;
+    private final PipelineOptions options;
+    private BgzfSeekableChannel channel;
+    private FileBasedReader<T> readerDelegate;
+    private long currentOffset = -1;
+    private boolean atSplitPoint;
+
+    private BlockCompressedReader(CompressedSource<T> source, PipelineOptions options) {
+      super(source);
+      this.source = source;
+      this.options = options;
+    }
+
+    @Override
+    public T getCurrent() throws NoSuchElementException {
+      return readerDelegate.getCurrent();
+    }
+
+    @Override
+    protected boolean isAtSplitPoint() {
+      return atSplitPoint;
+    }
+
+    @Override
+    protected long getCurrentOffset() {
+      return currentOffset;
+    }
+
+    /**
+     * Creates a reader of the delegate source for the decompressed contents of the file, starting
+     * at the first block that starts at or after the start of this reader's range.
+     */
+    @Override
+    protected void startReading(ReadableByteChannel channel) throws IOException {
+      checkArgument(
+          channel instanceof SeekableByteChannel,
+          "BGZF files can only be split if their channels are seekable");
+      String fileName = getCurrentSource().getFileOrPatternSpec();
+      ReadableByteChannel index = null;
+      try {
+        index = IOChannelUtils.getFactory(fileName)
+            .open(fileName + BgzfSeekableChannel.INDEX_SUFFIX);
+      } catch (FileNotFoundException e) {
+        // The blocks are found by reading the file instead.
+      }
+      try {
+        this.channel = new BgzfSeekableChannel((SeekableByteChannel) channel, index);
+      } finally {
+        if (index != null) {
+          index.close();
+        }
+      }
+
+      long start = getCurrentSource().getStartOffset();
+      long uncompressedStart = start == 0 ? 0 : this.channel.getUncompressedStartOfBlockAt(start);
+      readerDelegate =
+          source.sourceDelegate
+              .createForSubrangeOfFile(fileName, uncompressedStart, Long.MAX_VALUE)
+              .createSingleFileReader(options);
+      this.channel.position(uncompressedStart);
+      readerDelegate.startReading(this.channel);
+    }
+
+    @Override
+    protected boolean readNextRecord() throws IOException {
+      if (!readerDelegate.readNextRecord()) {
+        return false;
+      }
+      long offset = channel.getCompressedStartOfBlockContaining(readerDelegate.getCurrentOffset());
+      atSplitPoint = readerDelegate.isAtSplitPoint() && offset != currentOffset;
+      currentOffset = offset;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+      }
+      super.close();
+    }
+  }
 }
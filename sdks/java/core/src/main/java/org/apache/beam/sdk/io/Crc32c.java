@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Checksum} computing the CRC-32C (Castagnoli) of bytes, eight bytes at a time.
+ *
+ * <p>Use {@link #create}, which returns the JDK's {@code java.util.zip.CRC32C} when running on
+ * Java 9 or later, where it is computed with the CPU's CRC32C instructions, and an instance of
+ * this class otherwise.
+ */
+final class Crc32c implements Checksum {
+  /** The Castagnoli polynomial, in reversed bit order. */
+  private static final int POLYNOMIAL = 0x82f63b78;
+
+  /**
+   * {@code TABLES[k][b]} is the CRC of the byte {@code b} followed by {@code k} zero bytes, so
+   * that the CRCs of eight bytes can be combined with eight table lookups.
+   */
+  private static final int[][] TABLES = new int[8][256];
+
+  static {
+    for (int b = 0; b < 256; b++) {
+      int crc = b;
+      for (int i = 0; i < 8; i++) {
+        crc = (crc >>> 1) ^ ((crc & 1) == 0 ? 0 : POLYNOMIAL);
+      }
+      TABLES[0][b] = crc;
+    }
+    for (int b = 0; b < 256; b++) {
+      for (int k = 1; k < TABLES.length; k++) {
+        int crc = TABLES[k - 1][b];
+        TABLES[k][b] = (crc >>> 8) ^ TABLES[0][crc & 0xff];
+      }
+    }
+  }
+
+  @Nullable private static final Constructor<? extends Checksum> JDK_CRC32C = findJdkCrc32c();
+
+  /** The CRC of the bytes so far, inverted. */
+  private int crc = 0xffffffff;
+
+  /** Returns a new CRC-32C checksum, using the JDK's implementation where available. */
+  static Checksum create() {
+    if (JDK_CRC32C != null) {
+      try {
+        return JDK_CRC32C.newInstance();
+      } catch (ReflectiveOperationException e) {
+        // Fall back to computing the checksum here.
+      }
+    }
+    return new Crc32c();
+  }
+
+  @Nullable
+  private static Constructor<? extends Checksum> findJdkCrc32c() {
+    try {
+      return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  Crc32c() {}
+
+  @Override
+  public void update(int b) {
+    crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+  }
+
+  @Override
+  public void update(byte[] b, int off, int len) {
+    int[] t0 = TABLES[0];
+    int[] t1 = TABLES[1];
+    int[] t2 = TABLES[2];
+    int[] t3 = TABLES[3];
+    int[] t4 = TABLES[4];
+    int[] t5 = TABLES[5];
+    int[] t6 = TABLES[6];
+    int[] t7 = TABLES[7];
+    int c = crc;
+    int end = off + len;
+    for (; off <= end - 8; off += 8) {
+      int low = c
+          ^ ((b[off] & 0xff)
+              | (b[off + 1] & 0xff) << 8
+              | (b[off + 2] & 0xff) << 16
+              | (b[off + 3] & 0xff) << 24);
+      int high = (b[off + 4] & 0xff)
+          | (b[off + 5] & 0xff) << 8
+          | (b[off + 6] & 0xff) << 16
+          | (b[off + 7] & 0xff) << 24;
+      c = t7[low & 0xff]
+          ^ t6[(low >>> 8) & 0xff]
+          ^ t5[(low >>> 16) & 0xff]
+          ^ t4[low >>> 24]
+          ^ t3[high & 0xff]
+          ^ t2[(high >>> 8) & 0xff]
+          ^ t1[(high >>> 16) & 0xff]
+          ^ t0[high >>> 24];
+    }
+    for (; off < end; off++) {
+      c = (c >>> 8) ^ t0[(c ^ b[off]) & 0xff];
+    }
+    crc = c;
+  }
+
+  @Override
+  public long getValue() {
+    return ~crc & 0xffffffffL;
+  }
+
+  @Override
+  public void reset() {
+    crc = 0xffffffff;
+  }
+}
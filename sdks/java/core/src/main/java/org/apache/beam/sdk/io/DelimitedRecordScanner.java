@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Splits the bytes read from a {@link ReadableByteChannel} into {@code UTF-8} records separated
+ * by a delimiter.
+ *
+ * <p>Without a custom delimiter, records are separated by {@code \n}, {@code \r} or
+ * {@code \r\n}. With a custom delimiter, records are separated by each occurrence of the
+ * delimiter, found from left to right. The last record does not need to be followed by a
+ * delimiter.
+ *
+ * <p>The bytes are read into a single reusable {@link ByteBuffer}, which only grows to hold
+ * records longer than the buffer. Delimiters are searched for eight bytes at a time, and records
+ * are decoded directly from the buffer.
+ */
+class DelimitedRecordScanner {
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+  private static final long LINE_FEED = ONES * '\n';
+  private static final long CARRIAGE_RETURN = ONES * '\r';
+
+  private final ReadableByteChannel channel;
+  @Nullable private final byte[] delimiter;
+  private final long firstPattern;
+  private final long secondPattern;
+
+  private ByteBuffer buffer;
+  /** Scratch space to decode records from a direct buffer. */
+  private byte[] decodeBuffer;
+  /** The unconsumed bytes are {@code [start, end)} of the buffer. */
+  private int start;
+  private int end;
+  private boolean eof;
+
+  private String current;
+  private int currentLength;
+
+  /**
+   * Creates a scanner over the given channel with an initial buffer of {@code bufferSize} bytes.
+   *
+   * @param delimiter the delimiter separating records, or {@code null} to separate records by
+   *     {@code \n}, {@code \r} or {@code \r\n}
+   * @param direct whether to read into a direct buffer
+   */
+  DelimitedRecordScanner(
+      ReadableByteChannel channel, @Nullable byte[] delimiter, int bufferSize, boolean direct) {
+    checkArgument(delimiter == null || delimiter.length > 0, "The delimiter must not be empty");
+    checkArgument(bufferSize >= 1, "The buffer size must be positive, but was %s", bufferSize);
+    this.channel = channel;
+    this.delimiter = delimiter == null ? null : Arrays.copyOf(delimiter, delimiter.length);
+    if (delimiter == null) {
+      firstPattern = LINE_FEED;
+      secondPattern = CARRIAGE_RETURN;
+    } else {
+      firstPattern = secondPattern = ONES * (delimiter[0] & 0xFF);
+    }
+    this.buffer = allocate(bufferSize, direct);
+  }
+
+  /**
+   * Reads the next record. Returns {@code false} if there are no more records, which is the case
+   * once all bytes of the channel have been consumed.
+   */
+  boolean readNextRecord() throws IOException {
+    return advance(true);
+  }
+
+  /** Skips the next record, for example because it started before the range being read. */
+  boolean skipRecord() throws IOException {
+    return advance(false);
+  }
+
+  /** Returns the last record read by {@link #readNextRecord}. */
+  String getCurrent() {
+    return current;
+  }
+
+  /**
+   * Returns the number of bytes consumed by the last record read or skipped, including its
+   * delimiter.
+   */
+  int getCurrentLength() {
+    return currentLength;
+  }
+
+  private boolean advance(boolean decode) throws IOException {
+    // The number of bytes after start that are known not to begin a delimiter.
+    int scanned = 0;
+    while (true) {
+      int candidate = indexOfCandidate(start + scanned, end);
+      if (candidate < 0) {
+        scanned = end - start;
+        if (!fill()) {
+          if (start == end) {
+            current = null;
+            currentLength = 0;
+            return false;
+          }
+          // The remaining bytes are the last record, which is not followed by a delimiter.
+          return consume(end, end, decode);
+        }
+        continue;
+      }
+
+      if (delimiter == null) {
+        if (buffer.get(candidate) == '\n') {
+          return consume(candidate, candidate + 1, decode);
+        }
+        // A carriage return may be followed by a line feed, which belongs to the same separator.
+        if (candidate + 1 == end) {
+          scanned = candidate - start;
+          if (fill()) {
+            continue;
+          }
+          // Filling the buffer may have moved the carriage return.
+          int carriageReturn = start + scanned;
+          return consume(carriageReturn, carriageReturn + 1, decode);
+        }
+        return consume(
+            candidate, buffer.get(candidate + 1) == '\n' ? candidate + 2 : candidate + 1, decode);
+      }
+
+      if (candidate + delimiter.length > end) {
+        scanned = candidate - start;
+        if (fill()) {
+          continue;
+        }
+        // No delimiter can start at or after the candidate, so the remaining bytes are the last
+        // record.
+        return consume(end, end, decode);
+      }
+      if (matchesDelimiter(candidate)) {
+        return consume(candidate, candidate + delimiter.length, decode);
+      }
+      scanned = candidate + 1 - start;
+    }
+  }
+
+  /** Consumes the record ending at {@code recordEnd} and its delimiter ending at {@code next}. */
+  private boolean consume(int recordEnd, int next, boolean decode) {
+    current = decode ? decode(start, recordEnd) : null;
+    currentLength = next - start;
+    start = next;
+    return true;
+  }
+
+  private String decode(int from, int to) {
+    int length = to - from;
+    if (buffer.hasArray()) {
+      return new String(
+          buffer.array(), buffer.arrayOffset() + from, length, StandardCharsets.UTF_8);
+    }
+    if (decodeBuffer == null || decodeBuffer.length < length) {
+      decodeBuffer = new byte[Math.max(length, decodeBuffer == null ? 0 : 2 * decodeBuffer.length)];
+    }
+    buffer.limit(to).position(from);
+    buffer.get(decodeBuffer, 0, length);
+    // Absolute reads are bounded by the limit, so it always spans the whole buffer.
+    buffer.limit(buffer.capacity());
+    return new String(decodeBuffer, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private boolean matchesDelimiter(int index) {
+    for (int i = 1; i < delimiter.length; i++) {
+      if (buffer.get(index + i) != delimiter[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the index of the first byte in {@code [from, to)} that may begin a delimiter, or -1 if
+   * there is none. The bytes are compared eight at a time, using the bit manipulation described in
+   * <a href="https://graphics.stanford.edu/~seander/bithacks.html#ValueInWord">Bit Twiddling
+   * Hacks</a> to determine whether any byte of a word equals one of the patterns.
+   */
+  private int indexOfCandidate(int from, int to) {
+    int i = from;
+    for (; i + Long.SIZE / Byte.SIZE <= to; i += Long.SIZE / Byte.SIZE) {
+      long word = buffer.getLong(i);
+      long matches = zeroBytes(word ^ firstPattern) | zeroBytes(word ^ secondPattern);
+      if (matches != 0) {
+        // The buffer is little endian, so the lowest matching byte comes first.
+        return i + Long.numberOfTrailingZeros(matches) / Byte.SIZE;
+      }
+    }
+    byte first = (byte) firstPattern;
+    byte second = (byte) secondPattern;
+    for (; i < to; i++) {
+      byte b = buffer.get(i);
+      if (b == first || b == second) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a word with the high bit set in the lowest byte of {@code word} that is zero. Higher
+   * bytes may be flagged spuriously, but never a byte below the first zero byte.
+   */
+  private static long zeroBytes(long word) {
+    return (word - ONES) & ~word & HIGH_BITS;
+  }
+
+  /**
+   * Reads more bytes from the channel, making room in the buffer first. Returns {@code false} if
+   * the channel is exhausted. Moves the unconsumed bytes to the start of the buffer, so indices
+   * must be recomputed relative to {@link #start} afterwards.
+   */
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (end == buffer.capacity()) {
+      if (start == 0) {
+        ByteBuffer larger = allocate(2 * buffer.capacity(), buffer.isDirect());
+        buffer.limit(end).position(0);
+        larger.put(buffer);
+        buffer = larger;
+      } else {
+        buffer.limit(end).position(start);
+        buffer.compact();
+        end -= start;
+        start = 0;
+      }
+    }
+    buffer.limit(buffer.capacity()).position(end);
+    int read;
+    do {
+      read = channel.read(buffer);
+    } while (read == 0);
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    end += read;
+    return true;
+  }
+
+  private static ByteBuffer allocate(int capacity, boolean direct) {
+    ByteBuffer buffer =
+        direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    return buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
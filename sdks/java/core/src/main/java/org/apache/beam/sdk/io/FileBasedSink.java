@@ -23,23 +23,35 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
+import com.google.common.math.IntMath;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.RoundingMode;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nullable;
@@ -51,6 +63,7 @@ import org.apache.beam.sdk.coders.NullableCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.FileBasedSink.FilenamePolicy.Context;
 import org.apache.beam.sdk.io.FileBasedSink.FilenamePolicy.WindowedContext;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.options.ValueProvider.NestedValueProvider;
@@ -59,6 +72,7 @@ import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.transforms.display.DisplayData;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.FileIOChannelFactory;
 import org.apache.beam.sdk.util.IOChannelFactory;
 import org.apache.beam.sdk.util.IOChannelUtils;
 import org.apache.beam.sdk.util.MimeTypes;
@@ -132,6 +146,16 @@ public abstract class FileBasedSink<T> extends Sink<T> {
         return Channels
             .newChannel(new DeflateCompressorOutputStream(Channels.newOutputStream(channel)));
       }
+    },
+    /**
+     * Provides BGZF output transformation, which writes gzip files made of independently
+     * compressed blocks that {@link CompressedSource.CompressionMode#BGZF} can split.
+     */
+    BGZF(".bgz", MimeTypes.BINARY) {
+      @Override
+      public WritableByteChannel create(WritableByteChannel channel) throws IOException {
+        return Channels.newChannel(new BgzfOutputStream(Channels.newOutputStream(channel)));
+      }
     };
 
     private String filenameSuffix;
@@ -469,6 +493,11 @@ public abstract class FileBasedSink<T> extends Sink<T> {
     /** Whether windowed writes are being used. */
     protected  boolean windowedWrites;
 
+    // Size of the thread pool used to move and remove files in parallel during finalization, and
+    // the largest number of files handed to the file system at once. Package-private for testing.
+    static final int FINALIZE_THREAD_POOL_SIZE = 16;
+    static final int MAX_FILES_PER_BATCH = 1000;
+
     /** Constructs a temporary file path given the temporary directory and a filename. */
     protected static String buildTemporaryFilename(String tempDirectory, String filename)
         throws IOException {
@@ -571,7 +600,7 @@ public abstract class FileBasedSink<T> extends Sink<T> {
         throws Exception {
       // Collect names of temporary files and rename them.
       Map<String, String> outputFilenames = buildOutputFilenames(writerResults);
-      copyToOutputFiles(outputFilenames, options);
+      moveToOutputFiles(outputFilenames, options);
 
       // Optionally remove temporary files.
       // We remove the entire temporary directory, rather than specifically removing the files
@@ -636,14 +665,55 @@ public abstract class FileBasedSink<T> extends Sink<T> {
       int numFiles = filenames.size();
       if (numFiles > 0) {
         LOG.debug("Copying {} files.", numFiles);
-        IOChannelFactory channelFactory =
+        final IOChannelFactory channelFactory =
             IOChannelUtils.getFactory(filenames.values().iterator().next());
-        channelFactory.copy(filenames.keySet(), filenames.values());
+        final Function<String, String> destination = Functions.forMap(filenames);
+        runInBatches("copy", filenames.keySet(), new BatchOperation() {
+          @Override
+          public void apply(List<String> batch) throws IOException {
+            channelFactory.copy(batch, Lists.transform(batch, destination));
+          }
+        });
       } else {
         LOG.info("No output files to write.");
       }
     }
 
+    /**
+     * Moves temporary files to their final output filenames, renaming them on file systems where
+     * renaming is cheap, and copying them, as {@link #copyToOutputFiles} does, otherwise.
+     *
+     * <p>Can be called from subclasses that override {@link FileBasedWriteOperation#finalize}.
+     * Temporary files that were already renamed are skipped, so that finalization may be retried.
+     *
+     * @param filenames the filenames of temporary files.
+     */
+    protected final void moveToOutputFiles(Map<String, String> filenames,
+                                           PipelineOptions options)
+        throws IOException {
+      int numFiles = filenames.size();
+      if (numFiles == 0) {
+        LOG.info("No output files to write.");
+        return;
+      }
+      IOChannelFactory channelFactory =
+          IOChannelUtils.getFactory(filenames.values().iterator().next());
+      if (!(channelFactory instanceof FileIOChannelFactory)) {
+        copyToOutputFiles(filenames, options);
+        return;
+      }
+
+      LOG.debug("Renaming {} files.", numFiles);
+      final FileIOChannelFactory fileChannelFactory = (FileIOChannelFactory) channelFactory;
+      final Function<String, String> destination = Functions.forMap(filenames);
+      runInBatches("rename", filenames.keySet(), new BatchOperation() {
+        @Override
+        public void apply(List<String> batch) throws IOException {
+          fileChannelFactory.rename(batch, Lists.transform(batch, destination));
+        }
+      });
+    }
+
     /**
      * Removes temporary output files. Uses the temporary directory to find files to remove.
      *
@@ -657,7 +727,7 @@ public abstract class FileBasedSink<T> extends Sink<T> {
         throws IOException {
       String tempDir = tempDirectory.get();
       LOG.debug("Removing temporary bundle output files in {}.", tempDir);
-      IOChannelFactory factory = IOChannelUtils.getFactory(tempDir);
+      final IOChannelFactory factory = IOChannelUtils.getFactory(tempDir);
 
       // To partially mitigate the effects of filesystems with eventually-consistent
       // directory matching APIs, we remove not only files that the filesystem says exist
@@ -686,13 +756,67 @@ public abstract class FileBasedSink<T> extends Sink<T> {
           allMatches.size() - matches.size());
       // Deletion of the temporary directory might fail, if not all temporary files are removed.
       try {
-        factory.remove(allMatches);
+        runInBatches("remove", allMatches, new BatchOperation() {
+          @Override
+          public void apply(List<String> batch) throws IOException {
+            factory.remove(batch);
+          }
+        });
         factory.remove(ImmutableList.of(tempDir));
       } catch (Exception e) {
         LOG.warn("Failed to remove temporary directory: [{}].", tempDir);
       }
     }
 
+    /** An operation on a batch of files, run by {@link #runInBatches}. */
+    private interface BatchOperation {
+      void apply(List<String> batch) throws IOException;
+    }
+
+    /**
+     * Splits the files into batches of at most {@link #MAX_FILES_PER_BATCH} files and applies the
+     * operation to the batches in parallel, reporting the time taken as the distribution
+     * {@code <phase>Millis}.
+     */
+    private static void runInBatches(
+        String phase, Collection<String> filenames, final BatchOperation operation)
+        throws IOException {
+      long startTime = System.currentTimeMillis();
+      int batchSize = Math.max(1, Math.min(MAX_FILES_PER_BATCH,
+          IntMath.divide(filenames.size(), FINALIZE_THREAD_POOL_SIZE, RoundingMode.CEILING)));
+      List<List<String>> batches = Lists.partition(new ArrayList<>(filenames), batchSize);
+      if (batches.size() == 1) {
+        operation.apply(batches.get(0));
+      } else if (batches.size() > 1) {
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        ListeningExecutorService service = MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(Math.min(batches.size(), FINALIZE_THREAD_POOL_SIZE)));
+        try {
+          for (final List<String> batch : batches) {
+            futures.add(service.submit(new Callable<Void>() {
+              @Override
+              public Void call() throws IOException {
+                operation.apply(batch);
+                return null;
+              }
+            }));
+          }
+          Futures.allAsList(futures).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+        } finally {
+          service.shutdown();
+        }
+      }
+      long elapsed = System.currentTimeMillis() - startTime;
+      LOG.info("Finalize phase {} of {} files in {} batches took {} ms",
+          phase, filenames.size(), batches.size(), elapsed);
+      Metrics.distribution(FileBasedSink.class, phase + "Millis").update(elapsed);
+    }
+
     /**
      * Provides a coder for {@link FileBasedSink.FileResult}.
      */
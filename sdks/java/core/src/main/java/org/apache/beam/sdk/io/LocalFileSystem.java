@@ -44,6 +44,7 @@ import org.apache.beam.sdk.io.fs.CreateOptions;
 import org.apache.beam.sdk.io.fs.MatchResult;
 import org.apache.beam.sdk.io.fs.MatchResult.Metadata;
 import org.apache.beam.sdk.io.fs.MatchResult.Status;
+import org.apache.beam.sdk.util.MappedByteChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,7 +57,15 @@ class LocalFileSystem extends FileSystem<LocalResourceId> {
 
   private static final Metadata[] EMPTY_METADATA = new Metadata[0];
 
+  /** Whether files are opened as {@link MappedByteChannel MappedByteChannels}. */
+  private final boolean memoryMap;
+
   LocalFileSystem() {
+    this(false);
+  }
+
+  LocalFileSystem(boolean memoryMap) {
+    this.memoryMap = memoryMap;
   }
 
   @Override
@@ -90,7 +99,7 @@ class LocalFileSystem extends FileSystem<LocalResourceId> {
     FileInputStream inputStream = new FileInputStream(resourceId.getPath().toFile());
     // Use this method for creating the channel (rather than new FileChannel) so that we get
     // regular FileNotFoundException. Closing the underyling channel will close the inputStream.
-    return inputStream.getChannel();
+    return memoryMap ? new MappedByteChannel(inputStream.getChannel()) : inputStream.getChannel();
   }
 
   @Override
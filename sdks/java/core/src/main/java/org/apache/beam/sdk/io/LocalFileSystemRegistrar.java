@@ -19,6 +19,7 @@ package org.apache.beam.sdk.io;
 
 import com.google.auto.service.AutoService;
 import javax.annotation.Nullable;
+import org.apache.beam.sdk.options.LocalFileSystemOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 
 /**
@@ -31,7 +32,8 @@ public class LocalFileSystemRegistrar implements FileSystemRegistrar {
 
   @Override
   public FileSystem fromOptions(@Nullable PipelineOptions options) {
-    return new LocalFileSystem();
+    return new LocalFileSystem(
+        options != null && options.as(LocalFileSystemOptions.class).getMemoryMapLocalFiles());
   }
 
   @Override
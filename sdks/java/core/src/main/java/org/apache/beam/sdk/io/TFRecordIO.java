@@ -22,8 +22,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -32,6 +30,7 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.NoSuchElementException;
 import java.util.regex.Pattern;
+import java.util.zip.Checksum;
 
 import javax.annotation.Nullable;
 
@@ -821,6 +820,11 @@ public class TFRecordIO {
       public void write(byte[] value) throws Exception {
         codec.write(outChannel, value);
       }
+
+      @Override
+      protected void finishWrite() throws Exception {
+        codec.flush(outChannel);
+      }
     }
   }
 
@@ -833,21 +837,32 @@ public class TFRecordIO {
   private static class TFRecordCodec {
     private static final int HEADER_LEN = (Long.SIZE + Integer.SIZE) / Byte.SIZE;
     private static final int FOOTER_LEN = Integer.SIZE / Byte.SIZE;
-    private static HashFunction crc32c = Hashing.crc32c();
 
-    private ByteBuffer header = ByteBuffer.allocate(HEADER_LEN).order(ByteOrder.LITTLE_ENDIAN);
-    private ByteBuffer footer = ByteBuffer.allocate(FOOTER_LEN).order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * The initial size of the buffers that records are read into and written from, so that
+     * many small records are transferred with each read from or write to a channel.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Checksum crc32c = Crc32c.create();
+
+    /**
+     * The bytes read from a channel, of which {@code [position, limit)} are not consumed yet.
+     * Created on the first read, and grown to hold records larger than it.
+     */
+    @Nullable private ByteBuffer readBuffer;
+
+    /** The records not written to a channel yet. Created on the first write. */
+    @Nullable private ByteBuffer writeBuffer;
 
     private int mask(int crc) {
       return ((crc >>> 15) | (crc << 17)) + 0xa282ead8;
     }
 
-    private int hashLong(long x) {
-      return mask(crc32c.hashLong(x).asInt());
-    }
-
-    private int hashBytes(byte[] x) {
-      return mask(crc32c.hashBytes(x).asInt());
+    private int hash(byte[] bytes, int offset, int length) {
+      crc32c.reset();
+      crc32c.update(bytes, offset, length);
+      return mask((int) crc32c.getValue());
     }
 
     public int recordLength(byte[] data) {
@@ -855,50 +870,98 @@ public class TFRecordIO {
     }
 
     public byte[] read(ReadableByteChannel inChannel) throws IOException {
-      header.clear();
-      int headerBytes = inChannel.read(header);
-      if (headerBytes <= 0) {
+      if (readBuffer == null) {
+        readBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readBuffer.limit(0);
+      }
+      if (!fill(inChannel, HEADER_LEN)) {
+        checkState(
+            !readBuffer.hasRemaining(),
+            "Not a valid TFRecord. Fewer than 12 bytes.");
         return null;
       }
+      int headerStart = readBuffer.position();
+      long length = readBuffer.getLong();
+      int maskedCrc32OfLength = readBuffer.getInt();
       checkState(
-          headerBytes == HEADER_LEN,
-          "Not a valid TFRecord. Fewer than 12 bytes.");
-      header.rewind();
-      long length = header.getLong();
-      int maskedCrc32OfLength = header.getInt();
-      checkState(
-          hashLong(length) == maskedCrc32OfLength,
+          hash(readBuffer.array(), headerStart, Long.SIZE / Byte.SIZE) == maskedCrc32OfLength,
           "Mismatch of length mask");
 
-      ByteBuffer data = ByteBuffer.allocate((int) length);
-      checkState(inChannel.read(data) == length, "Invalid data");
-
-      footer.clear();
-      inChannel.read(footer);
-      footer.rewind();
-      int maskedCrc32OfData = footer.getInt();
+      checkState(fill(inChannel, (int) length + FOOTER_LEN), "Invalid data");
+      int dataStart = readBuffer.position();
+      byte[] data = new byte[(int) length];
+      readBuffer.get(data);
+      int maskedCrc32OfData = readBuffer.getInt();
 
       checkState(
-          hashBytes(data.array()) == maskedCrc32OfData,
+          hash(readBuffer.array(), dataStart, data.length) == maskedCrc32OfData,
           "Mismatch of data mask");
-      return data.array();
+      return data;
+    }
+
+    /**
+     * Reads from the channel until at least {@code length} bytes are not consumed, or the end of
+     * the channel is reached. Returns whether there are {@code length} bytes to consume.
+     */
+    private boolean fill(ReadableByteChannel inChannel, int length) throws IOException {
+      if (readBuffer.remaining() >= length) {
+        return true;
+      }
+      if (readBuffer.capacity() < length) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(length, 2 * readBuffer.capacity()))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        larger.put(readBuffer);
+        readBuffer = larger;
+      } else {
+        readBuffer.compact();
+      }
+      while (readBuffer.position() < length && inChannel.read(readBuffer) >= 0) {
+        // Read as much as fits in the buffer, to consume many records per read.
+      }
+      readBuffer.flip();
+      return readBuffer.remaining() >= length;
     }
 
+    /**
+     * Writes the record to the buffer, writing the buffer to the channel when it is full. The
+     * buffered records are only written to the channel by {@link #flush}.
+     */
     public void write(WritableByteChannel outChannel, byte[] data) throws IOException {
-      int maskedCrc32OfLength = hashLong(data.length);
-      int maskedCrc32OfData = hashBytes(data);
+      if (writeBuffer == null) {
+        writeBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      }
+      int maskedCrc32OfData = hash(data, 0, data.length);
+      if (writeBuffer.remaining() < recordLength(data)) {
+        flush(outChannel);
+      }
 
-      header.clear();
-      header.putLong(data.length).putInt(maskedCrc32OfLength);
-      header.rewind();
-      outChannel.write(header);
+      int headerStart = writeBuffer.position();
+      writeBuffer.putLong(data.length);
+      writeBuffer.putInt(hash(writeBuffer.array(), headerStart, Long.SIZE / Byte.SIZE));
+      if (writeBuffer.remaining() < data.length + FOOTER_LEN) {
+        // Records larger than the buffer are written directly.
+        flush(outChannel);
+        writeFully(outChannel, ByteBuffer.wrap(data));
+      } else {
+        writeBuffer.put(data);
+      }
+      writeBuffer.putInt(maskedCrc32OfData);
+    }
 
-      outChannel.write(ByteBuffer.wrap(data));
+    /** Writes the buffered records to the channel. */
+    public void flush(WritableByteChannel outChannel) throws IOException {
+      if (writeBuffer != null) {
+        writeBuffer.flip();
+        writeFully(outChannel, writeBuffer);
+        writeBuffer.clear();
+      }
+    }
 
-      footer.clear();
-      footer.putInt(maskedCrc32OfData);
-      footer.rewind();
-      outChannel.write(footer);
+    private static void writeFully(WritableByteChannel outChannel, ByteBuffer buffer)
+        throws IOException {
+      while (buffer.hasRemaining()) {
+        outChannel.write(buffer);
+      }
     }
   }
 
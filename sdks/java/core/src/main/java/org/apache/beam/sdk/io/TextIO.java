@@ -23,16 +23,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.protobuf.ByteString;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.regex.Pattern;
 
@@ -67,7 +66,7 @@ import org.apache.beam.sdk.values.PDone;
  *
  * <p>{@link TextIO.Read} returns a {@link PCollection} of {@link String Strings},
  * each corresponding to one line of an input UTF-8 text file (split into lines delimited by '\n',
- * '\r', or '\r\n').
+ * '\r', or '\r\n', or by a custom delimiter set with {@link TextIO.Read#withDelimiter}).
  *
  * <p>Example:
  *
@@ -165,6 +164,16 @@ public class TextIO {
       return new Bound().withCompressionType(compressionType);
     }
 
+    /**
+     * Returns a transform for reading text files that splits the input into records separated by
+     * the given delimiter, rather than by {@code '\n'}, {@code '\r'} or {@code '\r\n'}.
+     *
+     * <p>See {@link Bound#withDelimiter} for details.
+     */
+    public static Bound withDelimiter(byte[] delimiter) {
+      return new Bound().withDelimiter(delimiter);
+    }
+
     // TODO: strippingNewlines, etc.
 
     /**
@@ -181,19 +190,24 @@ public class TextIO {
       /** Option to indicate the input source's compression type. Default is AUTO. */
       private final TextIO.CompressionType compressionType;
 
+      /** The delimiter separating records, or null to separate records by line terminators. */
+      @Nullable private final byte[] delimiter;
+
       private Bound() {
-        this(null, null, true, TextIO.CompressionType.AUTO);
+        this(null, null, true, TextIO.CompressionType.AUTO, null);
       }
 
       private Bound(
           @Nullable String name,
           @Nullable ValueProvider<String> filepattern,
           boolean validate,
-          TextIO.CompressionType compressionType) {
+          TextIO.CompressionType compressionType,
+          @Nullable byte[] delimiter) {
         super(name);
         this.filepattern = filepattern;
         this.validate = validate;
         this.compressionType = compressionType;
+        this.delimiter = delimiter;
       }
 
       /**
@@ -207,7 +221,7 @@ public class TextIO {
       public Bound from(String filepattern) {
         checkNotNull(filepattern, "Filepattern cannot be empty.");
         return new Bound(name, StaticValueProvider.of(filepattern), validate,
-                           compressionType);
+                           compressionType, delimiter);
       }
 
       /**
@@ -215,7 +229,7 @@ public class TextIO {
        */
       public Bound from(ValueProvider<String> filepattern) {
         checkNotNull(filepattern, "Filepattern cannot be empty.");
-        return new Bound(name, filepattern, validate, compressionType);
+        return new Bound(name, filepattern, validate, compressionType, delimiter);
       }
 
       /**
@@ -229,7 +243,7 @@ public class TextIO {
        * <p>Does not modify this object.
        */
       public Bound withoutValidation() {
-        return new Bound(name, filepattern, false, compressionType);
+        return new Bound(name, filepattern, false, compressionType, delimiter);
       }
 
       /**
@@ -242,7 +256,27 @@ public class TextIO {
        * <p>Does not modify this object.
        */
       public Bound withCompressionType(TextIO.CompressionType compressionType) {
-        return new Bound(name, filepattern, validate, compressionType);
+        return new Bound(name, filepattern, validate, compressionType, delimiter);
+      }
+
+      /**
+       * Returns a new transform for reading from text files that's like this one but
+       * that splits the input into records separated by each occurrence of the given delimiter,
+       * rather than by {@code '\n'}, {@code '\r'} or {@code '\r\n'}. The delimiter is not
+       * included in the records, and the last record does not need to be followed by it.
+       *
+       * <p>When a file is split into ranges, each range locates its first record by searching for
+       * the delimiter, so a delimiter that can overlap itself, such as {@code "aa"}, may lead to
+       * records being split differently than when the file is read as a whole.
+       *
+       * <p>Does not modify this object.
+       */
+      public Bound withDelimiter(byte[] delimiter) {
+        checkNotNull(delimiter, "Delimiter cannot be null.");
+        checkArgument(delimiter.length > 0, "Delimiter cannot be empty.");
+        return new Bound(
+            name, filepattern, validate, compressionType,
+            Arrays.copyOf(delimiter, delimiter.length));
       }
 
       @Override
@@ -275,25 +309,29 @@ public class TextIO {
       protected FileBasedSource<String> getSource() {
         switch (compressionType) {
           case UNCOMPRESSED:
-            return new TextSource(filepattern);
+            return new TextSource(filepattern, delimiter);
           case AUTO:
-            return CompressedSource.from(new TextSource(filepattern));
+            return CompressedSource.from(new TextSource(filepattern, delimiter));
           case BZIP2:
             return
-                CompressedSource.from(new TextSource(filepattern))
+                CompressedSource.from(new TextSource(filepattern, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.BZIP2);
           case GZIP:
             return
-                CompressedSource.from(new TextSource(filepattern))
+                CompressedSource.from(new TextSource(filepattern, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.GZIP);
           case ZIP:
             return
-                CompressedSource.from(new TextSource(filepattern))
+                CompressedSource.from(new TextSource(filepattern, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.ZIP);
           case DEFLATE:
             return
-                CompressedSource.from(new TextSource(filepattern))
+                CompressedSource.from(new TextSource(filepattern, delimiter))
                     .withDecompression(CompressedSource.CompressionMode.DEFLATE);
+          case BGZF:
+            return
+                CompressedSource.from(new TextSource(filepattern, delimiter))
+                    .withDecompression(CompressedSource.CompressionMode.BGZF);
           default:
             throw new IllegalArgumentException("Unknown compression type: " + compressionType);
         }
@@ -311,7 +349,10 @@ public class TextIO {
             .addIfNotDefault(DisplayData.item("validation", validate)
               .withLabel("Validation Enabled"), true)
             .addIfNotNull(DisplayData.item("filePattern", filepatternDisplay)
-              .withLabel("File Pattern"));
+              .withLabel("File Pattern"))
+            .addIfNotNull(DisplayData.item("delimiter",
+                delimiter == null ? null : new String(delimiter, StandardCharsets.UTF_8))
+              .withLabel("Record Delimiter"));
       }
 
       @Override
@@ -330,6 +371,11 @@ public class TextIO {
       public TextIO.CompressionType getCompressionType() {
         return compressionType;
       }
+
+      @Nullable
+      public byte[] getDelimiter() {
+        return delimiter == null ? null : Arrays.copyOf(delimiter, delimiter.length);
+      }
     }
 
     /** Disallow construction of utility classes. */
@@ -799,7 +845,8 @@ public class TextIO {
    */
   public enum CompressionType {
     /**
-     * Automatically determine the compression type based on filename extension.
+     * Automatically determine the compression type based on filename extension. A {@code .gz}
+     * file written by {@code bgzip} is read as {@link #BGZF}, and so may be split.
      */
     AUTO(""),
     /**
@@ -821,7 +868,11 @@ public class TextIO {
     /**
      * Deflate compressed.
      */
-    DEFLATE(".deflate");
+    DEFLATE(".deflate"),
+    /**
+     * BGZF compressed, which is gzip compressed in independent blocks (i.e., may be split).
+     */
+    BGZF(".bgz");
 
     private String filenameSuffix;
 
@@ -859,8 +910,9 @@ public class TextIO {
    * A {@link FileBasedSource} which can decode records delimited by newline characters.
    *
    * <p>This source splits the data into records using {@code UTF-8} {@code \n}, {@code \r}, or
-   * {@code \r\n} as the delimiter. This source is not strict and supports decoding the last record
-   * even if it is not delimited. Finally, no records are decoded if the stream is empty.
+   * {@code \r\n} as the delimiter, or using a custom delimiter if one is given. This source is not
+   * strict and supports decoding the last record even if it is not delimited. Finally, no records
+   * are decoded if the stream is empty.
    *
    * <p>This source supports reading from any arbitrary byte position within the stream. If the
    * starting position is not {@code 0}, then bytes are skipped until the first delimiter is found
@@ -868,19 +920,30 @@ public class TextIO {
    */
   @VisibleForTesting
   static class TextSource extends FileBasedSource<String> {
+    /** The delimiter separating records, or null to separate records by line terminators. */
+    @Nullable private final byte[] delimiter;
+
     /** The Coder to use to decode each line. */
     @VisibleForTesting
     TextSource(String fileSpec) {
       super(fileSpec, 1L);
+      this.delimiter = null;
     }
 
     @VisibleForTesting
     TextSource(ValueProvider<String> fileSpec) {
+      this(fileSpec, null);
+    }
+
+    @VisibleForTesting
+    TextSource(ValueProvider<String> fileSpec, @Nullable byte[] delimiter) {
       super(fileSpec, 1L);
+      this.delimiter = delimiter;
     }
 
-    private TextSource(String fileName, long start, long end) {
+    private TextSource(String fileName, long start, long end, @Nullable byte[] delimiter) {
       super(fileName, 1L, start, end);
+      this.delimiter = delimiter;
     }
 
     @Override
@@ -888,12 +951,12 @@ public class TextIO {
         String fileName,
         long start,
         long end) {
-      return new TextSource(fileName, start, end);
+      return new TextSource(fileName, start, end, delimiter);
     }
 
     @Override
     protected FileBasedReader<String> createSingleFileReader(PipelineOptions options) {
-      return new TextBasedReader(this);
+      return new TextBasedReader(this, delimiter);
     }
 
     @Override
@@ -909,21 +972,17 @@ public class TextIO {
      */
     @VisibleForTesting
     static class TextBasedReader extends FileBasedReader<String> {
-      private static final int READ_BUFFER_SIZE = 8192;
-      private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
-      private ByteString buffer;
-      private int startOfSeparatorInBuffer;
-      private int endOfSeparatorInBuffer;
+      private static final int READ_BUFFER_SIZE = 64 * 1024;
+      @Nullable private final byte[] delimiter;
+      private DelimitedRecordScanner scanner;
       private long startOfRecord;
       private volatile long startOfNextRecord;
-      private volatile boolean eof;
       private volatile boolean elementIsPresent;
       private String currentValue;
-      private ReadableByteChannel inChannel;
 
-      private TextBasedReader(TextSource source) {
+      private TextBasedReader(TextSource source, @Nullable byte[] delimiter) {
         super(source);
-        buffer = ByteString.EMPTY;
+        this.delimiter = delimiter;
       }
 
       @Override
@@ -952,113 +1011,34 @@ public class TextIO {
 
       @Override
       protected void startReading(ReadableByteChannel channel) throws IOException {
-        this.inChannel = channel;
+        scanner = new DelimitedRecordScanner(channel, delimiter, READ_BUFFER_SIZE, false);
         // If the first offset is greater than zero, we need to skip bytes until we see our
         // first separator.
         if (getCurrentSource().getStartOffset() > 0) {
           checkState(channel instanceof SeekableByteChannel,
               "%s only supports reading from a SeekableByteChannel when given a start offset"
               + " greater than 0.", TextSource.class.getSimpleName());
-          long requiredPosition = getCurrentSource().getStartOffset() - 1;
+          // Start early enough to find a separator that ends exactly at the start offset.
+          int separatorLength = delimiter == null ? 1 : delimiter.length;
+          long requiredPosition =
+              Math.max(0, getCurrentSource().getStartOffset() - separatorLength);
           ((SeekableByteChannel) channel).position(requiredPosition);
-          findSeparatorBounds();
-          buffer = buffer.substring(endOfSeparatorInBuffer);
-          startOfNextRecord = requiredPosition + endOfSeparatorInBuffer;
-          endOfSeparatorInBuffer = 0;
-          startOfSeparatorInBuffer = 0;
-        }
-      }
-
-      /**
-       * Locates the start position and end position of the next delimiter. Will
-       * consume the channel till either EOF or the delimiter bounds are found.
-       *
-       * <p>This fills the buffer and updates the positions as follows:
-       * <pre>{@code
-       * ------------------------------------------------------
-       * | element bytes | delimiter bytes | unconsumed bytes |
-       * ------------------------------------------------------
-       * 0            start of          end of              buffer
-       *              separator         separator           size
-       *              in buffer         in buffer
-       * }</pre>
-       */
-      private void findSeparatorBounds() throws IOException {
-        int bytePositionInBuffer = 0;
-        while (true) {
-          if (!tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + 1)) {
-            startOfSeparatorInBuffer = endOfSeparatorInBuffer = bytePositionInBuffer;
-            break;
-          }
-
-          byte currentByte = buffer.byteAt(bytePositionInBuffer);
-
-          if (currentByte == '\n') {
-            startOfSeparatorInBuffer = bytePositionInBuffer;
-            endOfSeparatorInBuffer = startOfSeparatorInBuffer + 1;
-            break;
-          } else if (currentByte == '\r') {
-            startOfSeparatorInBuffer = bytePositionInBuffer;
-            endOfSeparatorInBuffer = startOfSeparatorInBuffer + 1;
-
-            if (tryToEnsureNumberOfBytesInBuffer(bytePositionInBuffer + 2)) {
-              currentByte = buffer.byteAt(bytePositionInBuffer + 1);
-              if (currentByte == '\n') {
-                endOfSeparatorInBuffer += 1;
-              }
-            }
-            break;
-          }
-
-          // Move to the next byte in buffer.
-          bytePositionInBuffer += 1;
+          scanner.skipRecord();
+          startOfNextRecord = requiredPosition + scanner.getCurrentLength();
         }
       }
 
       @Override
       protected boolean readNextRecord() throws IOException {
         startOfRecord = startOfNextRecord;
-        findSeparatorBounds();
-
-        // If we have reached EOF file and consumed all of the buffer then we know
-        // that there are no more records.
-        if (eof && buffer.size() == 0) {
+        if (!scanner.readNextRecord()) {
           elementIsPresent = false;
           return false;
         }
-
-        decodeCurrentElement();
-        startOfNextRecord = startOfRecord + endOfSeparatorInBuffer;
-        return true;
-      }
-
-      /**
-       * Decodes the current element updating the buffer to only contain the unconsumed bytes.
-       *
-       * <p>This invalidates the currently stored {@code startOfSeparatorInBuffer} and
-       * {@code endOfSeparatorInBuffer}.
-       */
-      private void decodeCurrentElement() throws IOException {
-        ByteString dataToDecode = buffer.substring(0, startOfSeparatorInBuffer);
-        currentValue = dataToDecode.toStringUtf8();
+        currentValue = scanner.getCurrent();
         elementIsPresent = true;
-        buffer = buffer.substring(endOfSeparatorInBuffer);
-      }
-
-      /**
-       * Returns false if we were unable to ensure the minimum capacity by consuming the channel.
-       */
-      private boolean tryToEnsureNumberOfBytesInBuffer(int minCapacity) throws IOException {
-        // While we aren't at EOF or haven't fulfilled the minimum buffer capacity,
-        // attempt to read more bytes.
-        while (buffer.size() <= minCapacity && !eof) {
-          eof = inChannel.read(readBuffer) == -1;
-          readBuffer.flip();
-          buffer = buffer.concat(ByteString.copyFrom(readBuffer));
-          readBuffer.clear();
-        }
-        // Return true if we were able to honor the minimum buffer capacity request
-        return buffer.size() >= minCapacity;
+        startOfNextRecord = startOfRecord + scanner.getCurrentLength();
+        return true;
       }
     }
   }
@@ -17,7 +17,6 @@
  */
 package org.apache.beam.sdk.metrics;
 
-import java.util.concurrent.atomic.AtomicLong;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.annotations.Experimental.Kind;
 
@@ -33,7 +32,7 @@ import org.apache.beam.sdk.annotations.Experimental.Kind;
 public class CounterCell implements MetricCell<Counter, Long>, Counter {
 
   private final DirtyState dirty = new DirtyState();
-  private final AtomicLong value = new AtomicLong();
+  private final StripedLong value = new StripedLong();
 
   /**
    * Package-visibility because all {@link CounterCell CounterCells} should be created by
@@ -43,7 +42,7 @@ public class CounterCell implements MetricCell<Counter, Long>, Counter {
 
   /** Increment the counter by the given amount. */
   private void add(long n) {
-    value.addAndGet(n);
+    value.add(n);
     dirty.afterModification();
   }
 
@@ -54,7 +53,7 @@ public class CounterCell implements MetricCell<Counter, Long>, Counter {
 
   @Override
   public Long getCumulative() {
-    return value.get();
+    return value.sum();
   }
 
   @Override
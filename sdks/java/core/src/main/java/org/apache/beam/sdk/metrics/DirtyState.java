@@ -59,7 +59,11 @@ class DirtyState {
    * <p>Should be called <b>after</b> modification of the value.
    */
   public void afterModification() {
-    dirty.set(State.DIRTY);
+    // Only write if the state changes, so that concurrent modifications of a metric which is
+    // already dirty do not contend on this cache line.
+    if (dirty.get() != State.DIRTY) {
+      dirty.set(State.DIRTY);
+    }
   }
 
   /**
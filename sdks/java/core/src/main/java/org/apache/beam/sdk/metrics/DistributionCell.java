@@ -17,7 +17,7 @@
  */
 package org.apache.beam.sdk.metrics;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.apache.beam.sdk.annotations.Experimental;
 import org.apache.beam.sdk.annotations.Experimental.Kind;
 
@@ -32,23 +32,39 @@ import org.apache.beam.sdk.annotations.Experimental.Kind;
 @Experimental(Kind.METRICS)
 public class DistributionCell implements MetricCell<Distribution, DistributionData>, Distribution {
 
+  /** The indices of the minimum and maximum in {@link #minMax}, each on its own cache line. */
+  private static final int MIN_INDEX = StripedLong.PADDING;
+  private static final int MAX_INDEX = 2 * StripedLong.PADDING;
+
   private final DirtyState dirty = new DirtyState();
-  private final AtomicReference<DistributionData> value =
-      new AtomicReference<DistributionData>(DistributionData.EMPTY);
+  private final StripedLong sum = new StripedLong();
+  private final StripedLong count = new StripedLong();
+  private final AtomicLongArray minMax = new AtomicLongArray(3 * StripedLong.PADDING);
 
   /**
    * Package-visibility because all {@link DistributionCell DistributionCells} should be created by
    * {@link MetricsContainer#getDistribution(MetricName)}.
    */
-  DistributionCell() {}
+  DistributionCell() {
+    minMax.set(MIN_INDEX, Long.MAX_VALUE);
+    minMax.set(MAX_INDEX, Long.MIN_VALUE);
+  }
 
   /** Increment the counter by the given amount. */
   @Override
   public void update(long n) {
-    DistributionData original;
-    do {
-      original = value.get();
-    } while (!value.compareAndSet(original, original.combine(DistributionData.singleton(n))));
+    // The count is updated last and read first by getCumulative(), so any value included in the
+    // count is also included in the sum, minimum and maximum.
+    long min = minMax.get(MIN_INDEX);
+    while (n < min && !minMax.compareAndSet(MIN_INDEX, min, n)) {
+      min = minMax.get(MIN_INDEX);
+    }
+    long max = minMax.get(MAX_INDEX);
+    while (n > max && !minMax.compareAndSet(MAX_INDEX, max, n)) {
+      max = minMax.get(MAX_INDEX);
+    }
+    sum.add(n);
+    count.add(1);
     dirty.afterModification();
   }
 
@@ -59,7 +75,9 @@ public class DistributionCell implements MetricCell<Distribution, DistributionDa
 
   @Override
   public DistributionData getCumulative() {
-    return value.get();
+    long currentCount = count.sum();
+    return DistributionData.create(
+        sum.sum(), currentCount, minMax.get(MIN_INDEX), minMax.get(MAX_INDEX));
   }
 
   @Override
@@ -67,4 +85,3 @@ public class DistributionCell implements MetricCell<Distribution, DistributionDa
     return this;
   }
 }
-
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum of {@code long} values which can be updated concurrently without contention, similar to
+ * {@code java.util.concurrent.atomic.LongAdder}.
+ *
+ * <p>Updates are applied to a single base value until two threads contend on it. From then on,
+ * each thread updates one of several stripes, each on its own cache line, and the sum is computed
+ * by adding all of the stripes. A thread which contends on its stripe moves to another stripe.
+ *
+ * <p>{@link #sum()} is not an atomic snapshot; updates concurrent with it may or may not be
+ * included in the result.
+ */
+class StripedLong {
+  /** The number of {@code long} slots per stripe, so that each stripe is on its own cache line. */
+  static final int PADDING = 8;
+
+  private static final int NUM_STRIPES =
+      Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+  /** The stripe each thread last updated successfully, shared by all instances. */
+  private static final ThreadLocal<int[]> THREAD_HASH =
+      new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+          // Mix the thread id so consecutive threads are spread across stripes.
+          long id = Thread.currentThread().getId();
+          int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+          return new int[] {hash == 0 ? 1 : hash};
+        }
+      };
+
+  private final AtomicLong base = new AtomicLong();
+
+  /** Null until there is contention on {@link #base}. */
+  private volatile AtomicLongArray stripes;
+
+  /** Adds the given value. */
+  public void add(long x) {
+    AtomicLongArray currentStripes = stripes;
+    if (currentStripes == null) {
+      long value = base.get();
+      if (base.compareAndSet(value, value + x)) {
+        return;
+      }
+      if (NUM_STRIPES == 1) {
+        // With a single processor, contention is only due to preemption and striping won't help
+        base.addAndGet(x);
+        return;
+      }
+      currentStripes = initStripes();
+    }
+    int[] threadHash = THREAD_HASH.get();
+    int hash = threadHash[0];
+    while (true) {
+      int index = ((hash & (NUM_STRIPES - 1)) + 1) * PADDING;
+      long value = currentStripes.get(index);
+      if (currentStripes.compareAndSet(index, value, value + x)) {
+        threadHash[0] = hash;
+        return;
+      }
+      // xorshift to a different stripe
+      hash ^= hash << 13;
+      hash ^= hash >>> 17;
+      hash ^= hash << 5;
+    }
+  }
+
+  /** Returns the sum of all of the values added. */
+  public long sum() {
+    long sum = base.get();
+    AtomicLongArray currentStripes = stripes;
+    if (currentStripes != null) {
+      for (int i = 1; i <= NUM_STRIPES; i++) {
+        sum += currentStripes.get(i * PADDING);
+      }
+    }
+    return sum;
+  }
+
+  private synchronized AtomicLongArray initStripes() {
+    if (stripes == null) {
+      // The stripes are preceded and followed by a cache line of padding, so that they do not
+      // share a cache line with the array header or other objects.
+      stripes = new AtomicLongArray((NUM_STRIPES + 2) * PADDING);
+    }
+    return stripes;
+  }
+}
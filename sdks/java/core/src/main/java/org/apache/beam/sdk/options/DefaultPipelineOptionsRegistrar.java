@@ -36,6 +36,7 @@ public class DefaultPipelineOptionsRegistrar implements PipelineOptionsRegistrar
         .add(GcpOptions.class)
         .add(GcsOptions.class)
         .add(GoogleApiDebugOptions.class)
+        .add(LocalFileSystemOptions.class)
         .add(PubsubOptions.class)
         .build();
   }
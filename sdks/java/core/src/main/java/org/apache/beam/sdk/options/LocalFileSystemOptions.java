@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.options;
+
+import javax.annotation.Nullable;
+
+/**
+ * Options used to configure reading and writing local files.
+ */
+public interface LocalFileSystemOptions extends PipelineOptions {
+  /**
+   * Whether local files are read through memory mapped channels. Mapping avoids copying the data
+   * from the kernel for every read, which is faster for files on fast local disks. Since mapped
+   * files count towards the virtual memory of the process, it is disabled by default.
+   */
+  @Description("Whether local files are read through memory mapped channels, which avoids "
+      + "copying the data from the kernel for every read.")
+  @Default.Boolean(false)
+  boolean getMemoryMapLocalFiles();
+  void setMemoryMapLocalFiles(boolean value);
+
+  /**
+   * The local directory that values which do not fit in memory, such as those of large
+   * {@link org.apache.beam.sdk.transforms.join.CoGbkResult CoGbkResults}, are spilled to. The
+   * default temporary-file directory, {@code java.io.tmpdir}, is used if not set.
+   */
+  @Description("The local directory that values which do not fit in memory are spilled to. "
+      + "Defaults to the java.io.tmpdir directory.")
+  @Nullable
+  String getLocalSpillDirectory();
+  void setLocalSpillDirectory(@Nullable String value);
+}
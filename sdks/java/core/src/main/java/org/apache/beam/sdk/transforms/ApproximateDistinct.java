@@ -0,0 +1,761 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * {@code PTransform}s for estimating the number of distinct elements in a {@code PCollection},
+ * or the number of distinct values associated with each key in a {@code PCollection} of
+ * {@code KV}s, using HyperLogLog++ sketches.
+ *
+ * <p>Unlike {@link ApproximateUnique}, whose accumulators retain {@code 4 / error^2} hashes, a
+ * sketch of precision {@code p} uses at most {@code 2^p} bytes, and far less for small
+ * cardinalities, for a relative standard error of about {@code 1.04 / sqrt(2^p)}. The default
+ * precision of {@value #DEFAULT_PRECISION} uses at most 16KiB per sketch for an error of about
+ * 0.8%.
+ *
+ * <p>Elements are hashed with a 64-bit hash of their encoding. While a sketch has seen few
+ * distinct hashes it stores them in a sparse representation at a higher internal precision, which
+ * is exact up to hash collisions; once the sparse representation would be larger than the dense
+ * registers it is converted. Estimates from dense registers use the improved estimator of Ertl,
+ * "New cardinality estimation algorithms for HyperLogLog sketches" (2017), which is unbiased
+ * over the whole range of cardinalities without empirical bias correction tables.
+ *
+ * <p>Sketches can be produced directly with {@link SketchFn}, encoded with {@link SketchCoder},
+ * persisted, and merged later with {@link MergeSketchesFn}; sketches can only be merged with
+ * sketches of the same precision.
+ *
+ * <p>Example of use:
+ * <pre> {@code
+ * PCollection<KV<String, String>> userIdsPerCountry = ...;
+ * PCollection<KV<String, Long>> approxDistinctUsersPerCountry =
+ *     userIdsPerCountry.apply(ApproximateDistinct.<String, String>perKey().withPrecision(12));
+ *
+ * PCollection<KV<String, ApproximateDistinct.Sketch>> sketches =
+ *     userIdsPerCountry.apply(Combine.<String, String, ApproximateDistinct.Sketch>perKey(
+ *         ApproximateDistinct.SketchFn.create(StringUtf8Coder.of())));
+ * } </pre>
+ */
+public class ApproximateDistinct {
+
+  /** The smallest supported precision. */
+  public static final int MIN_PRECISION = 4;
+
+  /** The largest supported precision. */
+  public static final int MAX_PRECISION = 18;
+
+  /** The default precision, with an error of about 0.8%. */
+  public static final int DEFAULT_PRECISION = 14;
+
+  /** The precision of the sparse representation. */
+  @VisibleForTesting
+  static final int SPARSE_PRECISION = 25;
+
+  /**
+   * Returns a {@code PTransform} that takes a {@code PCollection<T>} and returns a
+   * {@code PCollection<Long>} containing a single value that is an estimate of the number of
+   * distinct elements in the input {@code PCollection}.
+   *
+   * @param <T> the type of the elements in the input {@code PCollection}
+   */
+  public static <T> Globally<T> globally() {
+    return new Globally<>(DEFAULT_PRECISION);
+  }
+
+  /**
+   * Returns a {@code PTransform} that takes a {@code PCollection<KV<K, V>>} and returns a
+   * {@code PCollection<KV<K, Long>>} that contains an output element mapping each distinct key in
+   * the input {@code PCollection} to an estimate of the number of distinct values associated with
+   * that key in the input {@code PCollection}.
+   *
+   * @param <K> the type of the keys in the input and output {@code PCollection}s
+   * @param <V> the type of the values in the input {@code PCollection}
+   */
+  public static <K, V> PerKey<K, V> perKey() {
+    return new PerKey<>(DEFAULT_PRECISION);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * {@code PTransform} for estimating the number of distinct elements in a {@code PCollection}.
+   *
+   * @param <T> the type of the elements in the input {@code PCollection}
+   */
+  public static class Globally<T> extends PTransform<PCollection<T>, PCollection<Long>> {
+    private final int precision;
+
+    private Globally(int precision) {
+      this.precision = precision;
+    }
+
+    /**
+     * Returns a new transform which uses sketches of the provided precision, which must be
+     * between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    public Globally<T> withPrecision(int precision) {
+      checkPrecision(precision);
+      return new Globally<>(precision);
+    }
+
+    @Override
+    public PCollection<Long> expand(PCollection<T> input) {
+      return input.apply(
+          Combine.globally(EstimateFn.create(input.getCoder()).withPrecision(precision)));
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      ApproximateDistinct.populateDisplayData(builder, precision);
+    }
+  }
+
+  /**
+   * {@code PTransform} for estimating the number of distinct values associated with each key in a
+   * {@code PCollection} of {@code KV}s.
+   *
+   * @param <K> the type of the keys in the input and output {@code PCollection}s
+   * @param <V> the type of the values in the input {@code PCollection}
+   */
+  public static class PerKey<K, V>
+      extends PTransform<PCollection<KV<K, V>>, PCollection<KV<K, Long>>> {
+    private final int precision;
+
+    private PerKey(int precision) {
+      this.precision = precision;
+    }
+
+    /**
+     * Returns a new transform which uses sketches of the provided precision, which must be
+     * between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    public PerKey<K, V> withPrecision(int precision) {
+      checkPrecision(precision);
+      return new PerKey<>(precision);
+    }
+
+    @Override
+    public PCollection<KV<K, Long>> expand(PCollection<KV<K, V>> input) {
+      Coder<KV<K, V>> inputCoder = input.getCoder();
+      if (!(inputCoder instanceof KvCoder)) {
+        throw new IllegalStateException(
+            "ApproximateDistinct.PerKey requires its input to use KvCoder");
+      }
+      @SuppressWarnings("unchecked")
+      Coder<V> coder = ((KvCoder<K, V>) inputCoder).getValueCoder();
+      return input.apply(
+          Combine.<K, V, Long>perKey(EstimateFn.create(coder).withPrecision(precision)));
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      ApproximateDistinct.populateDisplayData(builder, precision);
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * {@code CombineFn} that adds the hashes of the combined values to a {@link Sketch}, and
+   * outputs the sketch.
+   *
+   * @param <T> the type of the values being combined
+   */
+  public static class SketchFn<T> extends SketchingFn<T, Sketch> {
+    private SketchFn(int precision, Coder<T> coder) {
+      super(precision, coder);
+    }
+
+    /**
+     * Returns a {@link SketchFn} of the {@link #DEFAULT_PRECISION} which hashes the encoding of
+     * values with the provided {@link Coder}.
+     */
+    public static <T> SketchFn<T> create(Coder<T> coder) {
+      return new SketchFn<>(DEFAULT_PRECISION, coder);
+    }
+
+    /**
+     * Returns a new {@link SketchFn} which creates sketches of the provided precision, which must
+     * be between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    public SketchFn<T> withPrecision(int precision) {
+      checkPrecision(precision);
+      return new SketchFn<>(precision, coder);
+    }
+
+    @Override
+    public Sketch extractOutput(Sketch sketch) {
+      return sketch;
+    }
+
+    @Override
+    public Coder<Sketch> getDefaultOutputCoder(CoderRegistry registry, Coder<T> inputCoder) {
+      return SketchCoder.of();
+    }
+  }
+
+  /**
+   * {@code CombineFn} that computes an estimate of the number of distinct values that were
+   * combined.
+   *
+   * @param <T> the type of the values being combined
+   */
+  public static class EstimateFn<T> extends SketchingFn<T, Long> {
+    private EstimateFn(int precision, Coder<T> coder) {
+      super(precision, coder);
+    }
+
+    /**
+     * Returns an {@link EstimateFn} of the {@link #DEFAULT_PRECISION} which hashes the encoding
+     * of values with the provided {@link Coder}.
+     */
+    public static <T> EstimateFn<T> create(Coder<T> coder) {
+      return new EstimateFn<>(DEFAULT_PRECISION, coder);
+    }
+
+    /**
+     * Returns a new {@link EstimateFn} which uses sketches of the provided precision, which must
+     * be between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    public EstimateFn<T> withPrecision(int precision) {
+      checkPrecision(precision);
+      return new EstimateFn<>(precision, coder);
+    }
+
+    @Override
+    public Long extractOutput(Sketch sketch) {
+      return sketch.getEstimate();
+    }
+  }
+
+  /**
+   * {@code CombineFn} that merges {@link Sketch sketches} of the same precision, for example
+   * sketches which were previously output by a {@link SketchFn} and persisted.
+   */
+  public static class MergeSketchesFn extends CombineFn<Sketch, Sketch, Sketch> {
+    private final int precision;
+
+    private MergeSketchesFn(int precision) {
+      this.precision = precision;
+    }
+
+    /** Returns a {@link MergeSketchesFn} which merges sketches of the provided precision. */
+    public static MergeSketchesFn create(int precision) {
+      checkPrecision(precision);
+      return new MergeSketchesFn(precision);
+    }
+
+    @Override
+    public Sketch createAccumulator() {
+      return new Sketch(precision);
+    }
+
+    @Override
+    public Sketch addInput(Sketch accumulator, Sketch input) {
+      accumulator.merge(input);
+      return accumulator;
+    }
+
+    @Override
+    public Sketch mergeAccumulators(Iterable<Sketch> accumulators) {
+      return mergeSketches(accumulators);
+    }
+
+    @Override
+    public Sketch extractOutput(Sketch sketch) {
+      return sketch;
+    }
+
+    @Override
+    public Coder<Sketch> getAccumulatorCoder(CoderRegistry registry, Coder<Sketch> inputCoder) {
+      return SketchCoder.of();
+    }
+
+    @Override
+    public Coder<Sketch> getDefaultOutputCoder(CoderRegistry registry, Coder<Sketch> inputCoder) {
+      return SketchCoder.of();
+    }
+  }
+
+  /** The common implementation of {@link SketchFn} and {@link EstimateFn}. */
+  private abstract static class SketchingFn<T, OutputT> extends CombineFn<T, Sketch, OutputT> {
+    protected final int precision;
+    protected final Coder<T> coder;
+
+    private SketchingFn(int precision, Coder<T> coder) {
+      this.precision = precision;
+      this.coder = coder;
+    }
+
+    @Override
+    public Sketch createAccumulator() {
+      return new Sketch(precision);
+    }
+
+    @Override
+    public Sketch addInput(Sketch sketch, T input) {
+      try {
+        sketch.addHash(ApproximateUnique.ApproximateUniqueCombineFn.hash(input, coder));
+        return sketch;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public Sketch mergeAccumulators(Iterable<Sketch> sketches) {
+      return mergeSketches(sketches);
+    }
+
+    @Override
+    public Coder<Sketch> getAccumulatorCoder(CoderRegistry registry, Coder<T> inputCoder) {
+      return SketchCoder.of();
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      ApproximateDistinct.populateDisplayData(builder, precision);
+    }
+  }
+
+  private static Sketch mergeSketches(Iterable<Sketch> sketches) {
+    Iterator<Sketch> iterator = sketches.iterator();
+    Sketch sketch = iterator.next();
+    while (iterator.hasNext()) {
+      sketch.merge(iterator.next());
+    }
+    return sketch;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * A mergeable HyperLogLog++ sketch of a set of 64-bit hashes.
+   *
+   * <p>A sparse sketch stores one int per distinct index at {@link #SPARSE_PRECISION}, which
+   * combines the index with the number of leading zeros of the remaining bits of the hash. New
+   * hashes are appended to a small unsorted buffer which is periodically sorted and merged into
+   * the sorted sparse list. A dense sketch stores one byte register per index at the precision of
+   * the sketch.
+   */
+  public static class Sketch implements Serializable {
+    /** The number of bits of a sparse entry which hold the number of leading zeros. */
+    private static final int RHO_BITS = 6;
+
+    private final int precision;
+
+    /** The sorted sparse entries, with at most one entry per index, or null if dense. */
+    private int[] sparse;
+    private int sparseSize;
+
+    /** Sparse entries which have not yet been merged into the sorted list, or null if dense. */
+    private int[] buffer;
+    private int bufferSize;
+
+    /** The dense registers, or null if sparse. */
+    private byte[] registers;
+
+    /** Creates an empty sparse sketch of the provided precision. */
+    public Sketch(int precision) {
+      checkPrecision(precision);
+      this.precision = precision;
+      this.sparse = new int[0];
+      this.buffer = new int[4];
+    }
+
+    private Sketch(int precision, int[] sparse, byte[] registers) {
+      this.precision = precision;
+      if (registers == null) {
+        this.sparse = sparse;
+        this.sparseSize = sparse.length;
+        this.buffer = new int[4];
+      } else {
+        this.registers = registers;
+      }
+    }
+
+    /** Returns the precision of this sketch. */
+    public int getPrecision() {
+      return precision;
+    }
+
+    /** Returns true if this sketch uses the sparse representation. */
+    public boolean isSparse() {
+      return registers == null;
+    }
+
+    /** Adds a 64-bit hash to this sketch. */
+    public void addHash(long hash) {
+      if (registers != null) {
+        addToRegisters(hash);
+        return;
+      }
+      int index = (int) (hash >>> (64 - SPARSE_PRECISION));
+      int rho = Math.min(Long.numberOfLeadingZeros(hash << SPARSE_PRECISION),
+          64 - SPARSE_PRECISION) + 1;
+      addSparseEntry(index << RHO_BITS | rho);
+    }
+
+    /** Merges another sketch of the same precision into this sketch. */
+    public void merge(Sketch other) {
+      checkArgument(other.precision == precision,
+          "Can only merge sketches of the same precision, got %s and %s",
+          precision, other.precision);
+      other.flushBuffer();
+      if (other.registers != null) {
+        toDense();
+        for (int i = 0; i < registers.length; ++i) {
+          if (other.registers[i] > registers[i]) {
+            registers[i] = other.registers[i];
+          }
+        }
+        return;
+      }
+      if (registers != null) {
+        for (int i = 0; i < other.sparseSize; ++i) {
+          addSparseEntryToRegisters(other.sparse[i]);
+        }
+        return;
+      }
+      flushBuffer();
+      int[] merged = new int[sparseSize + other.sparseSize];
+      int mergedSize = mergeSorted(
+          sparse, sparseSize, other.sparse, other.sparseSize, merged);
+      sparse = merged;
+      sparseSize = mergedSize;
+      if (sparseSize > maxSparseSize()) {
+        toDense();
+      }
+    }
+
+    /** Returns an estimate of the number of distinct hashes added to this sketch. */
+    public long getEstimate() {
+      if (registers == null) {
+        flushBuffer();
+        // Linear counting at the sparse precision, which is exact unless indices collide.
+        double m = 1L << SPARSE_PRECISION;
+        return Math.round(m * Math.log(m / (m - sparseSize)));
+      }
+      return Math.round(estimateFromRegisters(registers, precision));
+    }
+
+    private void addSparseEntry(int entry) {
+      if (bufferSize == buffer.length) {
+        int maxBufferSize = Math.max(4, maxSparseSize() / 4);
+        if (buffer.length < maxBufferSize) {
+          buffer = Arrays.copyOf(buffer, Math.min(maxBufferSize, buffer.length * 2));
+        } else {
+          flushBuffer();
+          if (registers != null) {
+            addSparseEntryToRegisters(entry);
+            return;
+          }
+        }
+      }
+      buffer[bufferSize++] = entry;
+    }
+
+    /** Merges the buffer into the sparse list, converting to dense registers if it is too big. */
+    private void flushBuffer() {
+      if (registers != null || bufferSize == 0) {
+        return;
+      }
+      Arrays.sort(buffer, 0, bufferSize);
+      int[] merged = new int[sparseSize + bufferSize];
+      int mergedSize = mergeSorted(sparse, sparseSize, buffer, bufferSize, merged);
+      sparse = merged;
+      sparseSize = mergedSize;
+      bufferSize = 0;
+      if (sparseSize > maxSparseSize()) {
+        toDense();
+      }
+    }
+
+    /**
+     * Returns the number of sparse entries above which the sparse representation uses more memory
+     * than the dense registers.
+     */
+    private int maxSparseSize() {
+      return (1 << precision) / 4;
+    }
+
+    private void toDense() {
+      if (registers != null) {
+        return;
+      }
+      flushBuffer();
+      if (registers != null) {
+        return;
+      }
+      registers = new byte[1 << precision];
+      for (int i = 0; i < sparseSize; ++i) {
+        addSparseEntryToRegisters(sparse[i]);
+      }
+      sparse = null;
+      sparseSize = 0;
+      buffer = null;
+      bufferSize = 0;
+    }
+
+    private void addToRegisters(long hash) {
+      int index = (int) (hash >>> (64 - precision));
+      byte rho = (byte) (Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision)
+          + 1);
+      if (rho > registers[index]) {
+        registers[index] = rho;
+      }
+    }
+
+    private void addSparseEntryToRegisters(int entry) {
+      int sparseIndex = entry >>> RHO_BITS;
+      int extraBits = SPARSE_PRECISION - precision;
+      int index = sparseIndex >>> extraBits;
+      int lowBits = sparseIndex & ((1 << extraBits) - 1);
+      byte rho;
+      if (lowBits != 0) {
+        rho = (byte) (Integer.numberOfLeadingZeros(lowBits) - (32 - extraBits) + 1);
+      } else {
+        rho = (byte) (extraBits + (entry & ((1 << RHO_BITS) - 1)));
+      }
+      if (rho > registers[index]) {
+        registers[index] = rho;
+      }
+    }
+
+    /**
+     * Merges two sorted lists of sparse entries into {@code out}, keeping the entry with the most
+     * leading zeros for each index, and returns the size of the merged list.
+     */
+    private static int mergeSorted(int[] a, int aSize, int[] b, int bSize, int[] out) {
+      int i = 0;
+      int j = 0;
+      int size = 0;
+      while (i < aSize || j < bSize) {
+        int next;
+        if (j >= bSize || (i < aSize && a[i] <= b[j])) {
+          next = a[i++];
+        } else {
+          next = b[j++];
+        }
+        // Entries are ordered by index and then by the number of leading zeros, so an entry for
+        // the same index as the previous entry replaces it.
+        if (size > 0 && (out[size - 1] >>> RHO_BITS) == (next >>> RHO_BITS)) {
+          out[size - 1] = next;
+        } else {
+          out[size++] = next;
+        }
+      }
+      return size;
+    }
+
+    /** Ertl's improved raw estimator, computed from the histogram of register values. */
+    @VisibleForTesting
+    static double estimateFromRegisters(byte[] registers, int precision) {
+      int q = 64 - precision;
+      int[] histogram = new int[q + 2];
+      for (byte register : registers) {
+        histogram[register]++;
+      }
+      double m = registers.length;
+      double z = m * tau(1 - histogram[q + 1] / m);
+      for (int k = q; k >= 1; --k) {
+        z = 0.5 * (z + histogram[k]);
+      }
+      z += m * sigma(histogram[0] / m);
+      return m * m / (2 * Math.log(2) * z);
+    }
+
+    private static double sigma(double x) {
+      if (x == 1) {
+        return Double.POSITIVE_INFINITY;
+      }
+      double y = 1;
+      double z = x;
+      double previous;
+      do {
+        x *= x;
+        previous = z;
+        z += x * y;
+        y += y;
+      } while (z != previous);
+      return z;
+    }
+
+    private static double tau(double x) {
+      if (x == 0 || x == 1) {
+        return 0;
+      }
+      double y = 1;
+      double z = 1 - x;
+      double previous;
+      do {
+        x = Math.sqrt(x);
+        previous = z;
+        y *= 0.5;
+        z -= Math.pow(1 - x, 2) * y;
+      } while (z != previous);
+      return z / 3;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Sketch)) {
+        return false;
+      }
+      Sketch that = (Sketch) other;
+      flushBuffer();
+      that.flushBuffer();
+      return precision == that.precision
+          && Arrays.equals(registers, that.registers)
+          && Arrays.equals(sparseEntries(), that.sparseEntries());
+    }
+
+    @Override
+    public int hashCode() {
+      flushBuffer();
+      return 31 * (31 * precision + Arrays.hashCode(registers))
+          + Arrays.hashCode(sparseEntries());
+    }
+
+    private int[] sparseEntries() {
+      return sparse == null ? null : Arrays.copyOf(sparse, sparseSize);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Sketch{precision=%s, %s, estimate=%s}",
+          precision, isSparse() ? "sparse" : "dense", getEstimate());
+    }
+  }
+
+  /**
+   * A compact {@link Coder} for {@link Sketch sketches}.
+   *
+   * <p>Sparse sketches are encoded as the varint deltas between their sorted entries, and dense
+   * sketches as their registers.
+   */
+  public static class SketchCoder extends AtomicCoder<Sketch> {
+    private static final SketchCoder INSTANCE = new SketchCoder();
+    private static final int SPARSE = 0;
+    private static final int DENSE = 1;
+
+    public static SketchCoder of() {
+      return INSTANCE;
+    }
+
+    private SketchCoder() {}
+
+    @Override
+    public void encode(Sketch sketch, OutputStream outStream, Context context)
+        throws CoderException, IOException {
+      sketch.flushBuffer();
+      outStream.write(sketch.precision);
+      if (sketch.registers != null) {
+        outStream.write(DENSE);
+        outStream.write(sketch.registers);
+        return;
+      }
+      outStream.write(SPARSE);
+      VarInt.encode(sketch.sparseSize, outStream);
+      int previous = 0;
+      for (int i = 0; i < sketch.sparseSize; ++i) {
+        VarInt.encode(sketch.sparse[i] - previous, outStream);
+        previous = sketch.sparse[i];
+      }
+    }
+
+    @Override
+    public Sketch decode(InputStream inStream, Context context)
+        throws CoderException, IOException {
+      int precision = inStream.read();
+      if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+        throw new CoderException("Invalid sketch precision " + precision);
+      }
+      int representation = inStream.read();
+      if (representation == DENSE) {
+        byte[] registers = new byte[1 << precision];
+        int read = 0;
+        while (read < registers.length) {
+          int n = inStream.read(registers, read, registers.length - read);
+          if (n < 0) {
+            throw new CoderException("Unexpected end of stream while decoding sketch");
+          }
+          read += n;
+        }
+        return new Sketch(precision, null, registers);
+      } else if (representation == SPARSE) {
+        int[] sparse = new int[VarInt.decodeInt(inStream)];
+        int previous = 0;
+        for (int i = 0; i < sparse.length; ++i) {
+          previous += VarInt.decodeInt(inStream);
+          sparse[i] = previous;
+        }
+        return new Sketch(precision, sparse, null);
+      } else {
+        throw new CoderException("Invalid sketch representation " + representation);
+      }
+    }
+
+    @Override
+    protected long getEncodedElementByteSize(Sketch sketch, Context context) throws Exception {
+      sketch.flushBuffer();
+      if (sketch.registers != null) {
+        return 2 + sketch.registers.length;
+      }
+      long size = 2 + VarInt.getLength(sketch.sparseSize);
+      int previous = 0;
+      for (int i = 0; i < sketch.sparseSize; ++i) {
+        size += VarInt.getLength(sketch.sparse[i] - previous);
+        previous = sketch.sparse[i];
+      }
+      return size;
+    }
+  }
+
+  private static void checkPrecision(int precision) {
+    checkArgument(precision >= MIN_PRECISION && precision <= MAX_PRECISION,
+        "ApproximateDistinct needs a precision between %s and %s, got %s",
+        MIN_PRECISION, MAX_PRECISION, precision);
+  }
+
+  private static void populateDisplayData(DisplayData.Builder builder, int precision) {
+    builder.add(DisplayData.item("precision", precision).withLabel("Sketch Precision"));
+  }
+}
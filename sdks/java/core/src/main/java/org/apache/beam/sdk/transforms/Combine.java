@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.transforms;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -24,14 +25,19 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import org.apache.beam.sdk.coders.CannotProvideCoderException;
 import org.apache.beam.sdk.coders.Coder;
@@ -39,11 +45,16 @@ import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.CoderRegistry;
 import org.apache.beam.sdk.coders.CustomCoder;
 import org.apache.beam.sdk.coders.DelegateCoder;
+import org.apache.beam.sdk.coders.DoubleCoder;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StandardCoder;
 import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.coders.VoidCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.CombineFnBase.AbstractGlobalCombineFn;
 import org.apache.beam.sdk.transforms.CombineFnBase.AbstractPerKeyCombineFn;
@@ -57,8 +68,10 @@ import org.apache.beam.sdk.transforms.View.CreatePCollectionView;
 import org.apache.beam.sdk.transforms.display.DisplayData;
 import org.apache.beam.sdk.transforms.display.DisplayData.Builder;
 import org.apache.beam.sdk.transforms.display.HasDisplayData;
+import org.apache.beam.sdk.transforms.windowing.DefaultTrigger;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFns;
 import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.util.AppliedCombineFn;
 import org.apache.beam.sdk.util.NameUtils;
@@ -66,6 +79,7 @@ import org.apache.beam.sdk.util.NameUtils.NameOverride;
 import org.apache.beam.sdk.util.PCollectionViews;
 import org.apache.beam.sdk.util.PropertyNames;
 import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.util.WindowingStrategy;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
@@ -76,6 +90,7 @@ import org.apache.beam.sdk.values.PValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
 import org.apache.beam.sdk.values.TypeDescriptor;
+import org.joda.time.Instant;
 
 /**
  * {@code PTransform}s for combining {@code PCollection} elements
@@ -736,6 +751,9 @@ public class Combine {
 
     @Override
     public Coder<int[]> getAccumulatorCoder(CoderRegistry registry, Coder<Integer> inputCoder) {
+      if (inputCoder instanceof VarIntCoder) {
+        return new VarIntSingletonArrayCoder();
+      }
       return DelegateCoder.of(
           inputCoder, new ToIntegerCodingFunction(), new FromIntegerCodingFunction());
     }
@@ -837,6 +855,9 @@ public class Combine {
 
     @Override
     public Coder<long[]> getAccumulatorCoder(CoderRegistry registry, Coder<Long> inputCoder) {
+      if (inputCoder instanceof VarLongCoder) {
+        return new VarLongSingletonArrayCoder();
+      }
       return DelegateCoder.of(inputCoder, new ToLongCodingFunction(), new FromLongCodingFunction());
     }
 
@@ -937,6 +958,9 @@ public class Combine {
 
     @Override
     public Coder<double[]> getAccumulatorCoder(CoderRegistry registry, Coder<Double> inputCoder) {
+      if (inputCoder instanceof DoubleCoder) {
+        return new DoubleSingletonArrayCoder();
+      }
       return DelegateCoder.of(
           inputCoder, new ToDoubleCodingFunction(), new FromDoubleCodingFunction());
     }
@@ -987,6 +1011,137 @@ public class Combine {
     }
   }
 
+  /**
+   * A {@link Coder} for the {@code int[1]} accumulators of {@link BinaryCombineIntegerFn}, with
+   * the same encoding as {@link VarIntCoder} but without boxing the accumulated value.
+   */
+  static class VarIntSingletonArrayCoder extends CustomCoder<int[]> {
+    @Override
+    public void encode(int[] value, OutputStream outStream, Context context)
+        throws IOException {
+      VarInt.encode(value[0], outStream);
+    }
+
+    @Override
+    public int[] decode(InputStream inStream, Context context)
+        throws IOException, CoderException {
+      try {
+        return new int[] {VarInt.decodeInt(inStream)};
+      } catch (EOFException | UTFDataFormatException exn) {
+        throw new CoderException(exn);
+      }
+    }
+
+    @Override
+    public void verifyDeterministic() {}
+
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(int[] value, Context context) {
+      return true;
+    }
+
+    @Override
+    protected long getEncodedElementByteSize(int[] value, Context context) {
+      return VarInt.getLength(value[0]);
+    }
+
+    @Override
+    public String getEncodingId() {
+      return "VarIntSingletonArray";
+    }
+  }
+
+  /**
+   * A {@link Coder} for {@code long[1]} accumulators, such as those of
+   * {@link BinaryCombineLongFn} and {@link Count}, with the same encoding as
+   * {@link VarLongCoder} but without boxing the accumulated value.
+   */
+  static class VarLongSingletonArrayCoder extends CustomCoder<long[]> {
+    @Override
+    public void encode(long[] value, OutputStream outStream, Context context)
+        throws IOException {
+      VarInt.encode(value[0], outStream);
+    }
+
+    @Override
+    public long[] decode(InputStream inStream, Context context)
+        throws IOException, CoderException {
+      try {
+        return new long[] {VarInt.decodeLong(inStream)};
+      } catch (EOFException | UTFDataFormatException exn) {
+        throw new CoderException(exn);
+      }
+    }
+
+    @Override
+    public void verifyDeterministic() {}
+
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(long[] value, Context context) {
+      return true;
+    }
+
+    @Override
+    protected long getEncodedElementByteSize(long[] value, Context context) {
+      return VarInt.getLength(value[0]);
+    }
+
+    @Override
+    public String getEncodingId() {
+      return "VarLongSingletonArray";
+    }
+  }
+
+  /**
+   * A {@link Coder} for the {@code double[1]} accumulators of {@link BinaryCombineDoubleFn}, with
+   * the same encoding as {@link DoubleCoder} but without boxing the accumulated value.
+   */
+  static class DoubleSingletonArrayCoder extends CustomCoder<double[]> {
+    @Override
+    public void encode(double[] value, OutputStream outStream, Context context)
+        throws IOException {
+      long bits = Double.doubleToLongBits(value[0]);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        outStream.write((int) (bits >>> shift));
+      }
+    }
+
+    @Override
+    public double[] decode(InputStream inStream, Context context)
+        throws IOException, CoderException {
+      long bits = 0;
+      for (int i = 0; i < 8; ++i) {
+        int b = inStream.read();
+        if (b < 0) {
+          throw new CoderException(new EOFException());
+        }
+        bits = (bits << 8) | b;
+      }
+      return new double[] {Double.longBitsToDouble(bits)};
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {
+      throw new NonDeterministicException(this,
+          "Floating point encodings are not guaranteed to be deterministic.");
+    }
+
+    @Override
+    public boolean isRegisterByteSizeObserverCheap(double[] value, Context context) {
+      return true;
+    }
+
+    @Override
+    protected long getEncodedElementByteSize(double[] value, Context context) {
+      return 8;
+    }
+
+    @Override
+    public String getEncodingId() {
+      return "DoubleSingletonArray";
+    }
+  }
+
   /////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -1796,24 +1951,23 @@ public class Combine {
     private final DisplayData.ItemSpec<? extends Class<?>> fnDisplayData;
     private final boolean fewKeys;
     private final List<PCollectionView<?>> sideInputs;
+    private final int maxPrecombinedKeys;
 
     private PerKey(
         PerKeyCombineFn<? super K, ? super InputT, ?, OutputT> fn,
         DisplayData.ItemSpec<? extends Class<?>> fnDisplayData, boolean fewKeys) {
-      this.fn = fn;
-      this.fnDisplayData = fnDisplayData;
-      this.fewKeys = fewKeys;
-      this.sideInputs = ImmutableList.of();
+      this(fn, fnDisplayData, fewKeys, ImmutableList.<PCollectionView<?>>of(), 0);
     }
 
     private PerKey(
         PerKeyCombineFn<? super K, ? super InputT, ?, OutputT> fn,
         DisplayData.ItemSpec<? extends Class<?>> fnDisplayData,
-        boolean fewKeys, List<PCollectionView<?>> sideInputs) {
+        boolean fewKeys, List<PCollectionView<?>> sideInputs, int maxPrecombinedKeys) {
       this.fn = fn;
       this.fnDisplayData = fnDisplayData;
       this.fewKeys = fewKeys;
       this.sideInputs = sideInputs;
+      this.maxPrecombinedKeys = maxPrecombinedKeys;
     }
 
     @Override
@@ -1837,7 +1991,24 @@ public class Combine {
         Iterable<? extends PCollectionView<?>> sideInputs) {
       checkState(fn instanceof RequiresContextInternal);
       return new PerKey<>(fn, fnDisplayData, fewKeys,
-          ImmutableList.copyOf(sideInputs));
+          ImmutableList.copyOf(sideInputs), maxPrecombinedKeys);
+    }
+
+    /**
+     * Returns a {@link PTransform} identical to this, but that combines the values of each key
+     * within a bundle before the {@link GroupByKey}, so that only one accumulator per key and
+     * bundle is shuffled.
+     *
+     * <p>The partial accumulators are held in a table keyed by the structural value of the
+     * encoded key, which holds at most {@code maxKeysPerBundle} keys; values of further keys are
+     * passed through as single element accumulators. Precombining only applies to inputs in the
+     * {@link GlobalWindows} with the default trigger and to {@link KeyedCombineFn KeyedCombineFns}
+     * without side inputs. Other inputs are combined as if this had not been called.
+     */
+    public PerKey<K, InputT, OutputT> withPrecombining(int maxKeysPerBundle) {
+      checkArgument(maxKeysPerBundle > 0,
+          "maxKeysPerBundle must be positive, but was: %s", maxKeysPerBundle);
+      return new PerKey<>(fn, fnDisplayData, fewKeys, sideInputs, maxKeysPerBundle);
     }
 
     /**
@@ -1877,6 +2048,29 @@ public class Combine {
           });
     }
 
+    /**
+     * Like {@link #withHotKeyFanout(SerializableFunction)}, but detecting hot keys as the values
+     * are combined instead of requiring them to be known in advance.
+     *
+     * <p>Each worker estimates the frequency of the keys it sees with a bounded heavy hitters
+     * counter, weighted towards recent values so that the detected keys follow shifts in the
+     * input. A key whose share of the recently seen values exceeds {@code hotKeyThreshold} is
+     * fanned out proportionally to that share, up to {@code maxFanout} intermediate nodes; all
+     * other keys are combined directly.
+     *
+     * <p>The number of detected hot keys and the fanout applied to them are reported as the
+     * {@code hotKeysDetected} counter and the {@code hotKeyFanout} distribution.
+     *
+     * @param maxFanout the largest fanout to apply to any key, at least 2
+     * @param hotKeyThreshold the fraction of values, strictly between 0 and 1, above which a key
+     * is considered hot
+     */
+    public PerKeyWithHotKeyFanout<K, InputT, OutputT> withAdaptiveHotKeyFanout(
+        int maxFanout, double hotKeyThreshold) {
+      return new PerKeyWithHotKeyFanout<>(fn, fnDisplayData,
+          new AdaptiveHotKeyFanout<K>(maxFanout, hotKeyThreshold));
+    }
+
     /**
      * Returns the {@link PerKeyCombineFn} used by this Combine operation.
      */
@@ -1907,6 +2101,9 @@ public class Combine {
 
     @Override
     public PCollection<KV<K, OutputT>> expand(PCollection<KV<K, InputT>> input) {
+      if (maxPrecombinedKeys > 0 && canPrecombine(input)) {
+        return expandWithPrecombining(input);
+      }
       return input
           .apply(
               fewKeys ? GroupByKey.<K, InputT>createWithFewKeys() : GroupByKey.<K, InputT>create())
@@ -1915,10 +2112,328 @@ public class Combine {
                   .withSideInputs(sideInputs));
     }
 
+    private boolean canPrecombine(PCollection<KV<K, InputT>> input) {
+      WindowingStrategy<?, ?> windowingStrategy = input.getWindowingStrategy();
+      // Partial accumulators are output at the earliest timestamp of their inputs.
+      boolean outputTimeCompatible =
+          OutputTimeFns.outputAtEarliestInputTimestamp().equals(
+              windowingStrategy.getOutputTimeFn())
+          || OutputTimeFns.outputAtEndOfWindow().equals(windowingStrategy.getOutputTimeFn());
+      return fn instanceof KeyedCombineFn
+          && sideInputs.isEmpty()
+          && input.getCoder() instanceof KvCoder
+          && windowingStrategy.getWindowFn() instanceof GlobalWindows
+          && windowingStrategy.getTrigger() instanceof DefaultTrigger
+          && outputTimeCompatible;
+    }
+
+    private <AccumT> PCollection<KV<K, OutputT>> expandWithPrecombining(
+        PCollection<KV<K, InputT>> input) {
+      // Name the accumulator type.
+      @SuppressWarnings("unchecked")
+      final KeyedCombineFn<K, InputT, AccumT, OutputT> keyedFn =
+          (KeyedCombineFn<K, InputT, AccumT, OutputT>) fn;
+      @SuppressWarnings("unchecked")
+      final KvCoder<K, InputT> inputCoder = (KvCoder<K, InputT>) input.getCoder();
+      final Coder<AccumT> accumCoder;
+      try {
+        accumCoder = keyedFn.getAccumulatorCoder(
+            input.getPipeline().getCoderRegistry(),
+            inputCoder.getKeyCoder(), inputCoder.getValueCoder());
+      } catch (CannotProvideCoderException e) {
+        throw new IllegalStateException("Unable to determine accumulator coder.", e);
+      }
+
+      KeyedCombineFn<K, AccumT, AccumT, OutputT> mergeFn =
+          new KeyedCombineFn<K, AccumT, AccumT, OutputT>() {
+            @Override
+            public AccumT createAccumulator(K key) {
+              return keyedFn.createAccumulator(key);
+            }
+            @Override
+            public AccumT addInput(K key, AccumT accumulator, AccumT value) {
+              return keyedFn.mergeAccumulators(key, ImmutableList.of(accumulator, value));
+            }
+            @Override
+            public AccumT mergeAccumulators(K key, Iterable<AccumT> accumulators) {
+              return keyedFn.mergeAccumulators(key, accumulators);
+            }
+            @Override
+            public AccumT compact(K key, AccumT accumulator) {
+              return keyedFn.compact(key, accumulator);
+            }
+            @Override
+            public OutputT extractOutput(K key, AccumT accumulator) {
+              return keyedFn.extractOutput(key, accumulator);
+            }
+            @Override
+            public Coder<OutputT> getDefaultOutputCoder(
+                CoderRegistry registry, Coder<K> keyCoder, Coder<AccumT> accumulatorCoder)
+                throws CannotProvideCoderException {
+              return keyedFn.getDefaultOutputCoder(
+                  registry, keyCoder, inputCoder.getValueCoder());
+            }
+            @Override
+            public Coder<AccumT> getAccumulatorCoder(
+                CoderRegistry registry, Coder<K> keyCoder, Coder<AccumT> inputCoder) {
+              return accumCoder;
+            }
+            @Override
+            public void populateDisplayData(DisplayData.Builder builder) {
+              builder.delegate(PerKey.this);
+            }
+          };
+
+      return input
+          .apply("PrecombineInBundle",
+              ParDo.of(new PrecombineInBundleFn<>(
+                  keyedFn, inputCoder.getKeyCoder(), maxPrecombinedKeys)))
+          .setCoder(KvCoder.of(inputCoder.getKeyCoder(), accumCoder))
+          .apply(
+              fewKeys ? GroupByKey.<K, AccumT>createWithFewKeys() : GroupByKey.<K, AccumT>create())
+          .apply(Combine.<K, AccumT, OutputT>groupedValues(mergeFn, fnDisplayData));
+    }
+
     @Override
     public void populateDisplayData(DisplayData.Builder builder) {
       super.populateDisplayData(builder);
       Combine.populateDisplayData(builder, fn, fnDisplayData);
+      if (maxPrecombinedKeys > 0) {
+        builder.add(DisplayData.item("maxPrecombinedKeys", maxPrecombinedKeys)
+            .withLabel("Max Precombined Keys Per Bundle"));
+      }
+    }
+  }
+
+  /**
+   * Combines the values of each key within a bundle into a single accumulator, output when the
+   * bundle finishes.
+   */
+  private static class PrecombineInBundleFn<K, InputT, AccumT>
+      extends DoFn<KV<K, InputT>, KV<K, AccumT>> {
+    private final KeyedCombineFn<K, InputT, AccumT, ?> fn;
+    private final Coder<K> keyCoder;
+    private final int maxKeys;
+
+    private transient Map<Object, PartialCombine<K, AccumT>> table;
+
+    PrecombineInBundleFn(
+        KeyedCombineFn<K, InputT, AccumT, ?> fn, Coder<K> keyCoder, int maxKeys) {
+      this.fn = fn;
+      this.keyCoder = keyCoder;
+      this.maxKeys = maxKeys;
+    }
+
+    @StartBundle
+    public void startBundle(Context c) {
+      table = new HashMap<>();
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) throws Exception {
+      K key = c.element().getKey();
+      Object structuralKey = keyCoder.structuralValue(key);
+      PartialCombine<K, AccumT> partial = table.get(structuralKey);
+      if (partial == null) {
+        if (table.size() >= maxKeys) {
+          c.output(KV.of(key, fn.addInput(key, fn.createAccumulator(key), c.element().getValue())));
+          return;
+        }
+        partial = new PartialCombine<>(key, fn.createAccumulator(key), c.timestamp());
+        table.put(structuralKey, partial);
+      } else if (c.timestamp().isBefore(partial.timestamp)) {
+        partial.timestamp = c.timestamp();
+      }
+      partial.accumulator = fn.addInput(key, partial.accumulator, c.element().getValue());
+    }
+
+    @FinishBundle
+    public void finishBundle(Context c) {
+      for (PartialCombine<K, AccumT> partial : table.values()) {
+        c.outputWithTimestamp(
+            KV.of(partial.key, fn.compact(partial.key, partial.accumulator)), partial.timestamp);
+      }
+      table = null;
+    }
+
+    private static class PartialCombine<K, AccumT> {
+      private final K key;
+      private AccumT accumulator;
+      private Instant timestamp;
+
+      private PartialCombine(K key, AccumT accumulator, Instant timestamp) {
+        this.key = key;
+        this.accumulator = accumulator;
+        this.timestamp = timestamp;
+      }
+    }
+  }
+
+  /**
+   * A hot key fanout function that estimates the frequencies of the keys it is applied to with
+   * the Space-Saving heavy hitters algorithm, fanning out the keys that exceed a threshold share of
+   * the recently observed values.
+   *
+   * <p>Keys are compared with {@link Object#equals}. The counters are kept in a min-heap, so that a
+   * key without a counter takes over the counter with the smallest count in logarithmic time. The
+   * counts are halved periodically, so that keys which stop being hot are no longer fanned out.
+   * A key is only counted as a detected hot key the first time it is fanned out.
+   */
+  static class AdaptiveHotKeyFanout<K> extends SimpleFunction<K, Integer> {
+    /** The minimum number of observations after which all counts are halved. */
+    static final int MIN_DECAY_INTERVAL = 10_000;
+
+    private final int maxFanout;
+    private final double hotKeyThreshold;
+    private final int capacity;
+    private final long decayInterval;
+
+    private final Counter hotKeysDetected =
+        Metrics.counter(PerKeyWithHotKeyFanout.class, "hotKeysDetected");
+    private final Counter hotKeyElements =
+        Metrics.counter(PerKeyWithHotKeyFanout.class, "hotKeyElements");
+    private final Distribution hotKeyFanout =
+        Metrics.distribution(PerKeyWithHotKeyFanout.class, "hotKeyFanout");
+
+    private transient Map<K, KeyCount<K>> counts;
+    /** The counters of {@link #counts}, ordered as a binary min-heap on their counts. */
+    private transient List<KeyCount<K>> heap;
+    private transient Set<K> detectedHotKeys;
+    private transient long observed;
+
+    AdaptiveHotKeyFanout(int maxFanout, double hotKeyThreshold) {
+      checkArgument(maxFanout >= 2, "maxFanout must be at least 2, but was: %s", maxFanout);
+      checkArgument(hotKeyThreshold > 0 && hotKeyThreshold < 1,
+          "hotKeyThreshold must be between 0 and 1, but was: %s", hotKeyThreshold);
+      this.maxFanout = maxFanout;
+      this.hotKeyThreshold = hotKeyThreshold;
+      // Every key with a share above hotKeyThreshold / 2 is guaranteed to have a counter.
+      this.capacity = (int) Math.ceil(2 / hotKeyThreshold);
+      this.decayInterval = Math.max(MIN_DECAY_INTERVAL, 10L * capacity);
+    }
+
+    @Override
+    public Integer apply(K key) {
+      if (counts == null) {
+        counts = new HashMap<>();
+        heap = new ArrayList<>(capacity);
+        detectedHotKeys = new HashSet<>();
+      }
+      ++observed;
+      KeyCount<K> count = counts.get(key);
+      if (count != null) {
+        ++count.count;
+        siftDown(count.index);
+      } else if (heap.size() < capacity) {
+        count = new KeyCount<>(key, heap.size());
+        heap.add(count);
+        counts.put(key, count);
+        siftUp(count.index);
+      } else {
+        // The key takes over the counter with the smallest count, which bounds the amount by
+        // which its count overestimates its frequency.
+        count = heap.get(0);
+        counts.remove(count.key);
+        count.key = key;
+        count.error = count.count;
+        ++count.count;
+        count.fanout = 1;
+        counts.put(key, count);
+        siftDown(0);
+      }
+      if (observed >= decayInterval) {
+        decay();
+      }
+      if (observed < capacity) {
+        return 1;
+      }
+
+      // The count less its error underestimates the frequency of the key.
+      double share = (count.count - count.error) / (double) observed;
+      int fanout = share > hotKeyThreshold
+          ? (int) Math.min(maxFanout, Math.ceil(share / hotKeyThreshold))
+          : 1;
+      if (fanout != count.fanout) {
+        if (fanout > 1) {
+          if (detectedHotKeys.add(key)) {
+            hotKeysDetected.inc();
+          }
+          hotKeyFanout.update(fanout);
+        }
+        count.fanout = fanout;
+      }
+      if (fanout > 1) {
+        hotKeyElements.inc();
+      }
+      return fanout;
+    }
+
+    /** Halves all counts, which preserves the order of the heap. */
+    private void decay() {
+      for (KeyCount<K> count : heap) {
+        count.count /= 2;
+        count.error /= 2;
+      }
+      observed /= 2;
+    }
+
+    private void siftUp(int index) {
+      KeyCount<K> count = heap.get(index);
+      while (index > 0) {
+        int parent = (index - 1) / 2;
+        if (heap.get(parent).count <= count.count) {
+          break;
+        }
+        place(heap.get(parent), index);
+        index = parent;
+      }
+      place(count, index);
+    }
+
+    private void siftDown(int index) {
+      KeyCount<K> count = heap.get(index);
+      int size = heap.size();
+      while (2 * index + 1 < size) {
+        int child = 2 * index + 1;
+        if (child + 1 < size && heap.get(child + 1).count < heap.get(child).count) {
+          ++child;
+        }
+        if (count.count <= heap.get(child).count) {
+          break;
+        }
+        place(heap.get(child), index);
+        index = child;
+      }
+      place(count, index);
+    }
+
+    private void place(KeyCount<K> count, int index) {
+      heap.set(index, count);
+      count.index = index;
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      builder
+          .add(DisplayData.item("maxFanout", maxFanout)
+              .withLabel("Maximum Key Fanout Size"))
+          .add(DisplayData.item("hotKeyThreshold", hotKeyThreshold)
+              .withLabel("Hot Key Threshold"));
+    }
+
+    private static class KeyCount<K> {
+      private K key;
+      private int index;
+      private long count = 1;
+      /** The largest amount by which {@link #count} may overestimate the frequency of the key. */
+      private long error;
+      private int fanout = 1;
+
+      private KeyCount(K key, int index) {
+        this.key = key;
+        this.index = index;
+      }
     }
   }
 
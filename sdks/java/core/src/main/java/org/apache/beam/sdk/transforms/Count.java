@@ -17,18 +17,10 @@
  */
 package org.apache.beam.sdk.transforms;
 
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.UTFDataFormatException;
 import java.util.Iterator;
 import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.CoderRegistry;
-import org.apache.beam.sdk.coders.CustomCoder;
 import org.apache.beam.sdk.transforms.Combine.CombineFn;
-import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 
@@ -163,38 +155,7 @@ public class Count {
     @Override
     public Coder<long[]> getAccumulatorCoder(CoderRegistry registry,
                                              Coder<T> inputCoder) {
-      return new CustomCoder<long[]>() {
-        @Override
-        public void encode(long[] value, OutputStream outStream, Context context)
-            throws IOException {
-          VarInt.encode(value[0], outStream);
-        }
-
-        @Override
-        public long[] decode(InputStream inStream, Context context)
-            throws IOException, CoderException {
-          try {
-            return new long[] {VarInt.decodeLong(inStream)};
-          } catch (EOFException | UTFDataFormatException exn) {
-            throw new CoderException(exn);
-          }
-        }
-
-        @Override
-        public boolean isRegisterByteSizeObserverCheap(long[] value, Context context) {
-          return true;
-        }
-
-        @Override
-        protected long getEncodedElementByteSize(long[] value, Context context) {
-          return VarInt.getLength(value[0]);
-        }
-
-        @Override
-        public String getEncodingId() {
-          return "VarLongSingletonArray";
-        }
-      };
+      return new Combine.VarLongSingletonArrayCoder();
     }
   }
 }
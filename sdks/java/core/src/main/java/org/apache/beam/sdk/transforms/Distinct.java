@@ -17,6 +17,20 @@
  */
 package org.apache.beam.sdk.transforms;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StructuralByteArray;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.TypeDescriptor;
@@ -47,6 +61,11 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  *
  * <p>Does not preserve any order the input PCollection might have had.
  *
+ * <p>Duplicates are first dropped within each bundle, using a set of the encoded elements that
+ * holds at most {@link #DEFAULT_MAX_BUFFERED_BYTES} and is cleared when full, so that fewer
+ * duplicates are shuffled. See {@link #withMaxBufferedBytes} and
+ * {@link #withApproximatePrefilter}.
+ *
  * <p>Example of use:
  * <pre> {@code
  * PCollection<String> words = ...;
@@ -59,6 +78,23 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  */
 public class Distinct<T> extends PTransform<PCollection<T>,
                                                     PCollection<T>> {
+  /**
+   * The default bound on the memory used by the set of encoded elements that are deduplicated
+   * within a bundle.
+   */
+  public static final long DEFAULT_MAX_BUFFERED_BYTES = 16 * 1024 * 1024;
+
+  private final long maxBufferedBytes;
+  private final long expectedElements;
+  private final double falsePositiveProbability;
+
+  private Distinct(
+      long maxBufferedBytes, long expectedElements, double falsePositiveProbability) {
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.expectedElements = expectedElements;
+    this.falsePositiveProbability = falsePositiveProbability;
+  }
+
   /**
    * Returns a {@code Distinct<T>} {@code PTransform}.
    *
@@ -66,7 +102,34 @@ public class Distinct<T> extends PTransform<PCollection<T>,
    * {@code PCollection}s
    */
   public static <T> Distinct<T> create() {
-    return new Distinct<T>();
+    return new Distinct<T>(DEFAULT_MAX_BUFFERED_BYTES, 0, 0);
+  }
+
+  /**
+   * Returns a {@code Distinct<T>} {@code PTransform} like this one, that holds at most
+   * {@code maxBufferedBytes} of encoded elements to drop duplicates within a bundle before they
+   * are shuffled. When the bound is reached the held elements are discarded, which only affects
+   * how many duplicates are shuffled. A bound of {@code 0} disables deduplicating within bundles.
+   */
+  public Distinct<T> withMaxBufferedBytes(long maxBufferedBytes) {
+    checkMaxBufferedBytes(maxBufferedBytes);
+    return new Distinct<T>(maxBufferedBytes, expectedElements, falsePositiveProbability);
+  }
+
+  /**
+   * Returns an approximate {@code Distinct<T>} {@code PTransform} like this one, that drops
+   * duplicates within a bundle with a Bloom filter sized for {@code expectedElements} distinct
+   * elements, instead of a set of the encoded elements. The filter is replaced once it holds
+   * {@code expectedElements} elements.
+   *
+   * <p>The filter uses far less memory than the elements themselves, but each element is
+   * dropped with probability about {@code falsePositiveProbability} even if it was not seen
+   * before, so some distinct elements may be missing from the output.
+   */
+  public Distinct<T> withApproximatePrefilter(
+      long expectedElements, double falsePositiveProbability) {
+    checkApproximatePrefilter(expectedElements, falsePositiveProbability);
+    return new Distinct<T>(maxBufferedBytes, expectedElements, falsePositiveProbability);
   }
 
   /**
@@ -78,12 +141,28 @@ public class Distinct<T> extends PTransform<PCollection<T>,
    */
   public static <T, IdT> WithRepresentativeValues<T, IdT> withRepresentativeValueFn(
       SerializableFunction<T, IdT> fn) {
-    return new WithRepresentativeValues<T, IdT>(fn, null);
+    return new WithRepresentativeValues<T, IdT>(fn, null, DEFAULT_MAX_BUFFERED_BYTES, 0, 0);
   }
 
   @Override
   public PCollection<T> expand(PCollection<T> in) {
-    return in
+    PCollection<T> deduplicated = in;
+    if (maxBufferedBytes > 0 || expectedElements > 0) {
+      deduplicated = in
+          .apply("DeduplicateWithinBundles", ParDo.of(
+              new DeduplicateWithinBundleFn<T, T>(
+                  new SimpleFunction<T, T>() {
+                    @Override
+                    public T apply(T element) {
+                      return element;
+                    }
+                  },
+                  in.getCoder(),
+                  in.getWindowingStrategy().getWindowFn().windowCoder(),
+                  maxBufferedBytes, expectedElements, falsePositiveProbability)))
+          .setCoder(in.getCoder());
+    }
+    return deduplicated
         .apply("CreateIndex", MapElements.via(new SimpleFunction<T, KV<T, Void>>() {
           @Override
           public KV<T, Void> apply(T element) {
@@ -100,12 +179,166 @@ public class Distinct<T> extends PTransform<PCollection<T>,
         .apply(Keys.<T>create());
   }
 
+  @Override
+  public void populateDisplayData(DisplayData.Builder builder) {
+    super.populateDisplayData(builder);
+    populateBundleDeduplicationDisplayData(
+        builder, maxBufferedBytes, expectedElements, falsePositiveProbability);
+  }
+
+  private static void checkMaxBufferedBytes(long maxBufferedBytes) {
+    checkArgument(maxBufferedBytes >= 0,
+        "maxBufferedBytes must be non-negative, but was: %s", maxBufferedBytes);
+  }
+
+  private static void checkApproximatePrefilter(
+      long expectedElements, double falsePositiveProbability) {
+    checkArgument(expectedElements > 0,
+        "expectedElements must be positive, but was: %s", expectedElements);
+    checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+        "falsePositiveProbability must be between 0 and 1, but was: %s",
+        falsePositiveProbability);
+  }
+
+  private static void populateBundleDeduplicationDisplayData(
+      DisplayData.Builder builder,
+      long maxBufferedBytes,
+      long expectedElements,
+      double falsePositiveProbability) {
+    builder
+        .add(DisplayData.item("maxBufferedBytes", maxBufferedBytes)
+            .withLabel("Max Bytes Buffered Per Bundle"))
+        .addIfNotDefault(DisplayData.item("expectedElements", expectedElements)
+            .withLabel("Expected Elements Per Bundle"), 0L)
+        .addIfNotDefault(DisplayData.item("falsePositiveProbability", falsePositiveProbability)
+            .withLabel("False Positive Probability"), 0.0);
+  }
+
+  /**
+   * Drops the elements whose id was already seen in the same window within the current bundle.
+   *
+   * <p>Ids are compared by their encoding, either exactly with a set that is cleared once it
+   * holds {@code maxBufferedBytes}, or approximately with a Bloom filter that is replaced once it
+   * holds {@code expectedElements}. Nothing is retained across bundles, so that a retried bundle
+   * produces all of its elements again.
+   */
+  private static class DeduplicateWithinBundleFn<InputT, IdT> extends DoFn<InputT, InputT> {
+    /** The estimated memory used by a set entry, in addition to the encoded id. */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final SerializableFunction<InputT, IdT> idFn;
+    private final Coder<IdT> idCoder;
+    private final Coder<? extends BoundedWindow> windowCoder;
+    private final long maxBufferedBytes;
+    private final long expectedElements;
+    private final double falsePositiveProbability;
+
+    private final Counter inputElements =
+        Metrics.counter(Distinct.class, "bundleDeduplicationInputElements");
+    private final Counter droppedElements =
+        Metrics.counter(Distinct.class, "bundleDeduplicationDroppedElements");
+    private final Counter flushes =
+        Metrics.counter(Distinct.class, "bundleDeduplicationFlushes");
+
+    private transient ByteArrayOutputStream keyBytes;
+    private transient Set<StructuralByteArray> seen;
+    private transient long bufferedBytes;
+    private transient BloomFilter<byte[]> filter;
+    private transient long filterElements;
+
+    DeduplicateWithinBundleFn(
+        SerializableFunction<InputT, IdT> idFn,
+        Coder<IdT> idCoder,
+        Coder<? extends BoundedWindow> windowCoder,
+        long maxBufferedBytes,
+        long expectedElements,
+        double falsePositiveProbability) {
+      this.idFn = idFn;
+      this.idCoder = idCoder;
+      this.windowCoder = windowCoder;
+      this.maxBufferedBytes = maxBufferedBytes;
+      this.expectedElements = expectedElements;
+      this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    @StartBundle
+    public void startBundle(Context c) {
+      keyBytes = new ByteArrayOutputStream();
+      seen = new HashSet<>();
+      bufferedBytes = 0;
+      filter = null;
+      filterElements = 0;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c, BoundedWindow window) throws Exception {
+      inputElements.inc();
+      byte[] key = encodeKey(c.element(), window);
+      if (expectedElements > 0 ? mightContain(key) : contains(key)) {
+        droppedElements.inc();
+      } else {
+        c.output(c.element());
+      }
+    }
+
+    @FinishBundle
+    public void finishBundle(Context c) {
+      seen = null;
+      filter = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] encodeKey(InputT element, BoundedWindow window) throws Exception {
+      keyBytes.reset();
+      ((Coder<BoundedWindow>) windowCoder).encode(window, keyBytes, Coder.Context.NESTED);
+      idCoder.encode(idFn.apply(element), keyBytes, Coder.Context.OUTER);
+      return keyBytes.toByteArray();
+    }
+
+    /** Returns whether the key was already in the set, adding it otherwise. */
+    private boolean contains(byte[] key) {
+      StructuralByteArray structuralKey = new StructuralByteArray(key);
+      if (seen.contains(structuralKey)) {
+        return true;
+      }
+      long entryBytes = key.length + ENTRY_OVERHEAD_BYTES;
+      if (bufferedBytes + entryBytes > maxBufferedBytes && !seen.isEmpty()) {
+        flushes.inc();
+        seen.clear();
+        bufferedBytes = 0;
+      }
+      seen.add(structuralKey);
+      bufferedBytes += entryBytes;
+      return false;
+    }
+
+    /** Returns whether the key might have been added to the filter, adding it otherwise. */
+    private boolean mightContain(byte[] key) {
+      if (filter == null || filterElements >= expectedElements) {
+        if (filter != null) {
+          flushes.inc();
+        }
+        filter = BloomFilter.create(
+            Funnels.byteArrayFunnel(), expectedElements, falsePositiveProbability);
+        filterElements = 0;
+      }
+      if (filter.put(key)) {
+        ++filterElements;
+        return false;
+      }
+      return true;
+    }
+  }
+
   /**
    * A {@link Distinct} {@link PTransform} that uses a {@link SerializableFunction} to
    * obtain a representative value for each input element.
    *
    * <p>Construct via {@link Distinct#withRepresentativeValueFn(SerializableFunction)}.
    *
+   * <p>Like {@link Distinct}, duplicate representative values are first dropped within each
+   * bundle. See {@link #withMaxBufferedBytes} and {@link #withApproximatePrefilter}.
+   *
    * @param <T> the type of input and output element
    * @param <IdT> the type of representative values used to dedup
    */
@@ -113,11 +346,21 @@ public class Distinct<T> extends PTransform<PCollection<T>,
       extends PTransform<PCollection<T>, PCollection<T>> {
     private final SerializableFunction<T, IdT> fn;
     private final TypeDescriptor<IdT> representativeType;
+    private final long maxBufferedBytes;
+    private final long expectedElements;
+    private final double falsePositiveProbability;
 
     private WithRepresentativeValues(
-        SerializableFunction<T, IdT> fn, TypeDescriptor<IdT> representativeType) {
+        SerializableFunction<T, IdT> fn,
+        TypeDescriptor<IdT> representativeType,
+        long maxBufferedBytes,
+        long expectedElements,
+        double falsePositiveProbability) {
       this.fn = fn;
       this.representativeType = representativeType;
+      this.maxBufferedBytes = maxBufferedBytes;
+      this.expectedElements = expectedElements;
+      this.falsePositiveProbability = falsePositiveProbability;
     }
 
     @Override
@@ -126,8 +369,26 @@ public class Distinct<T> extends PTransform<PCollection<T>,
       if (representativeType != null) {
         withKeys = withKeys.withKeyType(representativeType);
       }
-      return in
-          .apply(withKeys)
+      PCollection<KV<IdT, T>> withIds = in.apply(withKeys);
+      @SuppressWarnings("unchecked")
+      KvCoder<IdT, T> withIdsCoder = (KvCoder<IdT, T>) withIds.getCoder();
+      PCollection<KV<IdT, T>> deduplicated = withIds;
+      if (maxBufferedBytes > 0 || expectedElements > 0) {
+        deduplicated = withIds
+            .apply("DeduplicateWithinBundles", ParDo.of(
+                new DeduplicateWithinBundleFn<KV<IdT, T>, IdT>(
+                    new SimpleFunction<KV<IdT, T>, IdT>() {
+                      @Override
+                      public IdT apply(KV<IdT, T> element) {
+                        return element.getKey();
+                      }
+                    },
+                    withIdsCoder.getKeyCoder(),
+                    in.getWindowingStrategy().getWindowFn().windowCoder(),
+                    maxBufferedBytes, expectedElements, falsePositiveProbability)))
+            .setCoder(withIdsCoder);
+      }
+      return deduplicated
           .apply(Combine.<IdT, T, T>perKey(
               new Combine.BinaryCombineFn<T>() {
                 @Override
@@ -152,7 +413,38 @@ public class Distinct<T> extends PTransform<PCollection<T>,
      *         the specified output type descriptor.
      */
     public WithRepresentativeValues<T, IdT> withRepresentativeType(TypeDescriptor<IdT> type) {
-      return new WithRepresentativeValues<>(fn, type);
+      return new WithRepresentativeValues<>(
+          fn, type, maxBufferedBytes, expectedElements, falsePositiveProbability);
+    }
+
+    /**
+     * Returns a {@code WithRepresentativeValues} {@link PTransform} like this one, that holds at
+     * most {@code maxBufferedBytes} of encoded representative values to drop duplicates within a
+     * bundle before they are shuffled. See {@link Distinct#withMaxBufferedBytes}.
+     */
+    public WithRepresentativeValues<T, IdT> withMaxBufferedBytes(long maxBufferedBytes) {
+      checkMaxBufferedBytes(maxBufferedBytes);
+      return new WithRepresentativeValues<>(
+          fn, representativeType, maxBufferedBytes, expectedElements, falsePositiveProbability);
+    }
+
+    /**
+     * Returns an approximate {@code WithRepresentativeValues} {@link PTransform} like this one,
+     * that drops duplicate representative values within a bundle with a Bloom filter sized for
+     * {@code expectedElements} distinct values. See {@link Distinct#withApproximatePrefilter}.
+     */
+    public WithRepresentativeValues<T, IdT> withApproximatePrefilter(
+        long expectedElements, double falsePositiveProbability) {
+      checkApproximatePrefilter(expectedElements, falsePositiveProbability);
+      return new WithRepresentativeValues<>(
+          fn, representativeType, maxBufferedBytes, expectedElements, falsePositiveProbability);
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      populateBundleDeduplicationDisplayData(
+          builder, maxBufferedBytes, expectedElements, falsePositiveProbability);
     }
   }
 }
@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.transforms.Combine.AccumulatingCombineFn;
+import org.apache.beam.sdk.transforms.Combine.AccumulatingCombineFn.Accumulator;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.util.WeightedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * {@code PTransform}s for computing approximate {@code N}-tiles of a {@code PCollection}, either
+ * globally or per-key, using KLL sketches.
+ *
+ * <p>The output matches {@link ApproximateQuantiles}: a {@code List} of size
+ * {@code numQuantiles} containing the minimum value, {@code numQuantiles-2} intermediate values,
+ * and the maximum value, in sorted order, or all of the values in sorted order if there are fewer
+ * than {@code numQuantiles} of them.
+ *
+ * <p>A KLL sketch of parameter {@code k} retains {@code O(k)} elements regardless of the number
+ * of elements combined, with a normalized rank error of about {@code 1.7 / k}, and two sketches
+ * are merged by concatenating their levels. This makes the accumulator considerably smaller and
+ * cheaper to merge than the buffers of {@link ApproximateQuantiles} for the same accuracy. For the
+ * extreme quantiles of {@code Double} values, such as p99.9 latencies, see
+ * {@link TDigestQuantiles}, whose error is relative to the distance from the closest extreme.
+ *
+ * <p>See Karnin, Lang &amp; Liberty, "Optimal Quantile Approximation in Streams", FOCS 2016.
+ */
+public class KllQuantiles {
+  private KllQuantiles() {
+    // do not instantiate
+  }
+
+  /**
+   * Like {@link ApproximateQuantiles#globally(int, Comparator)}, but computes the quantiles with
+   * a {@link KllQuantilesCombineFn}.
+   *
+   * @param <T> the type of the elements in the input {@code PCollection}
+   * @param numQuantiles the number of elements in the resulting quantile values {@code List}
+   * @param compareFn the function to use to order the elements
+   */
+  public static <T, ComparatorT extends Comparator<T> & Serializable>
+      PTransform<PCollection<T>, PCollection<List<T>>> globally(
+          int numQuantiles, ComparatorT compareFn) {
+    return Combine.globally(KllQuantilesCombineFn.create(numQuantiles, compareFn));
+  }
+
+  /**
+   * Like {@link #globally(int, Comparator)}, but sorts using the elements' natural ordering.
+   *
+   * @param <T> the type of the elements in the input {@code PCollection}
+   * @param numQuantiles the number of elements in the resulting quantile values {@code List}
+   */
+  public static <T extends Comparable<T>>
+      PTransform<PCollection<T>, PCollection<List<T>>> globally(int numQuantiles) {
+    return Combine.globally(KllQuantilesCombineFn.<T>create(numQuantiles));
+  }
+
+  /**
+   * Like {@link ApproximateQuantiles#perKey(int, Comparator)}, but computes the quantiles with a
+   * {@link KllQuantilesCombineFn}.
+   *
+   * @param <K> the type of the keys in the input and output {@code PCollection}s
+   * @param <V> the type of the values in the input {@code PCollection}
+   * @param numQuantiles the number of elements in the resulting quantile values {@code List}
+   * @param compareFn the function to use to order the elements
+   */
+  public static <K, V, ComparatorT extends Comparator<V> & Serializable>
+      PTransform<PCollection<KV<K, V>>, PCollection<KV<K, List<V>>>>
+      perKey(int numQuantiles, ComparatorT compareFn) {
+    return Combine.perKey(
+        KllQuantilesCombineFn.create(numQuantiles, compareFn).<K>asKeyedFn());
+  }
+
+  /**
+   * Like {@link #perKey(int, Comparator)}, but sorts values using their natural ordering.
+   *
+   * @param <K> the type of the keys in the input and output {@code PCollection}s
+   * @param <V> the type of the values in the input {@code PCollection}
+   * @param numQuantiles the number of elements in the resulting quantile values {@code List}
+   */
+  public static <K, V extends Comparable<V>>
+      PTransform<PCollection<KV<K, V>>, PCollection<KV<K, List<V>>>>
+      perKey(int numQuantiles) {
+    return Combine.perKey(KllQuantilesCombineFn.<V>create(numQuantiles).<K>asKeyedFn());
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * A {@code CombineFn} which computes approximate {@code N}-tiles of the combined values with a
+   * KLL sketch.
+   *
+   * @param <T> the type of the values being combined
+   */
+  public static class KllQuantilesCombineFn<T, ComparatorT extends Comparator<T> & Serializable>
+      extends AccumulatingCombineFn<T, KllSketch<T, ComparatorT>, List<T>> {
+
+    /** The default value of {@code k}, with a normalized rank error of about 1%. */
+    public static final int DEFAULT_K = 200;
+
+    private final int numQuantiles;
+    private final ComparatorT compareFn;
+    private final int k;
+
+    private KllQuantilesCombineFn(int numQuantiles, ComparatorT compareFn, int k) {
+      checkArgument(numQuantiles >= 2, "numQuantiles must be at least 2, got %s", numQuantiles);
+      checkArgument(k >= 8, "k must be at least 8, got %s", k);
+      this.numQuantiles = numQuantiles;
+      this.compareFn = compareFn;
+      this.k = k;
+    }
+
+    /**
+     * Returns a KLL quantiles combiner with the given {@code compareFn} and desired number of
+     * quantiles. A total of {@code numQuantiles} elements will appear in the output list,
+     * including the minimum and maximum.
+     *
+     * <p>The {@code Comparator} must be {@code Serializable}.
+     */
+    public static <T, ComparatorT extends Comparator<T> & Serializable>
+        KllQuantilesCombineFn<T, ComparatorT> create(int numQuantiles, ComparatorT compareFn) {
+      return new KllQuantilesCombineFn<>(numQuantiles, compareFn, DEFAULT_K);
+    }
+
+    /** Like {@link #create(int, Comparator)}, but sorts values using their natural ordering. */
+    public static <T extends Comparable<T>>
+        KllQuantilesCombineFn<T, Top.Largest<T>> create(int numQuantiles) {
+      return create(numQuantiles, new Top.Largest<T>());
+    }
+
+    /**
+     * Returns a {@code KllQuantilesCombineFn} that's like this one except that it uses sketches
+     * with the specified {@code k}. Larger values of {@code k} retain more elements and are more
+     * accurate. Does not modify this combiner.
+     */
+    public KllQuantilesCombineFn<T, ComparatorT> withK(int k) {
+      return new KllQuantilesCombineFn<>(numQuantiles, compareFn, k);
+    }
+
+    @Override
+    public KllSketch<T, ComparatorT> createAccumulator() {
+      return new KllSketch<>(compareFn, numQuantiles, k);
+    }
+
+    @Override
+    public Coder<KllSketch<T, ComparatorT>> getAccumulatorCoder(
+        CoderRegistry registry, Coder<T> elementCoder) {
+      return new KllSketchCoder<>(compareFn, numQuantiles, k, elementCoder);
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      builder
+          .add(DisplayData.item("numQuantiles", numQuantiles)
+            .withLabel("Quantile Count"))
+          .add(DisplayData.item("k", k)
+            .withLabel("Sketch Size Parameter"))
+          .add(DisplayData.item("comparer", compareFn.getClass())
+            .withLabel("Record Comparer"));
+    }
+  }
+
+  /**
+   * A KLL sketch of the combined values.
+   *
+   * <p>The sketch is a stack of compactors. Level {@code h} holds values which each represent
+   * {@code 2^h} values of the input. When the sketch holds more values than its capacity, the
+   * lowest level that is over its own capacity is sorted, and every other value, starting at a
+   * random offset, is promoted to the next level. Lower levels have geometrically smaller
+   * capacities than the top level.
+   */
+  static class KllSketch<T, ComparatorT extends Comparator<T> & Serializable>
+      implements Accumulator<T, KllSketch<T, ComparatorT>, List<T>> {
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final ComparatorT compareFn;
+    private final int numQuantiles;
+    private final int k;
+    private final List<List<T>> levels = new ArrayList<>();
+    private long count;
+    private T min;
+    private T max;
+    private int size;
+    private int maxSize;
+
+    KllSketch(ComparatorT compareFn, int numQuantiles, int k) {
+      this.compareFn = compareFn;
+      this.numQuantiles = numQuantiles;
+      this.k = k;
+      grow();
+    }
+
+    @Override
+    public void addInput(T value) {
+      if (count == 0 || compareFn.compare(value, min) < 0) {
+        min = value;
+      }
+      if (count == 0 || compareFn.compare(value, max) > 0) {
+        max = value;
+      }
+      count++;
+      levels.get(0).add(value);
+      size++;
+      if (size >= maxSize) {
+        compress();
+      }
+    }
+
+    @Override
+    public void mergeAccumulator(KllSketch<T, ComparatorT> other) {
+      if (other.count == 0) {
+        return;
+      }
+      if (count == 0 || compareFn.compare(other.min, min) < 0) {
+        min = other.min;
+      }
+      if (count == 0 || compareFn.compare(other.max, max) > 0) {
+        max = other.max;
+      }
+      count += other.count;
+      while (levels.size() < other.levels.size()) {
+        grow();
+      }
+      for (int h = 0; h < other.levels.size(); ++h) {
+        levels.get(h).addAll(other.levels.get(h));
+      }
+      size += other.size;
+      while (size >= maxSize) {
+        compress();
+      }
+    }
+
+    @Override
+    public List<T> extractOutput() {
+      if (count == 0) {
+        return Collections.emptyList();
+      }
+      List<WeightedValue<T>> weighted = new ArrayList<>(size);
+      for (int h = 0; h < levels.size(); ++h) {
+        for (T value : levels.get(h)) {
+          weighted.add(WeightedValue.of(value, 1L << h));
+        }
+      }
+      Collections.sort(weighted, new Comparator<WeightedValue<T>>() {
+        @Override
+        public int compare(WeightedValue<T> a, WeightedValue<T> b) {
+          return compareFn.compare(a.getValue(), b.getValue());
+        }
+      });
+      if (count < numQuantiles && size == count) {
+        // Nothing has been compacted, so the sketch holds all of the values.
+        List<T> values = new ArrayList<>(weighted.size());
+        for (WeightedValue<T> value : weighted) {
+          values.add(value.getValue());
+        }
+        return values;
+      }
+
+      List<T> quantiles = new ArrayList<>(numQuantiles);
+      quantiles.add(min);
+      long cumulativeWeight = 0;
+      int index = 0;
+      for (int i = 1; i < numQuantiles - 1; ++i) {
+        double targetRank = (double) i * count / (numQuantiles - 1);
+        while (index < weighted.size() - 1
+            && cumulativeWeight + weighted.get(index).getWeight() < targetRank) {
+          cumulativeWeight += weighted.get(index).getWeight();
+          index++;
+        }
+        quantiles.add(weighted.get(index).getValue());
+      }
+      quantiles.add(max);
+      return quantiles;
+    }
+
+    /** Returns the capacity of the given level. */
+    private int capacity(int level) {
+      int depth = levels.size() - level - 1;
+      return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    /** Adds a new top level, and recomputes the capacity of the sketch. */
+    private void grow() {
+      levels.add(new ArrayList<T>());
+      maxSize = 0;
+      for (int h = 0; h < levels.size(); ++h) {
+        maxSize += capacity(h);
+      }
+    }
+
+    /**
+     * Compacts the lowest levels which are over their capacity, until the sketch is within its
+     * capacity.
+     */
+    private void compress() {
+      for (int h = 0; h < levels.size(); ++h) {
+        if (levels.get(h).size() >= capacity(h)) {
+          if (h + 1 >= levels.size()) {
+            grow();
+          }
+          compact(h);
+          if (size < maxSize) {
+            break;
+          }
+        }
+      }
+    }
+
+    /** Promotes every other value of the sorted level, starting at a random offset. */
+    private void compact(int level) {
+      List<T> values = levels.get(level);
+      List<T> next = levels.get(level + 1);
+      Collections.sort(values, compareFn);
+      // With an odd number of values, the smallest stays behind.
+      int start = values.size() % 2;
+      int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+      for (int i = start + offset; i < values.size(); i += 2) {
+        next.add(values.get(i));
+      }
+      size -= (values.size() - start) / 2;
+      values.subList(start, values.size()).clear();
+    }
+  }
+
+  /** A {@link Coder} for {@link KllSketch}, which encodes the values of each level. */
+  private static class KllSketchCoder<T, ComparatorT extends Comparator<T> & Serializable>
+      extends CustomCoder<KllSketch<T, ComparatorT>> {
+    private final ComparatorT compareFn;
+    private final int numQuantiles;
+    private final int k;
+    private final Coder<T> elementCoder;
+
+    private KllSketchCoder(
+        ComparatorT compareFn, int numQuantiles, int k, Coder<T> elementCoder) {
+      this.compareFn = compareFn;
+      this.numQuantiles = numQuantiles;
+      this.k = k;
+      this.elementCoder = elementCoder;
+    }
+
+    @Override
+    public void encode(
+        KllSketch<T, ComparatorT> sketch, OutputStream outStream, Coder.Context context)
+        throws CoderException, IOException {
+      Coder.Context nestedContext = context.nested();
+      VarInt.encode(sketch.count, outStream);
+      if (sketch.count == 0) {
+        return;
+      }
+      elementCoder.encode(sketch.min, outStream, nestedContext);
+      elementCoder.encode(sketch.max, outStream, nestedContext);
+      VarInt.encode(sketch.levels.size(), outStream);
+      for (List<T> level : sketch.levels) {
+        VarInt.encode(level.size(), outStream);
+        for (T value : level) {
+          elementCoder.encode(value, outStream, nestedContext);
+        }
+      }
+    }
+
+    @Override
+    public KllSketch<T, ComparatorT> decode(InputStream inStream, Coder.Context context)
+        throws CoderException, IOException {
+      Coder.Context nestedContext = context.nested();
+      KllSketch<T, ComparatorT> sketch = new KllSketch<>(compareFn, numQuantiles, k);
+      sketch.count = VarInt.decodeLong(inStream);
+      if (sketch.count == 0) {
+        return sketch;
+      }
+      sketch.min = elementCoder.decode(inStream, nestedContext);
+      sketch.max = elementCoder.decode(inStream, nestedContext);
+      int numLevels = VarInt.decodeInt(inStream);
+      while (sketch.levels.size() < numLevels) {
+        sketch.grow();
+      }
+      for (int h = 0; h < numLevels; ++h) {
+        int levelSize = VarInt.decodeInt(inStream);
+        List<T> level = sketch.levels.get(h);
+        for (int i = 0; i < levelSize; ++i) {
+          level.add(elementCoder.decode(inStream, nestedContext));
+        }
+        sketch.size += levelSize;
+      }
+      return sketch;
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {
+      verifyDeterministic(
+          "KllSketchCoder requires a deterministic element coder", elementCoder);
+    }
+  }
+}
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.CustomCoder;
+import org.apache.beam.sdk.transforms.Combine.AccumulatingCombineFn;
+import org.apache.beam.sdk.transforms.Combine.AccumulatingCombineFn.Accumulator;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * {@code PTransform}s for computing approximate {@code N}-tiles of a {@code PCollection} of
+ * {@code Double}s, either globally or per-key, using t-digests.
+ *
+ * <p>The output matches {@link ApproximateQuantiles}: a {@code List} of size
+ * {@code numQuantiles} containing the minimum value, {@code numQuantiles-2} intermediate values,
+ * and the maximum value, in sorted order, or all of the values in sorted order if there are fewer
+ * than {@code numQuantiles} of them. Intermediate values are interpolated between centroids, so
+ * they need not be input values.
+ *
+ * <p>A t-digest summarizes the values as a bounded number of centroids, each a mean and a weight,
+ * stored in primitive arrays; the number of centroids grows with the {@code compression} and only
+ * logarithmically with the number of values. The size of the centroids is proportional to
+ * {@code q * (1 - q)} of their quantile {@code q}, so centroids near the extremes are very small,
+ * which makes t-digests well suited to tail quantiles such as p99 and p99.9 latencies.
+ *
+ * <p>See Dunning &amp; Ertl, "Computing Extremely Accurate Quantiles Using t-Digests", 2019.
+ */
+public class TDigestQuantiles {
+  private TDigestQuantiles() {
+    // do not instantiate
+  }
+
+  /**
+   * Returns a {@code PTransform} that takes a {@code PCollection<Double>} and returns a
+   * {@code PCollection<List<Double>>} whose single value is a {@code List} of the approximate
+   * {@code N}-tiles of the elements of the input {@code PCollection}.
+   *
+   * @param numQuantiles the number of elements in the resulting quantile values {@code List}
+   */
+  public static PTransform<PCollection<Double>, PCollection<List<Double>>> globally(
+      int numQuantiles) {
+    return Combine.globally(TDigestQuantilesCombineFn.create(numQuantiles));
+  }
+
+  /**
+   * Returns a {@code PTransform} that takes a {@code PCollection<KV<K, Double>>} and returns a
+   * {@code PCollection<KV<K, List<Double>>>} that maps each distinct key to a {@code List} of the
+   * approximate {@code N}-tiles of the values associated with that key.
+   *
+   * @param <K> the type of the keys in the input and output {@code PCollection}s
+   * @param numQuantiles the number of elements in the resulting quantile values {@code List}
+   */
+  public static <K> PTransform<PCollection<KV<K, Double>>, PCollection<KV<K, List<Double>>>>
+      perKey(int numQuantiles) {
+    return Combine.perKey(TDigestQuantilesCombineFn.create(numQuantiles).<K>asKeyedFn());
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * A {@code CombineFn} which computes approximate {@code N}-tiles of the combined values with a
+   * t-digest.
+   */
+  public static class TDigestQuantilesCombineFn
+      extends AccumulatingCombineFn<Double, TDigest, List<Double>> {
+
+    /** The default compression, which keeps about 150 centroids. */
+    public static final double DEFAULT_COMPRESSION = 200;
+
+    private final int numQuantiles;
+    private final double compression;
+
+    private TDigestQuantilesCombineFn(int numQuantiles, double compression) {
+      checkArgument(numQuantiles >= 2, "numQuantiles must be at least 2, got %s", numQuantiles);
+      checkArgument(compression >= 10, "compression must be at least 10, got %s", compression);
+      this.numQuantiles = numQuantiles;
+      this.compression = compression;
+    }
+
+    /**
+     * Returns a t-digest quantiles combiner with the desired number of quantiles. A total of
+     * {@code numQuantiles} elements will appear in the output list, including the minimum and
+     * maximum.
+     */
+    public static TDigestQuantilesCombineFn create(int numQuantiles) {
+      return new TDigestQuantilesCombineFn(numQuantiles, DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Returns a {@code TDigestQuantilesCombineFn} that's like this one except that it uses the
+     * specified {@code compression}. Larger values keep more centroids and are more accurate.
+     * Does not modify this combiner.
+     */
+    public TDigestQuantilesCombineFn withCompression(double compression) {
+      return new TDigestQuantilesCombineFn(numQuantiles, compression);
+    }
+
+    @Override
+    public TDigest createAccumulator() {
+      return new TDigest(numQuantiles, compression);
+    }
+
+    @Override
+    public Coder<TDigest> getAccumulatorCoder(CoderRegistry registry, Coder<Double> inputCoder) {
+      return new TDigestCoder(numQuantiles, compression);
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      builder
+          .add(DisplayData.item("numQuantiles", numQuantiles)
+            .withLabel("Quantile Count"))
+          .add(DisplayData.item("compression", compression)
+            .withLabel("Digest Compression"));
+    }
+  }
+
+  /**
+   * A merging t-digest of the combined values.
+   *
+   * <p>Added values are appended to a buffer. When the buffer is full, or the digest is merged,
+   * encoded or queried, the buffer is sorted and merged with the sorted centroids in a single
+   * pass, which greedily combines adjacent centroids as long as the combined centroid spans at
+   * most one unit of the scale function
+   * {@code k(q) = compression / (4 log(n / compression) + 24) * log(q / (1 - q))}.
+   */
+  static class TDigest implements Accumulator<Double, TDigest, List<Double>> {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final double MIN_QUANTILE = 1e-15;
+
+    private final int numQuantiles;
+    private final double compression;
+    private final int maxBufferSize;
+
+    private double[] means = new double[0];
+    private long[] weights = new long[0];
+    private int numCentroids;
+
+    private double[] buffer = new double[INITIAL_CAPACITY];
+    private int bufferSize;
+
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    TDigest(int numQuantiles, double compression) {
+      this.numQuantiles = numQuantiles;
+      this.compression = compression;
+      this.maxBufferSize = (int) Math.ceil(5 * compression);
+    }
+
+    @Override
+    public void addInput(Double input) {
+      double value = input;
+      checkArgument(!Double.isNaN(value), "Cannot compute quantiles of NaN");
+      if (bufferSize == buffer.length) {
+        if (buffer.length < maxBufferSize) {
+          buffer = Arrays.copyOf(buffer, Math.min(maxBufferSize, buffer.length * 2));
+        } else {
+          compress();
+        }
+      }
+      buffer[bufferSize++] = value;
+      count++;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+
+    @Override
+    public void mergeAccumulator(TDigest other) {
+      if (other.count == 0) {
+        return;
+      }
+      other.compress();
+      insertCentroids(other.means, other.weights, other.numCentroids);
+      count += other.count;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      mergeCentroids();
+    }
+
+    @Override
+    public List<Double> extractOutput() {
+      if (count == 0) {
+        return Collections.emptyList();
+      }
+      compress();
+      List<Double> quantiles = new ArrayList<>(numQuantiles);
+      if (count < numQuantiles && numCentroids == count) {
+        // Every centroid is a single value.
+        for (int i = 0; i < numCentroids; ++i) {
+          quantiles.add(means[i]);
+        }
+        return quantiles;
+      }
+      quantiles.add(min);
+      for (int i = 1; i < numQuantiles - 1; ++i) {
+        quantiles.add(quantile((double) i / (numQuantiles - 1)));
+      }
+      quantiles.add(max);
+      return quantiles;
+    }
+
+    /** Merges the buffered values into the centroids. */
+    private void compress() {
+      if (bufferSize == 0) {
+        return;
+      }
+      Arrays.sort(buffer, 0, bufferSize);
+      long[] bufferWeights = new long[bufferSize];
+      Arrays.fill(bufferWeights, 1L);
+      double[] bufferMeans = buffer;
+      int numBuffered = bufferSize;
+      buffer = new double[Math.min(maxBufferSize, Math.max(INITIAL_CAPACITY, bufferSize))];
+      bufferSize = 0;
+      insertCentroids(bufferMeans, bufferWeights, numBuffered);
+      mergeCentroids();
+    }
+
+    /** Merges the given sorted centroids with the current ones, without combining any. */
+    private void insertCentroids(double[] otherMeans, long[] otherWeights, int numOther) {
+      if (bufferSize > 0) {
+        compress();
+      }
+      double[] mergedMeans = new double[numCentroids + numOther];
+      long[] mergedWeights = new long[numCentroids + numOther];
+      int i = 0;
+      int j = 0;
+      int n = 0;
+      while (i < numCentroids || j < numOther) {
+        if (j >= numOther || (i < numCentroids && means[i] <= otherMeans[j])) {
+          mergedMeans[n] = means[i];
+          mergedWeights[n++] = weights[i++];
+        } else {
+          mergedMeans[n] = otherMeans[j];
+          mergedWeights[n++] = otherWeights[j++];
+        }
+      }
+      means = mergedMeans;
+      weights = mergedWeights;
+      numCentroids = n;
+    }
+
+    /** Combines adjacent centroids as long as they are within the limit of the scale function. */
+    private void mergeCentroids() {
+      if (numCentroids == 0) {
+        return;
+      }
+      long totalWeight = 0;
+      for (int i = 0; i < numCentroids; ++i) {
+        totalWeight += weights[i];
+      }
+      double normalizer = 4 * Math.log(Math.max(2.0, totalWeight / compression)) + 24;
+      int n = 0;
+      double currentMean = means[0];
+      long currentWeight = weights[0];
+      long weightSoFar = 0;
+      double kLeft = scale(0, compression, normalizer);
+      for (int i = 1; i < numCentroids; ++i) {
+        long proposedWeight = currentWeight + weights[i];
+        double q = (double) (weightSoFar + proposedWeight) / totalWeight;
+        if (scale(q, compression, normalizer) - kLeft <= 1) {
+          currentMean += (means[i] - currentMean) * weights[i] / proposedWeight;
+          currentWeight = proposedWeight;
+        } else {
+          means[n] = currentMean;
+          weights[n++] = currentWeight;
+          weightSoFar += currentWeight;
+          kLeft = scale((double) weightSoFar / totalWeight, compression, normalizer);
+          currentMean = means[i];
+          currentWeight = weights[i];
+        }
+      }
+      means[n] = currentMean;
+      weights[n++] = currentWeight;
+      numCentroids = n;
+    }
+
+    /**
+     * The scale function, which is steepest near the extremes so that centroids there are small.
+     */
+    private static double scale(double q, double compression, double normalizer) {
+      q = Math.max(MIN_QUANTILE, Math.min(1 - MIN_QUANTILE, q));
+      return compression / normalizer * Math.log(q / (1 - q));
+    }
+
+    /**
+     * Returns the value at the given quantile, interpolating linearly between the centers of
+     * adjacent centroids, and between the extreme centroids and the minimum or maximum.
+     */
+    private double quantile(double q) {
+      double targetWeight = q * count;
+      double previousCenter = 0;
+      double previousMean = min;
+      long weightSoFar = 0;
+      for (int i = 0; i < numCentroids; ++i) {
+        double center = weightSoFar + weights[i] / 2.0;
+        if (targetWeight < center) {
+          return interpolate(
+              previousMean, means[i], (targetWeight - previousCenter) / (center - previousCenter));
+        }
+        previousCenter = center;
+        previousMean = means[i];
+        weightSoFar += weights[i];
+      }
+      return interpolate(
+          previousMean, max, (targetWeight - previousCenter) / (count - previousCenter));
+    }
+
+    private double interpolate(double from, double to, double fraction) {
+      double value = from + (to - from) * Math.max(0, Math.min(1, fraction));
+      return Math.max(min, Math.min(max, value));
+    }
+  }
+
+  /**
+   * A {@link Coder} for {@link TDigest}, which encodes the mean of each centroid as a double and
+   * its weight as a varint.
+   */
+  private static class TDigestCoder extends CustomCoder<TDigest> {
+    private final int numQuantiles;
+    private final double compression;
+
+    private TDigestCoder(int numQuantiles, double compression) {
+      this.numQuantiles = numQuantiles;
+      this.compression = compression;
+    }
+
+    @Override
+    public void encode(TDigest digest, OutputStream outStream, Coder.Context context)
+        throws CoderException, IOException {
+      digest.compress();
+      VarInt.encode(digest.count, outStream);
+      if (digest.count == 0) {
+        return;
+      }
+      DataOutputStream outData = new DataOutputStream(outStream);
+      outData.writeDouble(digest.min);
+      outData.writeDouble(digest.max);
+      VarInt.encode(digest.numCentroids, outStream);
+      for (int i = 0; i < digest.numCentroids; ++i) {
+        outData.writeDouble(digest.means[i]);
+        VarInt.encode(digest.weights[i], outStream);
+      }
+      outData.flush();
+    }
+
+    @Override
+    public TDigest decode(InputStream inStream, Coder.Context context)
+        throws CoderException, IOException {
+      TDigest digest = new TDigest(numQuantiles, compression);
+      digest.count = VarInt.decodeLong(inStream);
+      if (digest.count == 0) {
+        return digest;
+      }
+      DataInputStream inData = new DataInputStream(inStream);
+      digest.min = inData.readDouble();
+      digest.max = inData.readDouble();
+      digest.numCentroids = VarInt.decodeInt(inStream);
+      digest.means = new double[digest.numCentroids];
+      digest.weights = new long[digest.numCentroids];
+      for (int i = 0; i < digest.numCentroids; ++i) {
+        digest.means[i] = inData.readDouble();
+        digest.weights[i] = VarInt.decodeLong(inStream);
+      }
+      return digest;
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {}
+  }
+}
@@ -23,9 +23,11 @@ import static org.apache.beam.sdk.util.Structs.addObject;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,10 +35,13 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import javax.annotation.Nullable;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.StandardCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.util.CloudObject;
 import org.apache.beam.sdk.util.PropertyNames;
 import org.apache.beam.sdk.util.common.Reiterator;
@@ -60,10 +65,17 @@ public class CoGbkResult {
 
   private final CoGbkResultSchema schema;
 
-  private static final int DEFAULT_IN_MEMORY_ELEMENT_COUNT = 10_000;
+  static final int DEFAULT_IN_MEMORY_ELEMENT_COUNT = 10_000;
 
   private static final Logger LOG = LoggerFactory.getLogger(CoGbkResult.class);
 
+  private static final Counter SPILLED_RESULTS =
+      Metrics.counter(CoGbkResult.class, "spilledResults");
+  private static final Counter SPILLED_ELEMENTS =
+      Metrics.counter(CoGbkResult.class, "spilledElements");
+  private static final Counter SPILLED_BYTES =
+      Metrics.counter(CoGbkResult.class, "spilledBytes");
+
   /**
    * A row in the {@link PCollection} resulting from a {@link CoGroupByKey} transform.
    * Currently, this row must fit into memory.
@@ -78,11 +90,47 @@ public class CoGbkResult {
     this(schema, taggedValues, DEFAULT_IN_MEMORY_ELEMENT_COUNT);
   }
 
-  @SuppressWarnings("unchecked")
   public CoGbkResult(
       CoGbkResultSchema schema,
       Iterable<RawUnionValue> taggedValues,
       int inMemoryElementCount) {
+    this(schema, taggedValues, inMemoryElementCount, null);
+  }
+
+  public CoGbkResult(
+      CoGbkResultSchema schema,
+      Iterable<RawUnionValue> taggedValues,
+      int inMemoryElementCount,
+      @Nullable UnionCoder unionCoder) {
+    this(schema, taggedValues, inMemoryElementCount, unionCoder, null);
+  }
+
+  /**
+   * A row in the {@link PCollection} resulting from a {@link CoGroupByKey} transform, that
+   * holds at most {@code inMemoryElementCount} values in memory.
+   *
+   * <p>If the raw results can be reiterated, the remaining values are read from them lazily.
+   * Otherwise, if a {@code unionCoder} is given, the remaining values are spilled to a local
+   * file per tag, which are read each time the values of that tag are iterated. Without either,
+   * all values are held in memory.
+   *
+   * @param schema the set of tuple tags used to refer to input tables and
+   *               result values
+   * @param taggedValues the raw results from a group-by-key
+   * @param inMemoryElementCount the number of values to hold in memory
+   * @param unionCoder the coder of the raw results, used to spill values to disk
+   * @param spillDirectory the local directory to spill values to, or null to use the default
+   *                       temporary-file directory
+   */
+  @SuppressWarnings("unchecked")
+  public CoGbkResult(
+      CoGbkResultSchema schema,
+      Iterable<RawUnionValue> taggedValues,
+      int inMemoryElementCount,
+      @Nullable UnionCoder unionCoder,
+      @Nullable File spillDirectory) {
+    // Clean up after results spilled earlier, which may not spill again.
+    SpilledIterable.deleteUnreachableFiles();
     this.schema = schema;
     valueMap = new ArrayList<>();
     for (int unionTag = 0; unionTag < schema.size(); unionTag++) {
@@ -94,23 +142,19 @@ public class CoGbkResult {
     final Iterator<RawUnionValue> taggedIter = taggedValues.iterator();
     int elementCount = 0;
     while (taggedIter.hasNext()) {
-      if (elementCount++ >= inMemoryElementCount && taggedIter instanceof Reiterator) {
-        // Let the tails be lazy.
+      if (elementCount++ >= inMemoryElementCount
+          && (taggedIter instanceof Reiterator || unionCoder != null)) {
+        // Let the tails be lazy, or spill them.
         break;
       }
       RawUnionValue value = taggedIter.next();
-      // Make sure the given union tag has a corresponding tuple tag in the
-      // schema.
-      int unionTag = value.getUnionTag();
-      if (schema.size() <= unionTag) {
-        throw new IllegalStateException("union tag " + unionTag
-            + " has no corresponding tuple tag in the result schema");
-      }
-      List<Object> valueList = (List<Object>) valueMap.get(unionTag);
+      List<Object> valueList = (List<Object>) valueMap.get(checkUnionTag(value));
       valueList.add(value.getValue());
     }
 
-    if (taggedIter.hasNext()) {
+    if (taggedIter.hasNext() && !(taggedIter instanceof Reiterator)) {
+      spillTail(taggedIter, unionCoder, inMemoryElementCount, spillDirectory);
+    } else if (taggedIter.hasNext()) {
       // If we get here, there were more elements than we can afford to
       // keep in memory, so we copy the re-iterable of remaining items
       // and append filtered views to each of the sorted lists computed earlier.
@@ -129,6 +173,64 @@ public class CoGbkResult {
     }
   }
 
+  private int checkUnionTag(RawUnionValue value) {
+    // Make sure the given union tag has a corresponding tuple tag in the
+    // schema.
+    int unionTag = value.getUnionTag();
+    if (schema.size() <= unionTag) {
+      throw new IllegalStateException("union tag " + unionTag
+          + " has no corresponding tuple tag in the result schema");
+    }
+    return unionTag;
+  }
+
+  /**
+   * Appends the remaining values of each tag to a local file, and appends an {@link Iterable}
+   * reading that file to the values of the tag held in memory.
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private void spillTail(
+      Iterator<RawUnionValue> tail,
+      UnionCoder unionCoder,
+      int inMemoryElementCount,
+      @Nullable File spillDirectory) {
+    LOG.info("CoGbkResult has more than {} elements, spilling the remaining elements to disk.",
+        inMemoryElementCount);
+    SpilledIterable.Writer[] writers = new SpilledIterable.Writer[schema.size()];
+    try {
+      try {
+        while (tail.hasNext()) {
+          RawUnionValue value = tail.next();
+          int unionTag = checkUnionTag(value);
+          if (writers[unionTag] == null) {
+            writers[unionTag] =
+                new SpilledIterable.Writer<>(
+                    unionCoder.getComponents().get(unionTag), spillDirectory);
+          }
+          writers[unionTag].add(value.getValue());
+          SPILLED_ELEMENTS.inc();
+        }
+        for (int unionTag = 0; unionTag < writers.length; unionTag++) {
+          if (writers[unionTag] != null) {
+            SPILLED_BYTES.inc(writers[unionTag].getBytesWritten());
+            valueMap.set(unionTag, Iterables.concat(
+                (Iterable<Object>) valueMap.get(unionTag),
+                (Iterable<Object>) writers[unionTag].finish()));
+          }
+        }
+        SPILLED_RESULTS.inc();
+      } finally {
+        for (SpilledIterable.Writer writer : writers) {
+          if (writer != null) {
+            writer.close();
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to spill CoGbkResult elements to disk", e);
+    }
+  }
+
   private <T> void updateUnionTag(
       final Reiterator<RawUnionValue> tail, final Boolean[] containsTag,
       int unionTag, final int unionTag0) {
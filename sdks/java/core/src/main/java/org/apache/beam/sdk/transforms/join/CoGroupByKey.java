@@ -17,10 +17,13 @@
  */
 package org.apache.beam.sdk.transforms.join;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.options.LocalFileSystemOptions;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.GroupByKey;
@@ -128,7 +131,7 @@ public class CoGroupByKey<K> extends
 
     CoGbkResultSchema tupleTags = input.getCoGbkResultSchema();
     PCollection<KV<K, CoGbkResult>> result = groupedTable.apply("ConstructCoGbkResultFn",
-        ParDo.of(new ConstructCoGbkResultFn<K>(tupleTags)));
+        ParDo.of(new ConstructCoGbkResultFn<K>(tupleTags, unionCoder)));
     result.setCoder(KvCoder.of(keyCoder,
         CoGbkResultCoder.of(tupleTags, unionCoder)));
 
@@ -195,15 +198,30 @@ public class CoGroupByKey<K> extends
                      KV<K, CoGbkResult>> {
 
     private final CoGbkResultSchema schema;
+    private final UnionCoder unionCoder;
+    @Nullable private transient File spillDirectory;
 
-    public ConstructCoGbkResultFn(CoGbkResultSchema schema) {
+    public ConstructCoGbkResultFn(CoGbkResultSchema schema, UnionCoder unionCoder) {
       this.schema = schema;
+      this.unionCoder = unionCoder;
+    }
+
+    @StartBundle
+    public void startBundle(Context c) {
+      String directory =
+          c.getPipelineOptions().as(LocalFileSystemOptions.class).getLocalSpillDirectory();
+      spillDirectory = directory == null ? null : new File(directory);
     }
 
     @ProcessElement
     public void processElement(ProcessContext c) {
       KV<K, Iterable<RawUnionValue>> e = c.element();
-      c.output(KV.of(e.getKey(), new CoGbkResult(schema, e.getValue())));
+      c.output(KV.of(e.getKey(), new CoGbkResult(
+          schema,
+          e.getValue(),
+          CoGbkResult.DEFAULT_IN_MEMORY_ELEMENT_COUNT,
+          unionCoder,
+          spillDirectory)));
     }
   }
 }
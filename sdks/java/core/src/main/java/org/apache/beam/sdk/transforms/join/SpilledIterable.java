@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms.join;
+
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.coders.Coder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link Iterable} over values that were appended to a local file, used for the values of a
+ * {@link CoGbkResult} that do not fit in memory.
+ *
+ * <p>Each call to {@link #iterator} reads the file from the beginning, so the values can be
+ * iterated any number of times. Once the iterable and all of its iterators are no longer
+ * reachable, the streams of iterators that were not exhausted are closed and the file is deleted,
+ * the next time {@link #deleteUnreachableFiles} is called. Files are not registered for deletion
+ * when the JVM exits, since that would keep the name of every spill file in memory until then.
+ */
+class SpilledIterable<T> implements Iterable<T> {
+  private static final Logger LOG = LoggerFactory.getLogger(SpilledIterable.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final ReferenceQueue<SpilledIterable<?>> UNREACHABLE = new ReferenceQueue<>();
+
+  /** Keeps the references to files that have not been deleted yet from being collected. */
+  private static final Set<SpillFileReference> SPILL_FILES =
+      Collections.newSetFromMap(new ConcurrentHashMap<SpillFileReference, Boolean>());
+
+  private final File file;
+  private final Coder<T> coder;
+  private final long count;
+  private final SpillFileReference reference;
+
+  private SpilledIterable(File file, Coder<T> coder, long count) {
+    this.file = file;
+    this.coder = coder;
+    this.count = count;
+    this.reference = new SpillFileReference(this, file);
+    SPILL_FILES.add(reference);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    try {
+      return new SpilledIterator(
+          new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read spilled values from " + file, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SpilledIterable{file=" + file + ", count=" + count + "}";
+  }
+
+  /**
+   * Closes the streams left open by, and deletes the files of, the spilled iterables that are no
+   * longer reachable.
+   */
+  static void deleteUnreachableFiles() {
+    Reference<?> reference;
+    while ((reference = UNREACHABLE.poll()) != null) {
+      SpillFileReference spillFile = (SpillFileReference) reference;
+      SPILL_FILES.remove(spillFile);
+      spillFile.delete();
+    }
+  }
+
+  /**
+   * Appends values to a new local file, from which a {@link SpilledIterable} is created by
+   * {@link #finish}.
+   */
+  static class Writer<T> implements Closeable {
+    private final Coder<T> coder;
+    private final File file;
+    private final CountingOutputStream out;
+    private long count;
+    private boolean finished;
+
+    /**
+     * Creates a writer to a new file in the given directory, or in the default temporary-file
+     * directory if it is null.
+     */
+    Writer(Coder<T> coder, @Nullable File directory) throws IOException {
+      deleteUnreachableFiles();
+      this.coder = coder;
+      this.file = File.createTempFile("cogbk-spill-", ".tmp", directory);
+      this.out = new CountingOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    void add(T value) throws IOException {
+      coder.encode(value, out, Coder.Context.NESTED);
+      ++count;
+    }
+
+    long getBytesWritten() {
+      return out.getCount();
+    }
+
+    /** Closes the file and returns an {@link Iterable} over the values written to it. */
+    SpilledIterable<T> finish() throws IOException {
+      out.close();
+      finished = true;
+      return new SpilledIterable<>(file, coder, count);
+    }
+
+    /** Closes and deletes the file if {@link #finish} was not called. */
+    @Override
+    public void close() throws IOException {
+      out.close();
+      if (!finished && !file.delete()) {
+        LOG.warn("Unable to delete spill file {}", file);
+      }
+    }
+  }
+
+  private class SpilledIterator implements Iterator<T> {
+    private final InputStream in;
+    private long remaining = count;
+
+    private SpilledIterator(InputStream in) throws IOException {
+      this.in = in;
+      if (remaining == 0) {
+        in.close();
+      } else {
+        reference.openStreams.add(in);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public T next() {
+      if (remaining <= 0) {
+        throw new NoSuchElementException();
+      }
+      try {
+        T value = coder.decode(in, Coder.Context.NESTED);
+        if (--remaining == 0) {
+          reference.openStreams.remove(in);
+          in.close();
+        }
+        return value;
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read spilled values from " + file, e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Closes the streams of iterators that were not exhausted and deletes the spill file, once its
+   * {@link SpilledIterable} is no longer reachable. Since iterators refer to their iterable, none
+   * of them is reachable then either.
+   */
+  private static class SpillFileReference extends PhantomReference<SpilledIterable<?>> {
+    private final File file;
+    private final Set<InputStream> openStreams =
+        Collections.newSetFromMap(new ConcurrentHashMap<InputStream, Boolean>());
+
+    private SpillFileReference(SpilledIterable<?> referent, File file) {
+      super(referent, UNREACHABLE);
+      this.file = file;
+    }
+
+    private void delete() {
+      for (InputStream in : openStreams) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          LOG.warn("Unable to close spill file {}", file, e);
+        }
+      }
+      openStreams.clear();
+      if (!file.delete()) {
+        LOG.warn("Unable to delete spill file {}", file);
+      }
+    }
+  }
+}
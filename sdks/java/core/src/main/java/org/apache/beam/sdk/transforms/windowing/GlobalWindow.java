@@ -20,7 +20,10 @@ package org.apache.beam.sdk.transforms.windowing;
 import java.io.InputStream;
 import java.io.OutputStream;
 import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.BufferCoder;
 import org.apache.beam.sdk.util.CloudObject;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 
@@ -62,7 +65,8 @@ public class GlobalWindow extends BoundedWindow {
   /**
    * {@link Coder} for encoding and decoding {@code GlobalWindow}s.
    */
-  public static class Coder extends AtomicCoder<GlobalWindow> {
+  public static class Coder extends AtomicCoder<GlobalWindow>
+      implements BufferCoder<GlobalWindow> {
     public static final Coder INSTANCE = new Coder();
 
     @Override
@@ -73,6 +77,14 @@ public class GlobalWindow extends BoundedWindow {
       return GlobalWindow.INSTANCE;
     }
 
+    @Override
+    public void encodeToBuffer(GlobalWindow window, EncodingBuffer buffer, Context context) {}
+
+    @Override
+    public GlobalWindow decodeFromBuffer(DecodingBuffer buffer, Context context) {
+      return GlobalWindow.INSTANCE;
+    }
+
     @Override
     protected CloudObject initializeCloudObject() {
       return CloudObject.forClassName("kind:global_window");
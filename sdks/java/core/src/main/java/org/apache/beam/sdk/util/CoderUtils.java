@@ -38,9 +38,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.TypeVariable;
 import java.util.Map;
+import org.apache.beam.sdk.coders.BufferCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.IterableCoder;
@@ -70,6 +72,23 @@ public final class CoderUtils {
   private static ThreadLocal<SoftReference<ExposedByteArrayOutputStream>>
       threadLocalOutputStream = new ThreadLocal<>();
 
+  private static ThreadLocal<SoftReference<EncodingBuffer>> threadLocalEncodingBuffer =
+      new ThreadLocal<>();
+
+  /**
+   * Whether the {@link BufferCoder} methods of each class of coder encode and decode like its
+   * {@link Coder} methods. They do not for a subclass that overrides {@link Coder#encode} or
+   * {@link Coder#decode} of a {@link BufferCoder}, but not the matching {@link BufferCoder} method.
+   */
+  private static final ClassValue<Boolean> USES_BUFFER_METHODS = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> coderClass) {
+      return BufferCoder.class.isAssignableFrom(coderClass)
+          && !overridesBelow(coderClass, "encode", "encodeToBuffer")
+          && !overridesBelow(coderClass, "decode", "decodeFromBuffer");
+    }
+  };
+
   /**
    * If true, a call to {@code encodeToByteArray} is already on the call stack.
    */
@@ -91,8 +110,19 @@ public final class CoderUtils {
     return encodeToByteArray(coder, value, Coder.Context.OUTER);
   }
 
+  /**
+   * Encodes the given value in the given context using the specified Coder, and returns the
+   * encoded bytes. A {@link BufferCoder} encodes the value through
+   * {@link BufferCoder#encodeToBuffer}, unless its class overrides {@link Coder#encode} alone.
+   *
+   * <p>This function is not reentrant; it should not be called from methods of the provided
+   * {@link Coder}.
+   */
   public static <T> byte[] encodeToByteArray(Coder<T> coder, T value, Coder.Context context)
       throws CoderException {
+    if (usesBufferMethods(coder)) {
+      return encodeToByteArrayViaBuffer(coder, value, context);
+    }
     if (threadLocalOutputStreamInUse.get()) {
       // encodeToByteArray() is called recursively and the thread local stream is in use,
       // allocating a new one.
@@ -111,6 +141,38 @@ public final class CoderUtils {
     }
   }
 
+  private static <T> byte[] encodeToByteArrayViaBuffer(
+      Coder<T> coder, T value, Coder.Context context) throws CoderException {
+    if (threadLocalOutputStreamInUse.get()) {
+      // encodeToByteArray() is called recursively and the thread local buffer is in use,
+      // allocating a new one.
+      EncodingBuffer buffer = new EncodingBuffer();
+      encodeToSafeBuffer(coder, value, buffer, context);
+      return buffer.toByteArray();
+    } else {
+      threadLocalOutputStreamInUse.set(true);
+      try {
+        EncodingBuffer buffer = getThreadLocalEncodingBuffer();
+        encodeToSafeBuffer(coder, value, buffer, context);
+        return buffer.toByteArray();
+      } finally {
+        threadLocalOutputStreamInUse.set(false);
+      }
+    }
+  }
+
+  private static <T> void encodeToSafeBuffer(
+      Coder<T> coder, T value, EncodingBuffer buffer, Coder.Context context)
+      throws CoderException {
+    try {
+      encodeToBuffer(coder, value, buffer, context);
+    } catch (IOException exn) {
+      Throwables.propagateIfPossible(exn, CoderException.class);
+      throw new IllegalArgumentException(
+          "Forbidden IOException when writing to EncodingBuffer", exn);
+    }
+  }
+
   /**
    * Encodes {@code value} to the given {@code stream}, which should be a stream that never throws
    * {@code IOException}, such as {@code ByteArrayOutputStream} or
@@ -136,8 +198,29 @@ public final class CoderUtils {
     return decodeFromByteArray(coder, encodedValue, Coder.Context.OUTER);
   }
 
+  /**
+   * Decodes the given bytes in the given context using the specified Coder, and returns the
+   * resulting decoded value. A {@link BufferCoder} decodes the value through
+   * {@link BufferCoder#decodeFromBuffer}, unless its class overrides {@link Coder#decode} alone.
+   */
   public static <T> T decodeFromByteArray(
       Coder<T> coder, byte[] encodedValue, Coder.Context context) throws CoderException {
+    if (usesBufferMethods(coder)) {
+      DecodingBuffer buffer = new DecodingBuffer(encodedValue);
+      T result;
+      try {
+        result = decodeFromBuffer(coder, buffer, context);
+      } catch (IOException exn) {
+        Throwables.propagateIfPossible(exn, CoderException.class);
+        throw new IllegalArgumentException(
+            "Forbidden IOException when reading from DecodingBuffer", exn);
+      }
+      if (buffer.available() != 0) {
+        throw new CoderException(
+            buffer.available() + " unexpected extra bytes after decoding " + result);
+      }
+      return result;
+    }
     try (ExposedByteArrayInputStream stream = new ExposedByteArrayInputStream(encodedValue)) {
       T result = decodeFromSafeStream(coder, stream, context);
       if (stream.available() != 0) {
@@ -164,6 +247,70 @@ public final class CoderUtils {
     }
   }
 
+  /**
+   * Encodes the given value into the given buffer using the specified Coder. Uses
+   * {@link BufferCoder#encodeToBuffer} if the coder implements it and its class does not override
+   * {@link Coder#encode} alone, and {@link Coder#encode} otherwise.
+   */
+  public static <T> void encodeToBuffer(
+      Coder<T> coder, T value, EncodingBuffer buffer, Coder.Context context)
+      throws CoderException, IOException {
+    if (usesBufferMethods(coder)) {
+      @SuppressWarnings("unchecked")
+      BufferCoder<T> bufferCoder = (BufferCoder<T>) coder;
+      bufferCoder.encodeToBuffer(value, buffer, context);
+    } else {
+      coder.encode(value, buffer, context);
+    }
+  }
+
+  /**
+   * Decodes a value from the given buffer using the specified Coder. Uses
+   * {@link BufferCoder#decodeFromBuffer} if the coder implements it and its class does not
+   * override {@link Coder#decode} alone, and {@link Coder#decode} otherwise.
+   */
+  public static <T> T decodeFromBuffer(
+      Coder<T> coder, DecodingBuffer buffer, Coder.Context context)
+      throws CoderException, IOException {
+    if (usesBufferMethods(coder)) {
+      @SuppressWarnings("unchecked")
+      BufferCoder<T> bufferCoder = (BufferCoder<T>) coder;
+      return bufferCoder.decodeFromBuffer(buffer, context);
+    }
+    return coder.decode(buffer, context);
+  }
+
+  private static boolean usesBufferMethods(Coder<?> coder) {
+    return USES_BUFFER_METHODS.get(coder.getClass());
+  }
+
+  /**
+   * Returns whether {@code coderClass} or one of its superclasses declares {@code coderMethod}
+   * before the first class, walking up from {@code coderClass}, that declares
+   * {@code bufferMethod}.
+   */
+  private static boolean overridesBelow(
+      Class<?> coderClass, String coderMethod, String bufferMethod) {
+    for (Class<?> c = coderClass; c != null; c = c.getSuperclass()) {
+      boolean declaresCoderMethod = false;
+      for (Method method : c.getDeclaredMethods()) {
+        if (method.isBridge()) {
+          continue;
+        }
+        if (method.getName().equals(bufferMethod)) {
+          return false;
+        }
+        if (method.getName().equals(coderMethod)) {
+          declaresCoderMethod = true;
+        }
+      }
+      if (declaresCoderMethod) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static ByteArrayOutputStream getThreadLocalOutputStream() {
     SoftReference<ExposedByteArrayOutputStream> refStream = threadLocalOutputStream.get();
     ExposedByteArrayOutputStream stream = refStream == null ? null : refStream.get();
@@ -175,6 +322,17 @@ public final class CoderUtils {
     return stream;
   }
 
+  private static EncodingBuffer getThreadLocalEncodingBuffer() {
+    SoftReference<EncodingBuffer> refBuffer = threadLocalEncodingBuffer.get();
+    EncodingBuffer buffer = refBuffer == null ? null : refBuffer.get();
+    if (buffer == null) {
+      buffer = new EncodingBuffer();
+      threadLocalEncodingBuffer.set(new SoftReference<>(buffer));
+    }
+    buffer.reset();
+    return buffer;
+  }
+
   /**
    * Clones the given value by encoding and then decoding it with the specified Coder.
    *
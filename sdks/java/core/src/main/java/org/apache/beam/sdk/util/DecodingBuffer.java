@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An {@link InputStream} over a byte array with methods that read the primitive encodings used by
+ * the core coders directly from the array. It is the counterpart of {@link EncodingBuffer}.
+ *
+ * <p>Methods that read a primitive encoding throw an {@link EOFException} if the array ends
+ * before the encoding does, and an {@link IOException} if the encoding is malformed.
+ */
+public final class DecodingBuffer extends InputStream {
+  private final byte[] buf;
+  private final int limit;
+  private int pos;
+
+  public DecodingBuffer(byte[] buf) {
+    this(buf, 0, buf.length);
+  }
+
+  public DecodingBuffer(byte[] buf, int offset, int length) {
+    this.buf = buf;
+    this.pos = offset;
+    this.limit = offset + length;
+  }
+
+  @Override
+  public int read() {
+    return pos < limit ? buf[pos++] & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (pos >= limit) {
+      return -1;
+    }
+    int read = Math.min(len, limit - pos);
+    System.arraycopy(buf, pos, b, off, read);
+    pos += read;
+    return read;
+  }
+
+  @Override
+  public long skip(long n) {
+    int skipped = (int) Math.max(0, Math.min(n, limit - pos));
+    pos += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return limit - pos;
+  }
+
+  /**
+   * Reads a value encoded by {@link EncodingBuffer#writeVarInt}, with the same checks as
+   * {@link VarInt#decodeInt}.
+   */
+  public int readVarInt() throws IOException {
+    long result = readVarLong();
+    if (result < 0 || result >= 1L << 32) {
+      throw new IOException("varint overflow " + result);
+    }
+    return (int) result;
+  }
+
+  /**
+   * Reads a value encoded by {@link EncodingBuffer#writeVarLong}, with the same checks as
+   * {@link VarInt#decodeLong}.
+   */
+  public long readVarLong() throws IOException {
+    long result = 0;
+    int shift = 0;
+    int b;
+    do {
+      if (pos >= limit) {
+        if (shift == 0) {
+          throw new EOFException();
+        } else {
+          throw new IOException("varint not terminated");
+        }
+      }
+      b = buf[pos++];
+      long bits = b & 0x7F;
+      if (shift >= 64 || (shift == 63 && bits > 1)) {
+        throw new IOException("varint too long");
+      }
+      result |= bits << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+  /** Reads four big endian bytes, like {@link java.io.DataInputStream#readInt}. */
+  public int readBigEndianInt() throws IOException {
+    require(4);
+    int result = ((buf[pos] & 0xFF) << 24)
+        | ((buf[pos + 1] & 0xFF) << 16)
+        | ((buf[pos + 2] & 0xFF) << 8)
+        | (buf[pos + 3] & 0xFF);
+    pos += 4;
+    return result;
+  }
+
+  /** Reads eight big endian bytes, like {@link java.io.DataInputStream#readLong}. */
+  public long readBigEndianLong() throws IOException {
+    long high = readBigEndianInt();
+    long low = readBigEndianInt() & 0xFFFFFFFFL;
+    return (high << 32) | low;
+  }
+
+  /** Decodes the next {@code length} bytes as UTF-8, without copying them first. */
+  public String readUtf8(int length) throws IOException {
+    require(length);
+    String result = new String(buf, pos, length, StandardCharsets.UTF_8);
+    pos += length;
+    return result;
+  }
+
+  /** Returns a copy of the next {@code length} bytes. */
+  public byte[] readBytes(int length) throws IOException {
+    require(length);
+    byte[] result = Arrays.copyOfRange(buf, pos, pos + length);
+    pos += length;
+    return result;
+  }
+
+  private void require(int length) throws EOFException {
+    if (length < 0 || limit - pos < length) {
+      throw new EOFException(
+          "Expected " + length + " bytes, but only " + (limit - pos) + " remain");
+    }
+  }
+}
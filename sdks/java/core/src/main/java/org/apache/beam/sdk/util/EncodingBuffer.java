@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import com.google.common.base.Utf8;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable in-memory {@link OutputStream} with methods that write the primitive encodings used
+ * by the core coders directly into its backing array.
+ *
+ * <p>Unlike wrapping a stream in a {@link java.io.DataOutputStream} and using {@link VarInt},
+ * writing varints, big endian numbers and UTF-8 strings to an {@link EncodingBuffer} does not
+ * allocate temporary objects. Coders that implement
+ * {@link org.apache.beam.sdk.coders.BufferCoder} use these methods; any other coder can still
+ * encode into the buffer through its {@link OutputStream} methods.
+ *
+ * <p>An {@link EncodingBuffer} can be {@link #reset} and reused for many values.
+ */
+public final class EncodingBuffer extends OutputStream {
+  private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+  private byte[] buf;
+  private int count;
+
+  public EncodingBuffer() {
+    this(DEFAULT_INITIAL_CAPACITY);
+  }
+
+  public EncodingBuffer(int initialCapacity) {
+    buf = new byte[Math.max(initialCapacity, 1)];
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(1);
+    buf[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
+  }
+
+  /**
+   * Writes the given value with the encoding of {@link VarInt#encode(int, OutputStream)}.
+   */
+  public void writeVarInt(int value) {
+    writeVarLong(value & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Writes the given value with the encoding of {@link VarInt#encode(long, OutputStream)}.
+   */
+  public void writeVarLong(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      buf[count++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buf[count++] = (byte) value;
+  }
+
+  /**
+   * Writes the given value as four big endian bytes, like
+   * {@link java.io.DataOutputStream#writeInt}.
+   */
+  public void writeBigEndianInt(int value) {
+    ensureCapacity(4);
+    buf[count++] = (byte) (value >>> 24);
+    buf[count++] = (byte) (value >>> 16);
+    buf[count++] = (byte) (value >>> 8);
+    buf[count++] = (byte) value;
+  }
+
+  /**
+   * Writes the given value as eight big endian bytes, like
+   * {@link java.io.DataOutputStream#writeLong}.
+   */
+  public void writeBigEndianLong(long value) {
+    writeBigEndianInt((int) (value >>> 32));
+    writeBigEndianInt((int) value);
+  }
+
+  /**
+   * Writes the UTF-8 encoding of the given string, preceded by its length in bytes as a varint if
+   * {@code lengthPrefixed}. The bytes are the same as those of
+   * {@code value.getBytes(StandardCharsets.UTF_8)}, but they are encoded in place.
+   */
+  public void writeUtf8(String value, boolean lengthPrefixed) {
+    int length;
+    try {
+      length = Utf8.encodedLength(value);
+    } catch (IllegalArgumentException e) {
+      // Unpaired surrogates, which String.getBytes replaces with '?'.
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (lengthPrefixed) {
+        writeVarInt(bytes.length);
+      }
+      write(bytes, 0, bytes.length);
+      return;
+    }
+    if (lengthPrefixed) {
+      writeVarInt(length);
+    }
+    ensureCapacity(length);
+    int pos = count;
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buf[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xC0 | (c >>> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buf[pos++] = (byte) (0xF0 | (codePoint >>> 18));
+        buf[pos++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+        buf[pos++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        buf[pos++] = (byte) (0xE0 | (c >>> 12));
+        buf[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    count = pos;
+  }
+
+  /** Returns the number of bytes written since the buffer was created or last reset. */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns the backing array of this buffer, of which the first {@link #size} bytes are valid.
+   * The array is only valid until the next write or {@link #reset}.
+   */
+  public byte[] array() {
+    return buf;
+  }
+
+  /** Returns a copy of the bytes written to this buffer. */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, count);
+  }
+
+  /** Writes the bytes written to this buffer to the given stream. */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buf, 0, count);
+  }
+
+  /** Discards the bytes written to this buffer, keeping its capacity. */
+  public void reset() {
+    count = 0;
+  }
+
+  private void ensureCapacity(int length) {
+    if (buf.length - count < length) {
+      int minCapacity = count + length;
+      if (minCapacity < 0) {
+        throw new OutOfMemoryError("EncodingBuffer can not grow beyond 2GiB");
+      }
+      buf = Arrays.copyOf(buf, Math.max(minCapacity, buf.length * 2));
+    }
+  }
+}
@@ -47,6 +47,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import javax.annotation.Nullable;
 
+import org.apache.beam.sdk.options.LocalFileSystemOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,10 +62,16 @@ public class FileIOChannelFactory implements IOChannelFactory {
    * Create a {@link FileIOChannelFactory} with the given {@link PipelineOptions}.
    */
   public static FileIOChannelFactory fromOptions(@Nullable PipelineOptions options) {
-    return new FileIOChannelFactory();
+    return new FileIOChannelFactory(
+        options != null && options.as(LocalFileSystemOptions.class).getMemoryMapLocalFiles());
   }
 
-  private FileIOChannelFactory() {}
+  /** Whether files are opened as {@link MappedByteChannel MappedByteChannels}. */
+  private final boolean memoryMap;
+
+  private FileIOChannelFactory(boolean memoryMap) {
+    this.memoryMap = memoryMap;
+  }
 
   /**
    *  Converts the given file spec to a java {@link File}. If {@code spec} is actually a URI with
@@ -134,7 +141,7 @@ public class FileIOChannelFactory implements IOChannelFactory {
     FileInputStream inputStream = new FileInputStream(specToFile(spec));
     // Use this method for creating the channel (rather than new FileChannel) so that we get
     // regular FileNotFoundException. Closing the underyling channel will close the inputStream.
-    return inputStream.getChannel();
+    return memoryMap ? new MappedByteChannel(inputStream.getChannel()) : inputStream.getChannel();
   }
 
   @Override
@@ -205,6 +212,38 @@ public class FileIOChannelFactory implements IOChannelFactory {
     }
   }
 
+  /**
+   * Renames a collection of files, replacing any existing destination files.
+   *
+   * <p>Like {@link #copy}, sources that do not exist are skipped, so that renaming the same files
+   * again, after a failure, succeeds.
+   */
+  public void rename(Iterable<String> srcFilenames, Iterable<String> destFilenames) throws
+      IOException {
+    List<String> srcList = Lists.newArrayList(srcFilenames);
+    List<String> destList = Lists.newArrayList(destFilenames);
+    checkArgument(
+        srcList.size() == destList.size(),
+        "Number of source files %s must equal number of destination files %s",
+        srcList.size(),
+        destList.size());
+    int numFiles = srcList.size();
+    for (int i = 0; i < numFiles; i++) {
+      String src = srcList.get(i);
+      String dst = destList.get(i);
+      LOG.debug("Renaming {} to {}", src, dst);
+      try {
+        Files.move(
+            new File(src).toPath(),
+            new File(dst).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (NoSuchFileException e) {
+        LOG.info("{} does not exist.", src);
+        // Suppress exception if file does not exist.
+      }
+    }
+  }
+
   @Override
   public void remove(Collection<String> filesOrDirs) throws IOException {
     for (String fileOrDir : filesOrDirs) {
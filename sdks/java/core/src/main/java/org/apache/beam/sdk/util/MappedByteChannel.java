@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@link SeekableByteChannel} over a local file that is memory mapped, so that reads
+ * copy from the page cache without a system call, and seeking does not touch the file.
+ *
+ * <p>The file is mapped in regions of at most 1 GiB, which are mapped as the position reaches
+ * them. In addition to {@link #read}, {@link #readMapped} returns the mapped bytes without
+ * copying them.
+ *
+ * <p>The channel reads the file as it was when the channel was opened; bytes appended later are
+ * not visible. A mapping is released when it is garbage collected, rather than when the channel
+ * is closed.
+ */
+public class MappedByteChannel implements SeekableByteChannel {
+  private static final long DEFAULT_REGION_SIZE = 1L << 30;
+
+  private final FileChannel channel;
+  private final long size;
+  private final long regionSize;
+
+  private MappedByteBuffer region;
+  private long regionStart;
+  private long position;
+
+  /** Creates a channel mapping the file read by the given channel, which it takes ownership of. */
+  public MappedByteChannel(FileChannel channel) throws IOException {
+    this(channel, DEFAULT_REGION_SIZE);
+  }
+
+  @VisibleForTesting
+  MappedByteChannel(FileChannel channel, long regionSize) throws IOException {
+    checkArgument(
+        regionSize > 0 && regionSize <= Integer.MAX_VALUE,
+        "The region size must be between 1 and %s, but was %s",
+        Integer.MAX_VALUE,
+        regionSize);
+    this.channel = channel;
+    this.size = channel.size();
+    this.regionSize = regionSize;
+    this.position = channel.position();
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    if (!dst.hasRemaining()) {
+      ensureOpen();
+      return 0;
+    }
+    ByteBuffer mapped = readMapped(dst.remaining());
+    if (mapped == null) {
+      return -1;
+    }
+    int length = mapped.remaining();
+    dst.put(mapped);
+    return length;
+  }
+
+  /**
+   * Returns a read-only buffer over the next bytes of the file, of which there are at least one
+   * and at most {@code maxLength}, and advances the position past them. Returns {@code null} at
+   * the end of the file.
+   *
+   * <p>The returned buffer shares the mapping of the file, so no bytes are copied. Fewer than
+   * {@code maxLength} bytes are returned at the end of a mapped region.
+   */
+  public ByteBuffer readMapped(int maxLength) throws IOException {
+    checkArgument(maxLength > 0, "The maximum length must be positive, but was %s", maxLength);
+    ensureOpen();
+    if (position >= size) {
+      return null;
+    }
+    if (region == null || position < regionStart || position >= regionStart + region.capacity()) {
+      // Map the aligned region containing the position.
+      regionStart = position - position % regionSize;
+      region = channel.map(
+          FileChannel.MapMode.READ_ONLY, regionStart, Math.min(regionSize, size - regionStart));
+    }
+    int offset = (int) (position - regionStart);
+    int length = Math.min(maxLength, region.capacity() - offset);
+    ByteBuffer mapped = region.duplicate();
+    mapped.limit(offset + length).position(offset);
+    position += length;
+    return mapped.slice().asReadOnlyBuffer();
+  }
+
+  @Override
+  public long position() throws IOException {
+    ensureOpen();
+    return position;
+  }
+
+  @Override
+  public MappedByteChannel position(long newPosition) throws IOException {
+    checkArgument(newPosition >= 0, "The position must not be negative, but was %s", newPosition);
+    ensureOpen();
+    position = newPosition;
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    ensureOpen();
+    return size;
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    region = null;
+    channel.close();
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!channel.isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+}
@@ -35,6 +35,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import org.apache.beam.sdk.coders.BufferCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.CollectionCoder;
@@ -565,6 +566,18 @@ public abstract class WindowedValue<T> {
     return FullWindowedValueCoder.of(valueCoder, windowCoder);
   }
 
+  /**
+   * Returns the compact {@code Coder} to use for a {@code WindowedValue<T>} that does not need
+   * to be decoded by other pipelines, using the given valueCoder and windowCoder.
+   *
+   * @see CompactWindowedValueCoder
+   */
+  public static <T> CompactWindowedValueCoder<T> getCompactCoder(
+      Coder<T> valueCoder,
+      Coder<? extends BoundedWindow> windowCoder) {
+    return CompactWindowedValueCoder.of(valueCoder, windowCoder);
+  }
+
   /**
    * Returns the {@code ValueOnlyCoder} from the given valueCoder.
    */
@@ -600,7 +613,8 @@ public abstract class WindowedValue<T> {
   /**
    * Coder for {@code WindowedValue}.
    */
-  public static class FullWindowedValueCoder<T> extends WindowedValueCoder<T> {
+  public static class FullWindowedValueCoder<T> extends WindowedValueCoder<T>
+      implements BufferCoder<WindowedValue<T>> {
     private final Coder<? extends BoundedWindow> windowCoder;
     // Precompute and cache the coder for a list of windows.
     private final Coder<Collection<? extends BoundedWindow>> windowsCoder;
@@ -675,6 +689,29 @@ public abstract class WindowedValue<T> {
       return WindowedValue.of(value, timestamp, windows, pane);
     }
 
+    @Override
+    public void encodeToBuffer(
+        WindowedValue<T> windowedElem, EncodingBuffer buffer, Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      InstantCoder.of().encodeToBuffer(windowedElem.getTimestamp(), buffer, nestedContext);
+      CoderUtils.encodeToBuffer(windowsCoder, windowedElem.getWindows(), buffer, nestedContext);
+      PaneInfoCoder.INSTANCE.encode(windowedElem.getPane(), buffer, nestedContext);
+      CoderUtils.encodeToBuffer(valueCoder, windowedElem.getValue(), buffer, context);
+    }
+
+    @Override
+    public WindowedValue<T> decodeFromBuffer(DecodingBuffer buffer, Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      Instant timestamp = InstantCoder.of().decodeFromBuffer(buffer, nestedContext);
+      Collection<? extends BoundedWindow> windows =
+          CoderUtils.decodeFromBuffer(windowsCoder, buffer, nestedContext);
+      PaneInfo pane = PaneInfoCoder.INSTANCE.decode(buffer, nestedContext);
+      T value = CoderUtils.decodeFromBuffer(valueCoder, buffer, context);
+      return WindowedValue.of(value, timestamp, windows, pane);
+    }
+
     @Override
     public void verifyDeterministic() throws NonDeterministicException {
       verifyDeterministic(
@@ -713,6 +750,241 @@ public abstract class WindowedValue<T> {
     }
   }
 
+  /**
+   * Coder for {@code WindowedValue} that is more compact than {@link FullWindowedValueCoder} for
+   * the common cases of values in a single window, values without a timestamp and values that
+   * were not produced by a trigger firing.
+   *
+   * <p>Each element starts with a header byte. Its high four bits are the version of the
+   * encoding, and its low four bits are flags for a minimum timestamp, the global window, a
+   * single window and a {@link PaneInfo#NO_FIRING} pane, whose encodings are then omitted. A
+   * single window is encoded without the size of the window collection, and the timestamp is
+   * encoded as a varint of its distance to the end of that window, or to the epoch otherwise.
+   *
+   * <p>The encoding is not compatible with the one of {@link FullWindowedValueCoder}, so it is
+   * only meant for data that does not outlive a pipeline, such as the data shuffled by runners.
+   */
+  public static class CompactWindowedValueCoder<T> extends WindowedValueCoder<T>
+      implements BufferCoder<WindowedValue<T>> {
+    private static final int VERSION = 0x10;
+    private static final int VERSION_MASK = 0xF0;
+    private static final int MIN_TIMESTAMP = 0x01;
+    private static final int GLOBAL_WINDOW = 0x02;
+    private static final int SINGLE_WINDOW = 0x04;
+    private static final int NO_FIRING = 0x08;
+
+    private final Coder<? extends BoundedWindow> windowCoder;
+    // Typed to encode any window, like FullWindowedValueCoder.windowsCoder.
+    private final Coder<BoundedWindow> singleWindowCoder;
+    private final Coder<Collection<? extends BoundedWindow>> windowsCoder;
+
+    public static <T> CompactWindowedValueCoder<T> of(
+        Coder<T> valueCoder,
+        Coder<? extends BoundedWindow> windowCoder) {
+      return new CompactWindowedValueCoder<>(valueCoder, windowCoder);
+    }
+
+    @JsonCreator
+    public static CompactWindowedValueCoder<?> of(
+        @JsonProperty(PropertyNames.COMPONENT_ENCODINGS)
+        List<Coder<?>> components) {
+      checkArgument(components.size() == 2,
+                    "Expecting 2 components, got " + components.size());
+      @SuppressWarnings("unchecked")
+      Coder<? extends BoundedWindow> window = (Coder<? extends BoundedWindow>) components.get(1);
+      return of(components.get(0), window);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    CompactWindowedValueCoder(Coder<T> valueCoder,
+                              Coder<? extends BoundedWindow> windowCoder) {
+      super(valueCoder);
+      this.windowCoder = checkNotNull(windowCoder);
+      this.singleWindowCoder = (Coder) windowCoder;
+      this.windowsCoder = (Coder) CollectionCoder.of(windowCoder);
+    }
+
+    public Coder<? extends BoundedWindow> getWindowCoder() {
+      return windowCoder;
+    }
+
+    @Override
+    public <NewT> WindowedValueCoder<NewT> withValueCoder(Coder<NewT> valueCoder) {
+      return new CompactWindowedValueCoder<>(valueCoder, windowCoder);
+    }
+
+    @Override
+    public void encode(WindowedValue<T> windowedElem,
+                       OutputStream outStream,
+                       Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      Collection<? extends BoundedWindow> windows = windowedElem.getWindows();
+      int header = header(windowedElem);
+      outStream.write(header);
+      if ((header & SINGLE_WINDOW) != 0) {
+        singleWindowCoder.encode(windows.iterator().next(), outStream, nestedContext);
+      } else if ((header & GLOBAL_WINDOW) == 0) {
+        windowsCoder.encode(windows, outStream, nestedContext);
+      }
+      if ((header & MIN_TIMESTAMP) == 0) {
+        VarInt.encode(timestampDelta(windowedElem, header), outStream);
+      }
+      if ((header & NO_FIRING) == 0) {
+        PaneInfoCoder.INSTANCE.encode(windowedElem.getPane(), outStream, nestedContext);
+      }
+      valueCoder.encode(windowedElem.getValue(), outStream, context);
+    }
+
+    @Override
+    public WindowedValue<T> decode(InputStream inStream, Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      int header = checkHeader(inStream.read());
+      BoundedWindow window = null;
+      Collection<? extends BoundedWindow> windows = null;
+      if ((header & SINGLE_WINDOW) != 0) {
+        window = singleWindowCoder.decode(inStream, nestedContext);
+      } else if ((header & GLOBAL_WINDOW) != 0) {
+        window = GlobalWindow.INSTANCE;
+      } else {
+        windows = windowsCoder.decode(inStream, nestedContext);
+      }
+      Instant timestamp = (header & MIN_TIMESTAMP) != 0
+          ? BoundedWindow.TIMESTAMP_MIN_VALUE
+          : timestamp(VarInt.decodeLong(inStream), window, header);
+      PaneInfo pane = (header & NO_FIRING) != 0
+          ? PaneInfo.NO_FIRING
+          : PaneInfoCoder.INSTANCE.decode(inStream, nestedContext);
+      T value = valueCoder.decode(inStream, context);
+      return window != null
+          ? WindowedValue.of(value, timestamp, window, pane)
+          : WindowedValue.of(value, timestamp, windows, pane);
+    }
+
+    @Override
+    public void encodeToBuffer(
+        WindowedValue<T> windowedElem, EncodingBuffer buffer, Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      Collection<? extends BoundedWindow> windows = windowedElem.getWindows();
+      int header = header(windowedElem);
+      buffer.write(header);
+      if ((header & SINGLE_WINDOW) != 0) {
+        CoderUtils.encodeToBuffer(
+            singleWindowCoder, windows.iterator().next(), buffer, nestedContext);
+      } else if ((header & GLOBAL_WINDOW) == 0) {
+        CoderUtils.encodeToBuffer(windowsCoder, windows, buffer, nestedContext);
+      }
+      if ((header & MIN_TIMESTAMP) == 0) {
+        buffer.writeVarLong(timestampDelta(windowedElem, header));
+      }
+      if ((header & NO_FIRING) == 0) {
+        PaneInfoCoder.INSTANCE.encode(windowedElem.getPane(), buffer, nestedContext);
+      }
+      CoderUtils.encodeToBuffer(valueCoder, windowedElem.getValue(), buffer, context);
+    }
+
+    @Override
+    public WindowedValue<T> decodeFromBuffer(DecodingBuffer buffer, Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      int header = checkHeader(buffer.read());
+      BoundedWindow window = null;
+      Collection<? extends BoundedWindow> windows = null;
+      if ((header & SINGLE_WINDOW) != 0) {
+        window = CoderUtils.decodeFromBuffer(singleWindowCoder, buffer, nestedContext);
+      } else if ((header & GLOBAL_WINDOW) != 0) {
+        window = GlobalWindow.INSTANCE;
+      } else {
+        windows = CoderUtils.decodeFromBuffer(windowsCoder, buffer, nestedContext);
+      }
+      Instant timestamp = (header & MIN_TIMESTAMP) != 0
+          ? BoundedWindow.TIMESTAMP_MIN_VALUE
+          : timestamp(buffer.readVarLong(), window, header);
+      PaneInfo pane = (header & NO_FIRING) != 0
+          ? PaneInfo.NO_FIRING
+          : PaneInfoCoder.INSTANCE.decode(buffer, nestedContext);
+      T value = CoderUtils.decodeFromBuffer(valueCoder, buffer, context);
+      return window != null
+          ? WindowedValue.of(value, timestamp, window, pane)
+          : WindowedValue.of(value, timestamp, windows, pane);
+    }
+
+    private static int header(WindowedValue<?> windowedElem) {
+      int header = VERSION;
+      if (BoundedWindow.TIMESTAMP_MIN_VALUE.equals(windowedElem.getTimestamp())) {
+        header |= MIN_TIMESTAMP;
+      }
+      Collection<? extends BoundedWindow> windows = windowedElem.getWindows();
+      if (windows.size() == 1) {
+        header |= windows.iterator().next() instanceof GlobalWindow
+            ? GLOBAL_WINDOW
+            : SINGLE_WINDOW;
+      }
+      if (PaneInfo.NO_FIRING.equals(windowedElem.getPane())) {
+        header |= NO_FIRING;
+      }
+      return header;
+    }
+
+    private static int checkHeader(int header) throws CoderException {
+      if (header < 0) {
+        throw new CoderException("Expected a header byte, but the input ended");
+      }
+      if ((header & VERSION_MASK) != VERSION) {
+        throw new CoderException(String.format(
+            "Unsupported CompactWindowedValueCoder encoding version in header 0x%02x", header));
+      }
+      return header;
+    }
+
+    /**
+     * Returns the distance of the timestamp to the end of its single window, or to the epoch,
+     * zigzag encoded so that small negative distances are small too.
+     */
+    private static long timestampDelta(WindowedValue<?> windowedElem, int header) {
+      long reference = (header & SINGLE_WINDOW) != 0
+          ? windowedElem.getWindows().iterator().next().maxTimestamp().getMillis()
+          : 0L;
+      long delta = windowedElem.getTimestamp().getMillis() - reference;
+      return (delta << 1) ^ (delta >> 63);
+    }
+
+    private static Instant timestamp(long zigzagDelta, BoundedWindow window, int header) {
+      long reference = (header & SINGLE_WINDOW) != 0 ? window.maxTimestamp().getMillis() : 0L;
+      long delta = (zigzagDelta >>> 1) ^ -(zigzagDelta & 1);
+      return new Instant(reference + delta);
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {
+      verifyDeterministic(
+          "CompactWindowedValueCoder requires a deterministic valueCoder",
+          valueCoder);
+      verifyDeterministic(
+          "CompactWindowedValueCoder requires a deterministic windowCoder",
+          windowCoder);
+    }
+
+    @Override
+    public CloudObject initializeCloudObject() {
+      CloudObject result = CloudObject.forClass(getClass());
+      addBoolean(result, PropertyNames.IS_WRAPPER, true);
+      return result;
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+      return null;
+    }
+
+    @Override
+    public List<? extends Coder<?>> getComponents() {
+      return Arrays.<Coder<?>>asList(valueCoder, windowCoder);
+    }
+  }
+
   /**
    * Coder for {@code WindowedValue}.
    *
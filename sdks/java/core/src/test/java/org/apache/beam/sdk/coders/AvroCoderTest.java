@@ -19,6 +19,9 @@ package org.apache.beam.sdk.coders;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -42,6 +45,10 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
@@ -65,7 +72,9 @@ import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.util.CloudObject;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.util.Serializer;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.hamcrest.Description;
@@ -853,6 +862,228 @@ public class AvroCoderTest {
     assertThat(coder.getEncodedTypeDescriptor(), equalTo(TypeDescriptor.of(Pojo.class)));
   }
 
+  private enum Color {
+    RED, GREEN, BLUE
+  }
+
+  private static class Address {
+    String street;
+    @Nullable String zip;
+    int number;
+
+    Address() {}
+
+    Address(String street, String zip, int number) {
+      this.street = street;
+      this.zip = zip;
+      this.number = number;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Address)) {
+        return false;
+      }
+      Address that = (Address) o;
+      return Objects.equals(street, that.street)
+          && Objects.equals(zip, that.zip)
+          && number == that.number;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(street, zip, number);
+    }
+  }
+
+  private static class Person {
+    public String name;
+    public long id;
+    public double score;
+    public boolean active;
+    @Nullable public Integer age;
+    public Color color;
+    public byte[] payload;
+    public Address address;
+    public List<Address> previousAddresses;
+    public String[] nicknames;
+    public Map<String, Address> contacts;
+    private float weight;
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Person)) {
+        return false;
+      }
+      Person that = (Person) o;
+      return Objects.equals(name, that.name)
+          && id == that.id
+          && score == that.score
+          && active == that.active
+          && Objects.equals(age, that.age)
+          && color == that.color
+          && Arrays.equals(payload, that.payload)
+          && Objects.equals(address, that.address)
+          && Objects.equals(previousAddresses, that.previousAddresses)
+          && Arrays.equals(nicknames, that.nicknames)
+          && Objects.equals(contacts, that.contacts)
+          && weight == that.weight;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, id);
+    }
+  }
+
+  private static Person person(int seed) {
+    Person person = new Person();
+    person.name = "person" + seed;
+    person.id = seed * 1000000007L;
+    person.score = seed / 3.0;
+    person.active = seed % 2 == 0;
+    person.age = seed % 3 == 0 ? null : seed;
+    person.color = Color.values()[seed % 3];
+    person.payload = new byte[seed];
+    person.address = new Address("street" + seed, seed % 2 == 0 ? null : "zip", seed);
+    person.previousAddresses = new ArrayList<>();
+    person.nicknames = new String[seed % 4];
+    person.contacts = new LinkedHashMap<>();
+    for (int i = 0; i < seed; i++) {
+      person.payload[i] = (byte) i;
+      person.previousAddresses.add(new Address("previous" + i, "zip" + i, i));
+      person.contacts.put("contact" + i, new Address("contact" + i, null, -i));
+    }
+    for (int i = 0; i < person.nicknames.length; i++) {
+      person.nicknames[i] = "nickname" + i;
+    }
+    person.weight = seed * 1.5f;
+    return person;
+  }
+
+  @Test
+  public void testCompiledDatumsMatchReflectEncoding() throws Exception {
+    AvroCoder<Person> reflectCoder = AvroCoder.of(Person.class);
+    AvroCoder<Person> compiledCoder = reflectCoder.withCompiledDatums();
+    assertEquals(reflectCoder, compiledCoder);
+
+    for (int seed = 0; seed < 10; seed++) {
+      Person value = person(seed);
+      byte[] reflectEncoded = CoderUtils.encodeToByteArray(reflectCoder, value);
+      byte[] compiledEncoded = CoderUtils.encodeToByteArray(compiledCoder, value);
+      assertArrayEquals(reflectEncoded, compiledEncoded);
+      assertEquals(value, CoderUtils.decodeFromByteArray(compiledCoder, reflectEncoded));
+      CoderProperties.coderDecodeEncodeEqual(compiledCoder, value);
+    }
+  }
+
+  @Test
+  public void testCompiledDatumsSharedBetweenThreads() throws Exception {
+    final AvroCoder<Person> reflectCoder = AvroCoder.of(Person.class);
+    final AvroCoder<Person> compiledCoder = reflectCoder.withCompiledDatums();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int seed = 0; seed < 100; seed++) {
+              Person value = person(seed);
+              byte[] encoded = CoderUtils.encodeToByteArray(compiledCoder, value);
+              assertArrayEquals(CoderUtils.encodeToByteArray(reflectCoder, value), encoded);
+              assertEquals(value, CoderUtils.decodeFromByteArray(compiledCoder, encoded));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // The compiled plan is not serialized, but compiled again by the deserialized coder.
+    AvroCoder<Person> deserializedCoder = SerializableUtils.clone(compiledCoder);
+    CoderProperties.coderDecodeEncodeEqual(deserializedCoder, person(1));
+  }
+
+  private static class TreeNode {
+    int value;
+    List<TreeNode> children = new ArrayList<>();
+    @Nullable TreeNode parentless;
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TreeNode)) {
+        return false;
+      }
+      TreeNode that = (TreeNode) o;
+      return value == that.value
+          && children.equals(that.children)
+          && Objects.equals(parentless, that.parentless);
+    }
+
+    @Override
+    public int hashCode() {
+      return value;
+    }
+  }
+
+  @Test
+  public void testCompiledDatumsRecursiveRecord() throws Exception {
+    TreeNode root = new TreeNode();
+    root.value = 1;
+    for (int i = 0; i < 3; i++) {
+      TreeNode child = new TreeNode();
+      child.value = 10 + i;
+      child.parentless = new TreeNode();
+      root.children.add(child);
+    }
+    AvroCoder<TreeNode> reflectCoder = AvroCoder.of(TreeNode.class);
+    assertArrayEquals(
+        CoderUtils.encodeToByteArray(reflectCoder, root),
+        CoderUtils.encodeToByteArray(reflectCoder.withCompiledDatums(), root));
+    CoderProperties.coderDecodeEncodeEqual(reflectCoder.withCompiledDatums(), root);
+  }
+
+  private static class ShortField {
+    short value;
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof ShortField && value == ((ShortField) o).value;
+    }
+
+    @Override
+    public int hashCode() {
+      return value;
+    }
+  }
+
+  @Test
+  public void testCompiledDatumsFallBackToReflect() throws Exception {
+    AvroCoder<ShortField> coder = AvroCoder.of(ShortField.class).withCompiledDatums();
+    assertNull(AvroDatumCompiler.compile(ShortField.class, coder.getSchema()));
+
+    ShortField value = new ShortField();
+    value.value = 12;
+    CoderProperties.coderDecodeEncodeEqual(coder, value);
+  }
+
+  @Test
+  public void testCompiledDatumsCloudObject() throws Exception {
+    AvroCoder<Person> coder = AvroCoder.of(Person.class).withCompiledDatums();
+    CloudObject encoding = coder.asCloudObject();
+    assertThat(encoding.keySet(), Matchers.hasItem("compiled_datums"));
+    assertThat(
+        Serializer.deserialize(encoding, Coder.class).asCloudObject(), equalTo(encoding));
+    SerializableUtils.ensureSerializable(coder);
+    CoderProperties.coderDecodeEncodeEqual(SerializableUtils.clone(coder), person(3));
+  }
+
   private static class SomeGeneric<T> {
     @SuppressWarnings("unused")
     private T foo;
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.FluentIterable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.DecodingBuffer;
+import org.apache.beam.sdk.util.EncodingBuffer;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that the {@link BufferCoder} methods of the core coders encode exactly like their
+ * {@link Coder} methods.
+ */
+@RunWith(JUnit4.class)
+public class BufferCoderTest {
+  private static final List<Coder.Context> CONTEXTS =
+      Arrays.asList(Coder.Context.OUTER, Coder.Context.NESTED);
+
+  /**
+   * Checks that buffer encoding is the same as stream encoding, and that decoding from a buffer
+   * yields a value with the same encoding.
+   */
+  private static <T> void assertEncodesLikeStream(Coder<T> coder, T value) throws Exception {
+    EncodingBuffer buffer = new EncodingBuffer(1);
+    for (Coder.Context context : CONTEXTS) {
+      byte[] expected = CoderUtils.encodeToByteArray(coder, value, context);
+      buffer.reset();
+      CoderUtils.encodeToBuffer(coder, value, buffer, context);
+      assertArrayEquals(expected, buffer.toByteArray());
+
+      DecodingBuffer decoding = new DecodingBuffer(expected);
+      T decoded = CoderUtils.decodeFromBuffer(coder, decoding, context);
+      assertEquals(0, decoding.available());
+      assertArrayEquals(expected, CoderUtils.encodeToByteArray(coder, decoded, context));
+    }
+  }
+
+  @Test
+  public void testCoreCodersImplementBufferCoder() {
+    List<Coder<?>> coders = Arrays.<Coder<?>>asList(
+        StringUtf8Coder.of(),
+        VarIntCoder.of(),
+        VarLongCoder.of(),
+        ByteArrayCoder.of(),
+        InstantCoder.of(),
+        GlobalWindow.Coder.INSTANCE,
+        KvCoder.of(VarIntCoder.of(), VarIntCoder.of()),
+        IterableCoder.of(VarIntCoder.of()),
+        ListCoder.of(VarIntCoder.of()),
+        WindowedValue.getFullCoder(VarIntCoder.of(), GlobalWindow.Coder.INSTANCE));
+    for (Coder<?> coder : coders) {
+      assertTrue(coder.toString(), coder instanceof BufferCoder);
+    }
+  }
+
+  @Test
+  public void testAtomicCoders() throws Exception {
+    for (String value : Arrays.asList("", "abc", "\u4e2d\u6587", "\ud83d\ude00", "\ud800")) {
+      assertEncodesLikeStream(StringUtf8Coder.of(), value);
+    }
+    for (int value : new int[] {0, 1, 128, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      assertEncodesLikeStream(VarIntCoder.of(), value);
+    }
+    for (long value : new long[] {0, 1, 128, -1, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      assertEncodesLikeStream(VarLongCoder.of(), value);
+    }
+    assertEncodesLikeStream(ByteArrayCoder.of(), new byte[0]);
+    assertEncodesLikeStream(ByteArrayCoder.of(), new byte[] {1, 2, 3});
+    for (Instant value : Arrays.asList(
+        new Instant(0), new Instant(-1), new Instant(Long.MAX_VALUE), new Instant(1234567L))) {
+      assertEncodesLikeStream(InstantCoder.of(), value);
+    }
+    assertEncodesLikeStream(GlobalWindow.Coder.INSTANCE, GlobalWindow.INSTANCE);
+  }
+
+  @Test
+  public void testCompositeCoders() throws Exception {
+    assertEncodesLikeStream(
+        KvCoder.of(StringUtf8Coder.of(), ByteArrayCoder.of()), KV.of("key", new byte[] {4, 5}));
+    assertEncodesLikeStream(
+        IterableCoder.of(StringUtf8Coder.of()), Arrays.asList("a", "bc", "", "def"));
+    assertEncodesLikeStream(
+        ListCoder.of(KvCoder.of(VarLongCoder.of(), StringUtf8Coder.of())),
+        Arrays.asList(KV.of(1L, "one"), KV.of(2L, "two")));
+    assertEncodesLikeStream(
+        WindowedValue.getFullCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE),
+        WindowedValue.valueInGlobalWindow("value"));
+    assertEncodesLikeStream(
+        WindowedValue.getFullCoder(VarLongCoder.of(), IntervalWindow.getCoder()),
+        WindowedValue.of(
+            5L,
+            new Instant(10),
+            Arrays.asList(
+                new IntervalWindow(new Instant(0), new Instant(20)),
+                new IntervalWindow(new Instant(5), new Instant(25))),
+            PaneInfo.createPane(false, true, PaneInfo.Timing.LATE, 3, 1)));
+  }
+
+  @Test
+  public void testIterableOfUnknownSize() throws Exception {
+    // Not a Collection, so it is encoded in blocks through the stream encoding.
+    Iterable<Integer> iterable = FluentIterable.from(Arrays.asList(1, 2, 3)).skip(1);
+    assertEncodesLikeStream(IterableCoder.of(VarIntCoder.of()), iterable);
+    assertEncodesLikeStream(
+        IterableCoder.of(VarIntCoder.of()), FluentIterable.from(Collections.<Integer>emptyList()));
+  }
+
+  @Test
+  public void testFallbackToStreamEncoding() throws Exception {
+    // Neither BigEndianIntegerCoder nor DoubleCoder implement BufferCoder.
+    assertEncodesLikeStream(BigEndianIntegerCoder.of(), 42);
+    assertEncodesLikeStream(
+        KvCoder.of(BigEndianIntegerCoder.of(), DoubleCoder.of()), KV.of(1, 2.5));
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BgzfSeekableChannel} and {@link BgzfOutputStream}. */
+@RunWith(JUnit4.class)
+public class BgzfSeekableChannelTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  /** Generates data of which the first half compresses well and the second half does not. */
+  private static byte[] generateInput(int size) {
+    Random random = new Random(285930);
+    byte[] data = new byte[size];
+    for (int i = 0; i < size / 2; i++) {
+      data[i] = (byte) ('a' + random.nextInt(4));
+    }
+    byte[] noise = new byte[size - size / 2];
+    random.nextBytes(noise);
+    System.arraycopy(noise, 0, data, size / 2, noise.length);
+    return data;
+  }
+
+  private File writeBgzf(byte[] data) throws IOException {
+    File file = tmpFolder.newFile();
+    try (OutputStream out = new BgzfOutputStream(new FileOutputStream(file))) {
+      // Write in uneven pieces, to cross the boundaries of the blocks.
+      int[] pieces = {1, 999, 70000};
+      for (int i = 0, piece = 0; i < data.length; piece++) {
+        int length = Math.min(pieces[piece % pieces.length], data.length - i);
+        if (length == 1) {
+          out.write(data[i]);
+        } else {
+          out.write(data, i, length);
+        }
+        i += length;
+      }
+    }
+    return file;
+  }
+
+  private static SeekableByteChannel open(File file) throws IOException {
+    return new BgzfSeekableChannel(new FileInputStream(file).getChannel(), null);
+  }
+
+  /** Returns the starts of the blocks of a BGZF file, by reading each block header. */
+  private static List<Long> blockStarts(File file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    List<Long> starts = new ArrayList<>();
+    for (int start = 0; start < bytes.length; start += (buffer.getShort(start + 16) & 0xffff) + 1) {
+      starts.add((long) start);
+    }
+    return starts;
+  }
+
+  private static byte[] readAll(SeekableByteChannel channel, int bufferSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    while (channel.read(buffer) != -1) {
+      out.write(buffer.array(), 0, buffer.position());
+      buffer.clear();
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testReadSequentially() throws IOException {
+    byte[] data = generateInput(300000);
+    File file = writeBgzf(data);
+    assertTrue(blockStarts(file).size() > 4);
+    for (int bufferSize : new int[] {1, 1000, 100000}) {
+      try (SeekableByteChannel channel = open(file)) {
+        assertArrayEquals(data, readAll(channel, bufferSize));
+        assertEquals(data.length, channel.position());
+        assertEquals(data.length, channel.size());
+      }
+    }
+  }
+
+  @Test
+  public void testReadAsGzip() throws IOException {
+    byte[] data = generateInput(300000);
+    File file = writeBgzf(data);
+    try (GZIPInputStream in = new GZIPInputStream(new FileInputStream(file))) {
+      assertArrayEquals(data, ByteStreams.toByteArray(in));
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    File file = writeBgzf(new byte[0]);
+    assertEquals(28, file.length());
+    try (SeekableByteChannel channel = open(file)) {
+      assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+      assertEquals(0, channel.size());
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    byte[] data = generateInput(300000);
+    File file = writeBgzf(data);
+    Random random = new Random(0);
+    try (SeekableByteChannel channel = open(file)) {
+      for (int i = 0; i < 100; i++) {
+        int position = random.nextInt(data.length + 10);
+        channel.position(position);
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        int read = channel.read(buffer);
+        if (position >= data.length) {
+          assertEquals(-1, read);
+        } else {
+          assertTrue(read > 0);
+          assertArrayEquals(
+              Arrays.copyOfRange(data, position, position + read),
+              Arrays.copyOf(buffer.array(), read));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBlockOffsets() throws IOException {
+    byte[] data = generateInput(300000);
+    File file = writeBgzf(data);
+    List<Long> starts = blockStarts(file);
+    try (BgzfSeekableChannel channel =
+        new BgzfSeekableChannel(new FileInputStream(file).getChannel(), null)) {
+      List<Long> uncompressedStarts = new ArrayList<>();
+      for (long start : starts) {
+        uncompressedStarts.add(channel.getUncompressedStartOfBlockAt(start));
+      }
+      assertEquals(0L, (long) uncompressedStarts.get(0));
+      // The last block is the empty end of file block.
+      assertEquals(data.length, (long) uncompressedStarts.get(starts.size() - 1));
+      assertEquals(
+          uncompressedStarts.get(2),
+          (Long) channel.getUncompressedStartOfBlockAt(starts.get(1) + 1));
+      assertEquals(data.length, channel.getUncompressedStartOfBlockAt(file.length()));
+
+      channel.position(data.length - 1);
+      channel.read(ByteBuffer.allocate(1));
+      for (int i = 0; i < starts.size() - 1; i++) {
+        long uncompressedStart = uncompressedStarts.get(i);
+        long uncompressedEnd = uncompressedStarts.get(i + 1);
+        assertEquals(
+            starts.get(i), (Long) channel.getCompressedStartOfBlockContaining(uncompressedStart));
+        assertEquals(
+            starts.get(i),
+            (Long) channel.getCompressedStartOfBlockContaining(uncompressedEnd - 1));
+      }
+    }
+  }
+
+  /**
+   * Checks that a new channel asked for the block at each offset past the first block finds it by
+   * scanning, and reads the same data from it, and from the block before it, as the full walk.
+   */
+  private static void assertScannedBlocksMatch(File file, byte[] data) throws IOException {
+    List<Long> starts = blockStarts(file);
+    List<Long> uncompressedStarts = new ArrayList<>();
+    try (BgzfSeekableChannel channel =
+        new BgzfSeekableChannel(new FileInputStream(file).getChannel(), null)) {
+      for (long start : starts) {
+        uncompressedStarts.add(channel.getUncompressedStartOfBlockAt(start));
+      }
+    }
+    int scanned = 0;
+    for (int i = 1; i < starts.size(); i++) {
+      long start = starts.get(i);
+      if (start <= BgzfOutputStream.MAX_BLOCK_SIZE) {
+        continue;
+      }
+      scanned++;
+      try (BgzfSeekableChannel channel =
+          new BgzfSeekableChannel(new FileInputStream(file).getChannel(), null)) {
+        long offset = channel.getUncompressedStartOfBlockAt(start - 1);
+        assertTrue(offset > 0);
+        assertEquals(offset, channel.getUncompressedStartOfBlockAt(start));
+        int expectedStart = (int) (long) uncompressedStarts.get(i);
+        channel.position(offset - 1);
+        assertArrayEquals(
+            Arrays.copyOfRange(data, expectedStart - 1, data.length), readAll(channel, 1000));
+      }
+    }
+    assertTrue(scanned > 0);
+  }
+
+  @Test
+  public void testScanForBlock() throws IOException {
+    byte[] data = generateInput(300000);
+    assertScannedBlocksMatch(writeBgzf(data), data);
+  }
+
+  /** Writes a BGZF block whose data is stored rather than compressed, so it appears verbatim. */
+  private static void writeStoredBlock(OutputStream out, byte[] data) throws IOException {
+    Deflater deflater = new Deflater(Deflater.NO_COMPRESSION, true);
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] deflated = new byte[data.length + 1024];
+    int length = 0;
+    while (!deflater.finished()) {
+      length += deflater.deflate(deflated, length, deflated.length - length);
+    }
+    deflater.end();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    int blockSize = BgzfOutputStream.HEADER_LENGTH + length + BgzfOutputStream.TRAILER_LENGTH;
+    out.write(blockHeader(blockSize));
+    ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    trailer.putInt((int) crc.getValue()).putInt(data.length);
+    out.write(deflated, 0, length);
+    out.write(trailer.array());
+  }
+
+  private static byte[] blockHeader(int blockSize) {
+    return ByteBuffer.allocate(BgzfOutputStream.HEADER_LENGTH)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .put(new byte[] {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255})
+        .putShort((short) 6)
+        .put((byte) 'B')
+        .put((byte) 'C')
+        .putShort((short) 2)
+        .putShort((short) (blockSize - 1))
+        .array();
+  }
+
+  /**
+   * Scanning skips data that looks like a chain of block headers, but does not decompress, and
+   * data that looks like a single block header.
+   */
+  @Test
+  public void testScanSkipsFalseBlockHeaders() throws IOException {
+    int emptyBlockSize = BgzfOutputStream.HEADER_LENGTH + BgzfOutputStream.TRAILER_LENGTH;
+    ByteArrayOutputStream fakeBlocks = new ByteArrayOutputStream();
+    for (int i = 0; i < 4; i++) {
+      fakeBlocks.write(blockHeader(emptyBlockSize));
+      fakeBlocks.write(new byte[BgzfOutputStream.TRAILER_LENGTH]);
+    }
+    fakeBlocks.write(blockHeader(1000));
+
+    Random random = new Random(12);
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    File file = tmpFolder.newFile();
+    try (OutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < 12; i++) {
+        byte[] block = new byte[20000];
+        random.nextBytes(block);
+        System.arraycopy(fakeBlocks.toByteArray(), 0, block, 100, fakeBlocks.size());
+        writeStoredBlock(out, block);
+        data.write(block);
+      }
+    }
+    assertScannedBlocksMatch(file, data.toByteArray());
+  }
+
+  @Test
+  public void testStartsWithBlockHeader() throws IOException {
+    File bgzf = writeBgzf(generateInput(100));
+    File gzip = tmpFolder.newFile();
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+      out.write(generateInput(100));
+    }
+    File empty = tmpFolder.newFile();
+    try (FileChannel bgzfChannel = new FileInputStream(bgzf).getChannel();
+        FileChannel gzipChannel = new FileInputStream(gzip).getChannel();
+        FileChannel emptyChannel = new FileInputStream(empty).getChannel()) {
+      assertTrue(BgzfSeekableChannel.startsWithBlockHeader(bgzfChannel));
+      assertFalse(BgzfSeekableChannel.startsWithBlockHeader(gzipChannel));
+      assertFalse(BgzfSeekableChannel.startsWithBlockHeader(emptyChannel));
+    }
+  }
+
+  @Test
+  public void testReadWithIndex() throws IOException {
+    byte[] data = generateInput(300000);
+    File file = writeBgzf(data);
+    List<Long> starts = blockStarts(file);
+
+    // Index the blocks after the first, as bgzip does.
+    ByteBuffer index = ByteBuffer.allocate(8 + 16 * (starts.size() - 1))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    index.putLong(starts.size() - 1);
+    try (BgzfSeekableChannel channel =
+        new BgzfSeekableChannel(new FileInputStream(file).getChannel(), null)) {
+      for (long start : starts.subList(1, starts.size())) {
+        index.putLong(start).putLong(channel.getUncompressedStartOfBlockAt(start));
+      }
+    }
+    File indexFile = tmpFolder.newFile();
+    Files.write(indexFile.toPath(), index.array());
+
+    try (FileChannel indexChannel = new FileInputStream(indexFile).getChannel();
+        BgzfSeekableChannel channel =
+            new BgzfSeekableChannel(new FileInputStream(file).getChannel(), indexChannel)) {
+      channel.position(data.length / 2);
+      ByteBuffer buffer = ByteBuffer.allocate(1);
+      assertEquals(1, channel.read(buffer));
+      assertEquals(data[data.length / 2], buffer.get(0));
+      channel.position(0);
+      assertArrayEquals(data, readAll(channel, 4096));
+    }
+  }
+
+  @Test
+  public void testNotBgzf() throws IOException {
+    File file = tmpFolder.newFile();
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+      out.write(generateInput(100));
+    }
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Not a BGZF block at offset 0");
+    readAll(open(file), 100);
+  }
+
+  @Test
+  public void testCorruptBlock() throws IOException {
+    File file = writeBgzf(generateInput(1000));
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    // Corrupt the CRC-32 in the trailer of the first block.
+    int blockSize = (bytes[16] & 0xff) + ((bytes[17] & 0xff) << 8) + 1;
+    bytes[blockSize - 8] ^= 1;
+    Files.write(file.toPath(), bytes);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Corrupt BGZF block");
+    readAll(open(file), 100);
+  }
+}
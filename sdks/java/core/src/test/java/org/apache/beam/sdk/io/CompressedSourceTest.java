@@ -20,6 +20,7 @@ package org.apache.beam.sdk.io;
 import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
 import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.includesDisplayDataFor;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
@@ -133,6 +134,12 @@ public class CompressedSourceTest {
     source = CompressedSource.from(new ByteSource("input.DEFLATE", 1));
     assertFalse(source.isSplittable());
 
+    // BGZF files are splittable
+    source = CompressedSource.from(new ByteSource("input.bgz", 1));
+    assertTrue(source.isSplittable());
+    source = CompressedSource.from(new ByteSource("input.BGZ", 1));
+    assertTrue(source.isSplittable());
+
     // Other extensions are assumed to be splittable.
     source = CompressedSource.from(new ByteSource("input.txt", 1));
     assertTrue(source.isSplittable());
@@ -341,6 +348,60 @@ public class CompressedSourceTest {
     CompressedSource<Byte> source =
         CompressedSource.from(new ByteSource(compressedFile.getPath(), 1));
     assertFalse(source.isSplittable());
+    assertFalse(
+        source
+            .createForSubrangeOfFile(compressedFile.getPath(), 0, compressedFile.length())
+            .isSplittable());
+  }
+
+  @Test
+  public void testBgzfFileIsSplittable() throws Exception {
+    File compressedFile = tmpFolder.newFile("test-input.bgz");
+    byte[] input = generateInput(200000);
+    writeFile(compressedFile, input, CompressionMode.BGZF);
+
+    PipelineOptions options = PipelineOptionsFactory.create();
+    CompressedSource<Byte> source =
+        CompressedSource.from(new ByteSource(compressedFile.getPath(), 1));
+    assertTrue(source.isSplittable());
+    List<? extends FileBasedSource<Byte>> splits = source.splitIntoBundles(20000, options);
+    assertThat(splits.size(), greaterThan(4));
+    SourceTestUtils.assertSourcesEqualReferenceSource(source, splits, options);
+    assertEquals(Bytes.asList(input), SourceTestUtils.readFromSource(source, options));
+  }
+
+  /** A {@code .gz} file written by bgzip is read as a BGZF file when the mode is automatic. */
+  @Test
+  public void testBgzfFileWithGzipExtensionIsSplittable() throws Exception {
+    File compressedFile = tmpFolder.newFile("test-input.gz");
+    byte[] input = generateInput(200000);
+    writeFile(compressedFile, input, CompressionMode.BGZF);
+
+    PipelineOptions options = PipelineOptionsFactory.create();
+    CompressedSource<Byte> source =
+        CompressedSource.from(new ByteSource(compressedFile.getPath(), 1));
+    assertTrue(
+        source
+            .createForSubrangeOfFile(compressedFile.getPath(), 0, compressedFile.length())
+            .isSplittable());
+    List<? extends FileBasedSource<Byte>> splits = source.splitIntoBundles(20000, options);
+    assertThat(splits.size(), greaterThan(4));
+    SourceTestUtils.assertSourcesEqualReferenceSource(source, splits, options);
+    assertEquals(Bytes.asList(input), SourceTestUtils.readFromSource(source, options));
+  }
+
+  @Test
+  public void testBgzfSplitAtFraction() throws Exception {
+    File compressedFile = tmpFolder.newFile("test-input.bgz");
+    writeFile(compressedFile, generateInput(200000), CompressionMode.BGZF);
+
+    PipelineOptions options = PipelineOptionsFactory.create();
+    FileBasedSource<Byte> source =
+        CompressedSource.from(new ByteSource(compressedFile.getPath(), 1))
+            .createForSubrangeOfFile(compressedFile.getPath(), 0, compressedFile.length());
+    SourceTestUtils.assertSplitAtFractionSucceedsAndConsistent(source, 10, 0.5, options);
+    SourceTestUtils.assertSplitAtFractionSucceedsAndConsistent(source, 70000, 0.8, options);
+    SourceTestUtils.assertSplitAtFractionFails(source, 150000, 0.5, options);
   }
 
   @Test
@@ -484,6 +545,8 @@ public class CompressedSourceTest {
         return new TestZipOutputStream(stream);
       case DEFLATE:
         return new DeflateCompressorOutputStream(stream);
+      case BGZF:
+        return new BgzfOutputStream(stream);
       default:
         throw new RuntimeException("Unexpected compression mode");
     }
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link Crc32c}. */
+@RunWith(JUnit4.class)
+public class Crc32cTest {
+  private static long checksum(Checksum checksum, byte[] bytes, int offset, int length) {
+    checksum.reset();
+    checksum.update(bytes, offset, length);
+    return checksum.getValue();
+  }
+
+  @Test
+  public void testKnownValues() {
+    byte[] digits = "123456789".getBytes(StandardCharsets.US_ASCII);
+    byte[] zeros = new byte[32];
+    for (Checksum checksum : new Checksum[] {new Crc32c(), Crc32c.create()}) {
+      assertEquals(0L, checksum(checksum, digits, 0, 0));
+      assertEquals(0xe3069283L, checksum(checksum, digits, 0, digits.length));
+      assertEquals(0x8a9136aaL, checksum(checksum, zeros, 0, zeros.length));
+    }
+  }
+
+  @Test
+  public void testMatchesGuava() {
+    Random random = new Random(378192);
+    Crc32c checksum = new Crc32c();
+    for (int i = 0; i < 1000; i++) {
+      byte[] bytes = new byte[random.nextInt(100) + 1];
+      random.nextBytes(bytes);
+      int offset = random.nextInt(bytes.length);
+      int length = random.nextInt(bytes.length - offset + 1);
+      long expected = Hashing.crc32c().hashBytes(bytes, offset, length).asInt() & 0xffffffffL;
+      assertEquals(expected, checksum(checksum, bytes, offset, length));
+    }
+  }
+
+  @Test
+  public void testUpdateInPieces() {
+    Random random = new Random(2817);
+    byte[] bytes = new byte[1000];
+    random.nextBytes(bytes);
+    long expected = checksum(new Crc32c(), bytes, 0, bytes.length);
+
+    Crc32c checksum = new Crc32c();
+    checksum.update(bytes[0]);
+    checksum.update(bytes, 1, 10);
+    for (int i = 11; i < 20; i++) {
+      checksum.update(bytes[i]);
+    }
+    checksum.update(bytes, 20, bytes.length - 20);
+    assertEquals(expected, checksum.getValue());
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DelimitedRecordScanner}. */
+@RunWith(JUnit4.class)
+public class DelimitedRecordScannerTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  /** A channel that returns at most {@code chunkSize} bytes from each read. */
+  private static class ChunkedChannel implements ReadableByteChannel {
+    private final byte[] data;
+    private final int chunkSize;
+    private int position;
+
+    private ChunkedChannel(byte[] data, int chunkSize) {
+      this.data = data;
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (position == data.length) {
+        return -1;
+      }
+      int length = Math.min(Math.min(dst.remaining(), chunkSize), data.length - position);
+      dst.put(data, position, length);
+      position += length;
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static List<String> scan(
+      String data, @Nullable String delimiter, int bufferSize, int chunkSize, boolean direct)
+      throws IOException {
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    DelimitedRecordScanner scanner =
+        new DelimitedRecordScanner(
+            new ChunkedChannel(bytes, chunkSize),
+            delimiter == null ? null : delimiter.getBytes(StandardCharsets.UTF_8),
+            bufferSize,
+            direct);
+    List<String> records = new ArrayList<>();
+    long consumed = 0;
+    while (scanner.readNextRecord()) {
+      records.add(scanner.getCurrent());
+      consumed += scanner.getCurrentLength();
+    }
+    assertEquals(bytes.length, consumed);
+    return records;
+  }
+
+  /** Checks the records for all combinations of small buffers and reads. */
+  private static void assertRecords(String data, @Nullable String delimiter, String... expected)
+      throws IOException {
+    for (int bufferSize = 1; bufferSize <= 20; bufferSize++) {
+      for (int chunkSize : new int[] {1, 3, 8, 64}) {
+        for (boolean direct : new boolean[] {false, true}) {
+          assertEquals(
+              String.format("bufferSize=%s chunkSize=%s direct=%s", bufferSize, chunkSize, direct),
+              Arrays.asList(expected),
+              scan(data, delimiter, bufferSize, chunkSize, direct));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    assertRecords("", null);
+    assertRecords("", "|");
+  }
+
+  @Test
+  public void testLineTerminators() throws IOException {
+    assertRecords("asdf\nhjkl\rxyz\r\n", null, "asdf", "hjkl", "xyz");
+    assertRecords("\n\n\r\r\n", null, "", "", "", "");
+    assertRecords("\r\n\r\n", null, "", "");
+    assertRecords("\n\r", null, "", "");
+    assertRecords("last", null, "last");
+    assertRecords("a\rb\r", null, "a", "b");
+  }
+
+  @Test
+  public void testLongLines() throws IOException {
+    String longLine = Strings.repeat("0123456789", 100);
+    assertRecords(
+        longLine + "\n" + longLine + "\r\n\n" + longLine,
+        null,
+        longLine, longLine, "", longLine);
+  }
+
+  @Test
+  public void testMultiByteCharacters() throws IOException {
+    assertRecords(
+        "\u00e9t\u00e9\n\u65e5\u672c\r\n\ud83d\ude00", null,
+        "\u00e9t\u00e9", "\u65e5\u672c", "\ud83d\ude00");
+  }
+
+  @Test
+  public void testCustomDelimiter() throws IOException {
+    assertRecords("a|b||c|", "|", "a", "b", "", "c");
+    assertRecords("a\nb|c\r\n", "|", "a\nb", "c\r\n");
+    assertRecords("abc::def:ghi::", "::", "abc", "def:ghi");
+    assertRecords("abc::def:", "::", "abc", "def:");
+    assertRecords("x<br>y<b<br><br>", "<br>", "x", "y<b", "");
+  }
+
+  @Test
+  public void testSkipRecord() throws IOException {
+    DelimitedRecordScanner scanner =
+        new DelimitedRecordScanner(
+            new ChunkedChannel("skip\r\nread\n".getBytes(StandardCharsets.UTF_8), 2),
+            null,
+            4,
+            false);
+    assertTrue(scanner.skipRecord());
+    assertEquals(6, scanner.getCurrentLength());
+    assertTrue(scanner.readNextRecord());
+    assertEquals("read", scanner.getCurrent());
+    assertEquals(5, scanner.getCurrentLength());
+    assertFalse(scanner.readNextRecord());
+  }
+
+  /** Splits the data the straightforward way, one byte at a time. */
+  private static List<String> splitSlowly(byte[] data, @Nullable byte[] delimiter) {
+    List<String> records = new ArrayList<>();
+    int start = 0;
+    int i = 0;
+    while (i < data.length) {
+      int next = -1;
+      if (delimiter == null) {
+        if (data[i] == '\n') {
+          next = i + 1;
+        } else if (data[i] == '\r') {
+          next = i + 1 < data.length && data[i + 1] == '\n' ? i + 2 : i + 1;
+        }
+      } else if (i + delimiter.length <= data.length
+          && Arrays.equals(Arrays.copyOfRange(data, i, i + delimiter.length), delimiter)) {
+        next = i + delimiter.length;
+      }
+      if (next < 0) {
+        i++;
+      } else {
+        records.add(new String(data, start, i - start, StandardCharsets.UTF_8));
+        start = i = next;
+      }
+    }
+    if (start < data.length) {
+      records.add(new String(data, start, data.length - start, StandardCharsets.UTF_8));
+    }
+    return records;
+  }
+
+  @Test
+  public void testRandomData() throws IOException {
+    Random random = new Random(0);
+    byte[] alphabet = "ab|\n\r\u00e9".getBytes(StandardCharsets.UTF_8);
+    String[] delimiters = {null, "|", "||", "a|b"};
+    for (int i = 0; i < 10000; i++) {
+      byte[] data = new byte[random.nextInt(64)];
+      for (int j = 0; j < data.length; j++) {
+        data[j] = alphabet[random.nextInt(alphabet.length)];
+      }
+      String delimiter = delimiters[random.nextInt(delimiters.length)];
+      byte[] delimiterBytes =
+          delimiter == null ? null : delimiter.getBytes(StandardCharsets.UTF_8);
+      DelimitedRecordScanner scanner =
+          new DelimitedRecordScanner(
+              new ChunkedChannel(data, 1 + random.nextInt(16)),
+              delimiterBytes,
+              1 + random.nextInt(16),
+              random.nextBoolean());
+      List<String> records = new ArrayList<>();
+      while (scanner.readNextRecord()) {
+        records.add(scanner.getCurrent());
+      }
+      assertEquals(splitSlowly(data, delimiterBytes), records);
+    }
+  }
+
+  @Test
+  public void testEmptyDelimiter() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("must not be empty");
+    new DelimitedRecordScanner(new ChunkedChannel(new byte[0], 1), new byte[0], 8, false);
+  }
+}
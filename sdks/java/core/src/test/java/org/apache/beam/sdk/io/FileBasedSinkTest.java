@@ -158,7 +158,7 @@ public class FileBasedSinkTest {
   }
 
   /**
-   * Finalize copies temporary files to output files and removes any temporary files.
+   * Finalize moves temporary files to output files and removes any temporary files.
    */
   @Test
   public void testFinalize() throws Exception {
@@ -166,6 +166,16 @@ public class FileBasedSinkTest {
     runFinalize(buildWriteOperation(), files);
   }
 
+  /**
+   * Finalize moves and removes files in parallel batches when there are many of them.
+   */
+  @Test
+  public void testFinalizeManyFiles() throws Exception {
+    int numFiles = 3 * FileBasedWriteOperation.FINALIZE_THREAD_POOL_SIZE + 1;
+    List<File> files = generateTemporaryFilesForFinalize(numFiles);
+    runFinalize(buildWriteOperation(), files);
+  }
+
   /**
    * Finalize can be called repeatedly.
    */
@@ -307,6 +317,41 @@ public class FileBasedSinkTest {
     }
   }
 
+  /**
+   * Output files are moved to the destination location with the correct names and contents.
+   */
+  @Test
+  public void testMoveToOutputFiles() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    SimpleSink.SimpleWriteOperation writeOp = buildWriteOperation();
+
+    int numFiles = 2 * FileBasedWriteOperation.FINALIZE_THREAD_POOL_SIZE;
+    Map<String, String> inputFilePaths = new HashMap<>();
+    List<File> inputFiles = new ArrayList<>();
+    List<String> expectedOutputPaths = new ArrayList<>();
+    for (int i = 0; i < numFiles; i++) {
+      File inputTmpFile = tmpFolder.newFile("input-" + i);
+      writeFile(Arrays.asList("" + i), inputTmpFile);
+      inputFiles.add(inputTmpFile);
+      String outputPath = writeOp.getSink().getFileNamePolicy().unwindowedFilename(
+          new Context(i, numFiles));
+      expectedOutputPaths.add(outputPath);
+      inputFilePaths.put(inputTmpFile.toString(), outputPath);
+    }
+
+    writeOp.moveToOutputFiles(inputFilePaths, options);
+    for (int i = 0; i < numFiles; i++) {
+      assertFalse(inputFiles.get(i).exists());
+      assertFileContains(Arrays.asList("" + i), expectedOutputPaths.get(i));
+    }
+
+    // Moving again, as when finalization is retried, leaves the output files in place.
+    writeOp.moveToOutputFiles(inputFilePaths, options);
+    for (int i = 0; i < numFiles; i++) {
+      assertFileContains(Arrays.asList("" + i), expectedOutputPaths.get(i));
+    }
+  }
+
   public List<String> generateDestinationFilenames(FilenamePolicy policy, int numFiles) {
     List<String> filenames = new ArrayList<>();
     for (int i = 0; i < numFiles; i++) {
@@ -465,6 +510,18 @@ public class FileBasedSinkTest {
         new FileInputStream(file)), StandardCharsets.UTF_8.name())), "abc", "123");
   }
 
+  /**
+   * {@link CompressionType#BGZF} correctly writes data that standard gzip readers can read.
+   */
+  @Test
+  public void testCompressionTypeBGZF() throws FileNotFoundException, IOException {
+    final File file = writeValuesWithWritableByteChannelFactory(CompressionType.BGZF, "abc", "123");
+    // Read the concatenated gzip members back in using standard API.
+    assertReadValues(new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8.name())), "abc",
+        "123");
+  }
+
   /**
    * {@link CompressionType#UNCOMPRESSED} correctly writes uncompressed data.
    */
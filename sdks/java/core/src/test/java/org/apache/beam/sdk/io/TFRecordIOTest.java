@@ -27,6 +27,7 @@ import static org.hamcrest.Matchers.isIn;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteStreams;
@@ -290,6 +291,12 @@ public class TFRecordIOTest {
     runTestRoundTrip(LARGE, 10, ".suffix", NONE, NONE);
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void runTestRoundTripWithLargeRecords() throws IOException {
+    runTestRoundTrip(makeLargeRecords(10), 1, ".tfrecords", NONE, NONE);
+  }
+
   @Test
   @Category(NeedsRunner.class)
   public void runTestRoundTripGzip() throws IOException {
@@ -354,6 +361,15 @@ public class TFRecordIOTest {
     return ret;
   }
 
+  /** Returns records, some of which are larger than the buffers of the reader and writer. */
+  private static Iterable<String> makeLargeRecords(int n) {
+    List<String> ret = Lists.newArrayList();
+    for (int i = 0; i < n; ++i) {
+      ret.add(Strings.repeat("word" + i, i % 3 == 0 ? 50000 : 1));
+    }
+    return ret;
+  }
+
   static class ByteArrayToString extends DoFn<byte[], String> {
     @ProcessElement
     public void processElement(ProcessContext c) {
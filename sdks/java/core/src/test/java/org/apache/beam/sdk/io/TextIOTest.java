@@ -21,6 +21,7 @@ import static org.apache.beam.sdk.TestUtils.LINES2_ARRAY;
 import static org.apache.beam.sdk.TestUtils.LINES_ARRAY;
 import static org.apache.beam.sdk.TestUtils.NO_LINES_ARRAY;
 import static org.apache.beam.sdk.io.TextIO.CompressionType.AUTO;
+import static org.apache.beam.sdk.io.TextIO.CompressionType.BGZF;
 import static org.apache.beam.sdk.io.TextIO.CompressionType.BZIP2;
 import static org.apache.beam.sdk.io.TextIO.CompressionType.DEFLATE;
 import static org.apache.beam.sdk.io.TextIO.CompressionType.GZIP;
@@ -86,6 +87,7 @@ import org.apache.beam.sdk.options.GcsOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.ValueProvider;
+import org.apache.beam.sdk.options.ValueProvider.StaticValueProvider;
 import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.SourceTestUtils;
@@ -174,6 +176,9 @@ public class TextIOTest {
       case DEFLATE:
         output = new DeflateCompressorOutputStream(output);
         break;
+      case BGZF:
+        output = new BgzfOutputStream(output);
+        break;
       default:
         throw new UnsupportedOperationException(compression.toString());
     }
@@ -1117,6 +1122,60 @@ public class TextIOTest {
     return new TextSource(path.toString());
   }
 
+  private TextSource prepareSource(byte[] data, String delimiter) throws IOException {
+    Path path = Files.createTempFile(tempFolder, "tempfile", "ext");
+    Files.write(path, data);
+    return new TextSource(
+        StaticValueProvider.of(path.toString()), delimiter.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReadFileWithCustomDelimiter() throws Exception {
+    TextSource source =
+        prepareSource("asdf::hj:kl::\nxyz::::end".getBytes(StandardCharsets.UTF_8), "::");
+    assertThat(
+        SourceTestUtils.readFromSource(source, PipelineOptionsFactory.create()),
+        containsInAnyOrder("asdf", "hj:kl", "\nxyz", "", "end"));
+  }
+
+  @Test
+  public void testSplittingSourceWithCustomDelimiter() throws Exception {
+    TextSource source =
+        prepareSource("asdf::hj:kl::\nxyz::::end".getBytes(StandardCharsets.UTF_8), "::");
+    SourceTestUtils.assertSplitAtFractionExhaustive(source, PipelineOptionsFactory.create());
+  }
+
+  @Test
+  public void testSplittingSourceWithCustomDelimiterAtStart() throws Exception {
+    TextSource source = prepareSource("|a|b||c".getBytes(StandardCharsets.UTF_8), "|");
+    SourceTestUtils.assertSplitAtFractionExhaustive(source, PipelineOptionsFactory.create());
+  }
+
+  @Test
+  public void testSplittingBgzfSource() throws Exception {
+    String[] lines = makeLines(50000);
+    File file = writeToFile(lines, "lines.bgz", BGZF);
+    PipelineOptions options = PipelineOptionsFactory.create();
+    FileBasedSource<String> source =
+        TextIO.Read.from(file.getPath()).withCompressionType(BGZF).getSource();
+
+    List<? extends FileBasedSource<String>> splits =
+        source.splitIntoBundles(file.length() / 8, options);
+    assertThat(splits.size(), greaterThan(1));
+    SourceTestUtils.assertSourcesEqualReferenceSource(source, splits, options);
+    assertThat(SourceTestUtils.readFromSource(source, options), containsInAnyOrder(lines));
+  }
+
+  @Test
+  public void testReadWithDelimiterDisplayData() {
+    TextIO.Read.Bound read = TextIO.Read
+        .from("foo.*")
+        .withDelimiter("||".getBytes(StandardCharsets.UTF_8))
+        .withoutValidation();
+
+    assertThat(DisplayData.from(read), hasDisplayItem("delimiter", "||"));
+  }
+
   @Test
   public void testInitialSplitIntoBundlesAutoModeTxt() throws Exception {
     PipelineOptions options = TestPipeline.testingPipelineOptions();
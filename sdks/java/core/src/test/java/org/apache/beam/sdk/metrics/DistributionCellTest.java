@@ -21,6 +21,12 @@ package org.apache.beam.sdk.metrics;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -50,4 +56,39 @@ public class DistributionCellTest {
     assertThat("Adding a new value made the cell dirty",
         cell.getDirty().beforeCommit(), equalTo(true));
   }
+
+  @Test
+  public void testEmpty() {
+    assertThat(cell.getCumulative(), equalTo(DistributionData.EMPTY));
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final int numThreads = 8;
+    final int updatesPerThread = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < updatesPerThread; j++) {
+              cell.update(thread * updatesPerThread + j);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    long n = numThreads * updatesPerThread;
+    assertThat(cell.getCumulative(),
+        equalTo(DistributionData.create(n * (n - 1) / 2, n, 0, n - 1)));
+  }
 }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.metrics;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link StripedLong}.
+ */
+@RunWith(JUnit4.class)
+public class StripedLongTest {
+  @Test
+  public void testSingleThreaded() {
+    StripedLong value = new StripedLong();
+    assertThat(value.sum(), equalTo(0L));
+    value.add(5);
+    value.add(-7);
+    value.add(Long.MAX_VALUE);
+    assertThat(value.sum(), equalTo(Long.MAX_VALUE - 2));
+  }
+
+  @Test
+  public void testConcurrentAdds() throws Exception {
+    final StripedLong value = new StripedLong();
+    final int numThreads = 8;
+    final int addsPerThread = 100000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        final long delta = i % 2 == 0 ? 3 : -1;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < addsPerThread; j++) {
+              value.add(delta);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(value.sum(), equalTo((numThreads / 2) * addsPerThread * 2L));
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms;
+
+import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.testing.NeedsRunner;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.ApproximateDistinct.Sketch;
+import org.apache.beam.sdk.transforms.ApproximateDistinct.SketchCoder;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ApproximateDistinct}. */
+@RunWith(JUnit4.class)
+public class ApproximateDistinctTest {
+  @Rule public final transient TestPipeline p = TestPipeline.create();
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private static Sketch sketchOf(int precision, long seed, int count) {
+    Random random = new Random(seed);
+    Sketch sketch = new Sketch(precision);
+    for (int i = 0; i < count; ++i) {
+      sketch.addHash(random.nextLong());
+    }
+    return sketch;
+  }
+
+  private static void assertWithinError(long expected, long estimate, double maxError) {
+    double error = Math.abs(estimate - expected) / (double) Math.max(1, expected);
+    assertTrue(
+        String.format("Estimate=%s Actual=%s Error=%s MaxError=%s",
+            estimate, expected, error, maxError),
+        error <= maxError);
+  }
+
+  @Test
+  public void testSparseSketchIsExactForSmallCardinalities() {
+    for (int count : new int[] {0, 1, 10, 100, 1000}) {
+      Sketch sketch = sketchOf(ApproximateDistinct.DEFAULT_PRECISION, count, count);
+      assertTrue(sketch.isSparse());
+      assertEquals(count, sketch.getEstimate());
+    }
+  }
+
+  @Test
+  public void testEstimateAccuracy() {
+    for (int precision : new int[] {8, 12, 14, 16}) {
+      // Four standard errors.
+      double maxError = 4 * 1.04 / Math.sqrt(1 << precision);
+      for (int count : new int[] {100, 5_000, 50_000, 500_000}) {
+        assertWithinError(count, sketchOf(precision, count, count).getEstimate(), maxError);
+      }
+    }
+  }
+
+  @Test
+  public void testAddingDuplicatesDoesNotChangeSketch() {
+    Sketch sketch = sketchOf(10, 1, 5000);
+    Sketch twice = sketchOf(10, 1, 5000);
+    twice.merge(sketchOf(10, 1, 5000));
+    assertEquals(sketch, twice);
+    assertEquals(sketch.getEstimate(), twice.getEstimate());
+  }
+
+  @Test
+  public void testMergeEqualsUnion() {
+    for (int count : new int[] {10, 100, 1000, 100_000}) {
+      Random random = new Random(count);
+      Sketch union = new Sketch(12);
+      Sketch sparse = new Sketch(12);
+      Sketch dense = new Sketch(12);
+      for (int i = 0; i < count; ++i) {
+        long hash = random.nextLong();
+        union.addHash(hash);
+        (i % 10 == 0 ? sparse : dense).addHash(hash);
+      }
+      Sketch mergedIntoSparse = new Sketch(12);
+      mergedIntoSparse.merge(sparse);
+      mergedIntoSparse.merge(dense);
+      Sketch mergedIntoDense = new Sketch(12);
+      mergedIntoDense.merge(dense);
+      mergedIntoDense.merge(sparse);
+
+      assertEquals(union.getEstimate(), mergedIntoSparse.getEstimate());
+      assertEquals(union.getEstimate(), mergedIntoDense.getEstimate());
+    }
+  }
+
+  @Test
+  public void testSparseToDense() {
+    Sketch sketch = sketchOf(8, 1, 1000);
+    assertFalse(sketch.isSparse());
+    assertWithinError(1000, sketch.getEstimate(), 4 * 1.04 / Math.sqrt(1 << 8));
+  }
+
+  @Test
+  public void testMergeDifferentPrecisionsFails() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("same precision");
+    new Sketch(10).merge(new Sketch(12));
+  }
+
+  @Test
+  public void testInvalidPrecision() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("precision between 4 and 18");
+    ApproximateDistinct.globally().withPrecision(19);
+  }
+
+  @Test
+  public void testSketchCoder() throws Exception {
+    CoderProperties.coderSerializable(SketchCoder.of());
+    for (int count : new int[] {0, 1, 100, 100_000}) {
+      Sketch sketch = sketchOf(12, count, count);
+      CoderProperties.coderDecodeEncodeEqual(SketchCoder.of(), sketch);
+      assertEquals(
+          sketch.getEstimate(),
+          CoderUtils.clone(SketchCoder.of(), sketch).getEstimate());
+    }
+  }
+
+  @Test
+  public void testSparseEncodingIsCompact() throws Exception {
+    Sketch sketch = sketchOf(ApproximateDistinct.DEFAULT_PRECISION, 1, 1000);
+    assertTrue(sketch.isSparse());
+    // Less than the four bytes per entry of the in memory representation, and far less than the
+    // 16KiB of dense registers.
+    assertThat(CoderUtils.encodeToByteArray(SketchCoder.of(), sketch).length, lessThan(4 * 1000));
+  }
+
+  @Test
+  public void testEstimateWithinErrorOfApproximateUnique() {
+    // ApproximateUnique needs to retain 4 / error^2 hashes for the error a sketch of precision 14
+    // achieves with at most 16KiB.
+    ApproximateDistinct.EstimateFn<Integer> estimateFn =
+        ApproximateDistinct.EstimateFn.create(VarIntCoder.of());
+    ApproximateUnique.ApproximateUniqueCombineFn<Integer> uniqueFn =
+        new ApproximateUnique.ApproximateUniqueCombineFn<>(1024, VarIntCoder.of());
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 200_000; ++i) {
+      values.add(i);
+    }
+    long distinctEstimate = estimateFn.apply(values);
+    long uniqueEstimate = uniqueFn.apply(values);
+    assertWithinError(200_000, distinctEstimate, 4 * 1.04 / Math.sqrt(1 << 14));
+    assertWithinError(200_000, uniqueEstimate, 4 * 2 / Math.sqrt(1024));
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testGlobally() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 5000; ++i) {
+      values.add(i % 1000);
+    }
+    PCollection<Long> estimate =
+        p.apply(Create.of(values)).apply(ApproximateDistinct.<Integer>globally());
+    PAssert.thatSingleton(estimate).isEqualTo(1000L);
+    p.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testPerKey() {
+    List<KV<String, Integer>> values = new ArrayList<>();
+    for (int i = 0; i < 300; ++i) {
+      values.add(KV.of("a", i % 10));
+      values.add(KV.of("b", i));
+    }
+    PCollection<KV<String, Long>> estimates =
+        p.apply(Create.of(values))
+            .apply(ApproximateDistinct.<String, Integer>perKey().withPrecision(10));
+    PAssert.that(estimates).containsInAnyOrder(KV.of("a", 10L), KV.of("b", 300L));
+    p.run();
+  }
+
+  @Test
+  public void testDisplayData() {
+    assertThat(
+        DisplayData.from(ApproximateDistinct.globally().withPrecision(12)),
+        hasDisplayItem("precision", 12));
+    assertThat(
+        DisplayData.from(ApproximateDistinct.perKey()),
+        hasDisplayItem("precision", ApproximateDistinct.DEFAULT_PRECISION));
+  }
+}
@@ -25,6 +25,7 @@ import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisp
 import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasNamespace;
 import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.includesDisplayDataFor;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
@@ -40,6 +41,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
@@ -54,6 +56,9 @@ import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.coders.VoidCoder;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
@@ -83,6 +88,7 @@ import org.joda.time.Instant;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.Mock;
@@ -110,6 +116,9 @@ public class CombineTest implements Serializable {
   @Rule
   public final transient TestPipeline pipeline = TestPipeline.create();
 
+  @Rule
+  public transient ExpectedException thrown = ExpectedException.none();
+
   PCollection<KV<String, Integer>> createInput(Pipeline p,
                                                List<KV<String, Integer>> table) {
     return p.apply(Create.of(table).withCoder(
@@ -522,6 +531,113 @@ public class CombineTest implements Serializable {
     pipeline.run();
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testPrecombining() {
+    PCollection<KV<String, Integer>> input = copy(createInput(pipeline, TABLE), 10);
+
+    KeyedCombineFn<String, Integer, ?, Double> mean =
+        new MeanInts().<String>asKeyedFn();
+    PCollection<KV<String, Double>> precombinedMean = input.apply("PrecombinedMean",
+        Combine.perKey(mean).withPrecombining(100));
+    // With a single slot, values of all other keys bypass the table.
+    PCollection<KV<String, Double>> overflowingMean = input.apply("OverflowingMean",
+        Combine.perKey(mean).withPrecombining(1));
+    PCollection<KV<String, Long>> precombinedSum = input
+        .apply(MapElements.via(new SimpleFunction<KV<String, Integer>, KV<String, Long>>() {
+          @Override
+          public KV<String, Long> apply(KV<String, Integer> kv) {
+            return KV.of(kv.getKey(), kv.getValue().longValue());
+          }
+        }))
+        .apply(Sum.<String>longsPerKey().withPrecombining(100));
+    PCollection<KV<String, Integer>> windowedSum = input
+        .apply(Window.<KV<String, Integer>>into(FixedWindows.of(Duration.standardMinutes(1))))
+        .apply(Sum.<String>integersPerKey().withPrecombining(100));
+
+    List<KV<String, Double>> expected = Arrays.asList(KV.of("a", 2.0), KV.of("b", 7.0));
+    PAssert.that(precombinedMean).containsInAnyOrder(expected);
+    PAssert.that(overflowingMean).containsInAnyOrder(expected);
+    PAssert.that(precombinedSum).containsInAnyOrder(KV.of("a", 60L), KV.of("b", 140L));
+    PAssert.that(windowedSum).containsInAnyOrder(KV.of("a", 60), KV.of("b", 140));
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testPrecombiningRequiresPositiveMaxKeys() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("maxKeysPerBundle must be positive");
+    Sum.<String>longsPerKey().withPrecombining(0);
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testAdaptiveHotKeyCombining() {
+    PCollection<KV<String, Integer>> input = copy(createInput(pipeline, TABLE), 10);
+
+    KeyedCombineFn<String, Integer, ?, Double> mean =
+        new MeanInts().<String>asKeyedFn();
+    PCollection<KV<String, Double>> adaptiveMean = input.apply("AdaptiveMean",
+        Combine.perKey(mean).withAdaptiveHotKeyFanout(4, 0.1));
+
+    PAssert.that(adaptiveMean).containsInAnyOrder(KV.of("a", 2.0), KV.of("b", 7.0));
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testAdaptiveHotKeyFanoutFollowsHotKeys() {
+    MetricsContainer container = new MetricsContainer("step");
+    MetricsEnvironment.setCurrentContainer(container);
+    try {
+      Combine.AdaptiveHotKeyFanout<String> fanout = new Combine.AdaptiveHotKeyFanout<>(8, 0.05);
+      Random random = new Random(1);
+      for (String hotKey : Arrays.asList("first", "second")) {
+        int maxColdFanout = 0;
+        int hotFanout = 0;
+        for (int i = 0; i < 100_000; ++i) {
+          // The hot key receives 30% of the values, each cold key 0.07%.
+          if (random.nextInt(10) < 3) {
+            hotFanout = fanout.apply(hotKey);
+          } else {
+            maxColdFanout = Math.max(maxColdFanout, fanout.apply("cold" + random.nextInt(1000)));
+          }
+        }
+        assertThat(hotFanout, greaterThan(1));
+        assertEquals(1, maxColdFanout);
+      }
+      assertEquals(1, (int) fanout.apply("first"));
+      // A key that becomes hot again is not detected again.
+      int hotFanout = 1;
+      for (int i = 0; i < 100_000; ++i) {
+        if (random.nextInt(10) < 3) {
+          hotFanout = fanout.apply("first");
+        } else {
+          fanout.apply("cold" + random.nextInt(1000));
+        }
+      }
+      assertThat(hotFanout, greaterThan(1));
+
+      assertEquals(2L, (long) container.getCounter(
+          MetricName.named(Combine.PerKeyWithHotKeyFanout.class, "hotKeysDetected"))
+          .getCumulative());
+      assertThat(container.getDistribution(
+          MetricName.named(Combine.PerKeyWithHotKeyFanout.class, "hotKeyFanout"))
+          .getCumulative().max(), greaterThan(1L));
+      assertThat(DisplayData.from(fanout), hasDisplayItem("maxFanout", 8));
+    } finally {
+      MetricsEnvironment.setCurrentContainer(null);
+    }
+  }
+
+  @Test
+  public void testAdaptiveHotKeyFanoutInvalidThreshold() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("hotKeyThreshold must be between 0 and 1");
+    Sum.<String>longsPerKey().withAdaptiveHotKeyFanout(4, 1.5);
+  }
+
   private static class GetLast extends DoFn<Integer, Integer> {
     @ProcessElement
     public void processElement(ProcessContext c) {
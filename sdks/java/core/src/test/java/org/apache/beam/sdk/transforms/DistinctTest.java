@@ -17,22 +17,33 @@
  */
 package org.apache.beam.sdk.transforms;
 
+import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.testing.ValidatesRunner;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -45,6 +56,9 @@ public class DistinctTest {
   @Rule
   public final TestPipeline p = TestPipeline.create();
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   @Test
   @Category(ValidatesRunner.class)
   public void testDistinct() {
@@ -85,6 +99,72 @@ public class DistinctTest {
     p.run();
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testDistinctWithinBundleSettings() {
+    List<Integer> values = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      values.add(i % 100);
+      values.add(i % 7);
+      if (i < 100) {
+        expected.add(i);
+      }
+    }
+    PCollection<Integer> input = p.apply(Create.of(values));
+
+    PAssert.that(input.apply("Unbuffered", Distinct.<Integer>create().withMaxBufferedBytes(0)))
+        .containsInAnyOrder(expected);
+    // Small enough to be flushed repeatedly within a bundle.
+    PAssert.that(input.apply("Flushing", Distinct.<Integer>create().withMaxBufferedBytes(200)))
+        .containsInAnyOrder(expected);
+    PAssert.that(input.apply("Approximate",
+        Distinct.<Integer>create().withApproximatePrefilter(1000, 1e-9)))
+        .containsInAnyOrder(expected);
+    // Replaces the filter after every 10 elements.
+    PAssert.that(input.apply("ApproximateFlushing",
+        Distinct.<Integer>create().withApproximatePrefilter(10, 1e-9)))
+        .containsInAnyOrder(expected);
+    p.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testDistinctKeepsDuplicatesInDifferentWindows() {
+    PCollection<String> output =
+        p.apply(Create.timestamped(
+                TimestampedValue.of("k1", new Instant(0)),
+                TimestampedValue.of("k1", new Instant(5)),
+                TimestampedValue.of("k1", new Instant(15)),
+                TimestampedValue.of("k2", new Instant(15))))
+            .apply(Window.<String>into(FixedWindows.of(Duration.millis(10))))
+            .apply(Distinct.<String>create())
+            .apply(WithKeys.<String, String>of("key"))
+            .apply(GroupByKey.<String, String>create())
+            .apply(Values.<Iterable<String>>create())
+            .apply(Flatten.<String>iterables());
+
+    PAssert.that(output).containsInAnyOrder("k1", "k1", "k2");
+    p.run();
+  }
+
+  @Test
+  public void testInvalidFalsePositiveProbability() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("falsePositiveProbability must be between 0 and 1");
+    Distinct.<String>create().withApproximatePrefilter(100, 1.0);
+  }
+
+  @Test
+  public void testDisplayData() {
+    DisplayData displayData =
+        DisplayData.from(Distinct.<String>create().withApproximatePrefilter(100, 0.01));
+    assertThat(displayData,
+        hasDisplayItem("maxBufferedBytes", Distinct.DEFAULT_MAX_BUFFERED_BYTES));
+    assertThat(displayData, hasDisplayItem("expectedElements", 100));
+    assertThat(displayData, hasDisplayItem("falsePositiveProbability", 0.01));
+  }
+
   private static class Keys implements SerializableFunction<KV<String, String>, String> {
     @Override
     public String apply(KV<String, String> input) {
@@ -125,4 +205,35 @@ public class DistinctTest {
 
     p.run();
   }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testDistinctWithRepresentativeValueWithinBundleSettings() {
+    List<KV<String, String>> strings = Arrays.asList(
+        KV.of("k1", "v1"),
+        KV.of("k1", "v2"),
+        KV.of("k2", "v1"));
+
+    PCollection<KV<String, String>> input = p.apply(Create.of(strings));
+
+    PAssert.that(input.apply("Unbuffered",
+        Distinct.withRepresentativeValueFn(new Keys()).withMaxBufferedBytes(0)))
+        .satisfies(new Checker());
+    PAssert.that(input.apply("Approximate",
+        Distinct.withRepresentativeValueFn(new Keys()).withApproximatePrefilter(10, 1e-9)))
+        .satisfies(new Checker());
+
+    p.run();
+  }
+
+  @Test
+  public void testWithRepresentativeValueDisplayData() {
+    DisplayData displayData = DisplayData.from(
+        Distinct.withRepresentativeValueFn(new Keys())
+            .withMaxBufferedBytes(1024)
+            .withApproximatePrefilter(100, 0.01));
+    assertThat(displayData, hasDisplayItem("maxBufferedBytes", 1024));
+    assertThat(displayData, hasDisplayItem("expectedElements", 100));
+    assertThat(displayData, hasDisplayItem("falsePositiveProbability", 0.01));
+  }
 }
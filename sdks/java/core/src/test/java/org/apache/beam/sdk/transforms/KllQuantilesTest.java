@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms;
+
+import static org.apache.beam.sdk.TestUtils.checkCombineFn;
+import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.NeedsRunner;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.KllQuantiles.KllQuantilesCombineFn;
+import org.apache.beam.sdk.transforms.KllQuantiles.KllSketch;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.hamcrest.CoreMatchers;
+import org.hamcrest.Matcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link KllQuantiles}. */
+@RunWith(JUnit4.class)
+public class KllQuantilesTest {
+  @Rule public TestPipeline p = TestPipeline.create();
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testQuantilesPerKey() {
+    PCollection<KV<String, Integer>> input =
+        p.apply(Create.of(ApproximateQuantilesTest.TABLE)
+            .withCoder(KvCoder.of(StringUtf8Coder.of(), BigEndianIntegerCoder.of())));
+    PCollection<KV<String, List<Integer>>> quantiles =
+        input.apply(KllQuantiles.<String, Integer>perKey(2));
+
+    PAssert.that(quantiles)
+        .containsInAnyOrder(
+            KV.of("a", Arrays.asList(1, 3)),
+            KV.of("b", Arrays.asList(1, 100)));
+    p.run();
+  }
+
+  @Test
+  public void testFewerValuesThanQuantiles() {
+    checkCombineFn(
+        KllQuantilesCombineFn.<Integer>create(5),
+        Arrays.asList(3, 1, 2),
+        Arrays.asList(1, 2, 3));
+  }
+
+  @Test
+  public void testSimpleQuantiles() {
+    checkCombineFn(
+        KllQuantilesCombineFn.<Integer>create(5),
+        intRange(101),
+        Arrays.asList(0, 25, 50, 75, 100));
+  }
+
+  @Test
+  public void testLargerQuantiles() {
+    // With k = 200 the rank error is well below 3%.
+    checkCombineFn(
+        KllQuantilesCombineFn.<Integer>create(11),
+        intRange(10001),
+        quantileMatcher(10001, 11, 300));
+  }
+
+  @Test
+  public void testSketchSizeIsBounded() {
+    KllSketch<Integer, Top.Largest<Integer>> sketch =
+        KllQuantilesCombineFn.<Integer>create(11).createAccumulator();
+    for (int i = 0; i < 1_000_000; ++i) {
+      sketch.addInput(i);
+    }
+    assertEquals(11, sketch.extractOutput().size());
+    // The sketch retains about 3k values, of 4 bytes each.
+    assertThat(
+        encodedSize(KllQuantilesCombineFn.<Integer>create(11), sketch),
+        lessThan(4 * 4 * KllQuantilesCombineFn.DEFAULT_K));
+  }
+
+  @Test
+  public void testCoderRoundTrip() throws Exception {
+    KllQuantilesCombineFn<Integer, Top.Largest<Integer>> fn =
+        KllQuantilesCombineFn.<Integer>create(11).withK(16);
+    Coder<KllSketch<Integer, Top.Largest<Integer>>> coder =
+        fn.getAccumulatorCoder(new CoderRegistry(), BigEndianIntegerCoder.of());
+    for (int size : new int[] {0, 1, 10, 10_000}) {
+      KllSketch<Integer, Top.Largest<Integer>> sketch = fn.createAccumulator();
+      for (int i = 0; i < size; ++i) {
+        sketch.addInput(i);
+      }
+      assertEquals(sketch.extractOutput(), CoderUtils.clone(coder, sketch).extractOutput());
+    }
+  }
+
+  @Test
+  public void testDisplayData() {
+    KllQuantilesCombineFn<Integer, Top.Largest<Integer>> fn =
+        KllQuantilesCombineFn.<Integer>create(20).withK(100);
+    DisplayData displayData = DisplayData.from(fn);
+
+    assertThat(displayData, hasDisplayItem("numQuantiles", 20));
+    assertThat(displayData, hasDisplayItem("k", 100));
+  }
+
+  private static int encodedSize(
+      KllQuantilesCombineFn<Integer, Top.Largest<Integer>> fn,
+      KllSketch<Integer, Top.Largest<Integer>> sketch) {
+    try {
+      return CoderUtils.encodeToByteArray(
+          fn.getAccumulatorCoder(new CoderRegistry(), BigEndianIntegerCoder.of()),
+          sketch).length;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Matcher<Iterable<? extends Integer>> quantileMatcher(
+      int size, int numQuantiles, int absoluteError) {
+    List<Matcher<? super Integer>> quantiles = new ArrayList<>();
+    quantiles.add(CoreMatchers.is(0));
+    for (int k = 1; k < numQuantiles - 1; k++) {
+      int expected = (int) (((double) (size - 1)) * k / (numQuantiles - 1));
+      quantiles.add(allOf(
+          greaterThanOrEqualTo(expected - absoluteError),
+          lessThanOrEqualTo(expected + absoluteError)));
+    }
+    quantiles.add(CoreMatchers.is(size - 1));
+    return contains(quantiles);
+  }
+
+  private static List<Integer> intRange(int size) {
+    List<Integer> all = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      all.add(i);
+    }
+    return all;
+  }
+}
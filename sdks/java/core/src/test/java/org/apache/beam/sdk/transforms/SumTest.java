@@ -18,16 +18,20 @@
 package org.apache.beam.sdk.transforms;
 
 import static org.apache.beam.sdk.TestUtils.checkCombineFn;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
 import com.google.common.collect.Lists;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
 import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderRegistry;
 import org.apache.beam.sdk.coders.DoubleCoder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -96,4 +100,48 @@ public class SumTest {
         sumDoubleFn.getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of()),
         sumDoubleFn.getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of()));
   }
+
+  @Test
+  public void testAccumulatorCoderEncodesLikeInputCoder() throws Exception {
+    Coder<int[]> intAccumCoder =
+        Sum.ofIntegers().getAccumulatorCoder(STANDARD_REGISTRY, VarIntCoder.of());
+    Coder<long[]> longAccumCoder =
+        Sum.ofLongs().getAccumulatorCoder(STANDARD_REGISTRY, VarLongCoder.of());
+    Coder<double[]> doubleAccumCoder =
+        Sum.ofDoubles().getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of());
+    for (int value : new int[] {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      assertArrayEquals(
+          CoderUtils.encodeToByteArray(VarIntCoder.of(), value),
+          CoderUtils.encodeToByteArray(intAccumCoder, new int[] {value}));
+      assertArrayEquals(
+          new int[] {value}, CoderUtils.clone(intAccumCoder, new int[] {value}));
+    }
+    for (long value : new long[] {0L, 1L, -1L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      assertArrayEquals(
+          CoderUtils.encodeToByteArray(VarLongCoder.of(), value),
+          CoderUtils.encodeToByteArray(longAccumCoder, new long[] {value}));
+      assertArrayEquals(
+          new long[] {value}, CoderUtils.clone(longAccumCoder, new long[] {value}));
+    }
+    for (double value : new double[] {0.0, -1.5, Double.MAX_VALUE, Double.NaN}) {
+      assertArrayEquals(
+          CoderUtils.encodeToByteArray(DoubleCoder.of(), value),
+          CoderUtils.encodeToByteArray(doubleAccumCoder, new double[] {value}));
+      assertArrayEquals(
+          new double[] {value}, CoderUtils.clone(doubleAccumCoder, new double[] {value}), 0.0);
+    }
+  }
+
+  @Test
+  public void testAccumulatorCoderEncodingIds() throws Exception {
+    CoderProperties.coderHasEncodingId(
+        Sum.ofIntegers().getAccumulatorCoder(STANDARD_REGISTRY, VarIntCoder.of()),
+        "VarIntSingletonArray");
+    CoderProperties.coderHasEncodingId(
+        Sum.ofLongs().getAccumulatorCoder(STANDARD_REGISTRY, VarLongCoder.of()),
+        "VarLongSingletonArray");
+    CoderProperties.coderHasEncodingId(
+        Sum.ofDoubles().getAccumulatorCoder(STANDARD_REGISTRY, DoubleCoder.of()),
+        "DoubleSingletonArray");
+  }
 }
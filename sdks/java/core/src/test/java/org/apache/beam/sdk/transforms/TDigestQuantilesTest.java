@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms;
+
+import static org.apache.beam.sdk.TestUtils.checkCombineFn;
+import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.testing.NeedsRunner;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.TDigestQuantiles.TDigest;
+import org.apache.beam.sdk.transforms.TDigestQuantiles.TDigestQuantilesCombineFn;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.hamcrest.Matcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TDigestQuantiles}. */
+@RunWith(JUnit4.class)
+public class TDigestQuantilesTest {
+  @Rule public TestPipeline p = TestPipeline.create();
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testQuantilesPerKey() {
+    PCollection<KV<String, Double>> input =
+        p.apply(Create.of(
+            KV.of("a", 1.0), KV.of("a", 2.0), KV.of("a", 3.0),
+            KV.of("b", 1.0), KV.of("b", 10.0), KV.of("b", 10.0), KV.of("b", 100.0)));
+    PCollection<KV<String, List<Double>>> quantiles =
+        input.apply(TDigestQuantiles.<String>perKey(2));
+
+    PAssert.that(quantiles)
+        .containsInAnyOrder(
+            KV.of("a", Arrays.asList(1.0, 3.0)),
+            KV.of("b", Arrays.asList(1.0, 100.0)));
+    p.run();
+  }
+
+  @Test
+  public void testFewerValuesThanQuantiles() {
+    checkCombineFn(
+        TDigestQuantilesCombineFn.create(5),
+        Arrays.asList(3.0, 1.0, 2.0),
+        Arrays.asList(1.0, 2.0, 3.0));
+  }
+
+  @Test
+  public void testSimpleQuantiles() {
+    checkCombineFn(
+        TDigestQuantilesCombineFn.create(5),
+        doubleRange(101),
+        quantileMatcher(101, 5, 2));
+  }
+
+  @Test
+  public void testLargerQuantiles() {
+    checkCombineFn(
+        TDigestQuantilesCombineFn.create(11),
+        doubleRange(10001),
+        quantileMatcher(10001, 11, 100));
+  }
+
+  @Test
+  public void testTailQuantilesOfMergedDigests() {
+    List<Double> values = doubleRange(100_000);
+    Collections.shuffle(values, new Random(1));
+    TDigestQuantilesCombineFn fn = TDigestQuantilesCombineFn.create(1001);
+    List<TDigest> digests = new ArrayList<>();
+    for (int shard = 0; shard < 100; ++shard) {
+      digests.add(fn.createAccumulator());
+    }
+    for (int i = 0; i < values.size(); ++i) {
+      fn.addInput(digests.get(i % digests.size()), values.get(i));
+    }
+    List<Double> quantiles = fn.extractOutput(fn.mergeAccumulators(digests));
+
+    assertThat(quantiles.get(1), closeTo(100, 10));
+    assertThat(quantiles.get(10), closeTo(1000, 20));
+    assertThat(quantiles.get(500), closeTo(50_000, 1000));
+    assertThat(quantiles.get(990), closeTo(99_000, 20));
+    assertThat(quantiles.get(999), closeTo(99_900, 10));
+  }
+
+  @Test
+  public void testCoderRoundTrip() throws Exception {
+    TDigestQuantilesCombineFn fn = TDigestQuantilesCombineFn.create(11);
+    Coder<TDigest> coder = fn.getAccumulatorCoder(new CoderRegistry(), DoubleCoder.of());
+    for (int size : new int[] {0, 1, 10, 100_000}) {
+      TDigest digest = fn.createAccumulator();
+      for (double value : doubleRange(size)) {
+        digest.addInput(value);
+      }
+      assertEquals(digest.extractOutput(), CoderUtils.clone(coder, digest).extractOutput());
+    }
+  }
+
+  @Test
+  public void testEncodingIsCompact() throws Exception {
+    TDigestQuantilesCombineFn fn = TDigestQuantilesCombineFn.create(11);
+    TDigest digest = fn.createAccumulator();
+    for (double value : doubleRange(1_000_000)) {
+      digest.addInput(value);
+    }
+    assertThat(
+        CoderUtils.encodeToByteArray(
+            fn.getAccumulatorCoder(new CoderRegistry(), DoubleCoder.of()), digest).length,
+        lessThan(4096));
+  }
+
+  @Test
+  public void testDisplayData() {
+    DisplayData displayData =
+        DisplayData.from(TDigestQuantilesCombineFn.create(20).withCompression(50));
+
+    assertThat(displayData, hasDisplayItem("numQuantiles", 20));
+    assertThat(displayData, hasDisplayItem("compression", 50.0));
+  }
+
+  private static Matcher<Iterable<? extends Double>> quantileMatcher(
+      int size, int numQuantiles, double absoluteError) {
+    List<Matcher<? super Double>> quantiles = new ArrayList<>();
+    for (int k = 0; k < numQuantiles; k++) {
+      double expected = ((double) (size - 1)) * k / (numQuantiles - 1);
+      quantiles.add(closeTo(expected, k == 0 || k == numQuantiles - 1 ? 0 : absoluteError));
+    }
+    return contains(quantiles);
+  }
+
+  private static List<Double> doubleRange(int size) {
+    List<Double> all = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      all.add((double) i);
+    }
+    return all;
+  }
+}
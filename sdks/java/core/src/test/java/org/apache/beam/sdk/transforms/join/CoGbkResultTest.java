@@ -24,6 +24,8 @@ import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
 import java.util.List;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.util.common.Reiterable;
 import org.apache.beam.sdk.util.common.Reiterator;
 import org.apache.beam.sdk.values.TupleTag;
@@ -59,6 +61,36 @@ public class CoGbkResultTest {
     assertThat(result.getAll(new TupleTag<Integer>("tag0")), contains(0, 2, 4));
   }
 
+  @Test
+  public void testSpilledResults() {
+    runSpilledResult(0);
+    runSpilledResult(1);
+    runSpilledResult(3);
+    runSpilledResult(10);
+  }
+
+  public void runSpilledResult(int cacheSize) {
+    // The iterators of a list are not reiterators, so the tail is spilled.
+    List<RawUnionValue> values = new ArrayList<>();
+    int[] tags = {0, 1, 0, 3, 0, 3, 3};
+    for (int i = 0; i < tags.length; i++) {
+      values.add(new RawUnionValue(tags[i], i));
+    }
+    List<Coder<?>> coders = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      coders.add(VarIntCoder.of());
+    }
+    CoGbkResult result =
+        new CoGbkResult(createSchema(5), values, cacheSize, UnionCoder.of(coders));
+    assertThat(result.getAll(new TupleTag<Integer>("tag0")), contains(0, 2, 4));
+    assertThat(result.getAll(new TupleTag<Integer>("tag3")), contains(3, 5, 6));
+    assertThat(result.getAll(new TupleTag<Integer>("tag2")), emptyIterable());
+    assertThat(result.getOnly(new TupleTag<Integer>("tag1")), equalTo(1));
+    // Spilled values can be iterated again.
+    assertThat(result.getAll(new TupleTag<Integer>("tag0")), contains(0, 2, 4));
+    assertThat(result.getAll(new TupleTag<Integer>("tag3")), contains(3, 5, 6));
+  }
+
   private CoGbkResultSchema createSchema(int size) {
     List<TupleTag<?>> tags = new ArrayList<>();
     for (int i = 0; i < size; i++) {
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.transforms.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SpilledIterable}. */
+@RunWith(JUnit4.class)
+public class SpilledIterableTest {
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static SpilledIterable<Integer> spill(File directory, int count) throws Exception {
+    try (SpilledIterable.Writer<Integer> writer =
+        new SpilledIterable.Writer<>(VarIntCoder.of(), directory)) {
+      for (int i = 0; i < count; i++) {
+        writer.add(i);
+      }
+      return writer.finish();
+    }
+  }
+
+  @Test
+  public void testIterateRepeatedly() throws Exception {
+    SpilledIterable<Integer> iterable = spill(tmpFolder.getRoot(), 1000);
+    for (int pass = 0; pass < 3; pass++) {
+      int expected = 0;
+      for (int value : iterable) {
+        assertEquals(expected++, value);
+      }
+      assertEquals(1000, expected);
+    }
+  }
+
+  @Test
+  public void testSpillDirectory() throws Exception {
+    File directory = tmpFolder.newFolder();
+    SpilledIterable<Integer> iterable = spill(directory, 10);
+    assertEquals(1, directory.list().length);
+    assertEquals(0, (int) iterable.iterator().next());
+  }
+
+  /** Files of unreachable iterables are deleted, even if an iterator was not exhausted. */
+  @Test
+  public void testDeleteUnreachablePartiallyIterated() throws Exception {
+    File directory = tmpFolder.newFolder();
+    readFirst(spill(directory, 1000));
+    assertEquals(1, directory.list().length);
+
+    for (int attempt = 0; attempt < 100 && directory.list().length > 0; attempt++) {
+      System.gc();
+      Thread.sleep(10);
+      SpilledIterable.deleteUnreachableFiles();
+    }
+    assertEquals(0, directory.list().length);
+  }
+
+  private static void readFirst(SpilledIterable<Integer> iterable) {
+    Iterator<Integer> iterator = iterable.iterator();
+    assertTrue(iterator.hasNext());
+    assertEquals(0, (int) iterator.next());
+  }
+}
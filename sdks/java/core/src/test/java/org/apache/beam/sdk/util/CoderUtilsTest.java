@@ -23,16 +23,19 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.BufferCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.Coder.Context;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.testing.CoderPropertiesTest.ClosingCoder;
 import org.hamcrest.CoreMatchers;
@@ -74,6 +77,70 @@ public class CoderUtilsTest {
     }
   }
 
+  /** A {@link BufferCoder} which can only encode and decode through its buffer methods. */
+  static class BufferOnlyCoder extends AtomicCoder<Integer> implements BufferCoder<Integer> {
+    @Override
+    public void encode(Integer value, OutputStream outStream, Context context) {
+      throw new RuntimeException("not expecting to be called");
+    }
+
+    @Override
+    public Integer decode(InputStream inStream, Context context) {
+      throw new RuntimeException("not expecting to be called");
+    }
+
+    @Override
+    public void encodeToBuffer(Integer value, EncodingBuffer buffer, Context context) {
+      buffer.writeVarInt(value);
+    }
+
+    @Override
+    public Integer decodeFromBuffer(DecodingBuffer buffer, Context context) throws IOException {
+      return buffer.readVarInt();
+    }
+  }
+
+  @Test
+  public void testByteArrayUsesBufferCoder() throws Exception {
+    BufferOnlyCoder coder = new BufferOnlyCoder();
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, 300, Context.NESTED);
+    Assert.assertArrayEquals(
+        CoderUtils.encodeToByteArray(VarIntCoder.of(), 300, Context.NESTED), encoded);
+    Assert.assertEquals(300, (int) CoderUtils.decodeFromByteArray(coder, encoded));
+    Assert.assertEquals(300, (int) CoderUtils.clone(coder, 300));
+  }
+
+  /** A subclass of a {@link BufferCoder} that overrides only its {@link Coder} methods. */
+  static class OverridingBufferOnlyCoder extends BufferOnlyCoder {
+    @Override
+    public void encode(Integer value, OutputStream outStream, Context context)
+        throws IOException {
+      BigEndianIntegerCoder.of().encode(value, outStream, context);
+    }
+
+    @Override
+    public Integer decode(InputStream inStream, Context context) throws IOException {
+      return BigEndianIntegerCoder.of().decode(inStream, context);
+    }
+  }
+
+  @Test
+  public void testByteArrayUsesOverriddenCoderMethods() throws Exception {
+    OverridingBufferOnlyCoder coder = new OverridingBufferOnlyCoder();
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, 300, Context.NESTED);
+    Assert.assertArrayEquals(
+        CoderUtils.encodeToByteArray(BigEndianIntegerCoder.of(), 300, Context.NESTED), encoded);
+    Assert.assertEquals(300, (int) CoderUtils.decodeFromByteArray(coder, encoded));
+    Assert.assertEquals(300, (int) CoderUtils.clone(coder, 300));
+  }
+
+  @Test
+  public void testByteArrayBufferCoderExtraBytes() throws Exception {
+    expectedException.expect(CoderException.class);
+    expectedException.expectMessage("1 unexpected extra bytes");
+    CoderUtils.decodeFromByteArray(new BufferOnlyCoder(), new byte[] {1, 2});
+  }
+
   @Test
   public void testCoderExceptionPropagation() throws Exception {
     @SuppressWarnings("unchecked")
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link EncodingBuffer} and {@link DecodingBuffer}. */
+@RunWith(JUnit4.class)
+public class EncodingBufferTest {
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private static final long[] LONG_VALUES = {
+      0, 1, 127, 128, 16383, 16384, 268435456, Integer.MAX_VALUE, Integer.MIN_VALUE,
+      Long.MAX_VALUE, Long.MIN_VALUE, -1,
+  };
+
+  private static final String[] STRINGS = {
+      "", "abc", "\u00e9t\u00e9", "\u4e2d\u6587", "\ud83d\ude00 emoji",
+      // Unpaired surrogates, which are replaced by '?'.
+      "unpaired \ud800", "\udc00 unpaired",
+  };
+
+  @Test
+  public void testNumbersEncodeLikeStreams() throws Exception {
+    for (long value : LONG_VALUES) {
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      DataOutputStream dataStream = new DataOutputStream(expected);
+      VarInt.encode(value, expected);
+      VarInt.encode((int) value, expected);
+      dataStream.writeLong(value);
+      dataStream.writeInt((int) value);
+
+      EncodingBuffer buffer = new EncodingBuffer(1);
+      buffer.writeVarLong(value);
+      buffer.writeVarInt((int) value);
+      buffer.writeBigEndianLong(value);
+      buffer.writeBigEndianInt((int) value);
+      assertArrayEquals(expected.toByteArray(), buffer.toByteArray());
+
+      DecodingBuffer decoding = new DecodingBuffer(buffer.toByteArray());
+      assertEquals(value, decoding.readVarLong());
+      assertEquals((int) value, decoding.readVarInt());
+      assertEquals(value, decoding.readBigEndianLong());
+      assertEquals((int) value, decoding.readBigEndianInt());
+      assertEquals(0, decoding.available());
+    }
+  }
+
+  @Test
+  public void testUtf8EncodesLikeGetBytes() throws Exception {
+    for (String value : STRINGS) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      VarInt.encode(bytes.length, expected);
+      expected.write(bytes);
+      expected.write(bytes);
+
+      EncodingBuffer buffer = new EncodingBuffer(1);
+      buffer.writeUtf8(value, true);
+      buffer.writeUtf8(value, false);
+      assertArrayEquals(value, expected.toByteArray(), buffer.toByteArray());
+
+      DecodingBuffer decoding = new DecodingBuffer(buffer.toByteArray());
+      String decoded = new String(bytes, StandardCharsets.UTF_8);
+      assertEquals(decoded, decoding.readUtf8(decoding.readVarInt()));
+      assertEquals(decoded, decoding.readUtf8(decoding.available()));
+    }
+  }
+
+  @Test
+  public void testRandomUtf8() throws Exception {
+    Random random = new Random(1);
+    EncodingBuffer buffer = new EncodingBuffer();
+    for (int i = 0; i < 1000; ++i) {
+      char[] chars = new char[random.nextInt(100)];
+      for (int j = 0; j < chars.length; ++j) {
+        chars[j] = (char) random.nextInt(Character.MAX_VALUE + 1);
+      }
+      String value = new String(chars);
+      buffer.reset();
+      buffer.writeUtf8(value, false);
+      assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+    }
+  }
+
+  @Test
+  public void testResetKeepsCapacity() {
+    EncodingBuffer buffer = new EncodingBuffer(1);
+    buffer.write(new byte[1000], 0, 1000);
+    byte[] array = buffer.array();
+    buffer.reset();
+    assertEquals(0, buffer.size());
+    buffer.writeVarInt(5);
+    assertEquals(1, buffer.size());
+    assertEquals(array, buffer.array());
+  }
+
+  @Test
+  public void testDecodingBufferRange() throws Exception {
+    DecodingBuffer decoding = new DecodingBuffer(new byte[] {1, 2, 3, 4, 5}, 1, 3);
+    assertEquals(3, decoding.available());
+    assertEquals(2, decoding.read());
+    assertArrayEquals(new byte[] {3, 4}, decoding.readBytes(2));
+    assertEquals(-1, decoding.read());
+  }
+
+  @Test
+  public void testTruncatedVarInt() throws Exception {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("varint not terminated");
+    new DecodingBuffer(new byte[] {(byte) 0x80}).readVarLong();
+  }
+
+  @Test
+  public void testReadPastEnd() throws Exception {
+    thrown.expect(EOFException.class);
+    new DecodingBuffer(new byte[] {1, 2, 3}).readBigEndianInt();
+  }
+}
@@ -18,7 +18,9 @@
 package org.apache.beam.sdk.util;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -30,9 +32,12 @@ import java.io.FileNotFoundException;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.List;
+import org.apache.beam.sdk.options.LocalFileSystemOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -101,6 +106,46 @@ public class FileIOChannelFactoryTest {
     assertEquals(expected, data);
   }
 
+  @Test
+  public void testReadWithMemoryMap() throws Exception {
+    LocalFileSystemOptions options = PipelineOptionsFactory.as(LocalFileSystemOptions.class);
+    options.setMemoryMapLocalFiles(true);
+    FileIOChannelFactory mappingFactory = FileIOChannelFactory.fromOptions(options);
+
+    String expected = "my test string";
+    File existingFile = temporaryFolder.newFile();
+    Files.write(expected, existingFile, StandardCharsets.UTF_8);
+    ReadableByteChannel channel = mappingFactory.open(existingFile.getPath());
+    assertThat(channel, instanceOf(MappedByteChannel.class));
+    String data;
+    try (Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8.name())) {
+      data = new LineReader(reader).readLine();
+    }
+    assertEquals(expected, data);
+  }
+
+  @Test
+  public void testRename() throws Exception {
+    File src1 = temporaryFolder.newFile("src1");
+    File src2 = temporaryFolder.newFile("src2");
+    Files.write("1", src1, StandardCharsets.UTF_8);
+    Files.write("2", src2, StandardCharsets.UTF_8);
+    File dest1 = temporaryFolder.newFile("dest1");
+    File dest2 = new File(temporaryFolder.getRoot(), "dest2");
+
+    factory.rename(
+        ImmutableList.of(src1.getPath(), src2.getPath()),
+        ImmutableList.of(dest1.getPath(), dest2.getPath()));
+    assertFalse(src1.exists());
+    assertFalse(src2.exists());
+    assertEquals("1", Files.toString(dest1, StandardCharsets.UTF_8));
+    assertEquals("2", Files.toString(dest2, StandardCharsets.UTF_8));
+
+    // Renaming files that no longer exist does nothing.
+    factory.rename(ImmutableList.of(src1.getPath()), ImmutableList.of(dest1.getPath()));
+    assertEquals("1", Files.toString(dest1, StandardCharsets.UTF_8));
+  }
+
   @Test
   public void testReadNonExistentFile() throws Exception {
     thrown.expect(FileNotFoundException.class);
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link MappedByteChannel}. */
+@RunWith(JUnit4.class)
+public class MappedByteChannelTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static byte[] data(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    return data;
+  }
+
+  private MappedByteChannel open(byte[] data, long regionSize) throws IOException {
+    File file = temporaryFolder.newFile();
+    Files.write(file.toPath(), data);
+    return new MappedByteChannel(new FileInputStream(file).getChannel(), regionSize);
+  }
+
+  @Test
+  public void testReadAcrossRegions() throws IOException {
+    byte[] data = data(1000);
+    for (long regionSize : new long[] {1, 7, 64, 999, 1000, 4096}) {
+      try (MappedByteChannel channel = open(data, regionSize)) {
+        assertEquals(data.length, channel.size());
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 10);
+        while (channel.read(buffer) != -1) {}
+        buffer.flip();
+        byte[] read = new byte[buffer.remaining()];
+        buffer.get(read);
+        assertArrayEquals(data, read);
+        assertEquals(data.length, channel.position());
+      }
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    byte[] data = data(100);
+    try (MappedByteChannel channel = open(data, 16)) {
+      for (int position : new int[] {99, 0, 50, 15, 16, 17}) {
+        channel.position(position);
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        assertEquals(1, channel.read(buffer));
+        assertEquals(data[position], buffer.get(0));
+        assertEquals(position + 1, channel.position());
+      }
+      channel.position(200);
+      assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+    }
+  }
+
+  @Test
+  public void testReadMapped() throws IOException {
+    byte[] data = data(100);
+    try (MappedByteChannel channel = open(data, 64)) {
+      ByteBuffer first = channel.readMapped(50);
+      assertEquals(50, first.remaining());
+      assertTrue(first.isReadOnly());
+      assertEquals(data[0], first.get(0));
+
+      // The second read stops at the end of the first region.
+      ByteBuffer second = channel.readMapped(50);
+      assertEquals(14, second.remaining());
+      assertEquals(data[50], second.get());
+
+      ByteBuffer third = channel.readMapped(50);
+      assertEquals(36, third.remaining());
+      assertEquals(data[64], third.get());
+
+      assertNull(channel.readMapped(50));
+    }
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+    try (MappedByteChannel channel = open(new byte[0], 64)) {
+      assertEquals(0, channel.size());
+      assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+      assertNull(channel.readMapped(10));
+    }
+  }
+
+  @Test
+  public void testWriteIsRejected() throws IOException {
+    try (MappedByteChannel channel = open(data(10), 64)) {
+      thrown.expect(NonWritableChannelException.class);
+      channel.write(ByteBuffer.allocate(1));
+    }
+  }
+
+  @Test
+  public void testReadAfterClose() throws IOException {
+    MappedByteChannel channel = open(data(10), 64);
+    channel.close();
+    assertFalse(channel.isOpen());
+    thrown.expect(ClosedChannelException.class);
+    channel.read(ByteBuffer.allocate(1));
+  }
+}
@@ -38,13 +38,17 @@ import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo.Timing;
 import org.joda.time.Instant;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 /** Test case for {@link WindowedValue}. */
 @RunWith(JUnit4.class)
 public class WindowedValueTest {
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
   @Test
   public void testWindowedValueCoder() throws CoderException {
     Instant timestamp = new Instant(1234);
@@ -86,6 +90,83 @@ public class WindowedValueTest {
     CoderProperties.coderSerializable(WindowedValue.getValueOnlyCoder(GlobalWindow.Coder.INSTANCE));
   }
 
+  @Test
+  public void testCompactWindowedValueCoder() throws Exception {
+    Instant timestamp = new Instant(1234);
+    IntervalWindow window = new IntervalWindow(timestamp, timestamp.plus(1000));
+    IntervalWindow otherWindow = new IntervalWindow(timestamp.plus(1000), timestamp.plus(2000));
+    PaneInfo pane = PaneInfo.createPane(false, false, Timing.EARLY, 2L, -1L);
+    Coder<WindowedValue<String>> coder =
+        WindowedValue.getCompactCoder(StringUtf8Coder.of(), IntervalWindow.getCoder());
+    Coder<WindowedValue<String>> globalCoder =
+        WindowedValue.getCompactCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE);
+
+    for (WindowedValue<String> value : Arrays.asList(
+        WindowedValue.of("abc", timestamp, window, PaneInfo.NO_FIRING),
+        WindowedValue.of("abc", window.maxTimestamp(), window, pane),
+        WindowedValue.of("abc", new Instant(-5000), window, PaneInfo.ON_TIME_AND_ONLY_FIRING),
+        WindowedValue.of("abc", timestamp, Arrays.asList(window, otherWindow), pane),
+        WindowedValue.valueInEmptyWindows("abc"))) {
+      CoderProperties.coderDecodeEncodeEqual(coder, value);
+      assertBufferEncodingEquals(coder, value);
+    }
+    for (WindowedValue<String> value : Arrays.asList(
+        WindowedValue.valueInGlobalWindow("abc"),
+        WindowedValue.timestampedValueInGlobalWindow("abc", timestamp),
+        WindowedValue.valueInGlobalWindow("abc", pane))) {
+      CoderProperties.coderDecodeEncodeEqual(globalCoder, value);
+      assertBufferEncodingEquals(globalCoder, value);
+    }
+  }
+
+  private static <T> void assertBufferEncodingEquals(Coder<T> coder, T value) throws Exception {
+    EncodingBuffer buffer = new EncodingBuffer();
+    CoderUtils.encodeToBuffer(coder, value, buffer, Coder.Context.OUTER);
+    Assert.assertArrayEquals(CoderUtils.encodeToByteArray(coder, value), buffer.toByteArray());
+    assertEquals(
+        value,
+        CoderUtils.decodeFromBuffer(
+            coder, new DecodingBuffer(buffer.toByteArray()), Coder.Context.OUTER));
+  }
+
+  @Test
+  public void testCompactWindowedValueCoderOmitsCommonMetadata() throws Exception {
+    // Only the header byte is added to the 3 bytes of the value.
+    assertEquals(4, CoderUtils.encodeToByteArray(
+        WindowedValue.getCompactCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE),
+        WindowedValue.valueInGlobalWindow("abc")).length);
+
+    IntervalWindow window = new IntervalWindow(new Instant(0), new Instant(60_000));
+    WindowedValue<String> value =
+        WindowedValue.of("abc", window.maxTimestamp(), window, PaneInfo.NO_FIRING);
+    int compactLength = CoderUtils.encodeToByteArray(
+        WindowedValue.getCompactCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()),
+        value).length;
+    int fullLength = CoderUtils.encodeToByteArray(
+        WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()),
+        value).length;
+    int windowLength = CoderUtils.encodeToByteArray(
+        IntervalWindow.getCoder(), window, Coder.Context.NESTED).length;
+    // The header, the window, a one byte timestamp delta and the value.
+    assertEquals(1 + windowLength + 1 + 3, compactLength);
+    assertEquals(8 + 4 + windowLength + 1 + 3, fullLength);
+  }
+
+  @Test
+  public void testCompactWindowedValueCoderRejectsUnknownVersion() throws Exception {
+    thrown.expect(CoderException.class);
+    thrown.expectMessage("Unsupported CompactWindowedValueCoder encoding version");
+    CoderUtils.decodeFromByteArray(
+        WindowedValue.getCompactCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE),
+        new byte[] {0x2A, 'a'});
+  }
+
+  @Test
+  public void testCompactWindowedValueCoderIsSerializable() {
+    CoderProperties.coderSerializable(WindowedValue.getCompactCoder(
+        StringUtf8Coder.of(), IntervalWindow.getCoder()));
+  }
+
   @Test
   public void testExplodeWindowsInNoWindowsEmptyIterable() {
     WindowedValue<String> value =
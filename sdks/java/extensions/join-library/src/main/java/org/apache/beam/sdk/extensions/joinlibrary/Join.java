@@ -17,16 +17,26 @@
  */
 package org.apache.beam.sdk.extensions.joinlibrary;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.View;
 import org.apache.beam.sdk.transforms.join.CoGbkResult;
 import org.apache.beam.sdk.transforms.join.CoGroupByKey;
 import org.apache.beam.sdk.transforms.join.KeyedPCollectionTuple;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
 
 /**
@@ -35,6 +45,46 @@ import org.apache.beam.sdk.values.TupleTag;
  */
 public class Join {
 
+  /**
+   * How a join brings the matching values of its two collections together.
+   */
+  public enum JoinStrategy {
+    /**
+     * Groups both collections by key with a {@link CoGroupByKey}. Works for collections of any
+     * size, but shuffles both of them.
+     */
+    SHUFFLE,
+
+    /**
+     * Makes the left collection available to every worker as a side input, and looks up the
+     * values of the right collection in a hash table built from it, without shuffling either
+     * collection. The left collection must fit in memory.
+     */
+    BROADCAST_LEFT,
+
+    /**
+     * Like {@link #BROADCAST_LEFT}, but broadcasting the right collection.
+     */
+    BROADCAST_RIGHT;
+
+    /**
+     * Returns the strategy to join collections with the given estimated sizes, broadcasting the
+     * smaller collection if it is at most {@code maxBroadcastSizeBytes}.
+     *
+     * <p>Estimates can be obtained from the sources of the collections, for example with
+     * {@link org.apache.beam.sdk.io.BoundedSource#getEstimatedSizeBytes}. Outer joins can only
+     * broadcast their inner collection, so the result should only be used for them if it is
+     * {@link #SHUFFLE} or broadcasts the inner collection.
+     */
+    public static JoinStrategy fromEstimatedSizes(
+        long leftSizeBytes, long rightSizeBytes, long maxBroadcastSizeBytes) {
+      if (Math.min(leftSizeBytes, rightSizeBytes) > maxBroadcastSizeBytes) {
+        return SHUFFLE;
+      }
+      return leftSizeBytes <= rightSizeBytes ? BROADCAST_LEFT : BROADCAST_RIGHT;
+    }
+  }
+
   /**
    * Inner join of two collections of KV elements.
    * @param leftCollection Left side collection to join.
@@ -47,8 +97,33 @@ public class Join {
    */
   public static <K, V1, V2> PCollection<KV<K, KV<V1, V2>>> innerJoin(
     final PCollection<KV<K, V1>> leftCollection, final PCollection<KV<K, V2>> rightCollection) {
+    return innerJoin(leftCollection, rightCollection, JoinStrategy.SHUFFLE);
+  }
+
+  /**
+   * Inner join of two collections of KV elements, using the given {@link JoinStrategy}.
+   * @param leftCollection Left side collection to join.
+   * @param rightCollection Right side collection to join.
+   * @param strategy How to bring the matching values of both collections together.
+   * @param <K> Type of the key for both collections
+   * @param <V1> Type of the values for the left collection.
+   * @param <V2> Type of the values for the right collection.
+   * @return A joined collection of KV where Key is the key and value is a
+   *         KV where Key is of type V1 and Value is type V2.
+   */
+  public static <K, V1, V2> PCollection<KV<K, KV<V1, V2>>> innerJoin(
+    final PCollection<KV<K, V1>> leftCollection,
+    final PCollection<KV<K, V2>> rightCollection,
+    JoinStrategy strategy) {
     checkNotNull(leftCollection);
     checkNotNull(rightCollection);
+    checkNotNull(strategy);
+
+    if (strategy == JoinStrategy.BROADCAST_LEFT) {
+      return broadcastJoin(rightCollection, leftCollection, true, false, null, "InnerJoin");
+    } else if (strategy == JoinStrategy.BROADCAST_RIGHT) {
+      return broadcastJoin(leftCollection, rightCollection, false, false, null, "InnerJoin");
+    }
 
     final TupleTag<V1> v1Tuple = new TupleTag<>();
     final TupleTag<V2> v2Tuple = new TupleTag<>();
@@ -95,9 +170,38 @@ public class Join {
     final PCollection<KV<K, V1>> leftCollection,
     final PCollection<KV<K, V2>> rightCollection,
     final V2 nullValue) {
+    return leftOuterJoin(leftCollection, rightCollection, nullValue, JoinStrategy.SHUFFLE);
+  }
+
+  /**
+   * Left Outer Join of two collections of KV elements, using the given {@link JoinStrategy}.
+   * Only the right collection can be broadcast.
+   * @param leftCollection Left side collection to join.
+   * @param rightCollection Right side collection to join.
+   * @param nullValue Value to use as null value when right side do not match left side.
+   * @param strategy Either {@link JoinStrategy#SHUFFLE} or {@link JoinStrategy#BROADCAST_RIGHT}.
+   * @param <K> Type of the key for both collections
+   * @param <V1> Type of the values for the left collection.
+   * @param <V2> Type of the values for the right collection.
+   * @return A joined collection of KV where Key is the key and value is a
+   *         KV where Key is of type V1 and Value is type V2. Values that
+   *         should be null or empty is replaced with nullValue.
+   */
+  public static <K, V1, V2> PCollection<KV<K, KV<V1, V2>>> leftOuterJoin(
+    final PCollection<KV<K, V1>> leftCollection,
+    final PCollection<KV<K, V2>> rightCollection,
+    final V2 nullValue,
+    JoinStrategy strategy) {
     checkNotNull(leftCollection);
     checkNotNull(rightCollection);
     checkNotNull(nullValue);
+    checkArgument(strategy != JoinStrategy.BROADCAST_LEFT,
+        "A left outer join can not broadcast its left collection");
+
+    if (strategy == JoinStrategy.BROADCAST_RIGHT) {
+      return broadcastJoin(
+          leftCollection, rightCollection, false, true, nullValue, "LeftOuterJoin");
+    }
 
     final TupleTag<V1> v1Tuple = new TupleTag<>();
     final TupleTag<V2> v2Tuple = new TupleTag<>();
@@ -148,9 +252,38 @@ public class Join {
     final PCollection<KV<K, V1>> leftCollection,
     final PCollection<KV<K, V2>> rightCollection,
     final V1 nullValue) {
+    return rightOuterJoin(leftCollection, rightCollection, nullValue, JoinStrategy.SHUFFLE);
+  }
+
+  /**
+   * Right Outer Join of two collections of KV elements, using the given {@link JoinStrategy}.
+   * Only the left collection can be broadcast.
+   * @param leftCollection Left side collection to join.
+   * @param rightCollection Right side collection to join.
+   * @param nullValue Value to use as null value when left side do not match right side.
+   * @param strategy Either {@link JoinStrategy#SHUFFLE} or {@link JoinStrategy#BROADCAST_LEFT}.
+   * @param <K> Type of the key for both collections
+   * @param <V1> Type of the values for the left collection.
+   * @param <V2> Type of the values for the right collection.
+   * @return A joined collection of KV where Key is the key and value is a
+   *         KV where Key is of type V1 and Value is type V2. Keys that
+   *         should be null or empty is replaced with nullValue.
+   */
+  public static <K, V1, V2> PCollection<KV<K, KV<V1, V2>>> rightOuterJoin(
+    final PCollection<KV<K, V1>> leftCollection,
+    final PCollection<KV<K, V2>> rightCollection,
+    final V1 nullValue,
+    JoinStrategy strategy) {
     checkNotNull(leftCollection);
     checkNotNull(rightCollection);
     checkNotNull(nullValue);
+    checkArgument(strategy != JoinStrategy.BROADCAST_RIGHT,
+        "A right outer join can not broadcast its right collection");
+
+    if (strategy == JoinStrategy.BROADCAST_LEFT) {
+      return broadcastJoin(
+          rightCollection, leftCollection, true, true, nullValue, "RightOuterJoin");
+    }
 
     final TupleTag<V1> v1Tuple = new TupleTag<>();
     final TupleTag<V2> v2Tuple = new TupleTag<>();
@@ -184,4 +317,132 @@ public class Join {
                            KvCoder.of(((KvCoder) leftCollection.getCoder()).getValueCoder(),
                                       ((KvCoder) rightCollection.getCoder()).getValueCoder())));
   }
+
+  /**
+   * Joins each element of the probe collection with the values of the build collection that
+   * have the same key, which are broadcast as a side input.
+   */
+  private static <K, ProbeT, BuildT, V1, V2> PCollection<KV<K, KV<V1, V2>>> broadcastJoin(
+    PCollection<KV<K, ProbeT>> probeCollection,
+    PCollection<KV<K, BuildT>> buildCollection,
+    boolean buildIsLeft,
+    boolean outer,
+    BuildT nullValue,
+    String name) {
+    @SuppressWarnings("unchecked")
+    KvCoder<K, ProbeT> probeCoder = (KvCoder<K, ProbeT>) probeCollection.getCoder();
+    @SuppressWarnings("unchecked")
+    KvCoder<K, BuildT> buildCoder = (KvCoder<K, BuildT>) buildCollection.getCoder();
+    // Bounded side inputs do not change, so their hash tables can be reused across bundles.
+    boolean bounded = probeCollection.isBounded() == PCollection.IsBounded.BOUNDED
+        && buildCollection.isBounded() == PCollection.IsBounded.BOUNDED;
+
+    PCollectionView<Iterable<KV<K, BuildT>>> buildView =
+        buildCollection.apply(name + "BroadcastView", View.<KV<K, BuildT>>asIterable());
+    KvCoder<?, ?> valueCoder = buildIsLeft
+        ? KvCoder.of(buildCoder.getValueCoder(), probeCoder.getValueCoder())
+        : KvCoder.of(probeCoder.getValueCoder(), buildCoder.getValueCoder());
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Coder<KV<K, KV<V1, V2>>> outputCoder =
+        (Coder) KvCoder.of(probeCoder.getKeyCoder(), valueCoder);
+
+    return probeCollection
+      .apply(name + "HashJoin", ParDo
+        .of(new HashJoinFn<K, ProbeT, BuildT, V1, V2>(
+            buildView, probeCoder.getKeyCoder(), buildIsLeft, outer, nullValue, bounded))
+        .withSideInputs(buildView))
+      .setCoder(outputCoder);
+  }
+
+  /**
+   * Looks up the values with the key of each element in a hash table built from a side input,
+   * keyed by the structural value of the key, which is its encoding for keys whose coder is not
+   * consistent with equals.
+   *
+   * <p>The tables of the {@link #MAX_CACHED_TABLES} most recently used windows are kept, so that
+   * probe elements of a few interleaved windows do not rebuild a table for every element.
+   */
+  private static class HashJoinFn<K, ProbeT, BuildT, V1, V2>
+      extends DoFn<KV<K, ProbeT>, KV<K, KV<V1, V2>>> {
+    private static final int MAX_CACHED_TABLES = 4;
+
+    private final PCollectionView<Iterable<KV<K, BuildT>>> buildView;
+    private final Coder<K> keyCoder;
+    private final boolean buildIsLeft;
+    private final boolean outer;
+    private final BuildT nullValue;
+    private final boolean cacheAcrossBundles;
+
+    private transient Map<BoundedWindow, Map<Object, List<BuildT>>> tables;
+
+    HashJoinFn(
+        PCollectionView<Iterable<KV<K, BuildT>>> buildView,
+        Coder<K> keyCoder,
+        boolean buildIsLeft,
+        boolean outer,
+        BuildT nullValue,
+        boolean cacheAcrossBundles) {
+      this.buildView = buildView;
+      this.keyCoder = keyCoder;
+      this.buildIsLeft = buildIsLeft;
+      this.outer = outer;
+      this.nullValue = nullValue;
+      this.cacheAcrossBundles = cacheAcrossBundles;
+    }
+
+    @StartBundle
+    public void startBundle(Context c) {
+      if (tables == null || !cacheAcrossBundles) {
+        tables = new LinkedHashMap<BoundedWindow, Map<Object, List<BuildT>>>(
+            MAX_CACHED_TABLES, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(
+              Map.Entry<BoundedWindow, Map<Object, List<BuildT>>> eldest) {
+            return size() > MAX_CACHED_TABLES;
+          }
+        };
+      }
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c, BoundedWindow window) throws Exception {
+      Map<Object, List<BuildT>> table = tables.get(window);
+      if (table == null) {
+        table = buildTable(c.sideInput(buildView));
+        tables.put(window, table);
+      }
+      K key = c.element().getKey();
+      ProbeT probeValue = c.element().getValue();
+      List<BuildT> buildValues = table.get(keyCoder.structuralValue(key));
+      if (buildValues != null) {
+        for (BuildT buildValue : buildValues) {
+          c.output(KV.of(key, joined(probeValue, buildValue)));
+        }
+      } else if (outer) {
+        c.output(KV.of(key, joined(probeValue, nullValue)));
+      }
+    }
+
+    private Map<Object, List<BuildT>> buildTable(Iterable<KV<K, BuildT>> buildValues)
+        throws Exception {
+      Map<Object, List<BuildT>> table = new HashMap<>();
+      for (KV<K, BuildT> kv : buildValues) {
+        Object structuralKey = keyCoder.structuralValue(kv.getKey());
+        List<BuildT> values = table.get(structuralKey);
+        if (values == null) {
+          values = new ArrayList<>(1);
+          table.put(structuralKey, values);
+        }
+        values.add(kv.getValue());
+      }
+      return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private KV<V1, V2> joined(ProbeT probeValue, BuildT buildValue) {
+      return buildIsLeft
+          ? KV.of((V1) buildValue, (V2) probeValue)
+          : KV.of((V1) probeValue, (V2) buildValue);
+    }
+  }
 }
@@ -17,16 +17,24 @@
  */
 package org.apache.beam.sdk.extensions.joinlibrary;
 
+import static org.junit.Assert.assertEquals;
+
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.extensions.joinlibrary.Join.JoinStrategy;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -151,4 +159,67 @@ public class InnerJoinTest {
             Create.of(leftListOfKv).withCoder(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()))),
         null);
   }
+
+  @Test
+  public void testBroadcastJoins() {
+    leftListOfKv.add(KV.of("Key1", 5L));
+    leftListOfKv.add(KV.of("Key2", 4L));
+    leftListOfKv.add(KV.of("Key2", 6L));
+    leftListOfKv.add(KV.of("Key3", 7L));
+    PCollection<KV<String, Long>> leftCollection =
+        p.apply("CreateLeft", Create.of(leftListOfKv));
+
+    listRightOfKv.add(KV.of("Key1", "foo"));
+    listRightOfKv.add(KV.of("Key2", "bar"));
+    listRightOfKv.add(KV.of("Key2", "gazonk"));
+    listRightOfKv.add(KV.of("Key4", "baz"));
+    PCollection<KV<String, String>> rightCollection =
+        p.apply("CreateRight", Create.of(listRightOfKv));
+
+    expectedResult.add(KV.of("Key1", KV.of(5L, "foo")));
+    expectedResult.add(KV.of("Key2", KV.of(4L, "bar")));
+    expectedResult.add(KV.of("Key2", KV.of(4L, "gazonk")));
+    expectedResult.add(KV.of("Key2", KV.of(6L, "bar")));
+    expectedResult.add(KV.of("Key2", KV.of(6L, "gazonk")));
+    PAssert.that(Join.innerJoin(leftCollection, rightCollection, JoinStrategy.BROADCAST_LEFT))
+        .containsInAnyOrder(expectedResult);
+    PAssert.that(Join.innerJoin(leftCollection, rightCollection, JoinStrategy.BROADCAST_RIGHT))
+        .containsInAnyOrder(expectedResult);
+
+    p.run();
+  }
+
+  @Test
+  public void testBroadcastJoinInterleavedWindows() {
+    List<TimestampedValue<KV<String, Long>>> left = new ArrayList<>();
+    List<TimestampedValue<KV<String, String>>> right = new ArrayList<>();
+    // More windows than the tables that are cached, with the probe elements of each window
+    // interleaved with those of the others.
+    for (long i = 0; i < 40; ++i) {
+      long window = i % 8;
+      left.add(TimestampedValue.of(KV.of("Key" + i, window), new Instant(window * 10)));
+      right.add(TimestampedValue.of(KV.of("Key" + i, "foo"), new Instant(window * 10)));
+      right.add(TimestampedValue.of(KV.of("Key" + i, "bar"), new Instant(((i + 1) % 8) * 10)));
+      expectedResult.add(KV.of("Key" + i, KV.of(window, "foo")));
+    }
+    PCollection<KV<String, Long>> leftCollection = p
+        .apply("CreateLeft", Create.timestamped(left))
+        .apply("WindowLeft", Window.<KV<String, Long>>into(FixedWindows.of(Duration.millis(10))));
+    PCollection<KV<String, String>> rightCollection = p
+        .apply("CreateRight", Create.timestamped(right))
+        .apply("WindowRight",
+            Window.<KV<String, String>>into(FixedWindows.of(Duration.millis(10))));
+
+    PAssert.that(Join.innerJoin(leftCollection, rightCollection, JoinStrategy.BROADCAST_LEFT))
+        .containsInAnyOrder(expectedResult);
+
+    p.run();
+  }
+
+  @Test
+  public void testStrategyFromEstimatedSizes() {
+    assertEquals(JoinStrategy.BROADCAST_LEFT, JoinStrategy.fromEstimatedSizes(10, 1000, 100));
+    assertEquals(JoinStrategy.BROADCAST_RIGHT, JoinStrategy.fromEstimatedSizes(1000, 10, 100));
+    assertEquals(JoinStrategy.SHUFFLE, JoinStrategy.fromEstimatedSizes(1000, 1000, 100));
+  }
 }
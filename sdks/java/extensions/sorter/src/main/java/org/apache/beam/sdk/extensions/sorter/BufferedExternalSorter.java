@@ -19,6 +19,7 @@
 package org.apache.beam.sdk.extensions.sorter;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -30,17 +31,30 @@ import org.apache.beam.sdk.values.KV;
  */
 public class BufferedExternalSorter implements Sorter {
   public static Options options() {
-    return new Options("/tmp", 100);
+    return new Options("/tmp", 100, 64, RunCompression.NONE);
+  }
+
+  /** The compression applied to the sorted runs written to the temporary location. */
+  public enum RunCompression {
+    /** Sorted runs are written uncompressed, and are read through memory-mapped buffers. */
+    NONE,
+    /** Sorted runs are compressed with Snappy. */
+    SNAPPY
   }
 
   /** Contains configuration for the sorter. */
   public static class Options implements Serializable {
     private final String tempLocation;
     private final int memoryMB;
+    private final int mergeFanIn;
+    private final RunCompression runCompression;
 
-    private Options(String tempLocation, int memoryMB) {
+    private Options(
+        String tempLocation, int memoryMB, int mergeFanIn, RunCompression runCompression) {
       this.tempLocation = tempLocation;
       this.memoryMB = memoryMB;
+      this.mergeFanIn = mergeFanIn;
+      this.runCompression = runCompression;
     }
 
     /** Sets the path to a temporary location where the sorter writes intermediate files. */
@@ -49,7 +63,7 @@ public class BufferedExternalSorter implements Sorter {
           !tempLocation.startsWith("gs://"),
           "BufferedExternalSorter does not support GCS temporary location");
 
-      return new Options(tempLocation, memoryMB);
+      return new Options(tempLocation, memoryMB, mergeFanIn, runCompression);
     }
 
     /** Returns the configured temporary location. */
@@ -64,16 +78,40 @@ public class BufferedExternalSorter implements Sorter {
      */
     public Options withMemoryMB(int memoryMB) {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
-      // Hadoop's external sort stores the number of available memory bytes in an int, this prevents
+      // The external sorter stores the number of available memory bytes in an int, this prevents
       // overflow
       checkArgument(memoryMB < 2048, "memoryMB must be less than 2048");
-      return new Options(tempLocation, memoryMB);
+      return new Options(tempLocation, memoryMB, mergeFanIn, runCompression);
     }
 
     /** Returns the configured size of the memory buffer. */
     public int getMemoryMB() {
       return memoryMB;
     }
+
+    /**
+     * Sets the maximum number of sorted runs the external sorter merges at once. Must be at least
+     * 2.
+     */
+    public Options withMergeFanIn(int mergeFanIn) {
+      checkArgument(mergeFanIn >= 2, "mergeFanIn must be at least 2");
+      return new Options(tempLocation, memoryMB, mergeFanIn, runCompression);
+    }
+
+    /** Returns the configured maximum number of sorted runs merged at once. */
+    public int getMergeFanIn() {
+      return mergeFanIn;
+    }
+
+    /** Sets the compression applied to the sorted runs written to the temporary location. */
+    public Options withRunCompression(RunCompression runCompression) {
+      return new Options(tempLocation, memoryMB, mergeFanIn, checkNotNull(runCompression));
+    }
+
+    /** Returns the configured compression applied to sorted runs. */
+    public RunCompression getRunCompression() {
+      return runCompression;
+    }
   }
 
   private ExternalSorter externalSorter;
@@ -90,6 +128,8 @@ public class BufferedExternalSorter implements Sorter {
     ExternalSorter.Options externalSorterOptions = new ExternalSorter.Options();
     externalSorterOptions.setMemoryMB(options.getMemoryMB());
     externalSorterOptions.setTempLocation(options.getTempLocation());
+    externalSorterOptions.setMergeFanIn(options.getMergeFanIn());
+    externalSorterOptions.setRunCompression(options.getRunCompression());
 
     InMemorySorter.Options inMemorySorterOptions = new InMemorySorter.Options();
     inMemorySorterOptions.setMemoryMB(options.getMemoryMB());
@@ -117,14 +157,13 @@ public class BufferedExternalSorter implements Sorter {
 
   /**
    * Transfers all of the records loaded so far into the in memory sorter over to the external
-   * sorter.
+   * sorter, which writes them as a sorted run before buffering any records of its own.
    */
   private void transferToExternalSorter() throws IOException {
-    for (KV<byte[], byte[]> record : inMemorySorter.sort()) {
-      externalSorter.add(record);
-    }
-    // Allow in memory sorter and its contents to be garbage collected
+    Iterable<KV<byte[], byte[]>> sorted = inMemorySorter.sort();
+    // Allow in memory sorter and its contents to be garbage collected once they are written
     inMemorySorter = null;
+    externalSorter.addSortedRun(sorted);
   }
 
   @Override
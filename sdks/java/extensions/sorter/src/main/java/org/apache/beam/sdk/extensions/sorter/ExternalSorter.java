@@ -19,52 +19,101 @@
 package org.apache.beam.sdk.extensions.sorter;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.beam.sdk.extensions.sorter.BufferedExternalSorter.RunCompression;
 import org.apache.beam.sdk.values.KV;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.SequenceFile;
-import org.apache.hadoop.io.SequenceFile.CompressionType;
-import org.apache.hadoop.io.SequenceFile.Sorter.RawKeyValueIterator;
-import org.apache.hadoop.io.SequenceFile.Writer;
-import org.apache.hadoop.mapred.JobConf;
-
-/** Does an external sort of the provided values using Hadoop's {@link SequenceFile}. */
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+/**
+ * Does an external sort of the provided values.
+ *
+ * <p>Records are buffered in an {@link InMemorySorter} until its memory buffer is full, at which
+ * point they are sorted and written to a local temporary file as a sorted run. Each record of a
+ * run is written as its key length, its value length, its key and then its value. When more runs
+ * exist than the configured merge fan-in, groups of runs are merged into longer runs until the
+ * remaining runs can be merged in a single pass, which is performed by each iterator over the
+ * sorted records. Uncompressed runs are read through memory-mapped buffers.
+ *
+ * <p>When records were written to runs, the sorted records can be iterated over any number of
+ * times. Once they and all of their iterators are no longer reachable, the files of the runs are
+ * deleted the next time a sorter is created. Files that remain are deleted when the JVM exits.
+ */
 class ExternalSorter implements Sorter {
+  /** The comparator to use to merge the records of sorted runs by key. */
+  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  /** The size of the buffer used to write runs. */
+  private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+  /** The largest region of a run that is memory-mapped at a time. */
+  private static final long MAX_MAPPED_BYTES = 64 * 1024 * 1024;
+
+  private static final ReferenceQueue<SortedRecordsIterable> UNREACHABLE =
+      new ReferenceQueue<>();
+
+  /** Keeps the references to runs that have not been deleted yet from being collected. */
+  private static final Set<RunFilesReference> RUN_FILES =
+      Collections.newSetFromMap(new ConcurrentHashMap<RunFilesReference, Boolean>());
+
   private Options options;
 
   /** Whether {@link #sort()} was already called. */
   private boolean sortCalled = false;
 
-  /** SequenceFile Writer for writing all input data to a file. */
-  private Writer writer;
+  /** Buffers records before they are written as a sorted run. */
+  private InMemorySorter buffer;
 
-  /** Sorter used to sort the input file. */
-  private SequenceFile.Sorter sorter;
+  /** Whether {@link #buffer} contains any records. */
+  private boolean bufferNonEmpty;
 
-  /** Temporary directory for input and intermediate files. */
-  private Path tempDir;
+  /** Temporary directory for sorted runs, or null if no run has been written. */
+  private File tempDir;
 
-  /** The list of input files to be sorted. */
-  private Path[] paths;
+  /** The sorted runs which have been written and not yet merged. */
+  private final List<Run> runs = new ArrayList<>();
 
-  private boolean initialized = false;
+  /** The number of runs that have been created, used to name the file of each run. */
+  private int numRunsCreated;
 
   /** {@link Options} contains configuration of the sorter. */
   public static class Options implements Serializable {
     private String tempLocation = "/tmp";
     private int memoryMB = 100;
+    private int mergeFanIn = 64;
+    private RunCompression runCompression = RunCompression.NONE;
 
     /** Sets the path to a temporary location where the sorter writes intermediate files. */
     public Options setTempLocation(String tempLocation) {
@@ -87,8 +136,7 @@ class ExternalSorter implements Sorter {
      */
     public Options setMemoryMB(int memoryMB) {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
-      // Hadoop's external sort stores the number of available memory bytes in an int, this prevents
-      // integer overflow
+      // The size of the memory buffer in bytes is stored in an int, this prevents integer overflow
       checkArgument(memoryMB < 2048, "memoryMB must be less than 2048");
       this.memoryMB = memoryMB;
       return this;
@@ -98,6 +146,29 @@ class ExternalSorter implements Sorter {
     public int getMemoryMB() {
       return memoryMB;
     }
+
+    /** Sets the maximum number of sorted runs merged at once. Must be at least 2. */
+    public Options setMergeFanIn(int mergeFanIn) {
+      checkArgument(mergeFanIn >= 2, "mergeFanIn must be at least 2");
+      this.mergeFanIn = mergeFanIn;
+      return this;
+    }
+
+    /** Returns the configured maximum number of sorted runs merged at once. */
+    public int getMergeFanIn() {
+      return mergeFanIn;
+    }
+
+    /** Sets the compression applied to sorted runs written to the temporary location. */
+    public Options setRunCompression(RunCompression runCompression) {
+      this.runCompression = checkNotNull(runCompression);
+      return this;
+    }
+
+    /** Returns the configured compression applied to sorted runs. */
+    public RunCompression getRunCompression() {
+      return runCompression;
+    }
   }
 
   /** Returns a {@link Sorter} configured with the given {@link Options}. */
@@ -109,12 +180,32 @@ class ExternalSorter implements Sorter {
   public void add(KV<byte[], byte[]> record) throws IOException {
     checkState(!sortCalled, "Records can only be added before sort()");
 
-    initHadoopSorter();
+    if (buffer == null) {
+      buffer = createBuffer();
+    }
+    if (!buffer.addIfRoom(record)) {
+      spillBuffer();
+      buffer = createBuffer();
+      if (!buffer.addIfRoom(record)) {
+        // The record is too large to be buffered, so it forms a run of its own
+        runs.add(writeRun(Collections.singletonList(record)));
+        return;
+      }
+    }
+    bufferNonEmpty = true;
+  }
 
-    BytesWritable key = new BytesWritable(record.getKey());
-    BytesWritable value = new BytesWritable(record.getValue());
+  /**
+   * Adds records that are already sorted, writing them directly as a run rather than buffering
+   * and sorting them again. Records with equal keys that were added before these records are
+   * returned before them.
+   */
+  void addSortedRun(Iterable<KV<byte[], byte[]>> sortedRecords) throws IOException {
+    checkState(!sortCalled, "Records can only be added before sort()");
 
-    writer.append(key, value);
+    spillBuffer();
+    buffer = null;
+    runs.add(writeRun(sortedRecords));
   }
 
   @Override
@@ -122,114 +213,457 @@ class ExternalSorter implements Sorter {
     checkState(!sortCalled, "sort() can only be called once.");
     sortCalled = true;
 
-    initHadoopSorter();
-
-    writer.close();
+    if (runs.isEmpty()) {
+      // Everything fit in memory, so there is nothing to merge
+      InMemorySorter sorted = buffer == null ? createBuffer() : buffer;
+      buffer = null;
+      return sorted.sort();
+    }
 
-    return new SortedRecordsIterable();
+    spillBuffer();
+    buffer = null;
+    while (runs.size() > options.getMergeFanIn()) {
+      mergeIntermediateRuns();
+    }
+    return new SortedRecordsIterable(new ArrayList<>(runs), tempDir);
   }
 
   private ExternalSorter(Options options) {
+    deleteUnreachableRuns();
     this.options = options;
   }
 
+  private InMemorySorter createBuffer() {
+    InMemorySorter.Options bufferOptions = new InMemorySorter.Options();
+    bufferOptions.setMemoryMB(options.getMemoryMB());
+    return InMemorySorter.create(bufferOptions);
+  }
+
+  /** Writes the contents of the buffer, if any, as a sorted run. */
+  private void spillBuffer() throws IOException {
+    if (bufferNonEmpty) {
+      runs.add(writeRun(buffer.sort()));
+      bufferNonEmpty = false;
+    }
+  }
+
   /**
-   * Initializes the hadoop sorter. Does some local file system setup, and is somewhat expensive
-   * (~20 ms on local machine). Only executed when necessary.
+   * Merges each consecutive group of runs, up to the merge fan-in in size, into a single run.
+   * Preserves the relative order of the runs, so records with equal keys stay in the order they
+   * were added.
    */
-  private void initHadoopSorter() throws IOException {
-    if (!initialized) {
-      tempDir = new Path(options.getTempLocation(), "tmp" + UUID.randomUUID().toString());
-      paths = new Path[] {new Path(tempDir, "test.seq")};
+  private void mergeIntermediateRuns() throws IOException {
+    int mergeFanIn = options.getMergeFanIn();
+    List<Run> merged = new ArrayList<>();
+    for (int start = 0; start < runs.size(); start += mergeFanIn) {
+      List<Run> group = runs.subList(start, Math.min(start + mergeFanIn, runs.size()));
+      if (group.size() == 1) {
+        merged.add(group.get(0));
+      } else {
+        Run run;
+        try (MergingIterator iterator = new MergingIterator(group)) {
+          run = writeRun(iterator);
+        }
+        for (Run input : group) {
+          input.delete();
+        }
+        merged.add(run);
+      }
+    }
+    runs.clear();
+    runs.addAll(merged);
+  }
 
-      JobConf conf = new JobConf();
-      // Sets directory for intermediate files created during merge of merge sort
-      conf.set("io.seqfile.local.dir", tempDir.toUri().getPath());
+  /** Writes the provided records, which must be sorted, to a new run. */
+  private Run writeRun(Iterable<KV<byte[], byte[]>> records) throws IOException {
+    return writeRun(records.iterator());
+  }
 
-      writer =
-          SequenceFile.createWriter(
-              conf,
-              Writer.valueClass(BytesWritable.class),
-              Writer.keyClass(BytesWritable.class),
-              Writer.file(paths[0]),
-              Writer.compression(CompressionType.NONE));
+  private Run writeRun(Iterator<KV<byte[], byte[]>> records) throws IOException {
+    if (tempDir == null) {
+      tempDir = new File(options.getTempLocation(), "tmp" + UUID.randomUUID().toString());
+      if (!tempDir.mkdirs()) {
+        throw new IOException("Unable to create temporary directory " + tempDir);
+      }
+      // Files and directories are deleted on exit in the reverse order they were registered
+      tempDir.deleteOnExit();
+    }
+    File file = new File(tempDir, "run-" + numRunsCreated++);
+    file.deleteOnExit();
+
+    long numRecords = 0;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel()) {
+      OutputStream out =
+          new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_BYTES);
+      if (options.getRunCompression() == RunCompression.SNAPPY) {
+        out = new SnappyOutputStream(out);
+      }
+      DataOutputStream dataOut = new DataOutputStream(out);
+      while (records.hasNext()) {
+        KV<byte[], byte[]> record = records.next();
+        dataOut.writeInt(record.getKey().length);
+        dataOut.writeInt(record.getValue().length);
+        dataOut.write(record.getKey());
+        dataOut.write(record.getValue());
+        numRecords++;
+      }
+      dataOut.close();
+    }
+    return new Run(file, numRecords, options.getRunCompression());
+  }
 
-      FileSystem fs = FileSystem.getLocal(conf);
-      // Directory has to exist for Hadoop to recognize it as deletable on exit
-      fs.mkdirs(tempDir);
-      fs.deleteOnExit(tempDir);
+  /** A sorted run of records stored in a local file. */
+  private static class Run {
+    private final File file;
+    private final long numRecords;
+    private final RunCompression compression;
 
-      sorter =
-          new SequenceFile.Sorter(
-              fs, new BytesWritable.Comparator(), BytesWritable.class, BytesWritable.class, conf);
-      sorter.setMemory(options.getMemoryMB() * 1024 * 1024);
+    private Run(File file, long numRecords, RunCompression compression) {
+      this.file = file;
+      this.numRecords = numRecords;
+      this.compression = compression;
+    }
 
-      initialized = true;
+    /**
+     * Returns a new {@link RunReader} positioned before the first record of this run. The index
+     * orders readers whose current records have equal keys.
+     */
+    private RunReader open(int index) throws IOException {
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = randomAccessFile.getChannel();
+        InputStream in;
+        if (compression == RunCompression.SNAPPY) {
+          in = new SnappyInputStream(Channels.newInputStream(channel));
+        } else {
+          in = new MappedInputStream(channel);
+        }
+        return new RunReader(this, index, randomAccessFile, new DataInputStream(in));
+      } catch (IOException e) {
+        randomAccessFile.close();
+        throw e;
+      }
+    }
+
+    private void delete() {
+      file.delete();
     }
   }
 
-  /** An {@link Iterable} producing the iterators over sorted data. */
-  private class SortedRecordsIterable implements Iterable<KV<byte[], byte[]>> {
+  /** Reads the records of a {@link Run} in order. */
+  private static class RunReader implements Closeable {
+    private final Run run;
+    private final int index;
+    private final RandomAccessFile file;
+    private final DataInputStream in;
+    private long remaining;
+    private KV<byte[], byte[]> current;
+
+    private RunReader(Run run, int index, RandomAccessFile file, DataInputStream in) {
+      this.run = run;
+      this.index = index;
+      this.file = file;
+      this.in = in;
+      this.remaining = run.numRecords;
+    }
+
+    /** Reads the next record into {@link #current}, returning false if the run is exhausted. */
+    private boolean advance() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+      byte[] key = new byte[in.readInt()];
+      byte[] value = new byte[in.readInt()];
+      in.readFully(key);
+      in.readFully(value);
+      current = KV.of(key, value);
+      remaining--;
+      return true;
+    }
+
     @Override
-    public Iterator<KV<byte[], byte[]>> iterator() {
-      return new SortedRecordsIterator();
+    public void close() throws IOException {
+      try {
+        in.close();
+      } finally {
+        file.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "RunReader{" + run.file + ", remaining=" + remaining + "}";
     }
   }
 
-  /** An {@link Iterator} producing the sorted data. */
-  private class SortedRecordsIterator implements Iterator<KV<byte[], byte[]>> {
-    private RawKeyValueIterator iterator;
+  /**
+   * An {@link InputStream} over the contents of a {@link FileChannel} which maps regions of the
+   * file into memory as they are read.
+   */
+  private static class MappedInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long size;
+    private long mappedEnd;
+    private MappedByteBuffer mapped;
+
+    private MappedInputStream(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+    }
+
+    /** Ensures the mapped region has remaining bytes, returning false at the end of the file. */
+    private boolean ensureMapped() throws IOException {
+      if (mapped != null && mapped.hasRemaining()) {
+        return true;
+      }
+      if (mappedEnd >= size) {
+        return false;
+      }
+      long length = Math.min(MAX_MAPPED_BYTES, size - mappedEnd);
+      unmap();
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, mappedEnd, length);
+      mappedEnd += length;
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureMapped()) {
+        return -1;
+      }
+      return mapped.get() & 0xff;
+    }
 
-    /** Next {@link KV} to return from {@link #next()}. */
-    private KV<byte[], byte[]> nextKV = null;
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureMapped()) {
+        return -1;
+      }
+      int read = Math.min(len, mapped.remaining());
+      mapped.get(b, off, read);
+      return read;
+    }
 
-    SortedRecordsIterator() {
+    @Override
+    public void close() {
+      unmap();
+    }
+
+    /**
+     * Releases the mapped region, which is otherwise only unmapped when the buffer is garbage
+     * collected. The buffer is not used afterwards, as it is only read by this stream.
+     */
+    private void unmap() {
+      if (mapped != null) {
+        MappedByteBuffer buffer = mapped;
+        mapped = null;
+        Unmapper.unmap(buffer);
+      }
+    }
+  }
+
+  /**
+   * Unmaps {@link MappedByteBuffer MappedByteBuffers} through the JDK internal APIs available,
+   * which differ between Java 8 and Java 9 and later. Does nothing if neither is accessible.
+   */
+  private static class Unmapper {
+    /** {@code sun.misc.Unsafe.invokeCleaner}, available from Java 9. */
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+      Method invokeCleaner = null;
+      Object unsafe = null;
       try {
-        this.iterator = sorter.sortAndIterate(paths, tempDir, false);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        unsafe = theUnsafe.get(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        invokeCleaner = null;
       }
+      INVOKE_CLEANER = invokeCleaner;
+      UNSAFE = unsafe;
+    }
 
-      nextKV = KV.of(null, null); // A dummy value that will be overwritten by next().
-      next();
+    private static void unmap(MappedByteBuffer buffer) {
+      try {
+        if (INVOKE_CLEANER != null) {
+          INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } else {
+          // Java 8: ((sun.nio.ch.DirectBuffer) buffer).cleaner().clean()
+          Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+          cleanerMethod.setAccessible(true);
+          Object cleaner = cleanerMethod.invoke(buffer);
+          if (cleaner != null) {
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+          }
+        }
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // The buffer is unmapped when it is garbage collected instead.
+      }
+    }
+  }
+
+  /**
+   * Merges the records of a set of {@link Run Runs} using a heap keyed on the current record of
+   * each run. Records with equal keys are returned in the order of the runs that contain them.
+   */
+  private static class MergingIterator implements Iterator<KV<byte[], byte[]>>, Closeable {
+    private final List<RunReader> readers = new ArrayList<>();
+    private final PriorityQueue<RunReader> heap;
+
+    private MergingIterator(List<Run> runs) throws IOException {
+      heap =
+          new PriorityQueue<>(
+              Math.max(1, runs.size()),
+              new Comparator<RunReader>() {
+                @Override
+                public int compare(RunReader o1, RunReader o2) {
+                  int comparison = COMPARATOR.compare(o1.current.getKey(), o2.current.getKey());
+                  if (comparison != 0) {
+                    return comparison;
+                  }
+                  return Integer.compare(o1.index, o2.index);
+                }
+              });
+      try {
+        for (Run run : runs) {
+          RunReader reader = run.open(readers.size());
+          readers.add(reader);
+          if (reader.advance()) {
+            heap.add(reader);
+          }
+        }
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
     }
 
     @Override
     public boolean hasNext() {
-      return nextKV != null;
+      return !heap.isEmpty();
     }
 
     @Override
     public KV<byte[], byte[]> next() {
-      if (nextKV == null) {
+      RunReader reader = heap.poll();
+      if (reader == null) {
         throw new NoSuchElementException();
       }
+      KV<byte[], byte[]> next = reader.current;
+      try {
+        if (reader.advance()) {
+          heap.add(reader);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return next;
+    }
 
-      KV<byte[], byte[]> current = nextKV;
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Iterator does not support remove");
+    }
 
-      try {
-        if (iterator.next()) {
-          // Parse key from DataOutputBuffer.
-          ByteArrayInputStream keyStream = new ByteArrayInputStream(iterator.getKey().getData());
-          BytesWritable key = new BytesWritable();
-          key.readFields(new DataInputStream(keyStream));
-
-          // Parse value from ValueBytes.
-          ByteArrayOutputStream valOutStream = new ByteArrayOutputStream();
-          iterator.getValue().writeUncompressedBytes(new DataOutputStream(valOutStream));
-          ByteArrayInputStream valInStream = new ByteArrayInputStream(valOutStream.toByteArray());
-          BytesWritable value = new BytesWritable();
-          value.readFields(new DataInputStream(valInStream));
-
-          nextKV = KV.of(key.copyBytes(), value.copyBytes());
-        } else {
-          nextKV = null;
+    @Override
+    public void close() throws IOException {
+      IOException failure = null;
+      for (RunReader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          failure = e;
         }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  /**
+   * Closes the readers left open by, and deletes the runs of, the sorted records that are no longer
+   * reachable.
+   */
+  static void deleteUnreachableRuns() {
+    Reference<?> reference;
+    while ((reference = UNREACHABLE.poll()) != null) {
+      RunFilesReference runFiles = (RunFilesReference) reference;
+      RUN_FILES.remove(runFiles);
+      runFiles.delete();
+    }
+  }
+
+  /**
+   * An {@link Iterable} producing the iterators over sorted data. Each iterator merges the runs
+   * from their beginning, so the sorted data can be iterated over any number of times.
+   */
+  private static class SortedRecordsIterable implements Iterable<KV<byte[], byte[]>> {
+    private final List<Run> runs;
+    private final RunFilesReference reference;
+
+    private SortedRecordsIterable(List<Run> runs, File tempDir) {
+      this.runs = runs;
+      this.reference = new RunFilesReference(this, runs, tempDir);
+      RUN_FILES.add(reference);
+    }
+
+    @Override
+    public Iterator<KV<byte[], byte[]>> iterator() {
+      return new SortedRecordsIterator(this);
+    }
+  }
+
+  /** An {@link Iterator} producing the sorted data. */
+  private static class SortedRecordsIterator implements Iterator<KV<byte[], byte[]>> {
+    /** Keeps the runs from being deleted while this iterator is reachable. */
+    private final SortedRecordsIterable iterable;
+    private final MergingIterator iterator;
+    private boolean closed;
+
+    SortedRecordsIterator(SortedRecordsIterable iterable) {
+      this.iterable = iterable;
+      try {
+        this.iterator = new MergingIterator(iterable.runs);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
+      iterable.reference.openIterators.add(iterator);
+      closeIfExhausted();
+    }
 
-      return current;
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public KV<byte[], byte[]> next() {
+      KV<byte[], byte[]> next = iterator.next();
+      closeIfExhausted();
+      return next;
+    }
+
+    /** Releases the files of the runs once all records have been read. */
+    private void closeIfExhausted() {
+      if (!closed && !iterator.hasNext()) {
+        closed = true;
+        iterable.reference.openIterators.remove(iterator);
+        try {
+          iterator.close();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
     }
 
     @Override
@@ -237,4 +671,37 @@ class ExternalSorter implements Sorter {
       throw new UnsupportedOperationException("Iterator does not support remove");
     }
   }
+
+  /**
+   * Closes the iterators that were not exhausted and deletes the runs and their directory, once
+   * their {@link SortedRecordsIterable} is no longer reachable. Since iterators refer to their
+   * iterable, none of them is reachable then either.
+   */
+  private static class RunFilesReference extends PhantomReference<SortedRecordsIterable> {
+    private final List<Run> runs;
+    private final File tempDir;
+    private final Set<MergingIterator> openIterators =
+        Collections.newSetFromMap(new ConcurrentHashMap<MergingIterator, Boolean>());
+
+    private RunFilesReference(SortedRecordsIterable referent, List<Run> runs, File tempDir) {
+      super(referent, UNREACHABLE);
+      this.runs = runs;
+      this.tempDir = tempDir;
+    }
+
+    private void delete() {
+      for (MergingIterator iterator : openIterators) {
+        try {
+          iterator.close();
+        } catch (IOException e) {
+          // The run is deleted anyway, and its space is released once the file is closed.
+        }
+      }
+      openIterators.clear();
+      for (Run run : runs) {
+        run.delete();
+      }
+      tempDir.delete();
+    }
+  }
 }
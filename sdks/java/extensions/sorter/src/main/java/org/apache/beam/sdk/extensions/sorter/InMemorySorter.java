@@ -21,16 +21,23 @@ package org.apache.beam.sdk.extensions.sorter;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
-import com.google.common.primitives.UnsignedBytes;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import org.apache.beam.sdk.values.KV;
 
 /**
  * Sorts {@code <key, value>} pairs in memory. Based on the configured size of the memory buffer,
  * will reject additional pairs.
+ *
+ * <p>The bytes of each added key and value are copied into large {@code byte[]} slabs, and each
+ * record is tracked by a handful of primitive array entries rather than by separate objects, so
+ * nearly all of the memory buffer holds record data. Records are ordered by comparing the first 8
+ * bytes of their keys as an unsigned {@code long}, falling back to an unsigned lexicographical
+ * comparison of the complete keys only when those prefixes are equal.
  */
 class InMemorySorter implements Sorter {
   /** {@code Options} contains configuration of the sorter. */
@@ -49,40 +56,76 @@ class InMemorySorter implements Sorter {
     }
   }
 
-  /** The comparator to use to sort the records by key. */
-  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+  /** The largest slab allocated to hold the bytes of more than one record. */
+  private static final int MAX_SLAB_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * The size of the first slab. Each subsequent slab is twice as large as the previous one, up to
+   * the maximum slab size, so sorters holding only a few records stay small.
+   */
+  private static final int INITIAL_SLAB_BYTES = 256;
 
-  /** How many bytes per word in the running JVM. Assumes 64 bit/8 bytes if unknown. */
-  private static final long NUM_BYTES_PER_WORD = getNumBytesPerWord();
+  /** The number of records the index has room for when the sorter is created. */
+  private static final int INITIAL_INDEX_CAPACITY = 16;
 
   /**
-   * Estimate of memory overhead per KV record in bytes not including memory associated with keys
-   * and values.
+   * Bytes of index per record.
    *
    * <ul>
-   *   <li> Object reference within {@link ArrayList} (1 word),
-   *   <li> A {@link KV} (2 words),
-   *   <li> Two byte arrays (2 words for array lengths),
-   *   <li> Per-object overhead (JVM-specific, guessing 2 words * 3 objects)
+   *   <li> The key prefix ({@code long}),
+   *   <li> The slab and offset of the record ({@code long}),
+   *   <li> The key and value lengths (2 {@code int}s),
+   *   <li> The sorted order, and the scratch space used while sorting (2 {@code int}s).
    * </ul>
    */
-  private static final long RECORD_MEMORY_OVERHEAD_ESTIMATE = 11 * NUM_BYTES_PER_WORD;
+  private static final long INDEX_BYTES_PER_RECORD = 8 + 8 + 4 + 4 + 4 + 4;
 
   /** Maximum size of the buffer in bytes. */
-  private long maxBufferSize;
+  private final long maxBufferSize;
+
+  /** Maximum size of the slabs which hold the bytes of more than one record. */
+  private final int maxSlabSize;
+
+  /** Size of the next slab to allocate, unless the record to be added is larger. */
+  private int nextSlabSize = INITIAL_SLAB_BYTES;
 
-  /** Current number of stored bytes. Including estimated overhead bytes. */
+  /** Current number of allocated bytes, including slabs and the index. */
   private long numBytes;
 
   /** Whether sort has been called. */
   private boolean sortCalled;
 
-  /** The stored records to be sorted. */
-  private ArrayList<KV<byte[], byte[]>> records = new ArrayList<KV<byte[], byte[]>>();
+  /** Slabs holding the bytes of each record, key followed by value. */
+  private final List<byte[]> slabs = new ArrayList<>();
+
+  /** The slab that new records are appended to, or null if no slab has room. */
+  private byte[] currentSlab;
+
+  /** Index of the first free byte in {@link #currentSlab}. */
+  private int currentSlabOffset;
+
+  /** The number of stored records. */
+  private int numRecords;
+
+  /** The first 8 bytes of the key of each record, as an unsigned big-endian value. */
+  private long[] keyPrefixes;
+
+  /** The slab index (high 32 bits) and offset within that slab (low 32 bits) of each record. */
+  private long[] locations;
+
+  private int[] keyLengths;
+  private int[] valueLengths;
 
   /** Private constructor. */
   private InMemorySorter(Options options) {
     maxBufferSize = options.getMemoryMB() * 1024L * 1024L;
+    maxSlabSize =
+        (int) Math.max(INITIAL_SLAB_BYTES, Math.min(MAX_SLAB_BYTES, maxBufferSize / 16));
+    keyPrefixes = new long[INITIAL_INDEX_CAPACITY];
+    locations = new long[INITIAL_INDEX_CAPACITY];
+    keyLengths = new int[INITIAL_INDEX_CAPACITY];
+    valueLengths = new int[INITIAL_INDEX_CAPACITY];
+    numBytes = INITIAL_INDEX_CAPACITY * INDEX_BYTES_PER_RECORD;
   }
 
   /** Create a new sorter from provided options. */
@@ -99,14 +142,60 @@ class InMemorySorter implements Sorter {
   public boolean addIfRoom(KV<byte[], byte[]> record) {
     checkState(!sortCalled, "Records can only be added before sort()");
 
-    long recordBytes = estimateRecordBytes(record);
-    if (roomInBuffer(numBytes + recordBytes, records.size() + 1)) {
-      records.add(record);
-      numBytes += recordBytes;
-      return true;
-    } else {
+    byte[] key = record.getKey();
+    byte[] value = record.getValue();
+    long recordBytes = (long) key.length + value.length;
+
+    long additionalBytes = 0;
+    int newCapacity = keyPrefixes.length;
+    if (numRecords == keyPrefixes.length) {
+      if (numRecords == Integer.MAX_VALUE) {
+        return false;
+      }
+      newCapacity = (int) Math.min(Integer.MAX_VALUE, numRecords + (numRecords >> 1) + 1L);
+      // The old index is only released once the new one has been populated.
+      additionalBytes += newCapacity * INDEX_BYTES_PER_RECORD;
+    }
+    long newSlabBytes = 0;
+    if (currentSlab == null || recordBytes > currentSlab.length - currentSlabOffset) {
+      newSlabBytes = Math.max(nextSlabSize, recordBytes);
+      if (newSlabBytes > Integer.MAX_VALUE) {
+        return false;
+      }
+      additionalBytes += newSlabBytes;
+    }
+    if (numBytes + additionalBytes > maxBufferSize) {
       return false;
     }
+
+    if (newCapacity != keyPrefixes.length) {
+      numBytes -= keyPrefixes.length * INDEX_BYTES_PER_RECORD;
+      keyPrefixes = Arrays.copyOf(keyPrefixes, newCapacity);
+      locations = Arrays.copyOf(locations, newCapacity);
+      keyLengths = Arrays.copyOf(keyLengths, newCapacity);
+      valueLengths = Arrays.copyOf(valueLengths, newCapacity);
+      numBytes += newCapacity * INDEX_BYTES_PER_RECORD;
+    }
+    if (newSlabBytes > 0) {
+      currentSlab = new byte[(int) newSlabBytes];
+      currentSlabOffset = 0;
+      slabs.add(currentSlab);
+      numBytes += newSlabBytes;
+      nextSlabSize = Math.min(maxSlabSize, nextSlabSize * 2);
+    }
+
+    System.arraycopy(key, 0, currentSlab, currentSlabOffset, key.length);
+    System.arraycopy(value, 0, currentSlab, currentSlabOffset + key.length, value.length);
+    keyPrefixes[numRecords] = prefix(key);
+    locations[numRecords] = ((long) (slabs.size() - 1) << 32) | currentSlabOffset;
+    keyLengths[numRecords] = key.length;
+    valueLengths[numRecords] = value.length;
+    numRecords++;
+    currentSlabOffset += (int) recordBytes;
+    if (currentSlabOffset == currentSlab.length) {
+      currentSlab = null;
+    }
+    return true;
   }
 
   @Override
@@ -114,53 +203,137 @@ class InMemorySorter implements Sorter {
     checkState(!sortCalled, "sort() can only be called once.");
 
     sortCalled = true;
+    currentSlab = null;
 
-    Comparator<KV<byte[], byte[]>> kvComparator =
-        new Comparator<KV<byte[], byte[]>>() {
+    final int[] order = new int[numRecords];
+    for (int i = 0; i < numRecords; i++) {
+      order[i] = i;
+    }
+    mergeSort(order, new int[numRecords], 0, numRecords);
 
-          @Override
-          public int compare(KV<byte[], byte[]> o1, KV<byte[], byte[]> o2) {
-            return COMPARATOR.compare(o1.getKey(), o2.getKey());
-          }
-        };
-    Collections.sort(records, kvComparator);
-    return Collections.unmodifiableList(records);
+    return new Iterable<KV<byte[], byte[]>>() {
+      @Override
+      public Iterator<KV<byte[], byte[]>> iterator() {
+        return new SortedIterator(order);
+      }
+    };
   }
 
   /**
-   * Estimate the number of additional bytes required to store this record. Including the key, the
-   * value and any overhead for objects and references.
+   * Stably sorts {@code order[from, to)} by the keys of the records, using {@code scratch} as
+   * temporary space.
    */
-  private long estimateRecordBytes(KV<byte[], byte[]> record) {
-    return RECORD_MEMORY_OVERHEAD_ESTIMATE + record.getKey().length + record.getValue().length;
+  private void mergeSort(int[] order, int[] scratch, int from, int to) {
+    if (to - from <= 16) {
+      // Insertion sort small ranges
+      for (int i = from + 1; i < to; i++) {
+        int record = order[i];
+        int j = i;
+        while (j > from && compareRecords(order[j - 1], record) > 0) {
+          order[j] = order[j - 1];
+          j--;
+        }
+        order[j] = record;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(order, scratch, from, mid);
+    mergeSort(order, scratch, mid, to);
+    if (compareRecords(order[mid - 1], order[mid]) <= 0) {
+      // Already in order
+      return;
+    }
+    System.arraycopy(order, from, scratch, from, to - from);
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < mid && compareRecords(scratch[left], scratch[right]) <= 0)) {
+        order[i] = scratch[left++];
+      } else {
+        order[i] = scratch[right++];
+      }
+    }
   }
 
-  /**
-   * Check whether we have room to store the provided total number of bytes and total number of
-   * records.
-   */
-  private boolean roomInBuffer(long numBytes, long numRecords) {
-    // Collections.sort may allocate up to n/2 extra object references.
-    // Also, ArrayList grows by a factor of 1.5x, so there might be up to n/2 null object
-    // references in the backing array.
-    // And finally, in Java 7, Collections.sort performs a defensive copy to an array in case the
-    // input list is a LinkedList.
-    // So assume we need an additional overhead of two words per record in the worst case
-    return (numBytes + (numRecords * NUM_BYTES_PER_WORD * 2)) < maxBufferSize;
+  /** Compares the keys of two records as unsigned lexicographical byte sequences. */
+  private int compareRecords(int first, int second) {
+    int prefixComparison =
+        Long.compare(
+            keyPrefixes[first] + Long.MIN_VALUE, keyPrefixes[second] + Long.MIN_VALUE);
+    if (prefixComparison != 0) {
+      return prefixComparison;
+    }
+    int firstLength = keyLengths[first];
+    int secondLength = keyLengths[second];
+    int minLength = Math.min(firstLength, secondLength);
+    if (minLength > 8) {
+      byte[] firstSlab = slabs.get(slab(locations[first]));
+      byte[] secondSlab = slabs.get(slab(locations[second]));
+      int firstOffset = offset(locations[first]);
+      int secondOffset = offset(locations[second]);
+      // The prefixes are equal, so the first 8 bytes of both keys are equal
+      for (int i = 8; i < minLength; i++) {
+        int comparison =
+            (firstSlab[firstOffset + i] & 0xff) - (secondSlab[secondOffset + i] & 0xff);
+        if (comparison != 0) {
+          return comparison;
+        }
+      }
+    }
+    // Keys shorter than 8 bytes are zero-padded in their prefix, so the shorter key is smaller
+    return Integer.compare(firstLength, secondLength);
   }
 
-  /**
-   * Returns the number of bytes in a word according to the JVM. Defaults to 8 for 64 bit if answer
-   * unknown.
-   */
-  private static long getNumBytesPerWord() {
-    String bitsPerWord = System.getProperty("sun.arch.data.model");
-
-    try {
-      return Long.parseLong(bitsPerWord) / 8;
-    } catch (Exception e) {
-      // Can't determine whether 32 or 64 bit, so assume 64
-      return 8;
+  /** Returns the first 8 bytes of the key as a big-endian value, padded with zeroes. */
+  private static long prefix(byte[] key) {
+    long prefix = 0;
+    int length = Math.min(8, key.length);
+    for (int i = 0; i < length; i++) {
+      prefix |= (key[i] & 0xffL) << (56 - 8 * i);
+    }
+    return prefix;
+  }
+
+  private static int slab(long location) {
+    return (int) (location >>> 32);
+  }
+
+  private static int offset(long location) {
+    return (int) location;
+  }
+
+  /** Copies each record out of the slabs in sorted order. */
+  private class SortedIterator implements Iterator<KV<byte[], byte[]>> {
+    private final int[] order;
+    private int position;
+
+    private SortedIterator(int[] order) {
+      this.order = order;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return position < order.length;
+    }
+
+    @Override
+    public KV<byte[], byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int record = order[position++];
+      byte[] slab = slabs.get(slab(locations[record]));
+      int keyStart = offset(locations[record]);
+      int valueStart = keyStart + keyLengths[record];
+      return KV.of(
+          Arrays.copyOfRange(slab, keyStart, valueStart),
+          Arrays.copyOfRange(slab, valueStart, valueStart + valueLengths[record]));
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
     }
   }
 }
@@ -130,8 +130,10 @@ public class BufferedExternalSorterTest {
 
     assertEquals(Arrays.asList(kvs[0], kvs[1], kvs[2]), testSorter.sort());
 
-    verify(mockExternalSorter, times(1)).add(kvs[0]);
-    verify(mockExternalSorter, times(1)).add(kvs[1]);
+    // The records sorted in memory are written as a run, rather than sorted again.
+    verify(mockExternalSorter, times(1)).addSortedRun(Arrays.asList(kvs[0], kvs[1]));
+    verify(mockExternalSorter, never()).add(kvs[0]);
+    verify(mockExternalSorter, never()).add(kvs[1]);
     verify(mockExternalSorter, times(1)).add(kvs[2]);
   }
 
@@ -18,6 +18,10 @@
 
 package org.apache.beam.sdk.extensions.sorter;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -26,8 +30,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
+import org.apache.beam.sdk.extensions.sorter.BufferedExternalSorter.RunCompression;
 import org.apache.beam.sdk.extensions.sorter.SorterTestUtils.SorterGenerator;
+import org.apache.beam.sdk.values.KV;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -102,6 +113,110 @@ public class ExternalSorterTest {
         1000000);
   }
 
+  /** Verify records are sorted correctly when many runs are merged over several passes. */
+  @Test
+  public void testRandomMultipleMergePasses() throws Exception {
+    SorterTestUtils.testRandom(
+        new SorterGenerator() {
+          @Override
+          public Sorter generateSorter() throws Exception {
+            return ExternalSorter.create(new ExternalSorter.Options()
+                .setTempLocation(tmpLocation.toString())
+                .setMemoryMB(1)
+                .setMergeFanIn(2));
+          }
+        },
+        1,
+        500000);
+  }
+
+  @Test
+  public void testRandomSnappyCompressedRuns() throws Exception {
+    SorterTestUtils.testRandom(
+        new SorterGenerator() {
+          @Override
+          public Sorter generateSorter() throws Exception {
+            return ExternalSorter.create(new ExternalSorter.Options()
+                .setTempLocation(tmpLocation.toString())
+                .setMemoryMB(1)
+                .setRunCompression(RunCompression.SNAPPY));
+          }
+        },
+        1,
+        200000);
+  }
+
+  /** Records added as a sorted run are merged with the records added before and after them. */
+  @Test
+  public void testAddSortedRun() throws Exception {
+    ExternalSorter sorter = ExternalSorter.create(new ExternalSorter.Options()
+        .setTempLocation(tmpLocation.toString()));
+    sorter.add(KV.of(new byte[] {2}, new byte[] {0}));
+    sorter.addSortedRun(Arrays.asList(
+        KV.of(new byte[] {1}, new byte[] {1}),
+        KV.of(new byte[] {2}, new byte[] {1}),
+        KV.of(new byte[] {3}, new byte[] {1})));
+    sorter.add(KV.of(new byte[] {0}, new byte[] {2}));
+    sorter.add(KV.of(new byte[] {2}, new byte[] {2}));
+
+    List<String> sorted = new ArrayList<>();
+    for (KV<byte[], byte[]> record : sorter.sort()) {
+      sorted.add(record.getKey()[0] + ":" + record.getValue()[0]);
+    }
+    assertEquals(Arrays.asList("0:2", "1:1", "2:0", "2:1", "2:2", "3:1"), sorted);
+  }
+
+  /** Records written to runs can be iterated over more than once. */
+  @Test
+  public void testIterateSpilledTwice() throws Exception {
+    Path tempLocation = Files.createTempDirectory(tmpLocation, "runs");
+    Iterable<KV<byte[], byte[]>> sorted = spillRandomRecords(tempLocation, 2000);
+    assertTrue(tempLocation.toFile().list().length > 0);
+
+    List<KV<byte[], byte[]>> first = new ArrayList<>();
+    for (KV<byte[], byte[]> record : sorted) {
+      first.add(record);
+    }
+    assertEquals(2000, first.size());
+    Iterator<KV<byte[], byte[]>> second = sorted.iterator();
+    for (KV<byte[], byte[]> record : first) {
+      KV<byte[], byte[]> next = second.next();
+      assertArrayEquals(record.getKey(), next.getKey());
+      assertArrayEquals(record.getValue(), next.getValue());
+    }
+    assertFalse(second.hasNext());
+  }
+
+  /** The files of the runs are deleted once the sorted records are no longer reachable. */
+  @Test
+  public void testRunsDeletedWhenUnreachable() throws Exception {
+    Path tempLocation = Files.createTempDirectory(tmpLocation, "runs");
+    // Leaves an iterator open over the runs, which is closed when they are deleted.
+    spillRandomRecords(tempLocation, 2000).iterator().next();
+    assertTrue(tempLocation.toFile().list().length > 0);
+
+    for (int i = 0; i < 100 && tempLocation.toFile().list().length > 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      ExternalSorter.deleteUnreachableRuns();
+    }
+    assertEquals(0, tempLocation.toFile().list().length);
+  }
+
+  private static Iterable<KV<byte[], byte[]>> spillRandomRecords(Path tempLocation, int count)
+      throws IOException {
+    ExternalSorter sorter = ExternalSorter.create(new ExternalSorter.Options()
+        .setTempLocation(tempLocation.toString())
+        .setMemoryMB(1));
+    Random random = new Random(0L);
+    for (int i = 0; i < count; i++) {
+      byte[] key = new byte[8];
+      random.nextBytes(key);
+      sorter.add(KV.of(key, new byte[1024]));
+    }
+    return sorter.sort();
+  }
+
   @Test
   public void testAddAfterSort() throws Exception {
     SorterTestUtils.testAddAfterSort(ExternalSorter.create(new ExternalSorter.Options()
@@ -132,6 +247,14 @@ public class ExternalSorterTest {
     options.setMemoryMB(0);
   }
 
+  @Test
+  public void testMergeFanInTooSmall() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("mergeFanIn must be at least 2");
+    ExternalSorter.Options options = new ExternalSorter.Options();
+    options.setMergeFanIn(1);
+  }
+
   @Test
   public void testMemoryTooLarge() throws Exception {
     thrown.expect(IllegalArgumentException.class);
@@ -18,6 +18,8 @@
 
 package org.apache.beam.sdk.extensions.sorter;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.fail;
 
@@ -68,6 +70,46 @@ public class InMemorySorterTest {
         10);
   }
 
+  /** Verify keys which are equal in their first 8 bytes are ordered by their remaining bytes. */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSharedKeyPrefixes() throws Exception {
+    KV<byte[], byte[]>[] kvs =
+        new KV[] {
+          KV.of(new byte[] {1}, new byte[] {0}),
+          KV.of(new byte[] {1, 0}, new byte[] {1}),
+          KV.of(new byte[] {1, 0, 0, 0, 0, 0, 0, 0}, new byte[] {2}),
+          KV.of(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 0}, new byte[] {3}),
+          KV.of(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 1}, new byte[] {4}),
+          KV.of(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff}, new byte[] {5}),
+          KV.of(new byte[] {(byte) 0x80}, new byte[] {6})
+        };
+    Sorter sorter = InMemorySorter.create(new InMemorySorter.Options());
+    for (int i = kvs.length - 1; i >= 0; i--) {
+      sorter.add(kvs[i]);
+    }
+    assertThat(sorter.sort(), contains(kvs));
+  }
+
+  /** Verify records with equal keys are returned in the order they were added. */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testEqualKeysStable() throws Exception {
+    KV<byte[], byte[]>[] kvs =
+        new KV[] {
+          KV.of(new byte[] {0}, new byte[] {3}),
+          KV.of(new byte[] {1}, new byte[] {2}),
+          KV.of(new byte[] {1}, new byte[] {1}),
+          KV.of(new byte[] {1}, new byte[] {0})
+        };
+    Sorter sorter = InMemorySorter.create(new InMemorySorter.Options());
+    sorter.add(kvs[1]);
+    sorter.add(kvs[0]);
+    sorter.add(kvs[2]);
+    sorter.add(kvs[3]);
+    assertThat(sorter.sort(), contains(kvs));
+  }
+
   @Test
   public void testAddAfterSort() throws Exception {
     SorterTestUtils.testAddAfterSort(InMemorySorter.create(new InMemorySorter.Options()), thrown);
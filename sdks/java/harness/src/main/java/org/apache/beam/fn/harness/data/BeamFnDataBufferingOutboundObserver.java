@@ -17,17 +17,31 @@
  */
 package org.apache.beam.fn.harness.data;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.apache.beam.fn.harness.fn.CloseableThrowingConsumer;
 import org.apache.beam.fn.v1.BeamFnApi;
 import org.apache.beam.runners.dataflow.options.DataflowPipelineDebugOptions;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.Coder.Context;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
@@ -44,6 +58,24 @@ import org.slf4j.LoggerFactory;
  * <p>The default buffer threshold can be overridden by specifying the experiment
  * {@code beam_fn_api_data_buffer_limit=<bytes>}
  *
+ * <p>Buffered elements can also be flushed once they have been buffered for a given time, so that
+ * low throughput outputs are not delayed until the buffer fills up or the consumer is closed, by
+ * specifying the experiment {@code beam_fn_api_data_buffer_time_limit_ms=<milliseconds>}.
+ *
+ * <p>Elements are encoded into chunks which are handed to the outbound message without copying.
+ * Chunks are not reused after they are sent, since the outbound {@link StreamObserver} may hold on
+ * to the message after {@link StreamObserver#onNext} returns, for example when it queues messages
+ * for another thread.
+ *
+ * <p>The number of bytes and messages sent, and the time spent blocked sending them, are reported
+ * as counters named after the target. The counters are those of the {@link MetricsContainer} that
+ * is current when the consumer is created, so that the deadline flush, which sends from another
+ * thread, reports to the same container.
+ *
+ * <p>If sending to the outbound {@link StreamObserver} fails, the stream is considered broken and
+ * the deadline flush is stopped. A failure of the deadline flush is rethrown by the next call to
+ * {@link #accept} or {@link #close}, since the elements it was sending are lost.
+ *
  * <p>TODO: Handle outputting large elements (&gt; 2GiBs). Note that this also applies to the
  * input side as well.
  *
@@ -53,17 +85,41 @@ import org.slf4j.LoggerFactory;
 public class BeamFnDataBufferingOutboundObserver<T>
     implements CloseableThrowingConsumer<WindowedValue<T>> {
   private static final String BEAM_FN_API_DATA_BUFFER_LIMIT = "beam_fn_api_data_buffer_limit=";
+  private static final String BEAM_FN_API_DATA_BUFFER_TIME_LIMIT =
+      "beam_fn_api_data_buffer_time_limit_ms=";
   private static final int DEFAULT_BUFFER_LIMIT_BYTES = 1_000_000;
+  private static final long DEFAULT_BUFFER_TIME_LIMIT_MS = 0L;
   private static final Logger LOG =
       LoggerFactory.getLogger(BeamFnDataBufferingOutboundObserver.class);
 
+  /** Checks the flush deadlines of all outbound observers with a time limit. */
+  private static final ScheduledExecutorService FLUSH_SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("BeamFnDataOutboundFlusher")
+              .build());
+
   private long byteCounter;
   private long counter;
+  private long flushCounter;
+  private long blockedNanos;
   private final int bufferLimit;
+  private final long bufferTimeLimitMs;
   private final Coder<WindowedValue<T>> coder;
   private final KV<String, BeamFnApi.Target> outputLocation;
   private final StreamObserver<BeamFnApi.Elements> outboundObserver;
-  private final ByteString.Output bufferedElements;
+  private final ChunkedOutput bufferedElements;
+  private final Counter bytesMetric;
+  private final Counter flushesMetric;
+  private final Counter blockedNanosMetric;
+  private final ScheduledFuture<?> flushDeadlineChecker;
+
+  /** The time at which the oldest buffered element was buffered, if the buffer is not empty. */
+  private long firstBufferedNanos;
+
+  /** A failed send of the deadline flush, rethrown by {@link #accept} and {@link #close}. */
+  private RuntimeException flushFailure;
 
   public BeamFnDataBufferingOutboundObserver(
       PipelineOptions options,
@@ -71,10 +127,41 @@ public class BeamFnDataBufferingOutboundObserver<T>
       Coder<WindowedValue<T>> coder,
       StreamObserver<BeamFnApi.Elements> outboundObserver) {
     this.bufferLimit = getBufferLimit(options);
+    this.bufferTimeLimitMs = getBufferTimeLimitMs(options);
     this.outputLocation = outputLocation;
     this.coder = coder;
     this.outboundObserver = outboundObserver;
-    this.bufferedElements = ByteString.newOutput();
+    this.bufferedElements = new ChunkedOutput(bufferLimit);
+
+    MetricsContainer metricsContainer = MetricsEnvironment.getCurrentContainer();
+    String metricPrefix = String.format("%s-%s",
+        outputLocation.getValue().getPrimitiveTransformReference(),
+        outputLocation.getValue().getName());
+    this.bytesMetric = counter(metricsContainer, metricPrefix + "-bytes");
+    this.flushesMetric = counter(metricsContainer, metricPrefix + "-flushes");
+    this.blockedNanosMetric = counter(metricsContainer, metricPrefix + "-blocked-nanos");
+
+    if (bufferTimeLimitMs > 0) {
+      this.flushDeadlineChecker = FLUSH_SCHEDULER.scheduleWithFixedDelay(
+          this::flushIfPastDeadline,
+          bufferTimeLimitMs,
+          Math.max(1, bufferTimeLimitMs / 2),
+          TimeUnit.MILLISECONDS);
+    } else {
+      this.flushDeadlineChecker = null;
+    }
+  }
+
+  /**
+   * Returns the counter with the given name in the provided container, or a counter which reports
+   * to the container current when it is updated if there is none.
+   */
+  private static Counter counter(MetricsContainer container, String name) {
+    if (container == null) {
+      return Metrics.counter(BeamFnDataBufferingOutboundObserver.class, name);
+    }
+    return container.getCounter(
+        MetricName.named(BeamFnDataBufferingOutboundObserver.class, name));
   }
 
   /**
@@ -91,8 +178,39 @@ public class BeamFnDataBufferingOutboundObserver<T>
     return DEFAULT_BUFFER_LIMIT_BYTES;
   }
 
+  /**
+   * Returns the {@code beam_fn_api_data_buffer_time_limit_ms=<long>} experiment value if set.
+   * Otherwise returns the default buffer time limit, which disables time based flushing.
+   */
+  private static long getBufferTimeLimitMs(PipelineOptions options) {
+    List<String> experiments = options.as(DataflowPipelineDebugOptions.class).getExperiments();
+    for (String experiment : experiments == null ? Collections.<String>emptyList() : experiments) {
+      if (experiment.startsWith(BEAM_FN_API_DATA_BUFFER_TIME_LIMIT)) {
+        return Long.parseLong(experiment.substring(BEAM_FN_API_DATA_BUFFER_TIME_LIMIT.length()));
+      }
+    }
+    return DEFAULT_BUFFER_TIME_LIMIT_MS;
+  }
+
+  /** Returns the number of element bytes sent so far. */
+  public synchronized long getBytesSent() {
+    return byteCounter;
+  }
+
+  /** Returns the number of messages sent so far, including the end of stream message. */
+  public synchronized long getMessagesSent() {
+    return flushCounter;
+  }
+
+  /** Returns the time spent blocked sending messages so far, in nanoseconds. */
+  public synchronized long getBlockedNanos() {
+    return blockedNanos;
+  }
+
   @Override
-  public void close() throws Exception {
+  public synchronized void close() throws Exception {
+    cancelFlushDeadlineChecker();
+    checkFlushFailure();
     BeamFnApi.Elements.Builder elements = convertBufferForTransmission();
     // This will add an empty data block representing the end of stream.
     elements.addDataBuilder()
@@ -100,20 +218,72 @@ public class BeamFnDataBufferingOutboundObserver<T>
         .setTarget(outputLocation.getValue());
 
     LOG.debug("Closing stream for instruction {} and "
-        + "target {} having transmitted {} values {} bytes",
+        + "target {} having transmitted {} values {} bytes in {} messages, "
+        + "blocked for {} ms",
         outputLocation.getKey(),
         outputLocation.getValue(),
         counter,
-        byteCounter);
-    outboundObserver.onNext(elements.build());
+        byteCounter,
+        flushCounter + 1,
+        TimeUnit.NANOSECONDS.toMillis(blockedNanos));
+    send(elements.build());
   }
 
   @Override
-  public void accept(WindowedValue<T> t) throws IOException {
+  public synchronized void accept(WindowedValue<T> t) throws IOException {
+    checkFlushFailure();
+    if (bufferedElements.size() == 0) {
+      firstBufferedNanos = System.nanoTime();
+    }
     coder.encode(t, bufferedElements, Context.NESTED);
     counter += 1;
     if (bufferedElements.size() >= bufferLimit) {
-      outboundObserver.onNext(convertBufferForTransmission().build());
+      send(convertBufferForTransmission().build());
+    }
+  }
+
+  /** Flushes the buffer if its oldest element has been buffered for longer than the limit. */
+  private synchronized void flushIfPastDeadline() {
+    if (bufferedElements.size() > 0
+        && System.nanoTime() - firstBufferedNanos
+            >= TimeUnit.MILLISECONDS.toNanos(bufferTimeLimitMs)) {
+      try {
+        send(convertBufferForTransmission().build());
+      } catch (RuntimeException e) {
+        flushFailure = e;
+      }
+    }
+  }
+
+  /** Throws if the deadline flush failed to send buffered elements. */
+  private void checkFlushFailure() throws IOException {
+    if (flushFailure != null) {
+      throw new IOException(
+          String.format(
+              "Failed to flush buffered elements for instruction %s and target %s",
+              outputLocation.getKey(), outputLocation.getValue()),
+          flushFailure);
+    }
+  }
+
+  private void send(BeamFnApi.Elements elements) {
+    long startNanos = System.nanoTime();
+    try {
+      outboundObserver.onNext(elements);
+    } catch (RuntimeException e) {
+      cancelFlushDeadlineChecker();
+      throw e;
+    }
+    long sendNanos = System.nanoTime() - startNanos;
+    blockedNanos += sendNanos;
+    blockedNanosMetric.inc(sendNanos);
+    flushCounter += 1;
+    flushesMetric.inc();
+  }
+
+  private void cancelFlushDeadlineChecker() {
+    if (flushDeadlineChecker != null) {
+      flushDeadlineChecker.cancel(false);
     }
   }
 
@@ -123,13 +293,90 @@ public class BeamFnDataBufferingOutboundObserver<T>
       return elements;
     }
 
+    int size = bufferedElements.size();
     elements.addDataBuilder()
         .setInstructionReference(outputLocation.getKey())
         .setTarget(outputLocation.getValue())
-        .setData(bufferedElements.toByteString());
+        .setData(bufferedElements.toByteStringAndReset());
 
-    byteCounter += bufferedElements.size();
-    bufferedElements.reset();
+    byteCounter += size;
+    bytesMetric.inc(size);
     return elements;
   }
+
+  /**
+   * An {@link OutputStream} which writes into a list of chunks, and hands them over to a
+   * {@link ByteString} without copying.
+   *
+   * <p>The size of the first chunk after a reset adapts to the number of bytes written before the
+   * reset, and chunks double in size up to {@link #MAX_CHUNK_SIZE}, so outputs that flush little
+   * data allocate little, while outputs that fill the buffer allocate a few large chunks.
+   */
+  @VisibleForTesting
+  static class ChunkedOutput extends OutputStream {
+    @VisibleForTesting static final int MIN_CHUNK_SIZE = 256;
+    @VisibleForTesting static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final int maxChunkSize;
+    private final List<ByteString> completedChunks = new ArrayList<>();
+    private int completedSize;
+    private byte[] chunk;
+    private int position;
+    private int firstChunkSize = MIN_CHUNK_SIZE;
+
+    ChunkedOutput(int bufferLimit) {
+      this.maxChunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, bufferLimit));
+    }
+
+    int size() {
+      return completedSize + position;
+    }
+
+    @Override
+    public void write(int b) {
+      ensureSpace();
+      chunk[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      while (len > 0) {
+        ensureSpace();
+        int toCopy = Math.min(len, chunk.length - position);
+        System.arraycopy(b, off, chunk, position, toCopy);
+        position += toCopy;
+        off += toCopy;
+        len -= toCopy;
+      }
+    }
+
+    private void ensureSpace() {
+      if (chunk == null) {
+        chunk = new byte[firstChunkSize];
+      } else if (position == chunk.length) {
+        completedChunks.add(UnsafeByteOperations.unsafeWrap(chunk));
+        completedSize += position;
+        chunk = new byte[Math.min(maxChunkSize, chunk.length * 2)];
+        position = 0;
+      }
+    }
+
+    /**
+     * Returns the written bytes, sharing the chunks with the returned {@link ByteString}, and
+     * starts writing into new chunks.
+     */
+    ByteString toByteStringAndReset() {
+      int size = size();
+      ByteString result = ByteString.copyFrom(completedChunks);
+      if (position > 0) {
+        result = result.concat(UnsafeByteOperations.unsafeWrap(chunk, 0, position));
+      }
+      firstChunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(maxChunkSize, size));
+      completedChunks.clear();
+      completedSize = 0;
+      chunk = null;
+      position = 0;
+      return result;
+    }
+  }
 }
@@ -24,10 +24,15 @@ import static org.junit.Assert.assertThat;
 
 import com.google.common.collect.Iterables;
 import com.google.protobuf.ByteString;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.beam.fn.harness.fn.CloseableThrowingConsumer;
 import org.apache.beam.fn.harness.test.TestStreams;
 import org.apache.beam.fn.v1.BeamFnApi;
@@ -35,16 +40,23 @@ import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.Coder.Context;
 import org.apache.beam.sdk.coders.LengthPrefixCoder;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 /** Tests for {@link BeamFnDataBufferingOutboundObserver}. */
 @RunWith(JUnit4.class)
 public class BeamFnDataBufferingOutboundObserverTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
   private static final int DEFAULT_BUFFER_LIMIT = 1_000_000;
   private static final KV<String, BeamFnApi.Target> OUTPUT_LOCATION =
       KV.of(
@@ -132,6 +144,104 @@ public class BeamFnDataBufferingOutboundObserverTest {
         Iterables.get(values, 1));
   }
 
+  @Test
+  public void testExperimentConfiguresBufferTimeLimit() throws Exception {
+    CompletableFuture<BeamFnApi.Elements> flushed = new CompletableFuture<>();
+    CloseableThrowingConsumer<WindowedValue<byte[]>> consumer =
+        new BeamFnDataBufferingOutboundObserver<>(
+        PipelineOptionsFactory.fromArgs(
+            new String[] { "--experiments=beam_fn_api_data_buffer_time_limit_ms=10" }).create(),
+        OUTPUT_LOCATION,
+        CODER,
+        TestStreams.withOnNext(flushed::complete).build());
+
+    // Test that elements below the buffer size are emitted once the time limit passes.
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    assertEquals(messageWithData(new byte[1]), flushed.get(10, TimeUnit.SECONDS));
+    consumer.close();
+  }
+
+  @Test
+  public void testFailedSendStopsBufferTimeLimitFlushes() throws Exception {
+    AtomicInteger sendAttempts = new AtomicInteger();
+    CompletableFuture<Void> failed = new CompletableFuture<>();
+    CloseableThrowingConsumer<WindowedValue<byte[]>> consumer =
+        new BeamFnDataBufferingOutboundObserver<>(
+        PipelineOptionsFactory.fromArgs(
+            new String[] { "--experiments=beam_fn_api_data_buffer_time_limit_ms=1" }).create(),
+        OUTPUT_LOCATION,
+        CODER,
+        TestStreams.<BeamFnApi.Elements>withOnNext(
+            elements -> {
+              sendAttempts.incrementAndGet();
+              failed.complete(null);
+              throw new IllegalStateException("Stream broken");
+            }).build());
+
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    failed.get(10, TimeUnit.SECONDS);
+    // The failed elements are not retried, and nothing is flushed on a deadline anymore.
+    Thread.sleep(100);
+    assertEquals(1, sendAttempts.get());
+
+    // The failure is rethrown by the next element, since the flushed elements were lost.
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Failed to flush buffered elements");
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+  }
+
+  @Test
+  public void testStatistics() throws Exception {
+    MetricsContainer metricsContainer = new MetricsContainer("555L");
+    BeamFnDataBufferingOutboundObserver<byte[]> consumer;
+    try (Closeable metricsScope = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
+      consumer = new BeamFnDataBufferingOutboundObserver<>(
+          PipelineOptionsFactory.fromArgs(
+              new String[] { "--experiments=beam_fn_api_data_buffer_limit=100" }).create(),
+          OUTPUT_LOCATION,
+          CODER,
+          TestStreams.withOnNext((BeamFnApi.Elements elements) -> { }).build());
+    }
+
+    consumer.accept(valueInGlobalWindow(new byte[51]));
+    assertEquals(0, consumer.getMessagesSent());
+    consumer.accept(valueInGlobalWindow(new byte[49]));
+    assertEquals(1, consumer.getMessagesSent());
+    consumer.accept(valueInGlobalWindow(new byte[1]));
+    consumer.close();
+    assertEquals(messageWithData(new byte[51], new byte[49]).getData(0).getData().size()
+        + messageWithData(new byte[1]).getData(0).getData().size(), consumer.getBytesSent());
+    assertEquals(2, consumer.getMessagesSent());
+
+    // The counters of the container current at construction are updated outside of its scope.
+    assertEquals(consumer.getBytesSent(), counter(metricsContainer, "555L-Test-bytes"));
+    assertEquals(2, counter(metricsContainer, "555L-Test-flushes"));
+    assertEquals(consumer.getBlockedNanos(), counter(metricsContainer, "555L-Test-blocked-nanos"));
+  }
+
+  private static long counter(MetricsContainer container, String name) {
+    return container.getCounter(
+        MetricName.named(BeamFnDataBufferingOutboundObserver.class, name)).getCumulative();
+  }
+
+  @Test
+  public void testChunkedOutput() throws Exception {
+    BeamFnDataBufferingOutboundObserver.ChunkedOutput output =
+        new BeamFnDataBufferingOutboundObserver.ChunkedOutput(DEFAULT_BUFFER_LIMIT);
+    Random random = new Random(1);
+    for (int size : new int[] {0, 1, 255, 256, 1000, 300_000}) {
+      byte[] data = new byte[size];
+      random.nextBytes(data);
+      output.write(data, 0, size / 2);
+      for (int i = size / 2; i < size; ++i) {
+        output.write(data[i]);
+      }
+      assertEquals(size, output.size());
+      assertEquals(ByteString.copyFrom(data), output.toByteStringAndReset());
+      assertEquals(0, output.size());
+    }
+  }
+
   private static BeamFnApi.Elements messageWithData(byte[] ... datum) throws IOException {
     ByteString.Output output = ByteString.newOutput();
     for (byte[] data : datum) {
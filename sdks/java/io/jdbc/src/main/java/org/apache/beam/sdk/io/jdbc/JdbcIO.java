@@ -21,17 +21,47 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.io.BoundedSource;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
@@ -40,11 +70,15 @@ import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.Values;
 import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PBegin;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PDone;
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * IO to read and write data on JDBC.
@@ -129,6 +163,13 @@ import org.apache.commons.dbcp2.BasicDataSource;
  *    );
  * }</pre>
  *
+ * <p>Rows are written in batches of up to {@link Write#withBatchSize(long)} rows, each committed in
+ * its own transaction. Batches can also be bounded in bytes with
+ * {@link Write#withMaxBatchBytes(long)} and in time with
+ * {@link Write#withMaxBatchLatency(Duration)}, and several batches can be written concurrently
+ * with {@link Write#withMaxParallelBatches(int)}.
+ * A batch which fails with a transient {@link SQLException} is rolled back and retried.
+ *
  * <p>NB: in case of transient failures, Beam runners may execute parts of JdbcIO.Write multiple
  * times for fault tolerance. Because of that, you should avoid using {@code INSERT} statements,
  * since that risks duplicating records in the database, or failing due to primary key conflicts.
@@ -136,6 +177,8 @@ import org.apache.commons.dbcp2.BasicDataSource;
  * statements</a> supported by your database instead.
  */
 public class JdbcIO {
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcIO.class);
+
   /**
    * Read data from a JDBC datasource.
    *
@@ -151,7 +194,11 @@ public class JdbcIO {
    * @param <T> Type of the data to be written.
    */
   public static <T> Write<T> write() {
-    return new AutoValue_JdbcIO_Write.Builder<T>().build();
+    return new AutoValue_JdbcIO_Write.Builder<T>()
+        .setBatchSize(Write.DEFAULT_BATCH_SIZE)
+        .setMaxParallelBatches(1)
+        .setMaxRetries(Write.DEFAULT_MAX_RETRIES)
+        .build();
   }
 
   private JdbcIO() {}
@@ -259,6 +306,11 @@ public class JdbcIO {
     @Nullable abstract StatementPreparator getStatementPreparator();
     @Nullable abstract RowMapper<T> getRowMapper();
     @Nullable abstract Coder<T> getCoder();
+    @Nullable abstract String getPartitionColumn();
+    @Nullable abstract Integer getNumPartitions();
+    @Nullable abstract Long getLowerBound();
+    @Nullable abstract Long getUpperBound();
+    @Nullable abstract Integer getFetchSize();
 
     abstract Builder<T> toBuilder();
 
@@ -269,6 +321,11 @@ public class JdbcIO {
       abstract Builder<T> setStatementPreparator(StatementPreparator statementPreparator);
       abstract Builder<T> setRowMapper(RowMapper<T> rowMapper);
       abstract Builder<T> setCoder(Coder<T> coder);
+      abstract Builder<T> setPartitionColumn(String partitionColumn);
+      abstract Builder<T> setNumPartitions(Integer numPartitions);
+      abstract Builder<T> setLowerBound(Long lowerBound);
+      abstract Builder<T> setUpperBound(Long upperBound);
+      abstract Builder<T> setFetchSize(Integer fetchSize);
       abstract Read<T> build();
     }
 
@@ -301,8 +358,60 @@ public class JdbcIO {
       return toBuilder().setCoder(coder).build();
     }
 
+    /**
+     * Reads the query in parallel, partitioned on ranges of the values of the given numeric
+     * column, which must be one of the columns returned by the query.
+     *
+     * <p>Unless bounds are provided with {@link #withPartitionBounds(long, long)}, the minimum and
+     * maximum values of the column are queried when the read is split. Rows whose partition
+     * column is outside of the bounds or is {@code NULL} are read by the first or last
+     * partition, so the bounds only affect how evenly the rows are partitioned.
+     */
+    public Read<T> withPartitionColumn(String partitionColumn) {
+      checkArgument(partitionColumn != null,
+          "JdbcIO.read().withPartitionColumn(partitionColumn) called with null partitionColumn");
+      return toBuilder().setPartitionColumn(partitionColumn).build();
+    }
+
+    /**
+     * Sets the number of partitions a partitioned read is split into. If not set, the number of
+     * partitions is chosen based on the estimated size of the query results and the bundle size
+     * requested by the runner.
+     */
+    public Read<T> withNumPartitions(int numPartitions) {
+      checkArgument(numPartitions > 0,
+          "JdbcIO.read().withNumPartitions(numPartitions) called with numPartitions <= 0");
+      return toBuilder().setNumPartitions(numPartitions).build();
+    }
+
+    /**
+     * Sets the lower and upper bounds, both inclusive, of the values of the partition column used
+     * to compute the ranges of a partitioned read.
+     */
+    public Read<T> withPartitionBounds(long lowerBound, long upperBound) {
+      checkArgument(lowerBound <= upperBound,
+          "JdbcIO.read().withPartitionBounds(lowerBound, upperBound) called with "
+              + "lowerBound > upperBound");
+      return toBuilder().setLowerBound(lowerBound).setUpperBound(upperBound).build();
+    }
+
+    /**
+     * Sets the number of rows fetched from the database at a time. Setting a fetch size also
+     * disables auto-commit on the connection used to read, which some drivers (such as
+     * PostgreSQL) require to stream results rather than loading them all in memory.
+     */
+    public Read<T> withFetchSize(int fetchSize) {
+      checkArgument(fetchSize > 0,
+          "JdbcIO.read().withFetchSize(fetchSize) called with fetchSize <= 0");
+      return toBuilder().setFetchSize(fetchSize).build();
+    }
+
     @Override
     public PCollection<T> expand(PBegin input) {
+      if (getPartitionColumn() != null) {
+        return input.apply(org.apache.beam.sdk.io.Read.from(new JdbcSource<>(this, false, null,
+            null)));
+      }
       return input
           .apply(Create.of(getQuery()))
           .apply(ParDo.of(new ReadFn<>(this))).setCoder(getCoder())
@@ -333,6 +442,10 @@ public class JdbcIO {
       checkState(getDataSourceConfiguration() != null,
           "JdbcIO.read() requires a DataSource configuration to be set via "
               + "withDataSourceConfiguration(dataSourceConfiguration)");
+      checkState(getPartitionColumn() != null
+              || (getNumPartitions() == null && getLowerBound() == null),
+          "JdbcIO.read() requires a partition column to be set via "
+              + "withPartitionColumn(partitionColumn) when partitions or bounds are set");
     }
 
     @Override
@@ -341,6 +454,11 @@ public class JdbcIO {
       builder.add(DisplayData.item("query", getQuery()));
       builder.add(DisplayData.item("rowMapper", getRowMapper().getClass().getName()));
       builder.add(DisplayData.item("coder", getCoder().getClass().getName()));
+      builder.addIfNotNull(DisplayData.item("partitionColumn", getPartitionColumn()));
+      builder.addIfNotNull(DisplayData.item("numPartitions", getNumPartitions()));
+      builder.addIfNotNull(DisplayData.item("lowerBound", getLowerBound()));
+      builder.addIfNotNull(DisplayData.item("upperBound", getUpperBound()));
+      builder.addIfNotNull(DisplayData.item("fetchSize", getFetchSize()));
       getDataSourceConfiguration().populateDisplayData(builder);
     }
 
@@ -356,12 +474,15 @@ public class JdbcIO {
       @Setup
       public void setup() throws Exception {
         connection = spec.getDataSourceConfiguration().getConnection();
+        if (spec.getFetchSize() != null) {
+          connection.setAutoCommit(false);
+        }
       }
 
       @ProcessElement
       public void processElement(ProcessContext context) throws Exception {
         String query = context.element();
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
+        try (PreparedStatement statement = prepareQuery(connection, query, spec)) {
           if (this.spec.getStatementPreparator() != null) {
             this.spec.getStatementPreparator().setParameters(statement);
           }
@@ -382,6 +503,297 @@ public class JdbcIO {
     }
   }
 
+  /** Prepares a forward-only, read-only statement for the query, using the spec's fetch size. */
+  private static PreparedStatement prepareQuery(
+      Connection connection, String query, Read<?> spec) throws SQLException {
+    PreparedStatement statement =
+        connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    if (spec.getFetchSize() != null) {
+      statement.setFetchSize(spec.getFetchSize());
+    }
+    return statement;
+  }
+
+  /**
+   * A {@link BoundedSource} reading the results of a query, partitioned on ranges of a numeric
+   * column.
+   *
+   * <p>An unsplit source reads the whole query. When split, the range between the lower and upper
+   * bound of the partition column is divided evenly into partitions, each of which reads the rows
+   * of the query whose partition column is in its range. The first partition additionally reads
+   * rows whose partition column is {@code NULL} or less than the lower bound, and the last
+   * partition reads rows whose partition column is greater than the upper bound.
+   */
+  static class JdbcSource<T> extends BoundedSource<T> {
+    /** The alias of the user's query when it is wrapped with a partition predicate. */
+    private static final String SUBQUERY_ALIAS = "beam_partitioned_query";
+
+    /** The largest number of partitions chosen when the number of partitions is not set. */
+    private static final int MAX_AUTOMATIC_PARTITIONS = 1000;
+
+    /** The number of rows encoded to estimate the average size of a row. */
+    private static final int SIZE_ESTIMATE_SAMPLE_ROWS = 100;
+
+    private final Read<T> spec;
+
+    /** Whether this source is one of the partitions of a split source. */
+    private final boolean isPartition;
+
+    /** The inclusive start of the range, or null if the range is unbounded below. */
+    @Nullable private final Long rangeStart;
+
+    /** The exclusive end of the range, or null if the range is unbounded above. */
+    @Nullable private final Long rangeEnd;
+
+    JdbcSource(
+        Read<T> spec, boolean isPartition, @Nullable Long rangeStart, @Nullable Long rangeEnd) {
+      this.spec = spec;
+      this.isPartition = isPartition;
+      this.rangeStart = rangeStart;
+      this.rangeEnd = rangeEnd;
+    }
+
+    /** Returns the query read by this source. */
+    String getQuery() {
+      if (!isPartition || (rangeStart == null && rangeEnd == null)) {
+        return spec.getQuery();
+      }
+      String column = spec.getPartitionColumn();
+      String predicate;
+      if (rangeStart == null) {
+        predicate = String.format("(%s < %d OR %s IS NULL)", column, rangeEnd, column);
+      } else if (rangeEnd == null) {
+        predicate = String.format("%s >= %d", column, rangeStart);
+      } else {
+        predicate = String.format("%s >= %d AND %s < %d", column, rangeStart, column, rangeEnd);
+      }
+      return String.format(
+          "SELECT * FROM (%s) %s WHERE %s", spec.getQuery(), SUBQUERY_ALIAS, predicate);
+    }
+
+    @Override
+    public Coder<T> getDefaultOutputCoder() {
+      return spec.getCoder();
+    }
+
+    @Override
+    public void validate() {
+      spec.validate(null);
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      spec.populateDisplayData(builder);
+      builder.addIfNotNull(DisplayData.item("rangeStart", rangeStart));
+      builder.addIfNotNull(DisplayData.item("rangeEnd", rangeEnd));
+    }
+
+    @Override
+    public BoundedReader<T> createReader(PipelineOptions options) {
+      return new JdbcReader<>(this);
+    }
+
+    /**
+     * Estimates the size of the results of the query by counting its rows and encoding a sample
+     * of them with the coder.
+     */
+    @Override
+    public long getEstimatedSizeBytes(PipelineOptions options) throws Exception {
+      try (Connection connection = spec.getDataSourceConfiguration().getConnection()) {
+        long numRows;
+        String countQuery =
+            String.format("SELECT COUNT(*) FROM (%s) %s", getQuery(), SUBQUERY_ALIAS);
+        try (PreparedStatement statement = connection.prepareStatement(countQuery)) {
+          setParameters(statement);
+          try (ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            numRows = resultSet.getLong(1);
+          }
+        }
+        if (numRows == 0) {
+          return 0;
+        }
+
+        long sampleBytes = 0;
+        long sampleRows = 0;
+        try (PreparedStatement statement = prepareQuery(connection, getQuery(), spec)) {
+          statement.setMaxRows(SIZE_ESTIMATE_SAMPLE_ROWS);
+          setParameters(statement);
+          try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next() && sampleRows < SIZE_ESTIMATE_SAMPLE_ROWS) {
+              T row = spec.getRowMapper().mapRow(resultSet);
+              sampleBytes += CoderUtils.encodeToByteArray(spec.getCoder(), row).length;
+              sampleRows++;
+            }
+          }
+        }
+        if (sampleRows == 0) {
+          return 0;
+        }
+        return (long) (numRows * ((double) sampleBytes / sampleRows));
+      }
+    }
+
+    @Override
+    public List<? extends BoundedSource<T>> splitIntoBundles(
+        long desiredBundleSizeBytes, PipelineOptions options) throws Exception {
+      if (isPartition) {
+        return Collections.singletonList(this);
+      }
+
+      Long lowerBound = spec.getLowerBound();
+      Long upperBound = spec.getUpperBound();
+      if (lowerBound == null) {
+        String boundsQuery = String.format(
+            "SELECT MIN(%s), MAX(%s) FROM (%s) %s",
+            spec.getPartitionColumn(), spec.getPartitionColumn(), spec.getQuery(), SUBQUERY_ALIAS);
+        try (Connection connection = spec.getDataSourceConfiguration().getConnection();
+            PreparedStatement statement = connection.prepareStatement(boundsQuery)) {
+          setParameters(statement);
+          try (ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            lowerBound = resultSet.getLong(1);
+            if (!resultSet.wasNull()) {
+              upperBound = resultSet.getLong(2);
+            }
+          }
+        }
+        if (upperBound == null) {
+          LOG.debug("Partition column {} has no values, using a single partition",
+              spec.getPartitionColumn());
+          return Collections.singletonList(this);
+        }
+      }
+
+      long numPartitions;
+      if (spec.getNumPartitions() != null) {
+        numPartitions = spec.getNumPartitions();
+      } else {
+        long estimatedSizeBytes = getEstimatedSizeBytes(options);
+        numPartitions = estimatedSizeBytes / Math.max(1, desiredBundleSizeBytes) + 1;
+        numPartitions = Math.min(numPartitions, MAX_AUTOMATIC_PARTITIONS);
+      }
+      BigInteger width =
+          BigInteger.valueOf(upperBound).subtract(BigInteger.valueOf(lowerBound)).add(
+              BigInteger.ONE);
+      if (width.compareTo(BigInteger.valueOf(numPartitions)) < 0) {
+        numPartitions = width.longValue();
+      }
+      if (numPartitions <= 1) {
+        return Collections.singletonList(this);
+      }
+
+      LOG.debug("Splitting {} from {} to {} into {} partitions",
+          spec.getPartitionColumn(), lowerBound, upperBound, numPartitions);
+      List<JdbcSource<T>> sources = new ArrayList<>();
+      Long start = null;
+      for (long i = 1; i <= numPartitions; i++) {
+        Long end = null;
+        if (i < numPartitions) {
+          end = width.multiply(BigInteger.valueOf(i))
+              .divide(BigInteger.valueOf(numPartitions))
+              .add(BigInteger.valueOf(lowerBound))
+              .longValue();
+        }
+        sources.add(new JdbcSource<>(spec, true, start, end));
+        start = end;
+      }
+      return sources;
+    }
+
+    private void setParameters(PreparedStatement statement) throws Exception {
+      if (spec.getStatementPreparator() != null) {
+        spec.getStatementPreparator().setParameters(statement);
+      }
+    }
+  }
+
+  /** A {@link BoundedSource.BoundedReader} streaming the results of a {@link JdbcSource}. */
+  private static class JdbcReader<T> extends BoundedSource.BoundedReader<T> {
+    private final JdbcSource<T> source;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+    private T current;
+
+    /** Whether the reader is positioned at a row, which may be mapped to a null value. */
+    private boolean hasCurrent;
+
+    private JdbcReader(JdbcSource<T> source) {
+      this.source = source;
+    }
+
+    @Override
+    public boolean start() throws IOException {
+      Read<T> spec = source.spec;
+      try {
+        connection = spec.getDataSourceConfiguration().getConnection();
+        if (spec.getFetchSize() != null) {
+          connection.setAutoCommit(false);
+        }
+        statement = prepareQuery(connection, source.getQuery(), spec);
+        source.setParameters(statement);
+        resultSet = statement.executeQuery();
+      } catch (Exception e) {
+        throw new IOException("Unable to execute query " + source.getQuery(), e);
+      }
+      return advance();
+    }
+
+    @Override
+    public boolean advance() throws IOException {
+      try {
+        if (!resultSet.next()) {
+          current = null;
+          hasCurrent = false;
+          return false;
+        }
+        current = source.spec.getRowMapper().mapRow(resultSet);
+        hasCurrent = true;
+        return true;
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+
+    @Override
+    public T getCurrent() throws NoSuchElementException {
+      if (!hasCurrent) {
+        throw new NoSuchElementException();
+      }
+      return current;
+    }
+
+    @Override
+    public JdbcSource<T> getCurrentSource() {
+      return source;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        try {
+          if (resultSet != null) {
+            resultSet.close();
+          }
+        } finally {
+          try {
+            if (statement != null) {
+              statement.close();
+            }
+          } finally {
+            if (connection != null) {
+              connection.close();
+            }
+          }
+        }
+      } catch (SQLException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
   /**
    * An interface used by the JdbcIO Write to set the parameters of the {@link PreparedStatement}
    * used to setParameters into the database.
@@ -393,9 +805,23 @@ public class JdbcIO {
   /** A {@link PTransform} to write to a JDBC datasource. */
   @AutoValue
   public abstract static class Write<T> extends PTransform<PCollection<T>, PDone> {
+    static final long DEFAULT_BATCH_SIZE = 1000L;
+    static final int DEFAULT_MAX_RETRIES = 3;
+
+    /** The SQLSTATE class of connection exceptions. */
+    private static final String CONNECTION_EXCEPTION_SQL_STATE_CLASS = "08";
+
+    /** The SQLSTATE class of transaction rollbacks, such as deadlocks. */
+    private static final String TRANSACTION_ROLLBACK_SQL_STATE_CLASS = "40";
+
     @Nullable abstract DataSourceConfiguration getDataSourceConfiguration();
     @Nullable abstract String getStatement();
     @Nullable abstract PreparedStatementSetter<T> getPreparedStatementSetter();
+    abstract long getBatchSize();
+    @Nullable abstract Long getMaxBatchBytes();
+    @Nullable abstract Duration getMaxBatchLatency();
+    abstract int getMaxParallelBatches();
+    abstract int getMaxRetries();
 
     abstract Builder<T> toBuilder();
 
@@ -404,6 +830,11 @@ public class JdbcIO {
       abstract Builder<T> setDataSourceConfiguration(DataSourceConfiguration config);
       abstract Builder<T> setStatement(String statement);
       abstract Builder<T> setPreparedStatementSetter(PreparedStatementSetter<T> setter);
+      abstract Builder<T> setBatchSize(long batchSize);
+      abstract Builder<T> setMaxBatchBytes(Long maxBatchBytes);
+      abstract Builder<T> setMaxBatchLatency(Duration maxBatchLatency);
+      abstract Builder<T> setMaxParallelBatches(int maxParallelBatches);
+      abstract Builder<T> setMaxRetries(int maxRetries);
 
       abstract Write<T> build();
     }
@@ -418,9 +849,64 @@ public class JdbcIO {
       return toBuilder().setPreparedStatementSetter(setter).build();
     }
 
+    /**
+     * Sets the maximum number of rows written in a single batch. Defaults to
+     * {@value #DEFAULT_BATCH_SIZE}.
+     */
+    public Write<T> withBatchSize(long batchSize) {
+      checkArgument(batchSize > 0, "JdbcIO.write().withBatchSize(batchSize) called with "
+          + "batchSize <= 0");
+      return toBuilder().setBatchSize(batchSize).build();
+    }
+
+    /**
+     * Sets the maximum size of a batch, measured as the size of its elements encoded with the
+     * coder of the input {@link PCollection}. A batch is written as soon as it reaches either
+     * this size or the batch size. By default, batches are not limited in bytes.
+     */
+    public Write<T> withMaxBatchBytes(long maxBatchBytes) {
+      checkArgument(maxBatchBytes > 0, "JdbcIO.write().withMaxBatchBytes(maxBatchBytes) called "
+          + "with maxBatchBytes <= 0");
+      return toBuilder().setMaxBatchBytes(maxBatchBytes).build();
+    }
+
+    /**
+     * Sets the maximum time a row waits in a batch before the batch is written, even if the batch
+     * is not full and the bundle is not finished. By default, a batch which is not full is only
+     * written when the bundle finishes.
+     */
+    public Write<T> withMaxBatchLatency(Duration maxBatchLatency) {
+      checkArgument(maxBatchLatency != null && maxBatchLatency.getMillis() > 0,
+          "JdbcIO.write().withMaxBatchLatency(maxBatchLatency) called with a null or "
+              + "non-positive maxBatchLatency");
+      return toBuilder().setMaxBatchLatency(maxBatchLatency).build();
+    }
+
+    /**
+     * Sets the maximum number of batches each instance of the write writes concurrently, each over
+     * its own connection. Defaults to 1, in which case batches are written one at a time.
+     */
+    public Write<T> withMaxParallelBatches(int maxParallelBatches) {
+      checkArgument(maxParallelBatches > 0, "JdbcIO.write().withMaxParallelBatches("
+          + "maxParallelBatches) called with maxParallelBatches <= 0");
+      return toBuilder().setMaxParallelBatches(maxParallelBatches).build();
+    }
+
+    /**
+     * Sets the number of times a batch which failed with a transient {@link SQLException}, such as
+     * a deadlock, a serialization failure or a lost connection, is rolled back and retried.
+     * Defaults to {@value #DEFAULT_MAX_RETRIES}.
+     */
+    public Write<T> withMaxRetries(int maxRetries) {
+      checkArgument(maxRetries >= 0, "JdbcIO.write().withMaxRetries(maxRetries) called with "
+          + "maxRetries < 0");
+      return toBuilder().setMaxRetries(maxRetries).build();
+    }
+
     @Override
     public PDone expand(PCollection<T> input) {
-      input.apply(ParDo.of(new WriteFn<T>(this)));
+      Coder<T> coder = getMaxBatchBytes() == null ? null : input.getCoder();
+      input.apply(ParDo.of(new WriteFn<T>(this, coder)));
       return PDone.in(input.getPipeline());
     }
 
@@ -436,66 +922,389 @@ public class JdbcIO {
               + ".withPreparedStatementSetter(preparedStatementSetter)");
     }
 
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      builder.addIfNotNull(DisplayData.item("statement", getStatement()));
+      builder.add(DisplayData.item("batchSize", getBatchSize()));
+      builder.addIfNotNull(DisplayData.item("maxBatchBytes", getMaxBatchBytes()));
+      builder.addIfNotNull(DisplayData.item("maxBatchLatency", getMaxBatchLatency()));
+      builder.add(DisplayData.item("maxParallelBatches", getMaxParallelBatches()));
+      builder.add(DisplayData.item("maxRetries", getMaxRetries()));
+      if (getDataSourceConfiguration() != null) {
+        getDataSourceConfiguration().populateDisplayData(builder);
+      }
+    }
+
+    /**
+     * Writes batches of rows, each in its own transaction. Sealed batches are written on a pool
+     * of at most {@link Write#getMaxParallelBatches()} threads, each of which owns a connection.
+     * Adding a batch blocks while that many batches are already being written, and finishing a
+     * bundle waits for all of its batches to be committed.
+     */
     private static class WriteFn<T> extends DoFn<T, Void> {
-      private static final int DEFAULT_BATCH_SIZE = 1000;
+      private static final long INITIAL_RETRY_BACKOFF_MILLIS = 100L;
 
       private final Write<T> spec;
+      @Nullable private final Coder<T> coder;
 
-      private Connection connection;
-      private PreparedStatement preparedStatement;
-      private int batchCount;
+      private final Distribution batchSize = Metrics.distribution(Write.class, "batchSize");
+      private final Distribution flushLatencyMillis =
+          Metrics.distribution(Write.class, "flushLatencyMillis");
+      private final Counter rowsWritten = Metrics.counter(Write.class, "rowsWritten");
+      private final Counter batchRetries = Metrics.counter(Write.class, "batchRetries");
+      private final Gauge rowsPerSecond = Metrics.gauge(Write.class, "rowsPerSecond");
+
+      private transient BlockingQueue<BatchConnection> connections;
+      private transient ExecutorService executor;
+      @Nullable private transient ScheduledExecutorService latencyScheduler;
+      private transient Semaphore inFlight;
+      private transient AtomicReference<Exception> failure;
+      private transient Queue<BatchResult> results;
+      private transient CountingOutputStream byteCounter;
+
+      /** The batch rows are currently added to. Guarded by {@code this}. */
+      private transient List<T> batch;
+      private transient long batchBytes;
 
-      public WriteFn(Write<T> spec) {
+      /** The number of sealed batches which are not yet written. Guarded by {@code this}. */
+      private transient int pendingBatches;
+
+      private transient long bundleStartNanos;
+      private transient long bundleRows;
+
+      public WriteFn(Write<T> spec, @Nullable Coder<T> coder) {
         this.spec = spec;
+        this.coder = coder;
       }
 
       @Setup
       public void setup() throws Exception {
-        connection = spec.getDataSourceConfiguration().getConnection();
-        connection.setAutoCommit(false);
-        preparedStatement = connection.prepareStatement(spec.getStatement());
+        int parallelism = spec.getMaxParallelBatches();
+        connections = new ArrayBlockingQueue<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+          connections.add(new BatchConnection());
+        }
+        ThreadFactory threadFactory =
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jdbcio-write-%d").build();
+        executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+        if (spec.getMaxBatchLatency() != null) {
+          latencyScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+        inFlight = new Semaphore(parallelism);
+        failure = new AtomicReference<>();
+        results = new ConcurrentLinkedQueue<>();
+        byteCounter = new CountingOutputStream(ByteStreams.nullOutputStream());
+        batch = new ArrayList<>();
       }
 
       @StartBundle
-      public void startBundle(Context context) {
-        batchCount = 0;
+      public void startBundle(Context context) throws Exception {
+        // Batches of a previous, failed bundle may still be in flight
+        awaitPendingBatches();
+        failure.set(null);
+        synchronized (this) {
+          batch = new ArrayList<>();
+          batchBytes = 0;
+        }
+        bundleStartNanos = System.nanoTime();
+        bundleRows = 0;
       }
 
       @ProcessElement
       public void processElement(ProcessContext context) throws Exception {
+        checkForFailure();
         T record = context.element();
+        long recordBytes = 0;
+        if (coder != null) {
+          long startBytes = byteCounter.getCount();
+          coder.encode(record, byteCounter, Coder.Context.OUTER);
+          recordBytes = byteCounter.getCount() - startBytes;
+        }
 
-        preparedStatement.clearParameters();
-        spec.getPreparedStatementSetter().setParameters(record, preparedStatement);
-        preparedStatement.addBatch();
-
-        batchCount++;
-
-        if (batchCount >= DEFAULT_BATCH_SIZE) {
-          finishBundle(context);
+        List<T> fullBatch = null;
+        synchronized (this) {
+          if (batch.isEmpty() && latencyScheduler != null) {
+            final List<T> started = batch;
+            latencyScheduler.schedule(new Runnable() {
+              @Override
+              public void run() {
+                flushIfCurrent(started);
+              }
+            }, spec.getMaxBatchLatency().getMillis(), TimeUnit.MILLISECONDS);
+          }
+          batch.add(record);
+          batchBytes += recordBytes;
+          if (batch.size() >= spec.getBatchSize()
+              || (spec.getMaxBatchBytes() != null && batchBytes >= spec.getMaxBatchBytes())) {
+            fullBatch = sealBatch();
+          }
+        }
+        if (fullBatch != null) {
+          submitBatch(fullBatch);
         }
+        reportResults();
       }
 
       @FinishBundle
       public void finishBundle(Context context) throws Exception {
-        if (batchCount > 0) {
-          preparedStatement.executeBatch();
-          connection.commit();
-          batchCount = 0;
+        List<T> lastBatch;
+        synchronized (this) {
+          lastBatch = batch.isEmpty() ? null : sealBatch();
+        }
+        if (lastBatch != null) {
+          submitBatch(lastBatch);
+        }
+        awaitPendingBatches();
+        reportResults();
+        checkForFailure();
+        long bundleNanos = System.nanoTime() - bundleStartNanos;
+        if (bundleRows > 0 && bundleNanos > 0) {
+          rowsPerSecond.set(bundleRows * 1000000000L / bundleNanos);
         }
       }
 
       @Teardown
       public void teardown() throws Exception {
+        if (latencyScheduler != null) {
+          latencyScheduler.shutdownNow();
+        }
+        if (executor != null) {
+          executor.shutdown();
+          executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        if (connections != null) {
+          for (BatchConnection connection : connections) {
+            connection.close();
+          }
+        }
+      }
+
+      /**
+       * Replaces the current batch with an empty one and returns it. The returned batch must be
+       * passed to {@link #submitBatch(List)}. Requires {@code this}.
+       */
+      private List<T> sealBatch() {
+        List<T> sealed = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        pendingBatches++;
+        return sealed;
+      }
+
+      /** Writes the provided batch if it is still the current batch, from the latency timer. */
+      private void flushIfCurrent(List<T> started) {
+        List<T> sealed = null;
+        synchronized (this) {
+          if (batch == started && !batch.isEmpty()) {
+            sealed = sealBatch();
+          }
+        }
+        if (sealed != null) {
+          try {
+            submitBatch(sealed);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+          }
+        }
+      }
+
+      /** Writes the batch asynchronously, blocking while too many batches are in flight. */
+      private void submitBatch(final List<T> rows) throws InterruptedException {
+        boolean acquired = false;
+        boolean submitted = false;
         try {
-          if (preparedStatement != null) {
-            preparedStatement.close();
+          inFlight.acquire();
+          acquired = true;
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                writeBatch(rows);
+              } catch (Exception e) {
+                failure.compareAndSet(null, e);
+              } finally {
+                inFlight.release();
+                batchDone();
+              }
+            }
+          });
+          submitted = true;
+        } finally {
+          if (!submitted) {
+            if (acquired) {
+              inFlight.release();
+            }
+            batchDone();
+          }
+        }
+      }
+
+      private synchronized void batchDone() {
+        pendingBatches--;
+        notifyAll();
+      }
+
+      private synchronized void awaitPendingBatches() throws InterruptedException {
+        while (pendingBatches > 0) {
+          wait();
+        }
+      }
+
+      private void checkForFailure() throws Exception {
+        Exception e = failure.get();
+        if (e != null) {
+          throw e;
+        }
+      }
+
+      /**
+       * Reports the batches completed since the last report. Metrics are reported from the thread
+       * processing elements, which is the only one with access to the current metrics container.
+       */
+      private void reportResults() {
+        BatchResult result;
+        while ((result = results.poll()) != null) {
+          batchSize.update(result.rows);
+          flushLatencyMillis.update(result.latencyMillis);
+          rowsWritten.inc(result.rows);
+          batchRetries.inc(result.retries);
+          bundleRows += result.rows;
+        }
+      }
+
+      /**
+       * Writes and commits a batch over a pooled connection. If it fails with a transient
+       * exception, the transaction is rolled back and the whole batch is retried.
+       */
+      private void writeBatch(List<T> rows) throws Exception {
+        long startNanos = System.nanoTime();
+        BatchConnection connection = connections.take();
+        try {
+          int retries = 0;
+          long backoffMillis = INITIAL_RETRY_BACKOFF_MILLIS;
+          while (true) {
+            try {
+              connection.write(rows);
+              break;
+            } catch (SQLException e) {
+              connection.rollback(e);
+              if (retries >= spec.getMaxRetries() || !isTransient(e)) {
+                throw e;
+              }
+              retries++;
+              LOG.warn("Retrying batch of {} rows after transient failure, attempt {} of {}",
+                  rows.size(), retries, spec.getMaxRetries(), e);
+              Thread.sleep(backoffMillis);
+              backoffMillis *= 2;
+            }
           }
+          results.add(new BatchResult(
+              rows.size(),
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+              retries));
         } finally {
-          if (connection != null) {
-            connection.close();
+          connections.add(connection);
+        }
+      }
+
+      /** A connection and the prepared statement writing batches over it. */
+      private class BatchConnection {
+        @Nullable private Connection connection;
+        @Nullable private PreparedStatement statement;
+
+        void write(List<T> rows) throws Exception {
+          if (connection == null) {
+            connection = spec.getDataSourceConfiguration().getConnection();
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(spec.getStatement());
+          }
+          for (T row : rows) {
+            statement.clearParameters();
+            spec.getPreparedStatementSetter().setParameters(row, statement);
+            statement.addBatch();
+          }
+          statement.executeBatch();
+          connection.commit();
+        }
+
+        /**
+         * Rolls back the failed transaction. Closes the connection if it was lost, or if it
+         * cannot be rolled back, so the next write reconnects.
+         */
+        void rollback(SQLException cause) {
+          if (connection == null) {
+            return;
+          }
+          boolean reconnect = cause instanceof SQLRecoverableException
+              || isSqlStateClass(cause, CONNECTION_EXCEPTION_SQL_STATE_CLASS);
+          if (!reconnect) {
+            try {
+              statement.clearBatch();
+              connection.rollback();
+            } catch (SQLException e) {
+              LOG.warn("Unable to roll back failed batch, reconnecting", e);
+              reconnect = true;
+            }
+          }
+          if (reconnect) {
+            close();
           }
         }
+
+        void close() {
+          try {
+            try {
+              if (statement != null) {
+                statement.close();
+              }
+            } finally {
+              if (connection != null) {
+                connection.close();
+              }
+            }
+          } catch (SQLException e) {
+            LOG.warn("Unable to close connection", e);
+          } finally {
+            statement = null;
+            connection = null;
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns true if the exception, or any exception chained to it, indicates that the failed
+     * operation may succeed if retried.
+     */
+    @VisibleForTesting
+    static boolean isTransient(SQLException exception) {
+      for (SQLException e = exception; e != null; e = e.getNextException()) {
+        if (e instanceof SQLTransientException
+            || e instanceof SQLRecoverableException
+            || isSqlStateClass(e, CONNECTION_EXCEPTION_SQL_STATE_CLASS)
+            || isSqlStateClass(e, TRANSACTION_ROLLBACK_SQL_STATE_CLASS)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean isSqlStateClass(SQLException e, String sqlStateClass) {
+      return e.getSQLState() != null && e.getSQLState().startsWith(sqlStateClass);
+    }
+
+    /** The outcome of a batch that was committed. */
+    private static class BatchResult {
+      private final long rows;
+      private final long latencyMillis;
+      private final long retries;
+
+      private BatchResult(long rows, long latencyMillis, long retries) {
+        this.rows = rows;
+        this.latencyMillis = latencyMillis;
+        this.retries = retries;
       }
     }
   }
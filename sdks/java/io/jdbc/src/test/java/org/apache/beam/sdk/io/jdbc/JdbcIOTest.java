@@ -18,24 +18,35 @@
 package org.apache.beam.sdk.io.jdbc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.io.BoundedSource;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.NeedsRunner;
 import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.SourceTestUtils;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.Create;
@@ -44,6 +55,7 @@ import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.derby.drda.NetworkServerControl;
 import org.apache.derby.jdbc.ClientDataSource;
+import org.joda.time.Duration;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -247,6 +259,99 @@ public class JdbcIOTest implements Serializable {
      pipeline.run();
    }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testReadPartitioned() throws Exception {
+    PCollection<KV<String, Integer>> output = pipeline.apply(
+        readNamesAndIds().withPartitionColumn("id").withNumPartitions(4).withFetchSize(10));
+
+    PAssert.thatSingleton(
+        output.apply("Count All", Count.<KV<String, Integer>>globally()))
+        .isEqualTo(1000L);
+
+    PAssert.that(output
+        .apply("Count Scientist", Count.<String, Integer>perKey())
+    ).satisfies(new SerializableFunction<Iterable<KV<String, Long>>, Void>() {
+      @Override
+      public Void apply(Iterable<KV<String, Long>> input) {
+        for (KV<String, Long> element : input) {
+          assertEquals(element.getKey(), 100L, element.getValue().longValue());
+        }
+        return null;
+      }
+    });
+
+    pipeline.run();
+  }
+
+  @Test
+  @Category(NeedsRunner.class)
+  public void testReadPartitionedWithNarrowBounds() throws Exception {
+    // Rows outside of the bounds are read by the first and last partitions
+    PCollection<KV<String, Integer>> output = pipeline.apply(
+        readNamesAndIds()
+            .withPartitionColumn("id")
+            .withNumPartitions(3)
+            .withPartitionBounds(100, 200));
+
+    PAssert.thatSingleton(
+        output.apply("Count All", Count.<KV<String, Integer>>globally()))
+        .isEqualTo(1000L);
+
+    pipeline.run();
+  }
+
+  @Test
+  public void testSplitPartitionedSource() throws Exception {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    JdbcIO.JdbcSource<KV<String, Integer>> source = new JdbcIO.JdbcSource<>(
+        readNamesAndIds().withPartitionColumn("id").withNumPartitions(5), false, null, null);
+
+    List<? extends BoundedSource<KV<String, Integer>>> splits =
+        source.splitIntoBundles(1, options);
+    assertEquals(5, splits.size());
+    SourceTestUtils.assertSourcesEqualReferenceSource(source, splits, options);
+    for (BoundedSource<KV<String, Integer>> split : splits) {
+      assertTrue(split.getEstimatedSizeBytes(options) > 0);
+    }
+  }
+
+  @Test
+  public void testReaderGetCurrentOutsideRows() throws Exception {
+    JdbcIO.JdbcSource<KV<String, Integer>> source = new JdbcIO.JdbcSource<>(
+        readNamesAndIds().withPartitionColumn("id"), true, 0L, 1L);
+    try (BoundedSource.BoundedReader<KV<String, Integer>> reader =
+        source.createReader(PipelineOptionsFactory.create())) {
+      assertGetCurrentThrows(reader);
+      assertTrue(reader.start());
+      assertEquals(0, (int) reader.getCurrent().getValue());
+      assertFalse(reader.advance());
+      assertGetCurrentThrows(reader);
+    }
+  }
+
+  private static void assertGetCurrentThrows(BoundedSource.BoundedReader<?> reader) {
+    try {
+      reader.getCurrent();
+      fail("Expected NoSuchElementException");
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  private static JdbcIO.Read<KV<String, Integer>> readNamesAndIds() {
+    return JdbcIO.<KV<String, Integer>>read()
+        .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration.create(dataSource))
+        .withQuery("select name,id from " + JdbcTestDataSet.READ_TABLE_NAME)
+        .withRowMapper(new JdbcIO.RowMapper<KV<String, Integer>>() {
+          @Override
+          public KV<String, Integer> mapRow(ResultSet resultSet) throws Exception {
+            return KV.of(resultSet.getString("name"), resultSet.getInt("id"));
+          }
+        })
+        .withCoder(KvCoder.of(StringUtf8Coder.of(), BigEndianIntegerCoder.of()));
+  }
+
   @Test
   @Category(NeedsRunner.class)
   public void testWrite() throws Exception {
@@ -291,6 +396,67 @@ public class JdbcIOTest implements Serializable {
     }
   }
 
+  @Test
+  @Category(NeedsRunner.class)
+  public void testWriteWithParallelBoundedBatches() throws Exception {
+
+    String tableName = JdbcTestDataSet.createWriteDataTable(dataSource);
+    try {
+      ArrayList<KV<Integer, String>> data = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        KV<Integer, String> kv = KV.of(i, "Test");
+        data.add(kv);
+      }
+      pipeline.apply(Create.of(data))
+          .apply(JdbcIO.<KV<Integer, String>>write()
+              .withDataSourceConfiguration(JdbcIO.DataSourceConfiguration.create(
+                  "org.apache.derby.jdbc.ClientDriver",
+                  "jdbc:derby://localhost:" + port + "/target/beam"))
+              .withStatement(String.format("insert into %s values(?, ?)", tableName))
+              .withBatchSize(50)
+              .withMaxBatchBytes(200)
+              .withMaxBatchLatency(Duration.millis(10))
+              .withMaxParallelBatches(4)
+              .withPreparedStatementSetter(
+                  new JdbcIO.PreparedStatementSetter<KV<Integer, String>>() {
+                public void setParameters(
+                    KV<Integer, String> element, PreparedStatement statement) throws Exception {
+                  statement.setInt(1, element.getKey());
+                  statement.setString(2, element.getValue());
+                }
+              }));
+
+      pipeline.run();
+
+      try (Connection connection = dataSource.getConnection()) {
+        try (Statement statement = connection.createStatement()) {
+          try (ResultSet resultSet = statement.executeQuery("select count(*) from "
+                + tableName)) {
+            resultSet.next();
+            int count = resultSet.getInt(1);
+
+            Assert.assertEquals(2000, count);
+          }
+        }
+      }
+    } finally {
+      JdbcTestDataSet.cleanUpDataTable(dataSource, tableName);
+    }
+  }
+
+  @Test
+  public void testIsTransient() {
+    assertTrue(JdbcIO.Write.isTransient(new SQLTransientConnectionException("timeout")));
+    assertTrue(JdbcIO.Write.isTransient(new SQLException("deadlock", "40001")));
+    assertTrue(JdbcIO.Write.isTransient(new SQLException("connection lost", "08006")));
+    assertFalse(JdbcIO.Write.isTransient(new SQLException("constraint violation", "23505")));
+    assertFalse(JdbcIO.Write.isTransient(new SQLException("unknown")));
+
+    SQLException batchFailure = new BatchUpdateException("batch failed", "XJ208", new int[0]);
+    batchFailure.setNextException(new SQLException("deadlock", "40P01"));
+    assertTrue(JdbcIO.Write.isTransient(batchFailure));
+  }
+
   @Test
   @Category(NeedsRunner.class)
   public void testWriteWithEmptyPCollection() throws Exception {
@@ -48,6 +48,12 @@ class ConsumerSpEL {
   private Expression assignExpression =
       parser.parseExpression("#consumer.assign(#tp)");
 
+  private Expression pauseExpression =
+      parser.parseExpression("#consumer.pause(#tp)");
+
+  private Expression resumeExpression =
+      parser.parseExpression("#consumer.resume(#tp)");
+
   private Method timestampMethod;
   private boolean hasRecordTimestamp = false;
 
@@ -74,6 +80,20 @@ class ConsumerSpEL {
     assignExpression.getValue(mapContext);
   }
 
+  public void evaluatePause(Consumer consumer, TopicPartition topicPartition) {
+    StandardEvaluationContext mapContext = new StandardEvaluationContext();
+    mapContext.setVariable("consumer", consumer);
+    mapContext.setVariable("tp", topicPartition);
+    pauseExpression.getValue(mapContext);
+  }
+
+  public void evaluateResume(Consumer consumer, TopicPartition topicPartition) {
+    StandardEvaluationContext mapContext = new StandardEvaluationContext();
+    mapContext.setVariable("consumer", consumer);
+    mapContext.setVariable("tp", topicPartition);
+    resumeExpression.getValue(mapContext);
+  }
+
   public long getRecordTimestamp(ConsumerRecord<byte[], byte[]> rawRecord) {
     long timestamp;
     try {
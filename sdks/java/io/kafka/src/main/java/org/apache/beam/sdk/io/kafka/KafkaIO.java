@@ -47,10 +47,11 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.AvroCoder;
@@ -63,6 +64,9 @@ import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.io.UnboundedSource.CheckpointMark;
 import org.apache.beam.sdk.io.UnboundedSource.UnboundedReader;
 import org.apache.beam.sdk.io.kafka.KafkaCheckpointMark.PartitionMark;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -197,6 +201,12 @@ import org.slf4j.LoggerFactory;
  *    );
  * }</pre>
  *
+ * <h3>Prefetching and Backpressure</h3>
+ * Each reader fetches records from Kafka on a background thread, ahead of the records consumed
+ * by the runner. Up to {@link Read#withMaxPrefetchBytes(long)} bytes of records are buffered. A
+ * partition with more than {@link Read#withPartitionPauseBytes(long)} bytes buffered is paused
+ * until half of them have been consumed, so a single busy partition cannot fill the buffer.
+ *
  * <h3>Advanced Kafka Configuration</h3>
  * KafakIO allows setting most of the properties in {@link ConsumerConfig} for source or in
  * {@link ProducerConfig} for sink. E.g. if you would like to enable offset
@@ -227,6 +237,7 @@ public class KafkaIO {
         .setConsumerFactoryFn(Read.KAFKA_CONSUMER_FACTORY_FN)
         .setConsumerConfig(Read.DEFAULT_CONSUMER_PROPERTIES)
         .setMaxNumRecords(Long.MAX_VALUE)
+        .setMaxPrefetchBytes(Read.DEFAULT_MAX_PREFETCH_BYTES)
         .build();
   }
 
@@ -243,6 +254,7 @@ public class KafkaIO {
         .setConsumerFactoryFn(Read.KAFKA_CONSUMER_FACTORY_FN)
         .setConsumerConfig(Read.DEFAULT_CONSUMER_PROPERTIES)
         .setMaxNumRecords(Long.MAX_VALUE)
+        .setMaxPrefetchBytes(Read.DEFAULT_MAX_PREFETCH_BYTES)
         .build();
   }
 
@@ -278,6 +290,8 @@ public class KafkaIO {
 
     abstract long getMaxNumRecords();
     @Nullable abstract Duration getMaxReadTime();
+    abstract long getMaxPrefetchBytes();
+    @Nullable abstract Long getPartitionPauseBytes();
 
     abstract Builder<K, V> toBuilder();
 
@@ -294,6 +308,8 @@ public class KafkaIO {
       abstract Builder<K, V> setWatermarkFn(SerializableFunction<KafkaRecord<K, V>, Instant> fn);
       abstract Builder<K, V> setMaxNumRecords(long maxNumRecords);
       abstract Builder<K, V> setMaxReadTime(Duration maxReadTime);
+      abstract Builder<K, V> setMaxPrefetchBytes(long maxPrefetchBytes);
+      abstract Builder<K, V> setPartitionPauseBytes(Long partitionPauseBytes);
 
       abstract Read<K, V> build();
     }
@@ -390,6 +406,27 @@ public class KafkaIO {
       return toBuilder().setMaxNumRecords(Long.MAX_VALUE).setMaxReadTime(maxReadTime).build();
     }
 
+    /**
+     * Sets the maximum number of bytes of records each reader fetches from Kafka ahead of the
+     * records it has returned. The reader stops fetching while this many bytes are buffered.
+     * Default is {@value #DEFAULT_MAX_PREFETCH_BYTES} bytes.
+     */
+    public Read<K, V> withMaxPrefetchBytes(long maxPrefetchBytes) {
+      checkArgument(maxPrefetchBytes > 0, "maxPrefetchBytes should be positive");
+      return toBuilder().setMaxPrefetchBytes(maxPrefetchBytes).build();
+    }
+
+    /**
+     * Sets the number of buffered bytes of a single partition at which the reader pauses fetching
+     * from that partition. Fetching resumes once the buffered bytes of the partition drop below
+     * half of this. Default is the maximum number of prefetched bytes divided by the number of
+     * partitions assigned to the reader.
+     */
+    public Read<K, V> withPartitionPauseBytes(long partitionPauseBytes) {
+      checkArgument(partitionPauseBytes > 0, "partitionPauseBytes should be positive");
+      return toBuilder().setPartitionPauseBytes(partitionPauseBytes).build();
+    }
+
     /**
      * A function to assign a timestamp to a record. Default is processing timestamp.
      */
@@ -482,6 +519,8 @@ public class KafkaIO {
     }
     ///////////////////////////////////////////////////////////////////////////////////////
 
+    static final long DEFAULT_MAX_PREFETCH_BYTES = 16L * 1024 * 1024;
+
     /**
      * A set of properties that are not required or don't make sense for our consumer.
      */
@@ -541,6 +580,8 @@ public class KafkaIO {
           builder.add(DisplayData.item(key, ValueProvider.StaticValueProvider.of(conf.getValue())));
         }
       }
+      builder.add(DisplayData.item("maxPrefetchBytes", getMaxPrefetchBytes()));
+      builder.addIfNotNull(DisplayData.item("partitionPauseBytes", getPartitionPauseBytes()));
     }
   }
 
@@ -745,10 +786,24 @@ public class KafkaIO {
     // like 100 milliseconds does not work well. This along with large receive buffer for
     // consumer achieved best throughput in tests (see `defaultConsumerProperties`).
     private final ExecutorService consumerPollThread = Executors.newSingleThreadExecutor();
-    private final SynchronousQueue<ConsumerRecords<byte[], byte[]>> availableRecordsQueue =
-        new SynchronousQueue<>();
+    private final LinkedBlockingQueue<PolledRecords> availableRecordsQueue =
+        new LinkedBlockingQueue<>();
     private AtomicBoolean closed = new AtomicBoolean(false);
 
+    // Prefetch support :
+    // The poll thread keeps polling while fewer than maxPrefetchBytes are buffered in
+    // availableRecordsQueue, and pauses each partition with more than partitionPauseBytes
+    // buffered. advance() releases the bytes of each record it consumes, and wakes the poll thread
+    // through bufferLock when the buffer or a partition drops below its limit.
+    private final long maxPrefetchBytes;
+    private final long partitionPauseBytes;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final Object bufferLock = new Object();
+
+    private final Gauge bufferedBytesGauge = Metrics.gauge(KafkaIO.class, "bufferedBytes");
+    private final Distribution pollLatencyMillis =
+        Metrics.distribution(KafkaIO.class, "pollLatencyMillis");
+
     // Backlog support :
     // Kafka consumer does not have an API to fetch latest offset for topic. We need to seekToEnd()
     // then look at position(). Use another consumer to do this so that the primary consumer does
@@ -781,6 +836,12 @@ public class KafkaIO {
       private long latestOffset;
       private Iterator<ConsumerRecord<byte[], byte[]>> recordIter = Collections.emptyIterator();
 
+      // bytes of records polled but not yet consumed by advance()
+      private final AtomicLong bufferedBytes = new AtomicLong();
+      // whether the partition is paused in the consumer. only accessed from the poll thread.
+      private boolean paused = false;
+      private final Gauge backlogBytesGauge;
+
       // simple moving average for size of each record in bytes
       private double avgRecordSize = 0;
       private static final int movingAvgWindow = 1000; // very roughly avg of last 1000 elements
@@ -789,6 +850,7 @@ public class KafkaIO {
         this.topicPartition = partition;
         this.nextOffset = nextOffset;
         this.latestOffset = UNINITIALIZED_OFFSET;
+        this.backlogBytesGauge = Metrics.gauge(KafkaIO.class, partition + "-backlogBytes");
       }
 
       // update consumedOffset and avgRecordSize
@@ -817,6 +879,17 @@ public class KafkaIO {
       }
     }
 
+    // a batch of records returned by a single poll, along with how long the poll took.
+    private static class PolledRecords {
+      private final ConsumerRecords<byte[], byte[]> records;
+      private final long pollMillis;
+
+      PolledRecords(ConsumerRecords<byte[], byte[]> records, long pollMillis) {
+        this.records = records;
+        this.pollMillis = pollMillis;
+      }
+    }
+
     public UnboundedKafkaReader(
         UnboundedKafkaSource<K, V> source,
         @Nullable KafkaCheckpointMark checkpointMark) {
@@ -825,6 +898,10 @@ public class KafkaIO {
       this.name = "Reader-" + source.id;
 
       List<TopicPartition> partitions = source.spec.getTopicPartitions();
+      this.maxPrefetchBytes = source.spec.getMaxPrefetchBytes();
+      this.partitionPauseBytes = source.spec.getPartitionPauseBytes() != null
+          ? source.spec.getPartitionPauseBytes()
+          : Math.max(1, maxPrefetchBytes / Math.max(1, partitions.size()));
       partitionStates = ImmutableList.copyOf(Lists.transform(partitions,
           new Function<TopicPartition, PartitionState>() {
             @Override
@@ -858,9 +935,25 @@ public class KafkaIO {
       // Read in a loop and enqueue the batch of records, if any, to availableRecordsQueue
       while (!closed.get()) {
         try {
+          if (!updatePausedPartitions()) {
+            awaitBufferSpace();
+            continue;
+          }
+          long startNanos = System.nanoTime();
           ConsumerRecords<byte[], byte[]> records = consumer.poll(KAFKA_POLL_TIMEOUT.getMillis());
+          long pollMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
           if (!records.isEmpty() && !closed.get()) {
-            availableRecordsQueue.put(records); // blocks until dequeued.
+            long batchBytes = 0;
+            for (PartitionState p : partitionStates) {
+              long partitionBytes = 0;
+              for (ConsumerRecord<byte[], byte[]> rawRecord : records.records(p.topicPartition)) {
+                partitionBytes += recordSize(rawRecord);
+              }
+              p.bufferedBytes.addAndGet(partitionBytes);
+              batchBytes += partitionBytes;
+            }
+            bufferedBytes.addAndGet(batchBytes);
+            availableRecordsQueue.add(new PolledRecords(records, pollMillis));
           }
         } catch (InterruptedException e) {
           LOG.warn("{}: consumer thread is interrupted", this, e); // not expected
@@ -873,24 +966,106 @@ public class KafkaIO {
       LOG.info("{}: Returning from consumer pool loop", this);
     }
 
+    /**
+     * Pauses the partitions with too many bytes buffered, and resumes paused partitions which
+     * dropped below half of that. Returns true if the consumer can be polled, i.e. the prefetch
+     * buffer is not full and at least one partition is not paused. Called from the poll thread.
+     */
+    private boolean updatePausedPartitions() {
+      if (bufferedBytes.get() >= maxPrefetchBytes) {
+        return false;
+      }
+      boolean anyActive = false;
+      for (PartitionState p : partitionStates) {
+        long buffered = p.bufferedBytes.get();
+        if (!p.paused && buffered >= partitionPauseBytes) {
+          LOG.debug("{}: pausing {} with {} bytes buffered", this, p.topicPartition, buffered);
+          consumerSpEL.evaluatePause(consumer, p.topicPartition);
+          p.paused = true;
+        } else if (p.paused && buffered < partitionPauseBytes / 2) {
+          LOG.debug("{}: resuming {} with {} bytes buffered", this, p.topicPartition, buffered);
+          consumerSpEL.evaluateResume(consumer, p.topicPartition);
+          p.paused = false;
+        }
+        anyActive |= !p.paused;
+      }
+      return anyActive;
+    }
+
+    // waits for advance() to consume some of the buffered records. Called from the poll thread.
+    private void awaitBufferSpace() throws InterruptedException {
+      synchronized (bufferLock) {
+        if (!closed.get() && !canResumePolling()) {
+          bufferLock.wait(KAFKA_POLL_TIMEOUT.getMillis());
+        }
+      }
+    }
+
+    private boolean canResumePolling() {
+      if (bufferedBytes.get() >= maxPrefetchBytes) {
+        return false;
+      }
+      for (PartitionState p : partitionStates) {
+        if (!p.paused || p.bufferedBytes.get() < partitionPauseBytes / 2) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // releases the bytes of a record consumed by advance(), waking the poll thread if the buffer
+    // or the record's partition dropped below its limit.
+    private void releaseBufferedBytes(PartitionState p, long bytes) {
+      long partitionBytes = p.bufferedBytes.addAndGet(-bytes);
+      long totalBytes = bufferedBytes.addAndGet(-bytes);
+      long resumeBytes = partitionPauseBytes / 2;
+      if ((totalBytes < maxPrefetchBytes && totalBytes + bytes >= maxPrefetchBytes)
+          || (partitionBytes < resumeBytes && partitionBytes + bytes >= resumeBytes)) {
+        synchronized (bufferLock) {
+          bufferLock.notifyAll();
+        }
+      }
+    }
+
+    private static int recordSize(ConsumerRecord<byte[], byte[]> rawRecord) {
+      return (rawRecord.key() == null ? 0 : rawRecord.key().length)
+          + (rawRecord.value() == null ? 0 : rawRecord.value().length);
+    }
+
+    // reports prefetch and backlog metrics. Called from the reader thread, which is the only one
+    // with access to the current metrics container.
+    private void reportMetrics(PolledRecords polled) {
+      pollLatencyMillis.update(polled.pollMillis);
+      bufferedBytesGauge.set(bufferedBytes.get());
+      for (PartitionState p : partitionStates) {
+        long backlogBytes = p.approxBacklogInBytes();
+        if (backlogBytes != UnboundedReader.BACKLOG_UNKNOWN) {
+          p.backlogBytesGauge.set(backlogBytes);
+        }
+      }
+    }
+
     private void nextBatch() {
       curBatch = Collections.emptyIterator();
 
-      ConsumerRecords<byte[], byte[]> records;
+      PolledRecords polled;
       try {
         // poll available records, wait (if necessary) up to the specified timeout.
-        records = availableRecordsQueue.poll(NEW_RECORDS_POLL_TIMEOUT.getMillis(),
-                                             TimeUnit.MILLISECONDS);
+        polled = availableRecordsQueue.poll(NEW_RECORDS_POLL_TIMEOUT.getMillis(),
+                                            TimeUnit.MILLISECONDS);
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         LOG.warn("{}: Unexpected", this, e);
         return;
       }
 
-      if (records == null) {
+      if (polled == null) {
         return;
       }
 
+      reportMetrics(polled);
+      ConsumerRecords<byte[], byte[]> records = polled.records;
+
       List<PartitionState> nonEmpty = new LinkedList<>();
 
       for (PartitionState p : partitionStates) {
@@ -980,6 +1155,8 @@ public class KafkaIO {
           ConsumerRecord<byte[], byte[]> rawRecord = pState.recordIter.next();
           long expected = pState.nextOffset;
           long offset = rawRecord.offset();
+          int recordSize = recordSize(rawRecord);
+          releaseBufferedBytes(pState, recordSize);
 
           if (offset < expected) { // -- (a)
             // this can happen when compression is enabled in Kafka (seems to be fixed in 0.10)
@@ -1015,8 +1192,6 @@ public class KafkaIO {
               ? Instant.now() : source.spec.getTimestampFn().apply(record);
           curRecord = record;
 
-          int recordSize = (rawRecord.key() == null ? 0 : rawRecord.key().length)
-              + (rawRecord.value() == null ? 0 : rawRecord.value().length);
           pState.recordConsumed(offset, recordSize);
           return true;
 
@@ -1128,16 +1303,19 @@ public class KafkaIO {
       closed.set(true);
       consumerPollThread.shutdown();
       offsetFetcherThread.shutdown();
+      availableRecordsQueue.clear(); // drop buffered batches
 
       boolean isShutdown = false;
 
       // Wait for threads to shutdown. Trying this as a loop to handle a tiny race where poll thread
-      // might block to enqueue right after availableRecordsQueue.poll() below.
+      // might start waiting for buffer space right after bufferLock is notified below.
       while (!isShutdown) {
 
         consumer.wakeup();
         offsetConsumer.wakeup();
-        availableRecordsQueue.poll(); // drain unread batch, this unblocks consumer thread.
+        synchronized (bufferLock) {
+          bufferLock.notifyAll(); // unblocks consumer thread waiting for buffer space.
+        }
         try {
           isShutdown = consumerPollThread.awaitTermination(10, TimeUnit.SECONDS)
               && offsetFetcherThread.awaitTermination(10, TimeUnit.SECONDS);
@@ -291,6 +291,23 @@ public class KafkaIOTest {
     p.run();
   }
 
+  @Test
+  public void testUnboundedSourceWithSmallPrefetchBuffer() {
+    // each record is 12 bytes, so partitions are paused after 2 records and the whole buffer
+    // holds less than a single poll.
+    int numElements = 1000;
+
+    PCollection<Long> input = p
+        .apply(mkKafkaReadTransform(numElements, new ValueAsTimestampFn())
+            .withMaxPrefetchBytes(120)
+            .withPartitionPauseBytes(24)
+            .withoutMetadata())
+        .apply(Values.<Long>create());
+
+    addCountingAsserts(input, numElements);
+    p.run();
+  }
+
   @Test
   public void testUnboundedSourceWithSingleTopic() {
     // same as testUnboundedSource, but with single topic
@@ -654,6 +671,8 @@ public class KafkaIOTest {
     assertThat(displayData, hasDisplayItem("bootstrap.servers", "myServer1:9092,myServer2:9092"));
     assertThat(displayData, hasDisplayItem("auto.offset.reset", "latest"));
     assertThat(displayData, hasDisplayItem("receive.buffer.bytes", 524288));
+    assertThat(displayData,
+        hasDisplayItem("maxPrefetchBytes", KafkaIO.Read.DEFAULT_MAX_PREFETCH_BYTES));
   }
 
   @Test